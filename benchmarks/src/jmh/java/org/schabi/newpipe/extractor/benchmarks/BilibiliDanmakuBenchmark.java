@@ -0,0 +1,59 @@
+package org.schabi.newpipe.extractor.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.schabi.newpipe.extractor.ListExtractor.InfoItemsPage;
+import org.schabi.newpipe.extractor.NewPipe;
+import org.schabi.newpipe.extractor.ServiceList;
+import org.schabi.newpipe.extractor.bulletComments.BulletCommentsInfoItem;
+import org.schabi.newpipe.extractor.exceptions.ExtractionException;
+import org.schabi.newpipe.extractor.linkhandler.ListLinkHandler;
+import org.schabi.newpipe.extractor.services.bilibili.BilibiliService;
+import org.schabi.newpipe.extractor.services.bilibili.WatchDataCache;
+import org.schabi.newpipe.extractor.services.bilibili.extractors.BilibiliBulletCommentsExtractor;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetching and parsing the XML danmaku list of a Bilibili video, from its raw DEFLATE
+ * compressed response to the collected bullet comments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BilibiliDanmakuBenchmark {
+
+    private static final String VIDEO_ID = "BV1GJ411x7h7";
+    private static final String VIDEO_URL = "https://www.bilibili.com/video/" + VIDEO_ID;
+    private static final long CID = 137649199;
+
+    private ListLinkHandler linkHandler;
+    private WatchDataCache watchDataCache;
+
+    @Setup
+    public void setUp() throws IOException {
+        NewPipe.init(new FixtureDownloader().register(
+                BilibiliService.QUERY_VIDEO_BULLET_COMMENTS_URL + CID,
+                Fixtures.readBytes("bilibili/danmaku_list.bin")));
+        watchDataCache = new WatchDataCache();
+        watchDataCache.setCid(VIDEO_ID, CID);
+        linkHandler = new ListLinkHandler(VIDEO_URL, VIDEO_URL, VIDEO_ID,
+                Collections.emptyList(), Collections.emptyList());
+    }
+
+    @Benchmark
+    public InfoItemsPage<BulletCommentsInfoItem> fetchAndParse()
+            throws IOException, ExtractionException {
+        final BilibiliBulletCommentsExtractor extractor = new BilibiliBulletCommentsExtractor(
+                ServiceList.BiliBili, linkHandler, watchDataCache);
+        extractor.fetchPage();
+        return extractor.getInitialPage();
+    }
+}
@@ -0,0 +1,100 @@
+package org.schabi.newpipe.extractor.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.schabi.newpipe.extractor.bulletComments.BulletCommentsDeduplicator;
+
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replaying the chat of a long live stream, polled every second for the messages of the last
+ * {@link #POLL_WINDOW_SECONDS} seconds as the YouTube and Niconico extractors receive them, and
+ * emitting each message once with a {@link BulletCommentsDeduplicator}, compared with the
+ * {@link CopyOnWriteArrayList} of all IDs the extractors used before.
+ *
+ * <p>
+ * The list is quadratic: one replay of the ten hour log takes it tens of seconds, e.g.
+ * {@code -PjmhIncludes='BulletCommentsDeduplicatorBenchmark.youtubeIds$'} leaves it out.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BulletCommentsDeduplicatorBenchmark {
+
+    private static final int MESSAGES_PER_SECOND = 2;
+    private static final int POLL_WINDOW_SECONDS = 2;
+    private static final String ID_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    @Param({"1", "10"})
+    public int hours;
+
+    private String[] youtubeIds;
+    private Integer[] niconicoIds;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(20240501);
+        final int messageCount = hours * 3600 * MESSAGES_PER_SECOND;
+        youtubeIds = new String[messageCount];
+        niconicoIds = new Integer[messageCount];
+        for (int i = 0; i < messageCount; i++) {
+            // Live chat message IDs share a prefix, like ChwKGkNJ...
+            final StringBuilder id = new StringBuilder("ChwKGkNJ");
+            for (int j = 0; j < 30; j++) {
+                id.append(ID_ALPHABET.charAt(random.nextInt(ID_ALPHABET.length())));
+            }
+            youtubeIds[i] = id.toString();
+            niconicoIds[i] = 1_000_000 + i;
+        }
+    }
+
+    @Benchmark
+    public int youtubeIds() {
+        return replay(youtubeIds, new BulletCommentsDeduplicator<>());
+    }
+
+    @Benchmark
+    public int niconicoIds() {
+        return replay(niconicoIds, new BulletCommentsDeduplicator<>());
+    }
+
+    @Benchmark
+    public int youtubeIdsCopyOnWriteList() {
+        final CopyOnWriteArrayList<String> ids = new CopyOnWriteArrayList<>();
+        int emitted = 0;
+        for (int end = MESSAGES_PER_SECOND; end <= youtubeIds.length;
+                end += MESSAGES_PER_SECOND) {
+            for (int i = Math.max(0, end - POLL_WINDOW_SECONDS * MESSAGES_PER_SECOND);
+                    i < end; i++) {
+                if (!ids.contains(youtubeIds[i])) {
+                    ids.add(youtubeIds[i]);
+                    emitted++;
+                }
+            }
+        }
+        return emitted;
+    }
+
+    private static <T> int replay(final T[] ids, final BulletCommentsDeduplicator<T> seenIds) {
+        int emitted = 0;
+        for (int end = MESSAGES_PER_SECOND; end <= ids.length; end += MESSAGES_PER_SECOND) {
+            for (int i = Math.max(0, end - POLL_WINDOW_SECONDS * MESSAGES_PER_SECOND);
+                    i < end; i++) {
+                if (seenIds.add(ids[i])) {
+                    emitted++;
+                }
+            }
+        }
+        return emitted;
+    }
+}
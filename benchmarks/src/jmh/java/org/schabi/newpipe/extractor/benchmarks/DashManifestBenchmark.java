@@ -0,0 +1,76 @@
+package org.schabi.newpipe.extractor.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.schabi.newpipe.extractor.NewPipe;
+import org.schabi.newpipe.extractor.services.youtube.ItagItem;
+import org.schabi.newpipe.extractor.services.youtube.dashmanifestcreators.CreationException;
+import org.schabi.newpipe.extractor.services.youtube.dashmanifestcreators.YoutubeDashManifestCreatorsUtils;
+import org.schabi.newpipe.extractor.services.youtube.dashmanifestcreators.YoutubeOtfDashManifestCreator;
+import org.schabi.newpipe.extractor.services.youtube.dashmanifestcreators.YoutubeProgressiveDashManifestCreator;
+import org.schabi.newpipe.extractor.services.youtube.extractors.YoutubeStreamExtractor;
+import org.schabi.newpipe.extractor.services.youtube.sabr.YoutubeSabrInfo;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generating DASH manifests with the {@link YoutubeDashManifestCreatorsUtils}, for a progressive
+ * stream and for an OTF stream whose initialization sequence is recorded.
+ *
+ * <p>
+ * The caches of the manifest creators are cleared before each generation, so that the
+ * generation itself is measured.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DashManifestBenchmark {
+
+    private static final long DURATION_SECONDS = 212;
+    // Not a web client URL, so that the initialization sequence is fetched with a single GET
+    private static final String OTF_URL = "https://rr3---sn-4g5lznes.googlevideo.com/videoplayback"
+            + "?expire=1735689600&ei=Gm1xZ8uXB9&ip=203.0.113.7&id=o-AKbV2pRzq&itag=137"
+            + "&source=yt_otf&requiressl=yes&mime=video%2Fmp4&otf=1&otfp=1&dur=0.000"
+            + "&lmt=1706123456789012&c=TVHTML5&sparams=expire%2Cei%2Cip%2Cid%2Citag%2Csource"
+            + "&sig=AJfQdSswRQIhAPx7q3m%3D";
+
+    private String progressiveUrl;
+    private ItagItem videoItagItem;
+
+    @Setup
+    public void setUp() throws Exception {
+        NewPipe.init(new FixtureDownloader().register(OTF_URL + "&sq=0&rn=0",
+                Fixtures.readBytes("youtube/otf_initialization.txt")));
+
+        final YoutubeSabrInfo sabrInfo = YoutubeStreamExtractor.buildSabrInfoFromPlayerResponse(
+                "dQw4w9WgXcQ", "Fb0c7hLWhBzD3ZLa",
+                Fixtures.readJsonObject("youtube/player_response.json"), null,
+                "2.20250101.01.00");
+        for (final YoutubeSabrInfo.Format format : sabrInfo.getFormats()) {
+            if (format.getItag() == 137) {
+                progressiveUrl = format.getInitializationUrl();
+                videoItagItem = format.toItagItem();
+            }
+        }
+    }
+
+    @Benchmark
+    public String progressive() throws CreationException {
+        YoutubeProgressiveDashManifestCreator.getCache().clear();
+        return YoutubeProgressiveDashManifestCreator.fromProgressiveStreamingUrl(progressiveUrl,
+                videoItagItem, DURATION_SECONDS);
+    }
+
+    @Benchmark
+    public String otf() throws CreationException {
+        YoutubeOtfDashManifestCreator.getCache().clear();
+        return YoutubeOtfDashManifestCreator.fromOtfStreamingUrl(OTF_URL, videoItagItem,
+                DURATION_SECONDS);
+    }
+}
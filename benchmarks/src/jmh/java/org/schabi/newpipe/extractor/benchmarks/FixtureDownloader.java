@@ -0,0 +1,72 @@
+package org.schabi.newpipe.extractor.benchmarks;
+
+import org.schabi.newpipe.extractor.downloader.CancellableCall;
+import org.schabi.newpipe.extractor.downloader.Downloader;
+import org.schabi.newpipe.extractor.downloader.Request;
+import org.schabi.newpipe.extractor.downloader.Response;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An offline {@link Downloader} which answers requests with recorded responses, so that
+ * benchmarks only measure the extraction and never the network.
+ *
+ * <p>
+ * Responses are looked up by URL only; requests to any other URL fail with an
+ * {@link IOException}, so that a benchmark can't silently measure an error path.
+ * </p>
+ */
+public final class FixtureDownloader extends Downloader {
+
+    private final Map<String, Response> responses = new ConcurrentHashMap<>();
+
+    /**
+     * Answer the requests to a URL with a recorded response body.
+     *
+     * @param url  the URL of the request
+     * @param body the body of the response, returned both as text and as raw bytes
+     * @return this downloader
+     */
+    @Nonnull
+    public FixtureDownloader register(@Nonnull final String url, @Nonnull final byte[] body) {
+        final Map<String, List<String>> headers = Collections.emptyMap();
+        return register(url, new Response(200, "OK", headers,
+                new String(body, StandardCharsets.UTF_8), body, url));
+    }
+
+    /**
+     * Answer the requests to a URL with a recorded response.
+     *
+     * @param url      the URL of the request
+     * @param response the response
+     * @return this downloader
+     */
+    @Nonnull
+    public FixtureDownloader register(@Nonnull final String url,
+                                      @Nonnull final Response response) {
+        responses.put(url, response);
+        return this;
+    }
+
+    @Override
+    public Response execute(@Nonnull final Request request) throws IOException {
+        final Response response = responses.get(request.url());
+        if (response == null) {
+            throw new IOException("No recorded response for " + request.httpMethod() + " "
+                    + request.url());
+        }
+        return response;
+    }
+
+    @Override
+    public CancellableCall executeAsync(@Nonnull final Request request,
+                                        final AsyncCallback callback) throws IOException {
+        throw new IOException("Asynchronous requests are not supported by the benchmarks");
+    }
+}
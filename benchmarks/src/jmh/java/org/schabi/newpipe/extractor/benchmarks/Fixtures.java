@@ -0,0 +1,50 @@
+package org.schabi.newpipe.extractor.benchmarks;
+
+import com.grack.nanojson.JsonArray;
+import com.grack.nanojson.JsonObject;
+import com.grack.nanojson.JsonParser;
+import com.grack.nanojson.JsonParserException;
+
+import javax.annotation.Nonnull;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Access to the recorded responses under {@code src/jmh/resources/fixtures}.
+ */
+final class Fixtures {
+
+    private static final String ROOT = "/fixtures/";
+
+    private Fixtures() {
+    }
+
+    @Nonnull
+    static byte[] readBytes(@Nonnull final String name) throws IOException {
+        try (InputStream input = Fixtures.class.getResourceAsStream(ROOT + name)) {
+            if (input == null) {
+                throw new FileNotFoundException("Missing fixture: " + name);
+            }
+            return input.readAllBytes();
+        }
+    }
+
+    @Nonnull
+    static String readString(@Nonnull final String name) throws IOException {
+        return new String(readBytes(name), StandardCharsets.UTF_8);
+    }
+
+    @Nonnull
+    static JsonObject readJsonObject(@Nonnull final String name)
+            throws IOException, JsonParserException {
+        return JsonParser.object().from(readString(name));
+    }
+
+    @Nonnull
+    static JsonArray readJsonArray(@Nonnull final String name)
+            throws IOException, JsonParserException {
+        return JsonParser.array().from(readString(name));
+    }
+}
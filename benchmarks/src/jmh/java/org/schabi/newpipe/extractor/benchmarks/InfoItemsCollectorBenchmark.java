@@ -0,0 +1,55 @@
+package org.schabi.newpipe.extractor.benchmarks;
+
+import com.grack.nanojson.JsonArray;
+import com.grack.nanojson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.schabi.newpipe.extractor.InfoItemsCollector;
+import org.schabi.newpipe.extractor.ServiceList;
+import org.schabi.newpipe.extractor.localization.Localization;
+import org.schabi.newpipe.extractor.localization.TimeAgoParser;
+import org.schabi.newpipe.extractor.localization.TimeAgoPatternsManager;
+import org.schabi.newpipe.extractor.services.youtube.extractors.YoutubeStreamInfoItemExtractor;
+import org.schabi.newpipe.extractor.stream.StreamInfoItem;
+import org.schabi.newpipe.extractor.stream.StreamInfoItemsCollector;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link InfoItemsCollector#commit} loop of a page of YouTube search results, which
+ * extracts every field of each {@code videoRenderer}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class InfoItemsCollectorBenchmark {
+
+    private JsonObject[] videoRenderers;
+    private TimeAgoParser timeAgoParser;
+
+    @Setup
+    public void setUp() throws Exception {
+        final JsonArray results = Fixtures.readJsonArray("youtube/search_results.json");
+        videoRenderers = new JsonObject[results.size()];
+        for (int i = 0; i < videoRenderers.length; i++) {
+            videoRenderers[i] = results.getObject(i).getObject("videoRenderer");
+        }
+        timeAgoParser = TimeAgoPatternsManager.getTimeAgoParserFor(Localization.DEFAULT);
+    }
+
+    @Benchmark
+    public List<StreamInfoItem> commitSearchResults() {
+        final StreamInfoItemsCollector collector =
+                new StreamInfoItemsCollector(ServiceList.YouTube.getServiceId());
+        for (final JsonObject videoRenderer : videoRenderers) {
+            collector.commit(new YoutubeStreamInfoItemExtractor(videoRenderer, timeAgoParser));
+        }
+        return collector.getItems();
+    }
+}
@@ -0,0 +1,389 @@
+package org.schabi.newpipe.extractor.benchmarks;
+
+import org.schabi.newpipe.extractor.NewPipe;
+import org.schabi.newpipe.extractor.exceptions.ExtractionException;
+import org.schabi.newpipe.extractor.services.youtube.sabr.YoutubeSabrFormatTimeline;
+import org.schabi.newpipe.extractor.services.youtube.sabr.YoutubeSabrInfo;
+import org.schabi.newpipe.extractor.services.youtube.sabr.YoutubeSabrRequest;
+import org.schabi.newpipe.extractor.services.youtube.sabr.YoutubeSabrSession;
+import org.schabi.newpipe.extractor.services.youtube.sabr.media.SabrMediaSegment;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays a video with many concurrent {@link YoutubeSabrSession SABR sessions} against the
+ * {@link SabrStandInDownloader}, and reports the throughput, the heap used per session and how
+ * long sessions take to get media again after a failed or empty response.
+ *
+ * <p>
+ * Each session plays an audio and a video format from the start to the end, like a player
+ * which keeps {@link #READAHEAD_MS} buffered: it sends playback requests for the segments after
+ * its buffer, waits for backoffs, and retries requests which fail. A session fails if
+ * {@link #MAX_CONSECUTIVE_FAILURES} requests in a row fail. The run exits with status 1 if a
+ * session failed or missed a segment, so it can be used as an end-to-end test.
+ * </p>
+ *
+ * <p>
+ * Settings are passed as {@code name=value} arguments, e.g.
+ * {@code sessions=500 segments=60 latencyMs=50 faultProbability=0.02}; see
+ * {@link #main(String[])} for all of them. Being outside of JMH, the driver is run from the
+ * classpath of the benchmarks, e.g. that of the jar built by {@code ./gradlew :benchmarks:jmhJar}.
+ * </p>
+ */
+public final class SabrLoadDriver {
+    private static final int AUDIO_ITAG = 140;
+    private static final int VIDEO_ITAG = 137;
+    private static final long SEGMENT_DURATION_MS = 5_000;
+    private static final long READAHEAD_MS = 30_000;
+    private static final int MAX_CONSECUTIVE_FAILURES = 5;
+    private static final long RETRY_DELAY_MS = 100;
+
+    private final int sessionCount;
+    private final int segmentCount;
+    @Nonnull
+    private final SabrStandInDownloader downloader;
+    @Nonnull
+    private final YoutubeSabrInfo.Format audioFormat;
+    @Nonnull
+    private final YoutubeSabrInfo.Format videoFormat;
+    @Nonnull
+    private final YoutubeSabrFormatTimeline audioTimeline;
+    @Nonnull
+    private final YoutubeSabrFormatTimeline videoTimeline;
+    private final List<Long> recoveryLatenciesMs = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong mediaBytes = new AtomicLong();
+    private final AtomicLong segmentsReceived = new AtomicLong();
+
+    private SabrLoadDriver(final int sessionCount,
+                           final int segmentCount,
+                           @Nonnull final SabrStandInDownloader downloader)
+            throws ExtractionException {
+        this.sessionCount = sessionCount;
+        this.segmentCount = segmentCount;
+        this.downloader = downloader;
+        this.audioFormat = downloader.getFormat(AUDIO_ITAG);
+        this.videoFormat = downloader.getFormat(VIDEO_ITAG);
+        this.audioTimeline = downloader.getTimeline(AUDIO_ITAG);
+        this.videoTimeline = downloader.getTimeline(VIDEO_ITAG);
+    }
+
+    /**
+     * Run the driver.
+     *
+     * @param args settings as {@code name=value}:
+     *             {@code sessions} (200), {@code segments} per format (24),
+     *             {@code audioSegmentBytes} (16384), {@code videoSegmentBytes} (131072),
+     *             {@code segmentsPerResponse} (4), {@code latencyMs} (20),
+     *             {@code bytesPerSecond} per response (0, unlimited),
+     *             {@code faultProbability} of each fault (0.01), {@code backoffEvery} (7),
+     *             {@code redirectEvery} (11), {@code pipelinedRequests} (2) and {@code seed} (1)
+     */
+    public static void main(final String[] args) throws Exception {
+        final Map<String, String> settings = new HashMap<>();
+        for (final String arg : args) {
+            final int equalsIndex = arg.indexOf('=');
+            if (equalsIndex <= 0) {
+                throw new IllegalArgumentException("Expected name=value, got: " + arg);
+            }
+            settings.put(arg.substring(0, equalsIndex), arg.substring(equalsIndex + 1));
+        }
+        final int sessions = (int) getSetting(settings, "sessions", 200);
+        final int segments = (int) getSetting(settings, "segments", 24);
+        final double faultProbability = settings.containsKey("faultProbability")
+                ? Double.parseDouble(settings.remove("faultProbability")) : 0.01;
+
+        final SabrStandInDownloader downloader = new SabrStandInDownloader()
+                .addFormat(AUDIO_ITAG, "audio/mp4", segments, SEGMENT_DURATION_MS,
+                        (int) getSetting(settings, "audioSegmentBytes", 16 * 1024))
+                .addFormat(VIDEO_ITAG, "video/mp4", segments, SEGMENT_DURATION_MS,
+                        (int) getSetting(settings, "videoSegmentBytes", 128 * 1024))
+                .setSegmentsPerResponse((int) getSetting(settings, "segmentsPerResponse", 4))
+                .setNetwork(getSetting(settings, "latencyMs", 20),
+                        getSetting(settings, "bytesPerSecond", 0))
+                .setBackoff(200, (int) getSetting(settings, "backoffEvery", 7))
+                .setRedirectEvery((int) getSetting(settings, "redirectEvery", 11))
+                .setPipelinedRequests((int) getSetting(settings, "pipelinedRequests", 2))
+                .setSabrContexts(true)
+                .setSeed(getSetting(settings, "seed", 1));
+        for (final SabrStandInDownloader.Fault fault : SabrStandInDownloader.Fault.values()) {
+            downloader.setFaultProbability(fault, faultProbability);
+        }
+        if (!settings.isEmpty()) {
+            throw new IllegalArgumentException("Unknown settings: " + settings.keySet());
+        }
+        NewPipe.init(downloader);
+
+        final boolean passed = new SabrLoadDriver(sessions, segments, downloader).run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static long getSetting(@Nonnull final Map<String, String> settings,
+                                   @Nonnull final String name,
+                                   final long defaultValue) {
+        final String value = settings.remove(name);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    private boolean run() throws InterruptedException, ExecutionException {
+        final HeapSampler heapSampler = new HeapSampler();
+        final long baselineHeap = heapSampler.measureRetained();
+        heapSampler.start();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(sessionCount);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<SessionRun>> futures = new ArrayList<>(sessionCount);
+        for (int i = 0; i < sessionCount; i++) {
+            final SessionRun sessionRun = new SessionRun(i);
+            futures.add(executor.submit(() -> {
+                start.await();
+                sessionRun.play();
+                return sessionRun;
+            }));
+        }
+        final long startNs = System.nanoTime();
+        start.countDown();
+        final List<SessionRun> runs = new ArrayList<>(sessionCount);
+        for (final Future<SessionRun> future : futures) {
+            runs.add(future.get());
+        }
+        final long elapsedMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(
+                System.nanoTime() - startNs));
+        executor.shutdown();
+        heapSampler.stop();
+        // The sessions are still referenced by the runs, so this is what they retain
+        final long retainedHeap = Math.max(0, heapSampler.measureRetained() - baselineHeap);
+
+        int failedSessions = 0;
+        int incompleteSessions = 0;
+        for (final SessionRun run : runs) {
+            if (run.failure != null) {
+                failedSessions++;
+                System.out.println("Session " + run.index + " failed: " + run.failure);
+            } else if (!run.isComplete()) {
+                incompleteSessions++;
+                System.out.println("Session " + run.index + " is missing segments: audio="
+                        + run.audio.through + ", video=" + run.video.through);
+            }
+        }
+        report(runs, elapsedMs, heapSampler.peak - baselineHeap, retainedHeap);
+        System.out.println(String.format(Locale.ROOT, "Failed sessions: %d, incomplete: %d",
+                failedSessions, incompleteSessions));
+        return failedSessions == 0 && incompleteSessions == 0;
+    }
+
+    private void report(@Nonnull final List<SessionRun> runs,
+                        final long elapsedMs,
+                        final long peakHeap,
+                        final long retainedHeap) {
+        long requests = 0;
+        for (final SessionRun run : runs) {
+            requests += run.requests;
+        }
+        final double seconds = elapsedMs / 1000.0;
+        System.out.println(String.format(Locale.ROOT,
+                "Sessions: %d, segments per format: %d, elapsed: %d ms",
+                sessionCount, segmentCount, elapsedMs));
+        System.out.println(String.format(Locale.ROOT,
+                "Throughput: %.1f MiB/s media, %.0f segments/s, %.0f requests/s",
+                mediaBytes.get() / seconds / (1024 * 1024), segmentsReceived.get() / seconds,
+                requests / seconds));
+        System.out.println(String.format(Locale.ROOT,
+                "Heap per session: %.1f KiB peak, %.1f KiB retained",
+                peakHeap / 1024.0 / sessionCount, retainedHeap / 1024.0 / sessionCount));
+
+        final StringBuilder faults = new StringBuilder();
+        for (final SabrStandInDownloader.Fault fault : SabrStandInDownloader.Fault.values()) {
+            faults.append(faults.length() == 0 ? "" : ", ").append(fault).append('=')
+                    .append(downloader.getFaultCount(fault));
+        }
+        System.out.println("Injected faults: " + faults + "; requests with SABR context: "
+                + downloader.getContextEchoCount() + '/' + downloader.getRequestCount());
+
+        final long[] latencies;
+        synchronized (recoveryLatenciesMs) {
+            latencies = recoveryLatenciesMs.stream().mapToLong(Long::longValue).toArray();
+        }
+        Arrays.sort(latencies);
+        if (latencies.length == 0) {
+            System.out.println("Recovery latency: no disruption");
+        } else {
+            System.out.println(String.format(Locale.ROOT,
+                    "Recovery latency over %d disruptions: p50=%d ms, p95=%d ms, max=%d ms",
+                    latencies.length, percentile(latencies, 0.5),
+                    percentile(latencies, 0.95), latencies[latencies.length - 1]));
+        }
+    }
+
+    private static long percentile(@Nonnull final long[] sorted, final double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.floor(fraction * sorted.length))];
+    }
+
+    /** The playback of one session. */
+    private final class SessionRun {
+        private final int index;
+        @Nonnull
+        private final YoutubeSabrSession session;
+        @Nonnull
+        private final TrackProgress audio = new TrackProgress();
+        @Nonnull
+        private final TrackProgress video = new TrackProgress();
+        private int requests;
+        // When the last failed or empty response returned, or -1 while media flows
+        private long disruptedSinceNs = -1;
+        private Exception failure;
+
+        private SessionRun(final int index) {
+            this.index = index;
+            this.session = new YoutubeSabrSession(new YoutubeSabrInfo("standin" + index,
+                    "cpn-" + index, "2.20240501", null, SabrStandInDownloader.SERVER_URL,
+                    SabrStandInDownloader.USTREAMER_CONFIG,
+                    Arrays.asList(audioFormat, videoFormat)));
+        }
+
+        private void play() {
+            int consecutiveFailures = 0;
+            while (!isComplete()) {
+                final long bufferedEndMs = Math.min(audio.getEndMs(audioTimeline),
+                        video.getEndMs(videoTimeline));
+                final YoutubeSabrRequest request = YoutubeSabrRequest.playback(
+                        Math.max(0, bufferedEndMs - READAHEAD_MS), 1.0f, Arrays.asList(
+                                YoutubeSabrRequest.Track.of(audioFormat, audioTimeline,
+                                        audio.through),
+                                YoutubeSabrRequest.Track.of(videoFormat, videoTimeline,
+                                        video.through)));
+                try {
+                    requests++;
+                    final YoutubeSabrSession.RequestResult result =
+                            session.requestOnce(request, this::accept);
+                    consecutiveFailures = 0;
+                    if (result.isDeferred()) {
+                        requests--;
+                        sleep(result.getBackoffMs());
+                    } else if (result.getSegmentCount() == 0) {
+                        markDisrupted();
+                        sleep(session.getBackoffRemainingMs());
+                    }
+                } catch (final IOException | ExtractionException | RuntimeException e) {
+                    if (++consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+                        failure = e;
+                        return;
+                    }
+                    markDisrupted();
+                    sleep(RETRY_DELAY_MS);
+                }
+            }
+        }
+
+        private void accept(@Nonnull final SabrMediaSegment segment) {
+            final TrackProgress track = segment.getHeader().getItag() == AUDIO_ITAG
+                    ? audio : video;
+            track.add(segment.getHeader().getSequenceNumber());
+            mediaBytes.addAndGet(Math.max(0, segment.getLength()));
+            segmentsReceived.incrementAndGet();
+            segment.delete();
+            if (disruptedSinceNs >= 0) {
+                recoveryLatenciesMs.add(TimeUnit.NANOSECONDS.toMillis(
+                        System.nanoTime() - disruptedSinceNs));
+                disruptedSinceNs = -1;
+            }
+        }
+
+        private void markDisrupted() {
+            if (disruptedSinceNs < 0) {
+                disruptedSinceNs = System.nanoTime();
+            }
+        }
+
+        private boolean isComplete() {
+            return audio.through >= segmentCount && video.through >= segmentCount;
+        }
+    }
+
+    /** The segments of a track received so far, which are buffered up to a gap. */
+    private static final class TrackProgress {
+        private final BitSet received = new BitSet();
+        private int through;
+
+        private void add(final int sequenceNumber) {
+            received.set(sequenceNumber);
+            while (received.get(through + 1)) {
+                through++;
+            }
+        }
+
+        private long getEndMs(@Nonnull final YoutubeSabrFormatTimeline timeline) {
+            return through <= 0 ? 0 : timeline.getEndMs(through);
+        }
+    }
+
+    /** Tracks the peak of the used heap in the background. */
+    private static final class HeapSampler implements Runnable {
+        private volatile boolean running;
+        private volatile long peak;
+        private Thread thread;
+
+        private void start() {
+            running = true;
+            thread = new Thread(this, "sabr-load-heap-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void stop() throws InterruptedException {
+            running = false;
+            thread.join();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                peak = Math.max(peak, usedHeap());
+                try {
+                    Thread.sleep(10);
+                } catch (final InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private long measureRetained() throws InterruptedException {
+            for (int i = 0; i < 3; i++) {
+                System.gc();
+                Thread.sleep(50);
+            }
+            return usedHeap();
+        }
+
+        private static long usedHeap() {
+            final Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+
+    private static void sleep(final long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
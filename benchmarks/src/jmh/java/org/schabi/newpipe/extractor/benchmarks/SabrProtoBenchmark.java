@@ -0,0 +1,77 @@
+package org.schabi.newpipe.extractor.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.schabi.newpipe.extractor.services.youtube.sabr.YoutubeSabrResponse;
+import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrProtocolException;
+import org.schabi.newpipe.extractor.services.youtube.sabr.protocol.SabrProto;
+import org.schabi.newpipe.extractor.services.youtube.sabr.protocol.SabrResponseDecoder;
+import org.schabi.newpipe.extractor.services.youtube.sabr.protocol.UmpReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding the protobuf messages of a recorded SABR response: {@link SabrProto#readFields(byte[])}
+ * and {@link SabrProto.FieldReader} alone over its media headers and metadata, and the whole
+ * {@link SabrResponseDecoder}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SabrProtoBenchmark {
+
+    private byte[] response;
+    private byte[][] messages;
+
+    @Setup
+    public void setUp() throws IOException, SabrProtocolException {
+        response = Fixtures.readBytes("sabr/ump_response.bin");
+        final List<byte[]> protobufMessages = new ArrayList<>();
+        for (final UmpReader.UmpPart part : UmpReader.readAll(response)) {
+            switch (part.getType()) {
+                case SabrResponseDecoder.MEDIA_HEADER:
+                case SabrResponseDecoder.NEXT_REQUEST_POLICY:
+                case SabrResponseDecoder.FORMAT_INITIALIZATION_METADATA:
+                    protobufMessages.add(part.getRawData());
+                    break;
+                default:
+                    break;
+            }
+        }
+        messages = protobufMessages.toArray(new byte[0][]);
+    }
+
+    @Benchmark
+    public void readFields(final Blackhole blackhole) throws SabrProtocolException {
+        for (final byte[] message : messages) {
+            blackhole.consume(SabrProto.readFields(message));
+        }
+    }
+
+    @Benchmark
+    public long readFieldsInPlace() throws SabrProtocolException {
+        long checksum = 0;
+        for (final byte[] message : messages) {
+            final SabrProto.FieldReader field = new SabrProto.FieldReader(message);
+            while (field.next()) {
+                checksum += field.getWireType() == SabrProto.WIRE_VARINT
+                        ? field.getVarint() : field.getLength();
+            }
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public YoutubeSabrResponse decode() throws SabrProtocolException {
+        return SabrResponseDecoder.decode(response);
+    }
+}
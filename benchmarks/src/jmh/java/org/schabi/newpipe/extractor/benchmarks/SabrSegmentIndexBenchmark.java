@@ -0,0 +1,78 @@
+package org.schabi.newpipe.extractor.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.schabi.newpipe.extractor.services.youtube.sabr.YoutubeSabrFormatTimeline;
+import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrProtocolException;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Seeking in the segment timeline of a long video, whose segments last about 5 seconds, and
+ * reading a serialized timeline back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SabrSegmentIndexBenchmark {
+
+    @Param({"720", "8640"})
+    public int segmentCount;
+
+    private YoutubeSabrFormatTimeline timeline;
+    private byte[] serializedTimeline;
+    private long[] seekTimesMs;
+
+    @Setup
+    public void setUp() throws SabrProtocolException {
+        final Random random = new Random(20240501);
+        // Serialized form: version, count, then (start - previous end, duration) as zigzag varints
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writeVarint(output, 1);
+        writeVarint(output, segmentCount);
+        long endMs = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            final long durationMs = 4800 + random.nextInt(400);
+            writeVarint(output, 0);
+            writeVarint(output, durationMs << 1);
+            endMs += durationMs;
+        }
+        serializedTimeline = output.toByteArray();
+        timeline = YoutubeSabrFormatTimeline.fromByteArray(serializedTimeline);
+
+        seekTimesMs = new long[256];
+        for (int i = 0; i < seekTimesMs.length; i++) {
+            seekTimesMs[i] = (long) (random.nextDouble() * endMs);
+        }
+    }
+
+    @Benchmark
+    public void getSequenceAt(final Blackhole blackhole) {
+        for (final long timeMs : seekTimesMs) {
+            blackhole.consume(timeline.getSequenceAt(timeMs));
+        }
+    }
+
+    @Benchmark
+    public YoutubeSabrFormatTimeline fromByteArray() throws SabrProtocolException {
+        return YoutubeSabrFormatTimeline.fromByteArray(serializedTimeline);
+    }
+
+    private static void writeVarint(final ByteArrayOutputStream output, final long value) {
+        long remaining = value;
+        while ((remaining & ~0x7fL) != 0) {
+            output.write((int) ((remaining & 0x7f) | 0x80));
+            remaining >>>= 7;
+        }
+        output.write((int) remaining);
+    }
+}
@@ -0,0 +1,774 @@
+package org.schabi.newpipe.extractor.benchmarks;
+
+import org.schabi.newpipe.extractor.downloader.CancellableCall;
+import org.schabi.newpipe.extractor.downloader.Downloader;
+import org.schabi.newpipe.extractor.downloader.Request;
+import org.schabi.newpipe.extractor.downloader.Response;
+import org.schabi.newpipe.extractor.downloader.StreamingResponse;
+import org.schabi.newpipe.extractor.exceptions.ParsingException;
+import org.schabi.newpipe.extractor.localization.Localization;
+import org.schabi.newpipe.extractor.services.youtube.ItagItem;
+import org.schabi.newpipe.extractor.services.youtube.sabr.YoutubeSabrFormatTimeline;
+import org.schabi.newpipe.extractor.services.youtube.sabr.YoutubeSabrInfo;
+import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrProtocolException;
+import org.schabi.newpipe.extractor.services.youtube.sabr.protocol.SabrProto;
+import org.schabi.newpipe.extractor.services.youtube.sabr.protocol.SabrResponseDecoder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An offline {@link Downloader} which stands in for a SABR server, so that sessions can be run
+ * end to end and under load without the network.
+ *
+ * <p>
+ * Each request is answered with a UMP response generated from the request itself: for every
+ * selected format, the segments following its buffered range, each as a {@code MEDIA_HEADER},
+ * {@code MEDIA} parts of at most {@link #setMediaPartBytes(int)} bytes and a {@code MEDIA_END}.
+ * Control parts can be added to exercise the session: a playback cookie in every
+ * {@code NEXT_REQUEST_POLICY}, backoffs, redirects, request pipelining and a SABR context which
+ * later requests have to send back.
+ * </p>
+ *
+ * <p>
+ * Faults are injected with a probability per request. Whether a request gets one only depends on
+ * the seed, the client playback nonce and how many requests the client sent before, so a run
+ * with the same sessions and settings sees the same faults, and a retried request may succeed.
+ * Backoffs and redirects are counted the same way. Responses are generated while they are
+ * read, with a latency and a bandwidth limit if set, so that the stand-in holds almost no memory
+ * itself.
+ * </p>
+ *
+ * <p>
+ * Only SABR requests are served: any other request fails with an {@link IOException}, like those
+ * to unknown URLs of the {@link FixtureDownloader}.
+ * </p>
+ */
+public final class SabrStandInDownloader extends Downloader {
+
+    /** The streaming URL to give sessions, which must look like a GoogleVideo one. */
+    public static final String SERVER_URL =
+            "https://rr1---sn-standin.googlevideo.com/videoplayback?expire=0";
+    /** A ustreamer config for sessions, whose content the stand-in ignores. */
+    public static final String USTREAMER_CONFIG = "c3RhbmQtaW4";
+
+    private static final String REDIRECT_URL =
+            "https://rr2---sn-standin.googlevideo.com/videoplayback?expire=0";
+    private static final int CONTEXT_TYPE = 5;
+    private static final byte[] CONTEXT_VALUE = "stand-in".getBytes(StandardCharsets.UTF_8);
+    // Media payloads are slices of this, so that they cost nothing to generate
+    private static final byte[] PATTERN = new byte[64 * 1024];
+
+    static {
+        new Random(20240501).nextBytes(PATTERN);
+    }
+
+    /** A fault which can be injected into a response. */
+    public enum Fault {
+        /** A segment is not ended by a {@code MEDIA_END}. */
+        MISSING_MEDIA_END,
+        /** A segment has fewer bytes than its header announces. */
+        LENGTH_MISMATCH,
+        /** The body ends in the middle of a media part. */
+        TRUNCATED_BODY,
+        /** Reading the body fails in the middle of a media part. */
+        CONNECTION_RESET,
+        /** The server answers with an HTML error page instead of UMP. */
+        SERVER_ERROR
+    }
+
+    private final Map<Integer, StandInFormat> formats = new LinkedHashMap<>();
+    private final Map<Fault, Double> faultProbabilities = new EnumMap<>(Fault.class);
+    private long seed = 1;
+    private int segmentsPerResponse = 4;
+    private int mediaPartBytes = 16 * 1024;
+    private int backoffMs;
+    private int backoffEvery;
+    private int redirectEvery;
+    private int pipelinedRequests;
+    private boolean sabrContexts;
+    private long latencyMs;
+    private long bytesPerSecond;
+
+    private final Map<String, AtomicInteger> requestCountsByClient = new ConcurrentHashMap<>();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+    private final AtomicLong contextEchoCount = new AtomicLong();
+    private final AtomicLongArray faultCounts = new AtomicLongArray(Fault.values().length);
+
+    /**
+     * Serve a format whose segments all have the same duration and size.
+     *
+     * @param itag              the itag of the format, which must be a known one
+     * @param mimeType          the MIME type of the format, e.g. {@code audio/mp4}
+     * @param segmentCount      the number of segments
+     * @param segmentDurationMs the duration of a segment
+     * @param segmentBytes      the size of a segment
+     * @return this downloader
+     */
+    @Nonnull
+    public SabrStandInDownloader addFormat(final int itag,
+                                           @Nonnull final String mimeType,
+                                           final int segmentCount,
+                                           final long segmentDurationMs,
+                                           final int segmentBytes) {
+        if (segmentCount <= 0 || segmentDurationMs <= 0 || segmentBytes <= 0) {
+            throw new IllegalArgumentException("Invalid stand-in format: itag=" + itag);
+        }
+        formats.put(itag, new StandInFormat(itag, mimeType, segmentCount, segmentDurationMs,
+                segmentBytes));
+        return this;
+    }
+
+    @Nonnull
+    public SabrStandInDownloader setSeed(final long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    @Nonnull
+    public SabrStandInDownloader setSegmentsPerResponse(final int segmentsPerResponse) {
+        this.segmentsPerResponse = Math.max(1, segmentsPerResponse);
+        return this;
+    }
+
+    @Nonnull
+    public SabrStandInDownloader setMediaPartBytes(final int mediaPartBytes) {
+        this.mediaPartBytes = Math.max(1, mediaPartBytes);
+        return this;
+    }
+
+    /**
+     * Ask for a backoff in every {@code every}-th response.
+     *
+     * @param backoffMs the backoff
+     * @param every     how often, or 0 never to ask for one
+     * @return this downloader
+     */
+    @Nonnull
+    public SabrStandInDownloader setBackoff(final int backoffMs, final int every) {
+        this.backoffMs = backoffMs;
+        this.backoffEvery = every;
+        return this;
+    }
+
+    /**
+     * Answer every {@code every}-th request with a redirect to another host instead of media.
+     *
+     * @param every how often, or 0 never to redirect
+     * @return this downloader
+     */
+    @Nonnull
+    public SabrStandInDownloader setRedirectEvery(final int every) {
+        this.redirectEvery = every;
+        return this;
+    }
+
+    /**
+     * @param pipelinedRequests the number of requests sessions may send without waiting, or 0
+     *                          not to allow pipelining
+     * @return this downloader
+     */
+    @Nonnull
+    public SabrStandInDownloader setPipelinedRequests(final int pipelinedRequests) {
+        this.pipelinedRequests = pipelinedRequests;
+        return this;
+    }
+
+    /**
+     * Send a SABR context in the responses to requests which don't send it back yet, and ask
+     * sessions to send it in their following requests. Requests which do are counted by
+     * {@link #getContextEchoCount()}.
+     *
+     * @param sabrContexts whether to send a SABR context
+     * @return this downloader
+     */
+    @Nonnull
+    public SabrStandInDownloader setSabrContexts(final boolean sabrContexts) {
+        this.sabrContexts = sabrContexts;
+        return this;
+    }
+
+    /**
+     * @param latencyMs      the time before the response of a request is available
+     * @param bytesPerSecond the rate at which a response can be read, or 0 not to limit it
+     * @return this downloader
+     */
+    @Nonnull
+    public SabrStandInDownloader setNetwork(final long latencyMs, final long bytesPerSecond) {
+        this.latencyMs = latencyMs;
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param fault       the fault to inject
+     * @param probability the probability that a request gets it, at most one fault being
+     *                    injected into a response
+     * @return this downloader
+     */
+    @Nonnull
+    public SabrStandInDownloader setFaultProbability(@Nonnull final Fault fault,
+                                                     final double probability) {
+        faultProbabilities.put(fault, probability);
+        return this;
+    }
+
+    /**
+     * @param itag the itag of a format added with {@link #addFormat(int, String, int, long, int)}
+     * @return the format to give sessions
+     */
+    @Nonnull
+    public YoutubeSabrInfo.Format getFormat(final int itag) throws ParsingException {
+        final StandInFormat format = getStandInFormat(itag);
+        return YoutubeSabrInfo.Format.fromParsedFormat(ItagItem.getItag(itag), 1, null,
+                format.mimeType, null, null, false, null, -1, -1);
+    }
+
+    /**
+     * @param itag the itag of a format added with {@link #addFormat(int, String, int, long, int)}
+     * @return the timeline of its segments
+     */
+    @Nonnull
+    public YoutubeSabrFormatTimeline getTimeline(final int itag) throws SabrProtocolException {
+        final StandInFormat format = getStandInFormat(itag);
+        // Serialized form: version, count, then (start - previous end, duration) as zigzag varints
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writeVarint(output, 1);
+        writeVarint(output, format.segmentCount);
+        for (int i = 0; i < format.segmentCount; i++) {
+            writeVarint(output, 0);
+            writeVarint(output, format.segmentDurationMs << 1);
+        }
+        return YoutubeSabrFormatTimeline.fromByteArray(output.toByteArray());
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /** @return the number of bytes of all responses read so far */
+    public long getResponseBytes() {
+        return responseBytes.get();
+    }
+
+    /** @return the number of requests which sent back the SABR context */
+    public long getContextEchoCount() {
+        return contextEchoCount.get();
+    }
+
+    public long getFaultCount(@Nonnull final Fault fault) {
+        return faultCounts.get(fault.ordinal());
+    }
+
+    @Override
+    public StreamingResponse postStreaming(final String url,
+                                           @Nullable final Map<String, List<String>> headers,
+                                           @Nullable final byte[] dataToSend,
+                                           @Nullable final Localization localization)
+            throws IOException {
+        if (dataToSend == null) {
+            throw new IOException("Missing SABR request body: " + url);
+        }
+        requestCount.incrementAndGet();
+        final String cpn = String.valueOf(getQueryParameter(url, "cpn"));
+        final int clientRequest = requestCountsByClient
+                .computeIfAbsent(cpn, key -> new AtomicInteger()).getAndIncrement();
+        final SplittableRandom random = new SplittableRandom(seed * 31
+                + (cpn + '/' + clientRequest).hashCode());
+        final Fault fault = pickFault(random);
+        if (fault != null) {
+            faultCounts.incrementAndGet(fault.ordinal());
+        }
+        sleep(latencyMs);
+
+        if (fault == Fault.SERVER_ERROR) {
+            final byte[] page = "<html><body>503 Service Unavailable</body></html>"
+                    .getBytes(StandardCharsets.UTF_8);
+            responseBytes.addAndGet(page.length);
+            return new StreamingResponse(503, Collections.singletonMap("Content-Type",
+                    Collections.singletonList("text/html; charset=UTF-8")),
+                    new ByteArrayInputStream(page));
+        }
+
+        final ParsedRequest request;
+        try {
+            request = parseRequest(dataToSend);
+        } catch (final SabrProtocolException e) {
+            throw new IOException("Malformed SABR request: " + url, e);
+        }
+        if (request.echoedContext) {
+            contextEchoCount.incrementAndGet();
+        }
+        return new StreamingResponse(200, Collections.singletonMap("Content-Type",
+                Collections.singletonList("application/vnd.yt-ump")),
+                new ResponseBody(planResponse(request, clientRequest,
+                        getIntQueryParameter(url, "rn"), fault, random), fault));
+    }
+
+    @Override
+    public Response execute(@Nonnull final Request request) throws IOException {
+        throw new IOException("Only SABR requests are served by the stand-in: "
+                + request.httpMethod() + " " + request.url());
+    }
+
+    @Override
+    public CancellableCall executeAsync(@Nonnull final Request request,
+                                        final AsyncCallback callback) throws IOException {
+        throw new IOException("Asynchronous requests are not supported by the benchmarks");
+    }
+
+    // -------------------------------------------------------------------------
+    // Requests
+    // -------------------------------------------------------------------------
+
+    @Nullable
+    private Fault pickFault(@Nonnull final SplittableRandom random) {
+        for (final Map.Entry<Fault, Double> entry : faultProbabilities.entrySet()) {
+            if (random.nextDouble() < entry.getValue()) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    @Nonnull
+    private static ParsedRequest parseRequest(@Nonnull final byte[] body)
+            throws SabrProtocolException {
+        final ParsedRequest request = new ParsedRequest();
+        final List<Integer> preferredItags = new ArrayList<>();
+        final SabrProto.FieldReader field = new SabrProto.FieldReader(body);
+        while (field.next()) {
+            switch (field.getNumber()) {
+                case 2:
+                    request.selectedItags.add(readItag(field.getMessage()));
+                    break;
+                case 3:
+                    readBufferedRange(field.getMessage(), request.bufferedThrough);
+                    break;
+                case 4:
+                    request.playerTimeMs = field.getVarint();
+                    break;
+                case 16:
+                case 17:
+                    preferredItags.add(readItag(field.getMessage()));
+                    break;
+                case 19:
+                    request.echoedContext = hasContext(field.getMessage());
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (request.selectedItags.isEmpty()) {
+            request.selectedItags.addAll(preferredItags);
+        }
+        return request;
+    }
+
+    private static int readItag(@Nonnull final SabrProto.FieldReader formatId)
+            throws SabrProtocolException {
+        while (formatId.next()) {
+            if (formatId.getNumber() == 1) {
+                return (int) formatId.getVarint();
+            }
+        }
+        return -1;
+    }
+
+    private static void readBufferedRange(@Nonnull final SabrProto.FieldReader range,
+                                          @Nonnull final Map<Integer, Integer> bufferedThrough)
+            throws SabrProtocolException {
+        int itag = -1;
+        int endSegmentIndex = 0;
+        while (range.next()) {
+            if (range.getNumber() == 1) {
+                itag = readItag(range.getMessage());
+            } else if (range.getNumber() == 5) {
+                endSegmentIndex = (int) range.getVarint();
+            }
+        }
+        bufferedThrough.put(itag, endSegmentIndex);
+    }
+
+    private static boolean hasContext(@Nonnull final SabrProto.FieldReader streamerContext)
+            throws SabrProtocolException {
+        while (streamerContext.next()) {
+            if (streamerContext.getNumber() == 5) {
+                final SabrProto.FieldReader context = streamerContext.getMessage();
+                while (context.next()) {
+                    if (context.getNumber() == 1 && context.getVarint() == CONTEXT_TYPE) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // -------------------------------------------------------------------------
+    // Responses
+    // -------------------------------------------------------------------------
+
+    @Nonnull
+    private List<PartPlan> planResponse(@Nonnull final ParsedRequest request,
+                                        final int clientRequest,
+                                        final int requestNumber,
+                                        @Nullable final Fault fault,
+                                        @Nonnull final SplittableRandom random) {
+        final List<PartPlan> parts = new ArrayList<>();
+        final SabrProto.Writer policy = new SabrProto.Writer();
+        if (backoffEvery > 0 && clientRequest % backoffEvery == backoffEvery - 1) {
+            policy.writeInt32(4, backoffMs);
+        }
+        policy.writeBytes(7, ("cookie-" + requestNumber).getBytes(StandardCharsets.UTF_8));
+        parts.add(PartPlan.control(SabrResponseDecoder.NEXT_REQUEST_POLICY,
+                policy.toByteArray()));
+        if (pipelinedRequests > 0) {
+            final SabrProto.Writer pipelining = new SabrProto.Writer();
+            pipelining.writeInt32(1, pipelinedRequests);
+            parts.add(PartPlan.control(SabrResponseDecoder.REQUEST_PIPELINING,
+                    pipelining.toByteArray()));
+        }
+        if (sabrContexts && !request.echoedContext) {
+            final SabrProto.Writer update = new SabrProto.Writer();
+            update.writeInt32(1, CONTEXT_TYPE);
+            update.writeBytes(3, CONTEXT_VALUE);
+            update.writeBool(4, true);
+            parts.add(PartPlan.control(SabrResponseDecoder.SABR_CONTEXT_UPDATE,
+                    update.toByteArray()));
+        }
+        if (redirectEvery > 0 && clientRequest % redirectEvery == redirectEvery - 1) {
+            final SabrProto.Writer redirect = new SabrProto.Writer();
+            redirect.writeStringIfNotEmpty(1, clientRequest % 2 == 0 ? REDIRECT_URL : SERVER_URL);
+            parts.add(PartPlan.control(SabrResponseDecoder.SABR_REDIRECT,
+                    redirect.toByteArray()));
+            return parts;
+        }
+
+        final List<PartPlan> mediaParts = new ArrayList<>();
+        int headerId = 0;
+        for (final int itag : request.selectedItags) {
+            final StandInFormat format = formats.get(itag);
+            if (format == null) {
+                continue;
+            }
+            final Integer buffered = request.bufferedThrough.get(itag);
+            final int first = buffered != null && buffered > 0 ? buffered + 1
+                    : (int) Math.min(format.segmentCount,
+                    request.playerTimeMs / format.segmentDurationMs + 1);
+            final int last = Math.min(format.segmentCount, first + segmentsPerResponse - 1);
+            for (int sequence = first; sequence <= last; sequence++) {
+                planSegment(mediaParts, format, headerId, sequence);
+                headerId = (headerId + 1) & 0x7f;
+            }
+        }
+        if (fault != null && !mediaParts.isEmpty()) {
+            injectFault(mediaParts, fault, random);
+        }
+        parts.addAll(mediaParts);
+        return parts;
+    }
+
+    private void planSegment(@Nonnull final List<PartPlan> parts,
+                             @Nonnull final StandInFormat format,
+                             final int headerId,
+                             final int sequence) {
+        final SabrProto.Writer formatId = new SabrProto.Writer();
+        formatId.writeInt32(1, format.itag);
+        formatId.writeUInt64(2, 1);
+        final SabrProto.Writer header = new SabrProto.Writer();
+        header.writeInt32(1, headerId);
+        header.writeInt32(3, format.itag);
+        header.writeUInt64(4, 1);
+        header.writeInt32(9, sequence);
+        header.writeUInt64(11, (sequence - 1) * format.segmentDurationMs);
+        header.writeUInt64(12, format.segmentDurationMs);
+        header.writeMessage(13, formatId.toByteArray());
+        header.writeUInt64(14, format.segmentBytes);
+        parts.add(PartPlan.control(SabrResponseDecoder.MEDIA_HEADER, header.toByteArray()));
+        for (int offset = 0; offset < format.segmentBytes; offset += mediaPartBytes) {
+            parts.add(PartPlan.media(headerId, sequence * 7919L + offset,
+                    Math.min(mediaPartBytes, format.segmentBytes - offset)));
+        }
+        parts.add(PartPlan.control(SabrResponseDecoder.MEDIA_END, new byte[]{(byte) headerId}));
+    }
+
+    private static void injectFault(@Nonnull final List<PartPlan> parts,
+                                    @Nonnull final Fault fault,
+                                    @Nonnull final SplittableRandom random) {
+        final List<Integer> candidates = new ArrayList<>();
+        for (int i = 0; i < parts.size(); i++) {
+            final int type = parts.get(i).type;
+            if (fault == Fault.MISSING_MEDIA_END ? type == SabrResponseDecoder.MEDIA_END
+                    : type == SabrResponseDecoder.MEDIA) {
+                candidates.add(i);
+            }
+        }
+        final int index = candidates.get(random.nextInt(candidates.size()));
+        switch (fault) {
+            case MISSING_MEDIA_END:
+                parts.remove(index);
+                break;
+            case LENGTH_MISMATCH:
+                final PartPlan part = parts.get(index);
+                if (part.mediaLength > 1) {
+                    parts.set(index, PartPlan.media(part.payload[0], part.mediaOffset,
+                            part.mediaLength - 1));
+                } else {
+                    parts.remove(index);
+                }
+                break;
+            case TRUNCATED_BODY:
+            case CONNECTION_RESET:
+                // The body stops half way through this part
+                parts.subList(index + 1, parts.size()).clear();
+                parts.get(index).cut = true;
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Inverse of UmpReader.readUmpInt
+    private static void writeUmpInt(@Nonnull final ByteArrayOutputStream output, final int value) {
+        if (value < 128) {
+            output.write(value);
+        } else if (value < 16384) {
+            output.write(0x80 | (value & 0x3f));
+            output.write(value >>> 6);
+        } else if (value < 1 << 21) {
+            output.write(0xc0 | (value & 0x1f));
+            output.write(value >>> 5);
+            output.write(value >>> 13);
+        } else if (value < 1 << 28) {
+            output.write(0xe0 | (value & 0x0f));
+            output.write(value >>> 4);
+            output.write(value >>> 12);
+            output.write(value >>> 20);
+        } else {
+            output.write(0xf0);
+            output.write(value);
+            output.write(value >>> 8);
+            output.write(value >>> 16);
+            output.write(value >>> 24);
+        }
+    }
+
+    private static void writeVarint(@Nonnull final ByteArrayOutputStream output,
+                                    final long value) {
+        long remaining = value;
+        while ((remaining & ~0x7fL) != 0) {
+            output.write((int) ((remaining & 0x7f) | 0x80));
+            remaining >>>= 7;
+        }
+        output.write((int) remaining);
+    }
+
+    @Nonnull
+    private StandInFormat getStandInFormat(final int itag) {
+        final StandInFormat format = formats.get(itag);
+        if (format == null) {
+            throw new IllegalArgumentException("Unknown stand-in format: itag=" + itag);
+        }
+        return format;
+    }
+
+    @Nullable
+    private static String getQueryParameter(@Nonnull final String url,
+                                            @Nonnull final String name) {
+        final int queryIndex = url.indexOf('?');
+        if (queryIndex < 0) {
+            return null;
+        }
+        for (final String parameter : url.substring(queryIndex + 1).split("&")) {
+            if (parameter.startsWith(name + '=')) {
+                return parameter.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+
+    private static int getIntQueryParameter(@Nonnull final String url,
+                                            @Nonnull final String name) {
+        final String value = getQueryParameter(url, name);
+        try {
+            return value == null ? 0 : Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void sleep(final long ms) throws InterruptedIOException {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted stand-in SABR response");
+        }
+    }
+
+    private static final class StandInFormat {
+        private final int itag;
+        @Nonnull
+        private final String mimeType;
+        private final int segmentCount;
+        private final long segmentDurationMs;
+        private final int segmentBytes;
+
+        private StandInFormat(final int itag,
+                              @Nonnull final String mimeType,
+                              final int segmentCount,
+                              final long segmentDurationMs,
+                              final int segmentBytes) {
+            this.itag = itag;
+            this.mimeType = mimeType;
+            this.segmentCount = segmentCount;
+            this.segmentDurationMs = segmentDurationMs;
+            this.segmentBytes = segmentBytes;
+        }
+    }
+
+    private static final class ParsedRequest {
+        private final List<Integer> selectedItags = new ArrayList<>();
+        private final Map<Integer, Integer> bufferedThrough = new LinkedHashMap<>();
+        private long playerTimeMs;
+        private boolean echoedContext;
+    }
+
+    /** A UMP part of a response, whose media payload is only generated when it is read. */
+    private static final class PartPlan {
+        private final int type;
+        @Nonnull
+        private final byte[] payload;
+        private final long mediaOffset;
+        private final int mediaLength;
+        private boolean cut;
+
+        private PartPlan(final int type,
+                         @Nonnull final byte[] payload,
+                         final long mediaOffset,
+                         final int mediaLength) {
+            this.type = type;
+            this.payload = payload;
+            this.mediaOffset = mediaOffset;
+            this.mediaLength = mediaLength;
+        }
+
+        @Nonnull
+        static PartPlan control(final int type, @Nonnull final byte[] payload) {
+            return new PartPlan(type, payload, 0, 0);
+        }
+
+        @Nonnull
+        static PartPlan media(final int headerId, final long offset, final int length) {
+            return new PartPlan(SabrResponseDecoder.MEDIA, new byte[]{(byte) headerId},
+                    offset, length);
+        }
+
+        @Nonnull
+        byte[] encode() {
+            final int size = payload.length + mediaLength;
+            final ByteArrayOutputStream output = new ByteArrayOutputStream(size + 10);
+            writeUmpInt(output, type);
+            writeUmpInt(output, size);
+            output.write(payload, 0, payload.length);
+            int offset = (int) (mediaOffset % PATTERN.length);
+            int remaining = mediaLength;
+            while (remaining > 0) {
+                final int length = Math.min(remaining, PATTERN.length - offset);
+                output.write(PATTERN, offset, length);
+                remaining -= length;
+                offset = 0;
+            }
+            return output.toByteArray();
+        }
+    }
+
+    /** Encodes the parts of a response one after another while it is read. */
+    private final class ResponseBody extends InputStream {
+        @Nonnull
+        private final List<PartPlan> parts;
+        @Nullable
+        private final Fault fault;
+        private final long startNs = System.nanoTime();
+        private int partIndex;
+        @Nullable
+        private byte[] current;
+        private int position;
+        private int limit;
+        private boolean cut;
+        private long read;
+
+        private ResponseBody(@Nonnull final List<PartPlan> parts, @Nullable final Fault fault) {
+            this.parts = parts;
+            this.fault = fault;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(@Nonnull final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (current == null || position == limit) {
+                if (cut) {
+                    if (fault == Fault.CONNECTION_RESET) {
+                        throw new IOException("Connection reset by the SABR stand-in");
+                    }
+                    return -1;
+                }
+                if (partIndex == parts.size()) {
+                    return -1;
+                }
+                final PartPlan part = parts.get(partIndex++);
+                current = part.encode();
+                position = 0;
+                limit = part.cut ? current.length / 2 : current.length;
+                cut = part.cut;
+            }
+            final int count = Math.min(len, limit - position);
+            System.arraycopy(current, position, b, off, count);
+            position += count;
+            read += count;
+            responseBytes.addAndGet(count);
+            throttle();
+            return count;
+        }
+
+        private void throttle() throws InterruptedIOException {
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+            final long dueNs = read * 1_000_000_000L / bytesPerSecond;
+            final long aheadMs = (dueNs - (System.nanoTime() - startNs)) / 1_000_000;
+            sleep(aheadMs);
+        }
+    }
+}
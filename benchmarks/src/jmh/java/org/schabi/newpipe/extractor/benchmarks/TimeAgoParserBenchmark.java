@@ -0,0 +1,72 @@
+package org.schabi.newpipe.extractor.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.schabi.newpipe.extractor.exceptions.ParsingException;
+import org.schabi.newpipe.extractor.localization.Localization;
+import org.schabi.newpipe.extractor.localization.TimeAgoParser;
+import org.schabi.newpipe.extractor.localization.TimeAgoPatternsManager;
+import org.schabi.newpipe.extractor.timeago.PatternsManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TimeAgoParser#parse(String)} over upload dates of search results in several languages,
+ * compared with the regular expression based {@link LegacyTimeAgoParser}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TimeAgoParserBenchmark {
+
+    private String[] textualDates;
+    private TimeAgoParser[] parsers;
+    private LegacyTimeAgoParser[] legacyParsers;
+
+    @Setup
+    public void setUp() throws Exception {
+        final List<String> dates = new ArrayList<>();
+        final List<Localization> localizations = new ArrayList<>();
+        for (final String line : Fixtures.readString("localization/time_ago_phrases.txt")
+                .split("\n")) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final String[] columns = line.split("\t", 2);
+            localizations.add(Localization.fromLocalizationCode(columns[0]));
+            dates.add(columns[1]);
+        }
+
+        textualDates = dates.toArray(new String[0]);
+        parsers = new TimeAgoParser[textualDates.length];
+        legacyParsers = new LegacyTimeAgoParser[textualDates.length];
+        for (int i = 0; i < textualDates.length; i++) {
+            final Localization localization = localizations.get(i);
+            parsers[i] = TimeAgoPatternsManager.getTimeAgoParserFor(localization);
+            legacyParsers[i] = new LegacyTimeAgoParser(PatternsManager.getPatterns(
+                    localization.getLanguageCode(), localization.getCountryCode()));
+        }
+    }
+
+    @Benchmark
+    public void parse(final Blackhole blackhole) throws ParsingException {
+        for (int i = 0; i < textualDates.length; i++) {
+            blackhole.consume(parsers[i].parse(textualDates[i]));
+        }
+    }
+
+    @Benchmark
+    public void parseLegacy(final Blackhole blackhole) throws ParsingException {
+        for (int i = 0; i < textualDates.length; i++) {
+            blackhole.consume(legacyParsers[i].parse(textualDates[i]));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.schabi.newpipe.extractor.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrProtocolException;
+import org.schabi.newpipe.extractor.services.youtube.sabr.protocol.SabrResponseDecoder;
+import org.schabi.newpipe.extractor.services.youtube.sabr.protocol.UmpBufferedReader;
+import org.schabi.newpipe.extractor.services.youtube.sabr.protocol.UmpReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the UMP envelope of a recorded SABR response, which interleaves media headers, media
+ * chunks of two formats and their ends with policy and initialization metadata parts.
+ *
+ * <p>
+ * The streaming readers consume media payloads through a reusable buffer, as the media segment
+ * collector does, and control payloads as a whole.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UmpReaderBenchmark {
+
+    private byte[] response;
+    private byte[] buffer;
+    private UmpBufferedReader bufferedReader;
+
+    @Setup
+    public void setUp() throws IOException {
+        response = Fixtures.readBytes("sabr/ump_response.bin");
+        buffer = new byte[16 * 1024];
+        bufferedReader = new UmpBufferedReader();
+    }
+
+    @Benchmark
+    public long readPayloadsUntil() throws SabrProtocolException, IOException {
+        final long[] total = new long[1];
+        UmpReader.readPayloadsUntil(new ByteArrayInputStream(response), (type, size, payload) -> {
+            if (type == SabrResponseDecoder.MEDIA) {
+                int read;
+                while ((read = payload.read(buffer)) > 0) {
+                    total[0] += read;
+                }
+            } else {
+                total[0] += payload.readAllBytes().length;
+            }
+            return true;
+        });
+        return total[0];
+    }
+
+    @Benchmark
+    public long readPartsBuffered() throws SabrProtocolException, IOException {
+        final long[] total = new long[1];
+        bufferedReader.readPartsUntil(new ByteArrayInputStream(response),
+                (type, size, payload) -> {
+                    total[0] += consume(type, payload);
+                    return true;
+                });
+        return total[0];
+    }
+
+    @Benchmark
+    public long readPartsBufferedFromChannel() throws SabrProtocolException, IOException {
+        final long[] total = new long[1];
+        bufferedReader.readPartsUntil(Channels.newChannel(new ByteArrayInputStream(response)),
+                (type, size, payload) -> {
+                    total[0] += consume(type, payload);
+                    return true;
+                });
+        return total[0];
+    }
+
+    private long consume(final int type, final UmpBufferedReader.Payload payload)
+            throws IOException {
+        if (type != SabrResponseDecoder.MEDIA && payload.isBuffered()) {
+            return payload.slice().remaining();
+        }
+        long total = 0;
+        int read;
+        while ((read = payload.read(buffer, 0, buffer.length)) > 0) {
+            total += read;
+        }
+        return total;
+    }
+
+    @Benchmark
+    public List<UmpReader.UmpPart> readAll() throws SabrProtocolException {
+        return UmpReader.readAll(response);
+    }
+}
@@ -0,0 +1,121 @@
+package org.schabi.newpipe.extractor.benchmarks;
+
+import com.grack.nanojson.JsonArray;
+import com.grack.nanojson.JsonObject;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.schabi.newpipe.extractor.ListExtractor.InfoItemsPage;
+import org.schabi.newpipe.extractor.NewPipe;
+import org.schabi.newpipe.extractor.Page;
+import org.schabi.newpipe.extractor.ServiceList;
+import org.schabi.newpipe.extractor.comments.CommentsExtractor;
+import org.schabi.newpipe.extractor.comments.CommentsInfoItem;
+import org.schabi.newpipe.extractor.exceptions.ExtractionException;
+import org.schabi.newpipe.extractor.exceptions.ParsingException;
+import org.schabi.newpipe.extractor.localization.Localization;
+import org.schabi.newpipe.extractor.utils.JsonUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper.DISABLE_PRETTY_PRINT_PARAMETER;
+import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper.YOUTUBEI_V1_URL;
+
+/**
+ * Getting a page of YouTube comments from a {@code next} response with twenty comment threads
+ * in the view model format, and their entity mutations.
+ *
+ * <p>
+ * The {@code Legacy} benchmarks add what comments pages used to cost on top of the nanojson
+ * parse: a second parse of the whole response with org.json, to read the continuation token
+ * from it. Comparing each pair, e.g. with {@code -PjmhIncludes=YoutubeCommentsPageBenchmark},
+ * gives the time and the allocation saved per page.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class YoutubeCommentsPageBenchmark {
+
+    private static final String VIDEO_URL = "https://www.youtube.com/watch?v=dQw4w9WgXcQ";
+    private static final String CLIENT_VERSION = "2.20250101.01.00";
+
+    private String response;
+    private CommentsExtractor extractor;
+    private Page page;
+
+    @Setup
+    public void setUp() throws IOException, ExtractionException {
+        final byte[] body = Fixtures.readBytes("youtube/comments_next.json");
+        response = new String(body, StandardCharsets.UTF_8);
+        NewPipe.init(new FixtureDownloader()
+                // Where the WEB client version is read from before the first InnerTube request
+                .register("https://www.youtube.com/sw.js", ("var INNERTUBE_CONTEXT_CLIENT_VERSION"
+                        + "\":\"" + CLIENT_VERSION + "\";").getBytes(StandardCharsets.UTF_8))
+                .register(YOUTUBEI_V1_URL + "next?" + DISABLE_PRETTY_PRINT_PARAMETER, body));
+        extractor = ServiceList.YouTube.getCommentsExtractor(VIDEO_URL);
+        // The publication times of the fixture are in English
+        extractor.forceLocalization(new Localization("en"));
+        page = new Page(VIDEO_URL, "comments-continuation");
+        if (!getPage().getErrors().isEmpty()) {
+            throw new IllegalStateException("The fixture does not extract cleanly",
+                    getPage().getErrors().get(0));
+        }
+    }
+
+    @Benchmark
+    public InfoItemsPage<CommentsInfoItem> getPage() throws IOException, ExtractionException {
+        return extractor.getPage(page);
+    }
+
+    @Benchmark
+    public void getPageLegacy(final Blackhole blackhole)
+            throws IOException, ExtractionException {
+        blackhole.consume(getPage());
+        blackhole.consume(getLegacyContinuation(new JSONObject(response)));
+    }
+
+    @Benchmark
+    public String parse() throws ParsingException {
+        return getContinuation(JsonUtils.toJsonObject(response));
+    }
+
+    @Benchmark
+    public void parseLegacy(final Blackhole blackhole) throws ParsingException {
+        blackhole.consume(JsonUtils.toJsonObject(response));
+        blackhole.consume(getLegacyContinuation(new JSONObject(response)));
+    }
+
+    private static String getContinuation(final JsonObject json) {
+        final JsonArray endpoints = json.getArray("onResponseReceivedEndpoints");
+        final JsonArray items = endpoints.getObject(endpoints.size() - 1)
+                .getObject("reloadContinuationItemsCommand")
+                .getArray("continuationItems");
+        return items.getObject(items.size() - 1)
+                .getObject("continuationItemRenderer")
+                .getObject("continuationEndpoint")
+                .getObject("continuationCommand")
+                .getString("token");
+    }
+
+    private static String getLegacyContinuation(final JSONObject json) {
+        final JSONArray endpoints = json.getJSONArray("onResponseReceivedEndpoints");
+        final JSONArray items = endpoints.getJSONObject(endpoints.length() - 1)
+                .getJSONObject("reloadContinuationItemsCommand")
+                .getJSONArray("continuationItems");
+        return items.getJSONObject(items.length() - 1)
+                .getJSONObject("continuationItemRenderer")
+                .getJSONObject("continuationEndpoint")
+                .getJSONObject("continuationCommand")
+                .getString("token");
+    }
+}
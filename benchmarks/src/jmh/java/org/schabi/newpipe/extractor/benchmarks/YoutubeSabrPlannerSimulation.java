@@ -0,0 +1,375 @@
+package org.schabi.newpipe.extractor.benchmarks;
+
+import org.schabi.newpipe.extractor.services.youtube.sabr.YoutubeSabrFormatTimeline;
+import org.schabi.newpipe.extractor.services.youtube.sabr.YoutubeSabrReadaheadPlanner;
+import org.schabi.newpipe.extractor.services.youtube.sabr.YoutubeSabrRequest;
+import org.schabi.newpipe.extractor.services.youtube.sabr.YoutubeSabrSession;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Offline simulation of a playback whose requests are planned by a
+ * {@link YoutubeSabrReadaheadPlanner}, to compare planners and their settings without
+ * downloading anything.
+ *
+ * <p>
+ * The network and the server are modelled by recorded
+ * {@link YoutubeSabrSession.ResponseTiming response timings}, e.g. those of
+ * {@link YoutubeSabrSession#getResponseTimings()}, which are replayed in order and from the
+ * start again once all have been used. Each one gives the latency of a simulated request, taken
+ * as the time to its first segment, the throughput of the rest of the response and how many
+ * bytes the server sent. Like the server, the simulation decides what a response contains: the
+ * segments following what each requested track is declared buffered through, in the order of
+ * their start times, until the recorded size is reached. The size of a segment is its duration
+ * times the bitrate of its format. Segments arrive one after another, so that playback can
+ * continue while a large response is still being received. A planner thus steers the
+ * simulation only through what it sends: the formats, the buffered segments and the time of
+ * each request.
+ * </p>
+ *
+ * <p>
+ * The bandwidth estimate given to the planner is updated like the one of a session. Playback
+ * starts as soon as media is buffered, and stalls whenever it reaches the end of the buffer of
+ * one of the played tracks.
+ * </p>
+ *
+ * <p>
+ * It is not part of the library: it lives in the benchmarks module, next to the other SABR
+ * tools.
+ * </p>
+ */
+public final class YoutubeSabrPlannerSimulation {
+    // Stops planners which never request anything or wait forever
+    private static final int MAX_STEPS = 1_000_000;
+
+    @Nonnull
+    private final YoutubeSabrReadaheadPlanner planner;
+    @Nonnull
+    private final List<YoutubeSabrSession.ResponseTiming> timings;
+
+    /**
+     * @param planner the planner to simulate
+     * @param timings the recorded response timings to replay
+     */
+    public YoutubeSabrPlannerSimulation(
+            @Nonnull final YoutubeSabrReadaheadPlanner planner,
+            @Nonnull final Collection<YoutubeSabrSession.ResponseTiming> timings) {
+        this.planner = Objects.requireNonNull(planner, "planner");
+        final List<YoutubeSabrSession.ResponseTiming> usableTimings = new ArrayList<>();
+        for (final YoutubeSabrSession.ResponseTiming timing : timings) {
+            if (timing.getResponseBytes() > 0 && timing.getElapsedMs() > 0) {
+                usableTimings.add(timing);
+            }
+        }
+        if (usableTimings.isEmpty()) {
+            throw new IllegalArgumentException("No SABR response timing to replay");
+        }
+        this.timings = Collections.unmodifiableList(usableTimings);
+    }
+
+    /**
+     * Simulate the playback of a video from its start.
+     *
+     * @param tracks       the tracks to start with, whose formats must have timelines
+     * @param candidates   the tracks the planner may switch to
+     * @param durationMs   how much of the video to play
+     * @param playbackRate the playback rate
+     * @return the outcome of the playback
+     */
+    @Nonnull
+    public Result run(@Nonnull final Collection<YoutubeSabrRequest.Track> tracks,
+                      @Nonnull final Collection<YoutubeSabrRequest.Track> candidates,
+                      final long durationMs,
+                      final float playbackRate) {
+        for (final YoutubeSabrRequest.Track track : tracks) {
+            if (track.getTimeline() == null) {
+                throw new IllegalArgumentException("SABR simulation format has no timeline: itag="
+                        + track.getFormat().getItag());
+            }
+        }
+        final Playback playback = new Playback(new ArrayList<>(tracks), durationMs, playbackRate);
+        long bandwidthEstimate = -1;
+        int timingIndex = 0;
+
+        for (int step = 0; step < MAX_STEPS && !playback.isFinished(); step++) {
+            final YoutubeSabrReadaheadPlanner.Plan plan = planner.plan(
+                    YoutubeSabrReadaheadPlanner.Input.of(bandwidthEstimate,
+                            playback.playerTimeMs, playbackRate, playback.tracks, candidates));
+            if (plan.getRequestDelayMs() > 0) {
+                playback.advance(plan.getRequestDelayMs());
+                continue;
+            }
+
+            final List<YoutubeSabrRequest.Track> planned = new ArrayList<>();
+            for (final YoutubeSabrReadaheadPlanner.PlannedTrack track : plan.getTracks()) {
+                if (track.isSwitched()) {
+                    playback.formatSwitches++;
+                }
+                planned.add(track.getTrack());
+            }
+            playback.tracks = planned;
+
+            final YoutubeSabrSession.ResponseTiming timing = timings.get(timingIndex);
+            timingIndex = (timingIndex + 1) % timings.size();
+            final long responseBytes = playback.receive(timing);
+            if (responseBytes == 0) {
+                // Nothing left to request: play what is buffered
+                final long bufferedAheadMs = playback.getBufferedAheadMs();
+                if (bufferedAheadMs == 0) {
+                    break;
+                }
+                playback.advance((long) Math.ceil(bufferedAheadMs / playbackRate));
+                continue;
+            }
+            bandwidthEstimate = YoutubeSabrSession.estimateBandwidth(bandwidthEstimate,
+                    responseBytes, playback.lastResponseElapsedMs);
+        }
+        return new Result(playback);
+    }
+
+    /**
+     * @return the end of the buffered media of a track, or 0 if nothing is buffered
+     */
+    private static long getBufferedEndMs(@Nonnull final YoutubeSabrRequest.Track track) {
+        final YoutubeSabrFormatTimeline timeline = track.getTimeline();
+        if (timeline == null || track.getBufferedThrough() <= 0) {
+            return 0;
+        }
+        return Math.max(0, timeline.getEndMs(Math.min(track.getBufferedThrough(),
+                timeline.getEndSequence())));
+    }
+
+    private static final class Playback {
+        @Nonnull
+        private List<YoutubeSabrRequest.Track> tracks;
+        private final long durationMs;
+        private final float playbackRate;
+        private long clockMs;
+        private long playerTimeMs;
+        private boolean started;
+        private boolean stalled;
+        private long startupMs = -1;
+        private long stallMs;
+        private int stallCount;
+        private int requestCount;
+        private int formatSwitches;
+        private long totalBytes;
+        private long lastResponseElapsedMs;
+        // Media duration and bitrate of the received segments, for the average bitrate
+        private long receivedMediaMs;
+        private double receivedMediaBits;
+
+        Playback(@Nonnull final List<YoutubeSabrRequest.Track> tracks,
+                 final long durationMs,
+                 final float playbackRate) {
+            this.tracks = tracks;
+            this.durationMs = durationMs;
+            this.playbackRate = playbackRate;
+        }
+
+        boolean isFinished() {
+            return playerTimeMs >= durationMs;
+        }
+
+        long getBufferedAheadMs() {
+            long bufferedEndMs = Long.MAX_VALUE;
+            for (final YoutubeSabrRequest.Track track : tracks) {
+                bufferedEndMs = Math.min(bufferedEndMs,
+                        getBufferedEndMs(track));
+            }
+            return Math.max(0, Math.min(bufferedEndMs, durationMs) - playerTimeMs);
+        }
+
+        /** Let time pass, playing what is buffered. */
+        void advance(final long elapsedMs) {
+            if (elapsedMs <= 0) {
+                return;
+            }
+            clockMs += elapsedMs;
+            if (isFinished()) {
+                return;
+            }
+            final long bufferedAheadMs = getBufferedAheadMs();
+            final long playedMs = Math.min((long) (elapsedMs * playbackRate), bufferedAheadMs);
+            if (playedMs > 0 && !started) {
+                started = true;
+                startupMs = clockMs - elapsedMs;
+            }
+            playerTimeMs += playedMs;
+            if (!started || isFinished()) {
+                return;
+            }
+            final long waitedMs = elapsedMs - (long) Math.ceil(playedMs / playbackRate);
+            if (waitedMs > 0) {
+                if (!stalled) {
+                    stallCount++;
+                    stalled = true;
+                }
+                stallMs += waitedMs;
+            } else if (playedMs > 0) {
+                stalled = false;
+            }
+        }
+
+        /**
+         * Receive the segments the server sends for the requested tracks, at the pace of a
+         * recorded response.
+         *
+         * @return the number of bytes received
+         */
+        long receive(@Nonnull final YoutubeSabrSession.ResponseTiming timing) {
+            final int[] nextSequences = new int[tracks.size()];
+            for (int i = 0; i < tracks.size(); i++) {
+                nextSequences[i] = tracks.get(i).getBufferedThrough() + 1;
+            }
+
+            final List<Arrival> arrivals = new ArrayList<>();
+            long sentBytes = 0;
+            while (sentBytes < timing.getResponseBytes()) {
+                // The next segment of the track which is buffered the least far
+                int trackIndex = -1;
+                long startMs = Long.MAX_VALUE;
+                for (int i = 0; i < tracks.size(); i++) {
+                    final YoutubeSabrFormatTimeline timeline = tracks.get(i).getTimeline();
+                    if (timeline == null || nextSequences[i] > timeline.getEndSequence()
+                            || timeline.getStartMs(nextSequences[i]) >= durationMs) {
+                        continue;
+                    }
+                    if (timeline.getStartMs(nextSequences[i]) < startMs) {
+                        trackIndex = i;
+                        startMs = timeline.getStartMs(nextSequences[i]);
+                    }
+                }
+                if (trackIndex < 0) {
+                    break;
+                }
+                final YoutubeSabrRequest.Track track = tracks.get(trackIndex);
+                final int sequence = nextSequences[trackIndex]++;
+                final long segmentDurationMs = track.getTimeline().getDurationMs(sequence);
+                final int bitrate = track.getFormat().getBitrate();
+                final Arrival arrival = new Arrival(trackIndex, sequence, startMs,
+                        segmentDurationMs, bitrate);
+                arrivals.add(arrival);
+                sentBytes += arrival.getBytes();
+            }
+            if (arrivals.isEmpty()) {
+                return 0;
+            }
+
+            long latencyMs = Math.max(0, timing.getFirstSegmentElapsedMs());
+            long transferMs = timing.getElapsedMs() - latencyMs;
+            if (transferMs <= 0) {
+                latencyMs = 0;
+                transferMs = timing.getElapsedMs();
+            }
+            final double recordedBytesPerMs = (double) timing.getResponseBytes() / transferMs;
+
+            long bytes = 0;
+            long elapsedMs = 0;
+            for (final Arrival arrival : arrivals) {
+                bytes += arrival.getBytes();
+                final long arrivalMs = latencyMs + (long) Math.ceil(bytes / recordedBytesPerMs);
+                advance(arrivalMs - elapsedMs);
+                elapsedMs = Math.max(elapsedMs, arrivalMs);
+                final YoutubeSabrRequest.Track track = tracks.get(arrival.trackIndex);
+                tracks.set(arrival.trackIndex, YoutubeSabrRequest.Track.of(track.getFormat(),
+                        track.getTimeline(), arrival.sequence));
+                receivedMediaMs += arrival.durationMs;
+                receivedMediaBits += (double) arrival.durationMs * arrival.bitrate / 1000;
+            }
+            requestCount++;
+            totalBytes += bytes;
+            lastResponseElapsedMs = Math.max(1, elapsedMs);
+            return bytes;
+        }
+    }
+
+    private static final class Arrival {
+        private final int trackIndex;
+        private final int sequence;
+        private final long startMs;
+        private final long durationMs;
+        private final int bitrate;
+
+        Arrival(final int trackIndex,
+                final int sequence,
+                final long startMs,
+                final long durationMs,
+                final int bitrate) {
+            this.trackIndex = trackIndex;
+            this.sequence = sequence;
+            this.startMs = startMs;
+            this.durationMs = durationMs;
+            this.bitrate = bitrate;
+        }
+
+        long getBytes() {
+            return Math.max(1, durationMs * Math.max(0, bitrate) / 8_000);
+        }
+    }
+
+    /** The outcome of a simulated playback. */
+    public static final class Result {
+        private final long elapsedMs;
+        private final long playedMs;
+        private final long startupMs;
+        private final long stallMs;
+        private final int stallCount;
+        private final int requestCount;
+        private final int formatSwitches;
+        private final long totalBytes;
+        private final long averageBitrate;
+
+        private Result(@Nonnull final Playback playback) {
+            elapsedMs = playback.clockMs;
+            playedMs = playback.playerTimeMs;
+            startupMs = playback.startupMs;
+            stallMs = playback.stallMs;
+            stallCount = playback.stallCount;
+            requestCount = playback.requestCount;
+            formatSwitches = playback.formatSwitches;
+            totalBytes = playback.totalBytes;
+            // Each track received about the same media duration
+            averageBitrate = playback.receivedMediaMs == 0 ? 0
+                    : (long) (playback.receivedMediaBits * 1000 * playback.tracks.size()
+                    / playback.receivedMediaMs);
+        }
+
+        /** @return the simulated time, from the first request to the end of playback */
+        public long getElapsedMs() { return elapsedMs; }
+        /** @return how much of the video has been played */
+        public long getPlayedMs() { return playedMs; }
+        /** @return the time until playback started, or -1 if it never did */
+        public long getStartupMs() { return startupMs; }
+        /** @return the time playback was stalled after it started */
+        public long getStallMs() { return stallMs; }
+        public int getStallCount() { return stallCount; }
+        public int getRequestCount() { return requestCount; }
+        public int getFormatSwitches() { return formatSwitches; }
+        public long getTotalBytes() { return totalBytes; }
+        /**
+         * @return the average bitrate of the received media of all tracks together, in bits
+         * per second
+         */
+        public long getAverageBitrate() { return averageBitrate; }
+
+        @Nonnull
+        @Override
+        public String toString() {
+            return "elapsedMs=" + elapsedMs
+                    + ", playedMs=" + playedMs
+                    + ", startupMs=" + startupMs
+                    + ", stallMs=" + stallMs
+                    + ", stalls=" + stallCount
+                    + ", requests=" + requestCount
+                    + ", switches=" + formatSwitches
+                    + ", bytes=" + totalBytes
+                    + ", averageBitrate=" + averageBitrate;
+        }
+    }
+}
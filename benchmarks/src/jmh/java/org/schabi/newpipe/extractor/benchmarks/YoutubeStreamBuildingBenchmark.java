@@ -0,0 +1,57 @@
+package org.schabi.newpipe.extractor.benchmarks;
+
+import com.grack.nanojson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.schabi.newpipe.extractor.NewPipe;
+import org.schabi.newpipe.extractor.exceptions.ExtractionException;
+import org.schabi.newpipe.extractor.services.youtube.extractors.YoutubeStreamExtractor;
+import org.schabi.newpipe.extractor.services.youtube.sabr.YoutubeSabrInfo;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the streams of a video from the {@code adaptiveFormats} of a recorded player
+ * response.
+ *
+ * <p>
+ * The URLs of the fixture have no {@code n} nor signature parameter, so that the player
+ * JavaScript code is never needed.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class YoutubeStreamBuildingBenchmark {
+
+    private static final String VIDEO_ID = "dQw4w9WgXcQ";
+    private static final String CPN = "Fb0c7hLWhBzD3ZLa";
+    private static final String CLIENT_VERSION = "2.20250101.01.00";
+
+    private JsonObject playerResponse;
+
+    @Setup
+    public void setUp() throws Exception {
+        NewPipe.init(new FixtureDownloader());
+        playerResponse = Fixtures.readJsonObject("youtube/player_response.json");
+    }
+
+    @Benchmark
+    public YoutubeSabrInfo buildSabrInfo() throws ExtractionException {
+        return YoutubeStreamExtractor.buildSabrInfoFromPlayerResponse(VIDEO_ID, CPN,
+                playerResponse, null, CLIENT_VERSION);
+    }
+
+    @Benchmark
+    public void buildItagItems(final Blackhole blackhole) throws ExtractionException {
+        for (final YoutubeSabrInfo.Format format : buildSabrInfo().getFormats()) {
+            blackhole.consume(format.toItagItem());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.schabi.newpipe.extractor.benchmarks;
+
+import com.grack.nanojson.JsonArray;
+import com.grack.nanojson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.schabi.newpipe.extractor.exceptions.ParsingException;
+import org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link YoutubeParsingHelper#getTextFromObject(JsonObject, boolean)} over the text objects of
+ * Innertube responses: simple texts, plain runs, and runs with links, mentions, timestamps,
+ * hashtags and styles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class YoutubeTextBenchmark {
+
+    @Param({"false", "true"})
+    public boolean html;
+
+    private JsonObject[] textObjects;
+
+    @Setup
+    public void setUp() throws Exception {
+        final JsonArray array = Fixtures.readJsonArray("youtube/text_objects.json");
+        textObjects = new JsonObject[array.size()];
+        for (int i = 0; i < textObjects.length; i++) {
+            textObjects[i] = array.getObject(i);
+        }
+    }
+
+    @Benchmark
+    public void getTextFromObject(final Blackhole blackhole) throws ParsingException {
+        for (final JsonObject textObject : textObjects) {
+            blackhole.consume(YoutubeParsingHelper.getTextFromObject(textObject, html));
+        }
+    }
+}
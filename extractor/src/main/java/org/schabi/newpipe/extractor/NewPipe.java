@@ -20,11 +20,14 @@ package org.schabi.newpipe.extractor;
  * along with NewPipe.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import org.schabi.newpipe.extractor.bulletComments.BulletCommentsScheduler;
 import org.schabi.newpipe.extractor.downloader.Downloader;
 import org.schabi.newpipe.extractor.exceptions.ExtractionException;
 import org.schabi.newpipe.extractor.localization.ContentCountry;
 import org.schabi.newpipe.extractor.localization.Localization;
+import org.schabi.newpipe.extractor.metrics.ExtractionMetrics;
 import org.schabi.newpipe.extractor.services.youtube.YoutubePoTokenResult;
+import org.schabi.newpipe.extractor.sponsorblock.SponsorBlockExtractorHelper;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -38,6 +41,7 @@ import java.security.SecureRandom;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 /**
@@ -52,6 +56,12 @@ public final class NewPipe {
     private static volatile Function<String, YoutubePoTokenResult> youtubePoTokenResolver;
     @Nullable
     private static WebViewAvailabilityChecker webViewAvailabilityChecker;
+    @Nonnull
+    private static volatile ExtractionMetrics extractionMetrics = ExtractionMetrics.NO_OP;
+    @Nullable
+    private static volatile Executor sponsorBlockExecutor;
+    @Nullable
+    private static volatile BulletCommentsScheduler bulletCommentsScheduler;
 
     private NewPipe() {
 
@@ -73,10 +83,63 @@ public final class NewPipe {
         trustEveryone();
     }
 
+    public static void init(final Downloader d, final Localization l, final ContentCountry c,
+                            @Nullable final ExtractionMetrics metrics) {
+        init(d, l, c);
+        setExtractionMetrics(metrics);
+    }
+
     public static Downloader getDownloader() {
         return downloader;
     }
 
+    /**
+     * Set where the extractor records its stage timings and counters.
+     *
+     * @param metrics the metrics implementation, or {@code null} to record nothing
+     */
+    public static void setExtractionMetrics(@Nullable final ExtractionMetrics metrics) {
+        extractionMetrics = metrics == null ? ExtractionMetrics.NO_OP : metrics;
+    }
+
+    @Nonnull
+    public static ExtractionMetrics getExtractionMetrics() {
+        return extractionMetrics;
+    }
+
+    /**
+     * Set the executor on which SponsorBlock segments are fetched while streams are extracted.
+     *
+     * @param executor the executor, or {@code null} to use the shared bounded one returned by
+     *                 {@link SponsorBlockExtractorHelper#getDefaultExecutor()}
+     */
+    public static void setSponsorBlockExecutor(@Nullable final Executor executor) {
+        sponsorBlockExecutor = executor;
+    }
+
+    @Nonnull
+    public static Executor getSponsorBlockExecutor() {
+        final Executor executor = sponsorBlockExecutor;
+        return executor == null ? SponsorBlockExtractorHelper.getDefaultExecutor() : executor;
+    }
+
+    /**
+     * Set the scheduler on which live bullet comments are polled and delivered.
+     *
+     * @param scheduler the scheduler, or {@code null} to use the shared one returned by
+     *                  {@link BulletCommentsScheduler#getDefault()}
+     */
+    public static void setBulletCommentsScheduler(
+            @Nullable final BulletCommentsScheduler scheduler) {
+        bulletCommentsScheduler = scheduler;
+    }
+
+    @Nonnull
+    public static BulletCommentsScheduler getBulletCommentsScheduler() {
+        final BulletCommentsScheduler scheduler = bulletCommentsScheduler;
+        return scheduler == null ? BulletCommentsScheduler.getDefault() : scheduler;
+    }
+
     /*//////////////////////////////////////////////////////////////////////////
     // Utils
     //////////////////////////////////////////////////////////////////////////*/
@@ -0,0 +1,82 @@
+package org.schabi.newpipe.extractor.bulletComments;
+
+import javax.annotation.Nonnull;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the IDs of the most recent bullet comments, so that live extractors which receive
+ * overlapping batches only emit each comment once.
+ *
+ * <p>
+ * Lookups and insertions take constant time. Only {@code capacity} IDs are remembered: once it
+ * is reached, adding an ID forgets the one added or seen again least recently, so that memory
+ * stays bounded however long a live stream or a chat replay lasts. Batches only overlap with
+ * recent ones, so a capacity well above the size of a batch is enough not to emit comments
+ * again.
+ * </p>
+ *
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ *
+ * @param <T> the type of the IDs
+ */
+public final class BulletCommentsDeduplicator<T> {
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    private final Map<T, Boolean> recentIds;
+
+    public BulletCommentsDeduplicator() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of IDs to remember
+     */
+    public BulletCommentsDeduplicator(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        // Access-ordered, so that IDs which keep coming back in new batches are kept
+        this.recentIds = new LinkedHashMap<T, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<T, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Remember an ID.
+     *
+     * @param id the ID of a comment
+     * @return whether the ID is new, i.e. the comment should be emitted
+     */
+    public synchronized boolean add(@Nonnull final T id) {
+        return recentIds.put(id, Boolean.TRUE) == null;
+    }
+
+    public synchronized boolean contains(@Nonnull final T id) {
+        return recentIds.containsKey(id);
+    }
+
+    /**
+     * Forget an ID, e.g. of an item which could not be processed and should be accepted again.
+     *
+     * @return whether the ID was remembered
+     */
+    public synchronized boolean remove(@Nonnull final T id) {
+        return recentIds.remove(id) != null;
+    }
+
+    /** @return the number of remembered IDs */
+    public synchronized int size() {
+        return recentIds.size();
+    }
+
+    /** Forget all IDs, e.g. after seeking backwards in a replay. */
+    public synchronized void clear() {
+        recentIds.clear();
+    }
+}
@@ -1,8 +1,10 @@
 package org.schabi.newpipe.extractor.bulletComments;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.schabi.newpipe.extractor.ListExtractor;
+import org.schabi.newpipe.extractor.NewPipe;
 import org.schabi.newpipe.extractor.Page;
 import org.schabi.newpipe.extractor.StreamingService;
 import org.schabi.newpipe.extractor.exceptions.ExtractionException;
@@ -13,6 +15,13 @@ import java.io.IOException;
 import java.util.List;
 
 public abstract class BulletCommentsExtractor extends ListExtractor<BulletCommentsInfoItem> {
+    /** How often live comments are read for a subscription, besides when they are published. */
+    public static final long DELIVERY_INTERVAL_MS = 1000;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    @Nullable
+    private BulletCommentsSubscription subscription;
+
     public BulletCommentsExtractor(final StreamingService service, final ListLinkHandler uiHandler) {
         super(service, uiHandler);
     }
@@ -58,4 +67,68 @@ public abstract class BulletCommentsExtractor extends ListExtractor<BulletCommen
 
     public void clearMappingState() {
     }
+
+    /**
+     * Push the live comments of this extractor to a listener instead of polling
+     * {@link #getLiveMessages()}, with a queue of {@link #DEFAULT_QUEUE_CAPACITY} comments which
+     * drops the oldest ones when it is full.
+     *
+     * @see #subscribe(BulletCommentsListener, int, BulletCommentsSubscription.DropPolicy)
+     */
+    @Nonnull
+    public BulletCommentsSubscription subscribe(@Nonnull final BulletCommentsListener listener) {
+        return subscribe(listener, DEFAULT_QUEUE_CAPACITY,
+                BulletCommentsSubscription.DropPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Push the live comments of this extractor to a listener instead of polling
+     * {@link #getLiveMessages()}, which must not be called while the subscription is active.
+     * Comments are read and delivered on the {@link NewPipe#getBulletCommentsScheduler()
+     * bullet comments scheduler}.
+     *
+     * @param listener      the listener
+     * @param queueCapacity the number of comments which may wait for the listener
+     * @param dropPolicy    which comments to drop when more are waiting
+     * @return the subscription, to cancel to stop the delivery
+     * @throws IllegalStateException if the extractor already has an active subscription
+     */
+    @Nonnull
+    public BulletCommentsSubscription subscribe(
+            @Nonnull final BulletCommentsListener listener,
+            final int queueCapacity,
+            @Nonnull final BulletCommentsSubscription.DropPolicy dropPolicy) {
+        final BulletCommentsSubscription newSubscription;
+        synchronized (this) {
+            if (subscription != null) {
+                throw new IllegalStateException("Bullet comments already have a subscriber");
+            }
+            newSubscription = new BulletCommentsSubscription(this, listener,
+                    NewPipe.getBulletCommentsScheduler(), queueCapacity, dropPolicy);
+            subscription = newSubscription;
+        }
+        newSubscription.start(DELIVERY_INTERVAL_MS);
+        return newSubscription;
+    }
+
+    synchronized void unsubscribe(@Nonnull final BulletCommentsSubscription cancelled) {
+        if (subscription == cancelled) {
+            subscription = null;
+        }
+    }
+
+    /**
+     * Deliver the comments received so far to the subscriber, if there is one. Extractors should
+     * call this once they have received new comments, so that they are pushed without waiting
+     * for the next periodic read.
+     */
+    protected final void publishLiveMessages() {
+        final BulletCommentsSubscription current;
+        synchronized (this) {
+            current = subscription;
+        }
+        if (current != null) {
+            current.read();
+        }
+    }
 }
@@ -0,0 +1,31 @@
+package org.schabi.newpipe.extractor.bulletComments;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * Receives the live bullet comments of an extractor it has been
+ * {@link BulletCommentsExtractor#subscribe(BulletCommentsListener) subscribed} to.
+ *
+ * <p>
+ * Methods are called on threads of the {@link BulletCommentsScheduler}, and
+ * {@link #onBulletComments(List)} only by one thread at a time per subscription. It should
+ * return quickly and hand the comments over to another thread if there is more work to do, as
+ * comments which arrive in the meantime are queued and may be dropped.
+ * </p>
+ */
+public interface BulletCommentsListener {
+    /**
+     * @param comments the comments received since the previous call, oldest first
+     */
+    void onBulletComments(@Nonnull List<BulletCommentsInfoItem> comments);
+
+    /**
+     * Called when the comments of the extractor could not be read, or when
+     * {@link #onBulletComments(List)} threw. The subscription stays active.
+     *
+     * @param error the error
+     */
+    default void onError(@Nonnull Exception error) {
+    }
+}
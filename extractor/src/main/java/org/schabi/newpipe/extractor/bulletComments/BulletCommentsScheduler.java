@@ -0,0 +1,153 @@
+package org.schabi.newpipe.extractor.bulletComments;
+
+import javax.annotation.Nonnull;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the polling of live bullet comments and the delivery to
+ * {@link BulletCommentsListener listeners} for all extractors, so that many live rooms share a
+ * few threads instead of each having its own.
+ *
+ * <p>
+ * A single timer thread decides when to poll, and polls, which usually wait for the network,
+ * run on a worker executor. A poll is skipped while the previous poll of the same room is still
+ * running, so that a slow server can't make polls pile up.
+ * </p>
+ *
+ * @see org.schabi.newpipe.extractor.NewPipe#setBulletCommentsScheduler(BulletCommentsScheduler)
+ */
+public final class BulletCommentsScheduler {
+    /** The number of polls the default scheduler runs at the same time without virtual threads. */
+    public static final int DEFAULT_MAXIMUM_CONCURRENT_POLLS = 8;
+    /** The number of polls the default scheduler queues without virtual threads. */
+    public static final int DEFAULT_MAXIMUM_QUEUED_POLLS = 1024;
+
+    @Nonnull
+    private final ScheduledExecutorService timer;
+    @Nonnull
+    private final Executor worker;
+
+    /**
+     * @param timer  the executor deciding when to poll, on which no blocking work is done
+     * @param worker the executor running polls and deliveries
+     */
+    public BulletCommentsScheduler(@Nonnull final ScheduledExecutorService timer,
+                                   @Nonnull final Executor worker) {
+        this.timer = Objects.requireNonNull(timer, "timer");
+        this.worker = Objects.requireNonNull(worker, "worker");
+    }
+
+    /**
+     * Get the scheduler used when none has been set with
+     * {@link org.schabi.newpipe.extractor.NewPipe#setBulletCommentsScheduler(
+     * BulletCommentsScheduler)}.
+     *
+     * <p>
+     * Its polls run on virtual threads if the runtime supports them. Otherwise at most
+     * {@link #DEFAULT_MAXIMUM_CONCURRENT_POLLS} run at the same time on daemon threads, and up to
+     * {@link #DEFAULT_MAXIMUM_QUEUED_POLLS} others are queued; further polls are skipped.
+     * </p>
+     *
+     * @return the shared default scheduler
+     */
+    @Nonnull
+    public static BulletCommentsScheduler getDefault() {
+        return DefaultSchedulerHolder.SCHEDULER;
+    }
+
+    /**
+     * Poll periodically, until the returned future is cancelled.
+     *
+     * @param poll           the poll, which may block
+     * @param initialDelayMs the delay before the first poll
+     * @param periodMs       the period of the polls
+     * @return the future to cancel to stop polling; a running poll is not interrupted
+     */
+    @Nonnull
+    public ScheduledFuture<?> schedulePolling(@Nonnull final Runnable poll,
+                                              final long initialDelayMs,
+                                              final long periodMs) {
+        final AtomicBoolean running = new AtomicBoolean();
+        return timer.scheduleAtFixedRate(() -> {
+            if (!running.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                worker.execute(() -> {
+                    try {
+                        poll.run();
+                    } finally {
+                        running.set(false);
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                running.set(false);
+            }
+        }, initialDelayMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run a task once on the worker executor, e.g. the download of a comment segment announced
+     * by a poll.
+     *
+     * @throws RejectedExecutionException if the worker executor is saturated
+     */
+    public void execute(@Nonnull final Runnable task) {
+        worker.execute(task);
+    }
+
+    private static final class DefaultSchedulerHolder {
+        private static final BulletCommentsScheduler SCHEDULER = new BulletCommentsScheduler(
+                createTimer(), createWorker());
+
+        @Nonnull
+        private static ScheduledExecutorService createTimer() {
+            final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+                    runnable -> {
+                        final Thread thread = new Thread(runnable, "BulletComments-timer");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            timer.setRemoveOnCancelPolicy(true);
+            return timer;
+        }
+
+        @Nonnull
+        private static Executor createWorker() {
+            // Thread.ofVirtual() is not available on Android nor on Java versions before 21
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class)
+                        .invoke(builder, "BulletComments-", 0L);
+                final ThreadFactory factory =
+                        (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+                return runnable -> factory.newThread(runnable).start();
+            } catch (final ReflectiveOperationException | RuntimeException e) {
+                final AtomicInteger threadCount = new AtomicInteger();
+                final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                        DEFAULT_MAXIMUM_CONCURRENT_POLLS, DEFAULT_MAXIMUM_CONCURRENT_POLLS,
+                        30, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(DEFAULT_MAXIMUM_QUEUED_POLLS), runnable -> {
+                            final Thread thread = new Thread(runnable,
+                                    "BulletComments-" + threadCount.getAndIncrement());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                executor.allowCoreThreadTimeOut(true);
+                return executor;
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.schabi.newpipe.extractor.bulletComments;
+
+import org.schabi.newpipe.extractor.exceptions.ParsingException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Pushes the live bullet comments of an extractor to a {@link BulletCommentsListener}, through
+ * a bounded queue.
+ *
+ * <p>
+ * Comments are read from the extractor as soon as it has received them, and at least every
+ * {@link BulletCommentsExtractor#DELIVERY_INTERVAL_MS} milliseconds, and queued. The listener is
+ * called with everything queued whenever it is not already busy, so a slow listener gets larger
+ * batches rather than more calls. If it falls behind by more than the capacity of the queue,
+ * comments are dropped following the {@link DropPolicy} and counted by
+ * {@link #getDroppedCount()}.
+ * </p>
+ *
+ * @see BulletCommentsExtractor#subscribe(BulletCommentsListener, int, DropPolicy)
+ */
+public final class BulletCommentsSubscription {
+
+    /** Which comments to drop when the queue of a subscription is full. */
+    public enum DropPolicy {
+        /** Drop the oldest queued comments, so that the listener keeps up with the stream. */
+        DROP_OLDEST,
+        /** Drop the new comments, so that the listener gets an uninterrupted sequence. */
+        DROP_NEWEST
+    }
+
+    @Nonnull
+    private final BulletCommentsExtractor extractor;
+    @Nonnull
+    private final BulletCommentsListener listener;
+    @Nonnull
+    private final BulletCommentsScheduler scheduler;
+    private final int capacity;
+    @Nonnull
+    private final DropPolicy dropPolicy;
+    // Reading the extractor drains it, so reads must not overlap
+    private final Object readLock = new Object();
+
+    // Guarded by this
+    private final ArrayDeque<BulletCommentsInfoItem> queue = new ArrayDeque<>();
+    private boolean delivering;
+    private boolean cancelled;
+    private long droppedCount;
+    @Nullable
+    private ScheduledFuture<?> polling;
+
+    BulletCommentsSubscription(@Nonnull final BulletCommentsExtractor extractor,
+                               @Nonnull final BulletCommentsListener listener,
+                               @Nonnull final BulletCommentsScheduler scheduler,
+                               final int capacity,
+                               @Nonnull final DropPolicy dropPolicy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.extractor = extractor;
+        this.listener = listener;
+        this.scheduler = scheduler;
+        this.capacity = capacity;
+        this.dropPolicy = dropPolicy;
+    }
+
+    void start(final long intervalMs) {
+        final ScheduledFuture<?> future =
+                scheduler.schedulePolling(this::read, intervalMs, intervalMs);
+        synchronized (this) {
+            if (cancelled) {
+                future.cancel(false);
+            } else {
+                polling = future;
+            }
+        }
+    }
+
+    /**
+     * Stop delivering comments. Comments still queued are discarded, and the extractor can be
+     * subscribed to again.
+     */
+    public void cancel() {
+        final ScheduledFuture<?> future;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            queue.clear();
+            future = polling;
+            polling = null;
+        }
+        if (future != null) {
+            future.cancel(false);
+        }
+        extractor.unsubscribe(this);
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** @return the number of comments dropped because the queue was full */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /** @return the number of comments waiting for the listener */
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    /** Read the comments the extractor has received and queue them. */
+    void read() {
+        final List<BulletCommentsInfoItem> comments;
+        synchronized (readLock) {
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                comments = extractor.getLiveMessages();
+            } catch (final ParsingException | RuntimeException e) {
+                listener.onError(e);
+                return;
+            }
+        }
+        if (comments != null && !comments.isEmpty()) {
+            offer(comments);
+        }
+    }
+
+    private void offer(@Nonnull final List<BulletCommentsInfoItem> comments) {
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            for (final BulletCommentsInfoItem comment : comments) {
+                if (queue.size() >= capacity) {
+                    droppedCount++;
+                    if (dropPolicy == DropPolicy.DROP_NEWEST) {
+                        continue;
+                    }
+                    queue.pollFirst();
+                }
+                queue.addLast(comment);
+            }
+            if (delivering || queue.isEmpty()) {
+                return;
+            }
+            delivering = true;
+        }
+        try {
+            scheduler.execute(this::deliver);
+        } catch (final RejectedExecutionException e) {
+            // The comments stay queued for the next read
+            synchronized (this) {
+                delivering = false;
+            }
+        }
+    }
+
+    private void deliver() {
+        while (true) {
+            final List<BulletCommentsInfoItem> batch;
+            synchronized (this) {
+                if (cancelled || queue.isEmpty()) {
+                    delivering = false;
+                    return;
+                }
+                batch = new ArrayList<>(queue);
+                queue.clear();
+            }
+            try {
+                listener.onBulletComments(batch);
+            } catch (final RuntimeException e) {
+                listener.onError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.schabi.newpipe.extractor.downloader;
+
+/**
+ * How a {@link CachingDownloader} may use its cache for a {@link Request}.
+ *
+ * <p>
+ * It is only a hint: downloaders which don't cache responses ignore it, and only {@code GET}
+ * requests are ever cached.
+ * </p>
+ */
+public enum CachePolicy {
+
+    /**
+     * Follow the {@code Cache-Control}, {@code Expires}, {@code ETag} and {@code Last-Modified}
+     * headers of responses.
+     */
+    DEFAULT,
+
+    /**
+     * Never use nor store a cached response.
+     */
+    NO_STORE,
+
+    /**
+     * Store the response, but always revalidate a cached response with the server before using
+     * it, even if it is fresh.
+     */
+    NO_CACHE,
+
+    /**
+     * Use a cached response if there is one, even if it is stale, and only send a request
+     * otherwise. Useful for resources which rarely change, or when the network should be avoided.
+     */
+    PREFER_CACHE
+}
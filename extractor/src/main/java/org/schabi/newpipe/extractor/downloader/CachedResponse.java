@@ -0,0 +1,372 @@
+package org.schabi.newpipe.extractor.downloader;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A response stored by a {@link CachingDownloader}, with what is needed to know whether it is
+ * still fresh and to revalidate it.
+ *
+ * <p>
+ * Freshness follows RFC 9111 for a private cache: {@code Cache-Control: max-age}, then
+ * {@code Expires}, then the {@link Request#cacheMaxAgeMillis() max age hint} of the request,
+ * and finally a heuristic freshness of 10% of the time since {@code Last-Modified}, capped at a
+ * day.
+ * </p>
+ */
+final class CachedResponse {
+
+    // Version 1 stored the plain cache key, which could contain request headers
+    private static final int FORMAT_VERSION = 2;
+    private static final long MAXIMUM_HEURISTIC_FRESHNESS_MILLIS = 24L * 60L * 60L * 1000L;
+
+    @Nonnull
+    private final String key;
+    private final int responseCode;
+    @Nullable
+    private final String responseMessage;
+    @Nonnull
+    private final Map<String, List<String>> responseHeaders;
+    @Nonnull
+    private final String responseBody;
+    @Nullable
+    private final byte[] rawResponseBody;
+    @Nullable
+    private final String latestUrl;
+    private final long expiresAt;
+
+    private CachedResponse(@Nonnull final String key,
+                           final int responseCode,
+                           @Nullable final String responseMessage,
+                           @Nonnull final Map<String, List<String>> responseHeaders,
+                           @Nonnull final String responseBody,
+                           @Nullable final byte[] rawResponseBody,
+                           @Nullable final String latestUrl,
+                           final long expiresAt) {
+        this.key = key;
+        this.responseCode = responseCode;
+        this.responseMessage = responseMessage;
+        this.responseHeaders = responseHeaders;
+        this.responseBody = responseBody;
+        this.rawResponseBody = rawResponseBody;
+        this.latestUrl = latestUrl;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Create the cache entry of a response, if it can be stored.
+     *
+     * @param key      the cache key of the request
+     * @param request  the request
+     * @param response the response of the server
+     * @param now      the current time, in milliseconds since epoch
+     * @return the cache entry, or {@code null} if the response must not or cannot usefully be
+     * stored
+     */
+    @Nullable
+    static CachedResponse of(@Nonnull final String key,
+                             @Nonnull final Request request,
+                             @Nonnull final Response response,
+                             final long now) {
+        final int code = response.responseCode();
+        if (code != 200 && code != 203 && code != 206) {
+            return null;
+        }
+        // Replaying cookies to other extractions would be wrong
+        if (response.getHeader("Set-Cookie") != null
+                || "*".equals(response.getHeader("Vary"))) {
+            return null;
+        }
+        final Map<String, String> cacheControl = parseCacheControl(response);
+        if (cacheControl.containsKey("no-store")) {
+            return null;
+        }
+
+        final long expiresAt = computeExpiresAt(request, response, cacheControl, now);
+        if (expiresAt <= now && request.cachePolicy() != CachePolicy.PREFER_CACHE
+                && response.getHeader("ETag") == null
+                && response.getHeader("Last-Modified") == null) {
+            // It could never be used without downloading it again
+            return null;
+        }
+
+        return new CachedResponse(key, code, response.responseMessage(),
+                Collections.unmodifiableMap(copyHeaders(response.responseHeaders())),
+                response.responseBody(), response.rawResponseBody(), response.latestUrl(),
+                expiresAt);
+    }
+
+    /**
+     * Create the cache entry resulting from a {@code 304 Not Modified} response to a
+     * revalidation of this entry.
+     *
+     * @param request     the conditional request
+     * @param notModified the {@code 304} response of the server
+     * @param now         the current time, in milliseconds since epoch
+     * @return the updated entry, or {@code null} if it must not be stored anymore
+     */
+    @Nullable
+    CachedResponse revalidated(@Nonnull final Request request,
+                               @Nonnull final Response notModified,
+                               final long now) {
+        // Headers of a 304 response update the stored ones
+        final Map<String, List<String>> headers = copyHeaders(responseHeaders);
+        for (final Map.Entry<String, List<String>> header
+                : notModified.responseHeaders().entrySet()) {
+            if (header.getKey() == null || "Content-Length".equalsIgnoreCase(header.getKey())) {
+                continue;
+            }
+            headers.keySet().removeIf(name -> name != null
+                    && name.equalsIgnoreCase(header.getKey()));
+            headers.put(header.getKey(), header.getValue());
+        }
+
+        final Response updated = new Response(responseCode, responseMessage, headers,
+                responseBody, rawResponseBody, latestUrl);
+        final Map<String, String> cacheControl = parseCacheControl(updated);
+        if (cacheControl.containsKey("no-store")) {
+            return null;
+        }
+        return new CachedResponse(key, responseCode, responseMessage,
+                Collections.unmodifiableMap(headers), responseBody, rawResponseBody, latestUrl,
+                computeExpiresAt(request, updated, cacheControl, now));
+    }
+
+    @Nonnull
+    String getKey() {
+        return key;
+    }
+
+    boolean isFresh(final long now) {
+        return now < expiresAt;
+    }
+
+    @Nullable
+    String getETag() {
+        return toResponse().getHeader("ETag");
+    }
+
+    @Nullable
+    String getLastModified() {
+        return toResponse().getHeader("Last-Modified");
+    }
+
+    /**
+     * @return the approximate number of bytes this entry takes in memory
+     */
+    long getWeight() {
+        return key.length() * 2L + responseBody.length() * 2L
+                + (rawResponseBody == null ? 0 : rawResponseBody.length) + 256;
+    }
+
+    @Nonnull
+    Response toResponse() {
+        return new Response(responseCode, responseMessage, responseHeaders, responseBody,
+                rawResponseBody, latestUrl);
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Serialization
+    //////////////////////////////////////////////////////////////////////////*/
+
+    void writeTo(@Nonnull final DataOutputStream output) throws IOException {
+        output.writeInt(FORMAT_VERSION);
+        writeString(output, key);
+        output.writeInt(responseCode);
+        writeString(output, responseMessage);
+        output.writeInt(responseHeaders.size());
+        for (final Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+            writeString(output, header.getKey());
+            output.writeInt(header.getValue().size());
+            for (final String value : header.getValue()) {
+                writeString(output, value);
+            }
+        }
+        writeString(output, responseBody);
+        writeBytes(output, rawResponseBody);
+        writeString(output, latestUrl);
+        output.writeLong(expiresAt);
+    }
+
+    /**
+     * Read an entry written by {@link #writeTo(DataOutputStream)}.
+     *
+     * @param input the stream to read from
+     * @return the entry, or {@code null} if it has been written in another format
+     * @throws IOException if the entry could not be read
+     */
+    @Nullable
+    static CachedResponse readFrom(@Nonnull final DataInputStream input) throws IOException {
+        if (input.readInt() != FORMAT_VERSION) {
+            return null;
+        }
+        final String key = readString(input);
+        final int responseCode = input.readInt();
+        final String responseMessage = readString(input);
+        final int headerCount = input.readInt();
+        final Map<String, List<String>> headers = new LinkedHashMap<>();
+        for (int i = 0; i < headerCount; i++) {
+            final String name = readString(input);
+            final int valueCount = input.readInt();
+            final List<String> values = new ArrayList<>(valueCount);
+            for (int j = 0; j < valueCount; j++) {
+                values.add(readString(input));
+            }
+            headers.put(name, Collections.unmodifiableList(values));
+        }
+        final String responseBody = readString(input);
+        final byte[] rawResponseBody = readBytes(input);
+        final String latestUrl = readString(input);
+        final long expiresAt = input.readLong();
+
+        if (key == null || responseBody == null) {
+            throw new IOException("Invalid cache entry");
+        }
+        return new CachedResponse(key, responseCode, responseMessage,
+                Collections.unmodifiableMap(headers), responseBody, rawResponseBody, latestUrl,
+                expiresAt);
+    }
+
+    private static void writeString(@Nonnull final DataOutputStream output,
+                                    @Nullable final String string) throws IOException {
+        writeBytes(output, string == null ? null : string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBytes(@Nonnull final DataOutputStream output,
+                                   @Nullable final byte[] bytes) throws IOException {
+        if (bytes == null) {
+            output.writeInt(-1);
+        } else {
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    @Nullable
+    private static String readString(@Nonnull final DataInputStream input) throws IOException {
+        final byte[] bytes = readBytes(input);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Nullable
+    private static byte[] readBytes(@Nonnull final DataInputStream input) throws IOException {
+        final int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Freshness
+    //////////////////////////////////////////////////////////////////////////*/
+
+    private static long computeExpiresAt(@Nonnull final Request request,
+                                         @Nonnull final Response response,
+                                         @Nonnull final Map<String, String> cacheControl,
+                                         final long now) {
+        if (cacheControl.containsKey("no-cache")) {
+            return now;
+        }
+
+        final long age = parseSeconds(response.getHeader("Age")) * 1000;
+        final long maxAge = parseSeconds(cacheControl.get("max-age"));
+        if (maxAge >= 0) {
+            return now + maxAge * 1000 - Math.max(age, 0);
+        }
+
+        final String expires = response.getHeader("Expires");
+        if (expires != null) {
+            final long expiresAt = parseDate(expires);
+            final long date = parseDate(response.getHeader("Date"));
+            // An invalid Expires header means that the response is already expired
+            return expiresAt < 0 ? now : now + (expiresAt - (date < 0 ? now : date));
+        }
+
+        if (request.cacheMaxAgeMillis() >= 0) {
+            return now + request.cacheMaxAgeMillis();
+        }
+
+        final long lastModified = parseDate(response.getHeader("Last-Modified"));
+        if (lastModified >= 0) {
+            final long date = parseDate(response.getHeader("Date"));
+            final long sinceModified = (date < 0 ? now : date) - lastModified;
+            return now + Math.min(Math.max(sinceModified / 10, 0),
+                    MAXIMUM_HEURISTIC_FRESHNESS_MILLIS);
+        }
+        return now;
+    }
+
+    @Nonnull
+    private static Map<String, String> parseCacheControl(@Nonnull final Response response) {
+        final Map<String, String> directives = new LinkedHashMap<>();
+        for (final Map.Entry<String, List<String>> header
+                : response.responseHeaders().entrySet()) {
+            if (header.getKey() == null || !header.getKey().equalsIgnoreCase("Cache-Control")) {
+                continue;
+            }
+            for (final String value : header.getValue()) {
+                for (final String directive : value.split(",")) {
+                    final int equals = directive.indexOf('=');
+                    final String name = (equals < 0 ? directive : directive.substring(0, equals))
+                            .trim().toLowerCase(Locale.ROOT);
+                    final String argument = equals < 0 ? ""
+                            : directive.substring(equals + 1).trim().replace("\"", "");
+                    if (!name.isEmpty()) {
+                        directives.putIfAbsent(name, argument);
+                    }
+                }
+            }
+        }
+        return directives;
+    }
+
+    private static long parseSeconds(@Nullable final String seconds) {
+        if (seconds == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(seconds.trim());
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long parseDate(@Nullable final String date) {
+        if (date == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant().toEpochMilli();
+        } catch (final DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    @Nonnull
+    private static Map<String, List<String>> copyHeaders(
+            @Nonnull final Map<String, List<String>> headers) {
+        final Map<String, List<String>> copy = new LinkedHashMap<>();
+        for (final Map.Entry<String, List<String>> header : headers.entrySet()) {
+            copy.put(header.getKey(), Collections.unmodifiableList(
+                    new ArrayList<>(header.getValue())));
+        }
+        return copy;
+    }
+}
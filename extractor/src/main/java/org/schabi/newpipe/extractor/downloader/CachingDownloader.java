@@ -0,0 +1,402 @@
+package org.schabi.newpipe.extractor.downloader;
+
+import org.schabi.newpipe.extractor.exceptions.ExtractionException;
+import org.schabi.newpipe.extractor.exceptions.ReCaptchaException;
+import org.schabi.newpipe.extractor.localization.Localization;
+import org.schabi.newpipe.extractor.utils.Utils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Downloader} which caches the responses of {@code GET} requests made with another
+ * downloader.
+ *
+ * <p>
+ * Responses are kept in a size-bounded in-memory tier and, if a directory is given, in an
+ * on-disk tier which survives restarts. Their freshness follows the {@code Cache-Control} and
+ * {@code Expires} headers, and stale responses with an {@code ETag} or a {@code Last-Modified}
+ * header are revalidated with a conditional request, so that the server only sends them again
+ * if they changed. Requests can tune this with {@link Request.Builder#cachePolicy(CachePolicy)}
+ * and {@link Request.Builder#cacheMaxAge(long)}.
+ * </p>
+ *
+ * <p>
+ * The cache key is the SHA-256 hash of the URL and of all request headers, including the
+ * {@code Accept-Language} header derived from the localization, so that responses which depend
+ * on them are never mixed up, while neither the URL nor the headers are written to disk.
+ * Requests carrying credentials ({@code Cookie} or {@code Authorization} headers) and responses
+ * setting cookies are never cached.
+ * </p>
+ *
+ * <p>
+ * Usage: {@code NewPipe.init(new CachingDownloader(downloader, 8 * 1024 * 1024, cacheDir,
+ * 64 * 1024 * 1024))}.
+ * </p>
+ */
+public class CachingDownloader extends Downloader {
+
+    /**
+     * The default maximum size of the in-memory tier, in bytes.
+     */
+    public static final long DEFAULT_MAXIMUM_MEMORY_SIZE = 8L * 1024L * 1024L;
+
+    @Nonnull
+    private final Downloader delegate;
+    private final long maximumMemorySize;
+    @Nullable
+    private final DiskResponseCache diskCache;
+
+    // Access-ordered, so that the least recently used response is evicted first
+    private final LinkedHashMap<String, CachedResponse> memoryCache =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long memorySize = 0;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong revalidationCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Create a caching downloader with only an in-memory tier of
+     * {@link #DEFAULT_MAXIMUM_MEMORY_SIZE}.
+     *
+     * @param delegate the downloader used to send requests
+     */
+    public CachingDownloader(@Nonnull final Downloader delegate) {
+        this(delegate, DEFAULT_MAXIMUM_MEMORY_SIZE, null, 0);
+    }
+
+    /**
+     * @param delegate          the downloader used to send requests
+     * @param maximumMemorySize the maximum size of the in-memory tier, in bytes
+     * @param cacheDirectory    the directory of the on-disk tier, or {@code null} to only cache
+     *                          responses in memory
+     * @param maximumDiskSize   the maximum size of the on-disk tier, in bytes
+     */
+    public CachingDownloader(@Nonnull final Downloader delegate,
+                             final long maximumMemorySize,
+                             @Nullable final File cacheDirectory,
+                             final long maximumDiskSize) {
+        if (maximumMemorySize < 0 || maximumDiskSize < 0) {
+            throw new IllegalArgumentException("Invalid cache size");
+        }
+        this.delegate = delegate;
+        this.maximumMemorySize = maximumMemorySize;
+        this.diskCache = cacheDirectory == null || maximumDiskSize == 0
+                ? null : new DiskResponseCache(cacheDirectory, maximumDiskSize);
+    }
+
+    @Nonnull
+    public Downloader getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Response execute(@Nonnull final Request request)
+            throws IOException, ReCaptchaException {
+        final String key = isCacheable(request) ? getKey(request) : null;
+        if (key == null) {
+            return delegate.execute(request);
+        }
+        final CachedResponse cached = getCached(key);
+        if (cached != null && canUseWithoutRevalidation(request, cached)) {
+            hitCount.incrementAndGet();
+            return cached.toResponse();
+        }
+
+        final Response response = delegate.execute(toConditionalRequest(request, cached));
+        return onResponse(key, request, cached, response);
+    }
+
+    @Override
+    public CancellableCall executeAsync(@Nonnull final Request request,
+                                        final AsyncCallback callback)
+            throws IOException, ReCaptchaException {
+        final String key = isCacheable(request) ? getKey(request) : null;
+        if (key == null) {
+            return delegate.executeAsync(request, callback);
+        }
+        final CachedResponse cached = getCached(key);
+        if (cached != null && canUseWithoutRevalidation(request, cached)) {
+            hitCount.incrementAndGet();
+            final CancellableCall call = new CancellableCall();
+            try {
+                callback.onSuccess(cached.toResponse());
+            } catch (final ExtractionException | RuntimeException e) {
+                callback.onError(e);
+            } finally {
+                call.setFinished();
+            }
+            return call;
+        }
+
+        return delegate.executeAsync(toConditionalRequest(request, cached), new AsyncCallback() {
+            @Override
+            public void onSuccess(final Response response) throws ExtractionException {
+                callback.onSuccess(onResponse(key, request, cached, response));
+            }
+
+            @Override
+            public void onError(final Exception e) {
+                callback.onError(e);
+            }
+        });
+    }
+
+    /**
+     * Streaming requests are not cached, so that large bodies are never buffered.
+     */
+    @Override
+    public StreamingResponse getStreaming(final String url,
+                                          @Nullable final Map<String, List<String>> headers,
+                                          @Nullable final Localization localization)
+            throws IOException, ReCaptchaException {
+        return delegate.getStreaming(url, headers, localization);
+    }
+
+    @Override
+    public StreamingResponse getStreaming(final String url,
+                                          @Nullable final Map<String, List<String>> headers,
+                                          @Nullable final Localization localization,
+                                          final long timeoutMs)
+            throws IOException, ReCaptchaException {
+        return delegate.getStreaming(url, headers, localization, timeoutMs);
+    }
+
+    @Override
+    public StreamingResponse postStreaming(final String url,
+                                           @Nullable final Map<String, List<String>> headers,
+                                           @Nullable final byte[] dataToSend,
+                                           @Nullable final Localization localization)
+            throws IOException, ReCaptchaException {
+        return delegate.postStreaming(url, headers, dataToSend, localization);
+    }
+
+    /**
+     * Remove all cached responses, from memory and from disk.
+     */
+    public void clear() {
+        synchronized (memoryCache) {
+            memoryCache.clear();
+            memorySize = 0;
+        }
+        if (diskCache != null) {
+            diskCache.clear();
+        }
+    }
+
+    /**
+     * @return the approximate size of the in-memory tier, in bytes
+     */
+    public long getMemorySize() {
+        synchronized (memoryCache) {
+            return memorySize;
+        }
+    }
+
+    /**
+     * @return the size of the on-disk tier, in bytes
+     */
+    public long getDiskSize() {
+        return diskCache == null ? 0 : diskCache.size();
+    }
+
+    /**
+     * @return the number of requests answered from the cache without any network request
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of requests answered from the cache after the server confirmed that
+     * the cached response was not modified
+     */
+    public long getRevalidationCount() {
+        return revalidationCount.get();
+    }
+
+    /**
+     * @return the number of cacheable requests whose response had to be downloaded
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Utils
+    //////////////////////////////////////////////////////////////////////////*/
+
+    private static boolean isCacheable(@Nonnull final Request request) {
+        if (!"GET".equals(request.httpMethod())
+                || request.cachePolicy() == CachePolicy.NO_STORE) {
+            return false;
+        }
+        // Personalised responses must neither be shared nor end up on disk
+        for (final String name : request.headers().keySet()) {
+            if ("Cookie".equalsIgnoreCase(name) || "Authorization".equalsIgnoreCase(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean canUseWithoutRevalidation(@Nonnull final Request request,
+                                                     @Nonnull final CachedResponse cached) {
+        switch (request.cachePolicy()) {
+            case PREFER_CACHE:
+                return true;
+            case NO_CACHE:
+                return false;
+            default:
+                return cached.isFresh(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @return the hash of the URL and of the headers of the request, or {@code null} if it could
+     * not be computed, in which case the request is not cached
+     */
+    @Nullable
+    private static String getKey(@Nonnull final Request request) {
+        // Header names are case-insensitive and their order doesn't matter
+        final TreeMap<String, List<String>> headers = new TreeMap<>();
+        for (final Map.Entry<String, List<String>> header : request.headers().entrySet()) {
+            headers.put(header.getKey().toLowerCase(Locale.ROOT), header.getValue());
+        }
+        try {
+            return Utils.toSha256(request.url() + '\n' + headers);
+        } catch (final NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    @Nonnull
+    private static Request toConditionalRequest(@Nonnull final Request request,
+                                                @Nullable final CachedResponse cached) {
+        if (cached == null) {
+            return request;
+        }
+        final String eTag = cached.getETag();
+        final String lastModified = cached.getLastModified();
+        if (eTag == null && lastModified == null) {
+            return request;
+        }
+
+        final Request.Builder builder = Request.newBuilder()
+                .httpMethod(request.httpMethod())
+                .url(request.url())
+                .headers(request.headers())
+                .localization(request.localization())
+                .automaticLocalizationHeader(false)
+                .followRedirects(request.followRedirects())
+                .cachePolicy(request.cachePolicy())
+                .cacheMaxAge(request.cacheMaxAgeMillis());
+        if (eTag != null) {
+            builder.setHeader("If-None-Match", eTag);
+        }
+        if (lastModified != null) {
+            builder.setHeader("If-Modified-Since", lastModified);
+        }
+        return builder.build();
+    }
+
+    @Nonnull
+    private Response onResponse(@Nonnull final String key,
+                                @Nonnull final Request request,
+                                @Nullable final CachedResponse cached,
+                                @Nonnull final Response response) {
+        final long now = System.currentTimeMillis();
+        if (cached != null && response.responseCode() == 304) {
+            revalidationCount.incrementAndGet();
+            final CachedResponse revalidated = cached.revalidated(request, response, now);
+            if (revalidated == null) {
+                remove(key);
+                return cached.toResponse();
+            }
+            put(revalidated);
+            return revalidated.toResponse();
+        }
+
+        missCount.incrementAndGet();
+        final CachedResponse entry = CachedResponse.of(key, request, response, now);
+        if (entry == null) {
+            if (response.responseCode() < 500) {
+                remove(key);
+            }
+        } else {
+            put(entry);
+        }
+        return response;
+    }
+
+    @Nullable
+    private CachedResponse getCached(@Nonnull final String key) {
+        synchronized (memoryCache) {
+            final CachedResponse cached = memoryCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        if (diskCache == null) {
+            return null;
+        }
+
+        final CachedResponse cached = diskCache.get(key);
+        if (cached != null) {
+            putInMemory(cached);
+        }
+        return cached;
+    }
+
+    private void put(@Nonnull final CachedResponse entry) {
+        putInMemory(entry);
+        if (diskCache != null) {
+            diskCache.put(entry);
+        }
+    }
+
+    private void putInMemory(@Nonnull final CachedResponse entry) {
+        final long weight = entry.getWeight();
+        synchronized (memoryCache) {
+            final CachedResponse previous = memoryCache.remove(entry.getKey());
+            if (previous != null) {
+                memorySize -= previous.getWeight();
+            }
+            // A single response must not evict most of the other ones
+            if (weight > maximumMemorySize / 8) {
+                return;
+            }
+
+            memoryCache.put(entry.getKey(), entry);
+            memorySize += weight;
+            final Iterator<CachedResponse> iterator = memoryCache.values().iterator();
+            while (memorySize > maximumMemorySize && iterator.hasNext()) {
+                memorySize -= iterator.next().getWeight();
+                iterator.remove();
+            }
+        }
+    }
+
+    private void remove(@Nonnull final String key) {
+        synchronized (memoryCache) {
+            final CachedResponse previous = memoryCache.remove(key);
+            if (previous != null) {
+                memorySize -= previous.getWeight();
+            }
+        }
+        if (diskCache != null) {
+            diskCache.remove(key);
+        }
+    }
+}
@@ -2,10 +2,12 @@ package org.schabi.newpipe.extractor.downloader;
 
 import okhttp3.Call;
 
+import javax.annotation.Nullable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 public class CancellableCall {
+    @Nullable
     private final Call call;
     private final CountDownLatch finished = new CountDownLatch(1);
     private final long startedAtNanos = System.nanoTime();
@@ -16,12 +18,22 @@ public class CancellableCall {
         this.call = call;
     }
 
+    /**
+     * Create a call which has not been sent over the network, e.g. because its response was
+     * cached. It has to be {@link #setFinished() finished} by its creator.
+     */
+    CancellableCall() {
+        this.call = null;
+    }
+
     public void cancel() {
-        call.cancel();
+        if (call != null) {
+            call.cancel();
+        }
     }
 
     public boolean isCancelled() {
-        return call.isCanceled();
+        return call != null && call.isCanceled();
     }
 
     public boolean isFinished() {
@@ -35,14 +47,19 @@ public class CancellableCall {
     }
 
     public long getElapsedTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(getElapsedTimeNanos());
+    }
+
+    public long getElapsedTimeNanos() {
         final long endNanos = isFinished ? finishedAtNanos : System.nanoTime();
-        return TimeUnit.NANOSECONDS.toMillis(endNanos - startedAtNanos);
+        return endNanos - startedAtNanos;
     }
 
     public boolean await(final long timeout, final TimeUnit unit) throws InterruptedException {
         return finished.await(timeout, unit);
     }
 
+    @Nullable
     Call getCall() {
         return call;
     }
@@ -0,0 +1,208 @@
+package org.schabi.newpipe.extractor.downloader;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The on-disk tier of a {@link CachingDownloader}: one file per cached response, named after its
+ * cache key, which is already a hash, in a directory whose total size is bounded.
+ *
+ * <p>
+ * Files are written to a temporary file first and then renamed, so that a crash never leaves a
+ * partially written entry. When the directory grows over its maximum size, the least recently
+ * used files are deleted until it uses at most 90% of it.
+ * </p>
+ *
+ * <p>
+ * File I/O only holds a lock striped by key, so that a slow read or write only delays requests
+ * for the same few keys, and never the whole cache.
+ * </p>
+ */
+final class DiskResponseCache {
+
+    private static final String SUFFIX = ".entry";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int LOCK_STRIPES = 32;
+
+    @Nonnull
+    private final File directory;
+    private final long maximumSize;
+    @Nonnull
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    // Guards size and trimming
+    @Nonnull
+    private final Object sizeLock = new Object();
+    // The size of the directory, or -1 if it has not been computed yet
+    private long size = -1;
+
+    DiskResponseCache(@Nonnull final File directory, final long maximumSize) {
+        this.directory = directory;
+        this.maximumSize = maximumSize;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Nullable
+    CachedResponse get(@Nonnull final String key) {
+        final File file = getFile(key);
+        synchronized (lockFor(key)) {
+            if (!file.isFile()) {
+                return null;
+            }
+
+            final CachedResponse entry;
+            try (DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)))) {
+                entry = CachedResponse.readFrom(input);
+            } catch (final IOException e) {
+                remove(key);
+                return null;
+            }
+            if (entry == null) {
+                // Written by another version, which may have stored the plain key
+                remove(key);
+                return null;
+            }
+            if (!entry.getKey().equals(key)) {
+                return null;
+            }
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return entry;
+        }
+    }
+
+    void put(@Nonnull final CachedResponse entry) {
+        final File file = getFile(entry.getKey());
+        final long sizeDelta;
+        synchronized (lockFor(entry.getKey())) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                return;
+            }
+
+            final File temporaryFile = new File(directory, file.getName() + TEMPORARY_SUFFIX);
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+                entry.writeTo(output);
+            } catch (final IOException e) {
+                //noinspection ResultOfMethodCallIgnored
+                temporaryFile.delete();
+                return;
+            }
+
+            final long previousLength = file.length();
+            if (!temporaryFile.renameTo(file)) {
+                // Some file systems can't rename over an existing file
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                if (!temporaryFile.renameTo(file)) {
+                    //noinspection ResultOfMethodCallIgnored
+                    temporaryFile.delete();
+                    sizeDelta = -previousLength;
+                } else {
+                    sizeDelta = file.length() - previousLength;
+                }
+            } else {
+                sizeDelta = file.length() - previousLength;
+            }
+        }
+
+        addToSize(sizeDelta);
+    }
+
+    void remove(@Nonnull final String key) {
+        final File file = getFile(key);
+        final long length;
+        synchronized (lockFor(key)) {
+            length = file.length();
+            if (!file.isFile() || !file.delete()) {
+                return;
+            }
+        }
+        addToSize(-length);
+    }
+
+    void clear() {
+        synchronized (sizeLock) {
+            for (final File file : listEntries()) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+            size = 0;
+        }
+    }
+
+    long size() {
+        synchronized (sizeLock) {
+            computeSizeIfNeeded();
+            return size;
+        }
+    }
+
+    private void addToSize(final long delta) {
+        synchronized (sizeLock) {
+            computeSizeIfNeeded();
+            size += delta;
+            if (size > maximumSize) {
+                trim();
+            }
+        }
+    }
+
+    private void trim() {
+        final File[] files = listEntries();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        // Start from the actual size, as concurrent writes may have made ours drift
+        size = 0;
+        for (final File file : files) {
+            size += file.length();
+        }
+        final long targetSize = maximumSize / 10 * 9;
+        for (final File file : files) {
+            if (size <= targetSize) {
+                break;
+            }
+            final long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private void computeSizeIfNeeded() {
+        if (size >= 0) {
+            return;
+        }
+        size = 0;
+        for (final File file : listEntries()) {
+            size += file.length();
+        }
+    }
+
+    @Nonnull
+    private File[] listEntries() {
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        return files == null ? new File[0] : files;
+    }
+
+    @Nonnull
+    private Object lockFor(@Nonnull final String key) {
+        return locks[(key.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    @Nonnull
+    private File getFile(@Nonnull final String key) {
+        return new File(directory, key + SUFFIX);
+    }
+}
@@ -26,6 +26,9 @@ public class Request {
     @Nullable
     private final Localization localization;
     private final boolean followRedirects;
+    @Nonnull
+    private final CachePolicy cachePolicy;
+    private final long cacheMaxAgeMillis;
 
     public Request(final String httpMethod,
                    final String url,
@@ -33,7 +36,8 @@ public class Request {
                    @Nullable final byte[] dataToSend,
                    @Nullable final Localization localization,
                    final boolean automaticLocalizationHeader) {
-        this(httpMethod, url, headers, dataToSend, localization, automaticLocalizationHeader, true);
+        this(httpMethod, url, headers, dataToSend, localization, automaticLocalizationHeader, true,
+                CachePolicy.DEFAULT, -1);
     }
 
     private Request(final String httpMethod,
@@ -42,7 +46,9 @@ public class Request {
                     @Nullable final byte[] dataToSend,
                     @Nullable final Localization localization,
                     final boolean automaticLocalizationHeader,
-                    final boolean followRedirects) {
+                    final boolean followRedirects,
+                    @Nonnull final CachePolicy cachePolicy,
+                    final long cacheMaxAgeMillis) {
         if (httpMethod == null) {
             throw new IllegalArgumentException("Request's httpMethod is null");
         }
@@ -55,6 +61,8 @@ public class Request {
         this.dataToSend = dataToSend;
         this.localization = localization;
         this.followRedirects = followRedirects;
+        this.cachePolicy = cachePolicy;
+        this.cacheMaxAgeMillis = cacheMaxAgeMillis;
 
         final Map<String, List<String>> actualHeaders = new LinkedHashMap<>();
         if (headers != null) {
@@ -69,7 +77,8 @@ public class Request {
 
     private Request(final Builder builder) {
         this(builder.httpMethod, builder.url, builder.headers, builder.dataToSend,
-                builder.localization, builder.automaticLocalizationHeader, builder.followRedirects);
+                builder.localization, builder.automaticLocalizationHeader, builder.followRedirects,
+                builder.cachePolicy, builder.cacheMaxAgeMillis);
     }
 
     /**
@@ -121,6 +130,23 @@ public class Request {
         return followRedirects;
     }
 
+    /**
+     * How a caching downloader may use its cache for this request.
+     */
+    @Nonnull
+    public CachePolicy cachePolicy() {
+        return cachePolicy;
+    }
+
+    /**
+     * For how long, in milliseconds, a response to this request may be considered fresh when it
+     * has no {@code Cache-Control: max-age} nor {@code Expires} header, or {@code -1} if it must
+     * then be revalidated.
+     */
+    public long cacheMaxAgeMillis() {
+        return cacheMaxAgeMillis;
+    }
+
     public static Builder newBuilder() {
         return new Builder();
     }
@@ -133,6 +159,8 @@ public class Request {
         private Localization localization;
         private boolean automaticLocalizationHeader = true;
         private boolean followRedirects = true;
+        private CachePolicy cachePolicy = CachePolicy.DEFAULT;
+        private long cacheMaxAgeMillis = -1;
 
         public Builder() {
         }
@@ -202,6 +230,23 @@ public class Request {
             return this;
         }
 
+        /**
+         * How a caching downloader may use its cache for this request.
+         */
+        public Builder cachePolicy(@Nonnull final CachePolicy cachePolicyToSet) {
+            this.cachePolicy = cachePolicyToSet;
+            return this;
+        }
+
+        /**
+         * For how long, in milliseconds, a response to this request may be considered fresh when
+         * the server doesn't say it with {@code Cache-Control: max-age} or {@code Expires}.
+         */
+        public Builder cacheMaxAge(final long cacheMaxAgeMillisToSet) {
+            this.cacheMaxAgeMillis = cacheMaxAgeMillisToSet;
+            return this;
+        }
+
 
         public Request build() {
             return new Request(this);
@@ -0,0 +1,306 @@
+package org.schabi.newpipe.extractor.localization;
+
+import org.schabi.newpipe.extractor.timeago.PatternsHolder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The phrases of a {@link PatternsHolder} compiled into a single trie, used by
+ * {@link TimeAgoParser} to find the time unit of a textual date.
+ *
+ * <p>
+ * Phrases are lowercased once when the trie is built, and the textual date is folded character
+ * by character while it is matched, so that a lookup doesn't compile any regular expression nor
+ * allocate any object. A phrase matches if it is surrounded by word separators or by the start
+ * and the end of the textual date, or anywhere if the language has no word separator.
+ * </p>
+ *
+ * <p>
+ * Matchers are built lazily and cached per {@link PatternsHolder} with {@link #of(PatternsHolder)}.
+ * </p>
+ */
+final class TimeAgoMatcher {
+
+    /**
+     * The value returned when no phrase matches.
+     */
+    static final int NO_MATCH = -1;
+
+    private static final ConcurrentHashMap<PatternsHolder, TimeAgoMatcher> MATCHERS =
+            new ConcurrentHashMap<>();
+
+    private static final ChronoUnit[] UNITS = {ChronoUnit.SECONDS, ChronoUnit.MINUTES,
+            ChronoUnit.HOURS, ChronoUnit.DAYS, ChronoUnit.WEEKS, ChronoUnit.MONTHS,
+            ChronoUnit.YEARS};
+
+    /**
+     * The word separator, or {@code null} if horizontal spaces are word separators.
+     */
+    @Nullable
+    private final String wordSeparator;
+    private final boolean hasWordSeparator;
+
+    // The trie nodes, as sorted child keys and child indexes per node
+    @Nonnull
+    private final char[][] childKeys;
+    @Nonnull
+    private final int[][] children;
+    // The best special case and unit phrase priorities ending at each node, or NO_MATCH
+    @Nonnull
+    private final int[] specialCasePriorities;
+    @Nonnull
+    private final int[] unitPriorities;
+
+    // Results indexed by priority: special cases first, in order, then units
+    @Nonnull
+    private final ChronoUnit[] resultUnits;
+    @Nonnull
+    private final int[] resultAmounts;
+    private final int specialCaseCount;
+
+    private TimeAgoMatcher(@Nonnull final PatternsHolder patternsHolder) {
+        final String separator = patternsHolder.wordSeparator();
+        hasWordSeparator = !separator.isEmpty();
+        wordSeparator = " ".equals(separator) ? null : separator;
+
+        final List<ChronoUnit> units = new ArrayList<>();
+        final List<Integer> amounts = new ArrayList<>();
+        final Builder builder = new Builder();
+
+        for (final Map.Entry<ChronoUnit, Map<String, Integer>> caseUnitEntry
+                : patternsHolder.specialCases().entrySet()) {
+            for (final Map.Entry<String, Integer> caseEntry
+                    : caseUnitEntry.getValue().entrySet()) {
+                builder.add(caseEntry.getKey(), units.size(), true);
+                units.add(caseUnitEntry.getKey());
+                amounts.add(caseEntry.getValue());
+            }
+        }
+        specialCaseCount = units.size();
+
+        final Map<ChronoUnit, Collection<String>> phrases = patternsHolder.asMap();
+        for (final ChronoUnit unit : UNITS) {
+            final Collection<String> unitPhrases = phrases.get(unit);
+            if (unitPhrases != null) {
+                for (final String phrase : unitPhrases) {
+                    builder.add(phrase, units.size(), false);
+                }
+            }
+            units.add(unit);
+            amounts.add(NO_MATCH);
+        }
+
+        resultUnits = units.toArray(new ChronoUnit[0]);
+        resultAmounts = new int[amounts.size()];
+        for (int i = 0; i < resultAmounts.length; i++) {
+            resultAmounts[i] = amounts.get(i);
+        }
+
+        final int nodeCount = builder.nodes.size();
+        childKeys = new char[nodeCount][];
+        children = new int[nodeCount][];
+        specialCasePriorities = new int[nodeCount];
+        unitPriorities = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            final Builder.Node node = builder.nodes.get(i);
+            childKeys[i] = new char[node.children.size()];
+            children[i] = new int[node.children.size()];
+            int j = 0;
+            for (final Map.Entry<Character, Integer> child : node.children.entrySet()) {
+                childKeys[i][j] = child.getKey();
+                children[i][j] = child.getValue();
+                j++;
+            }
+            specialCasePriorities[i] = node.specialCasePriority;
+            unitPriorities[i] = node.unitPriority;
+        }
+    }
+
+    /**
+     * Get the matcher of a patterns holder, building it on first use.
+     *
+     * @param patternsHolder the patterns holder
+     * @return the matcher of the patterns holder
+     */
+    @Nonnull
+    static TimeAgoMatcher of(@Nonnull final PatternsHolder patternsHolder) {
+        final TimeAgoMatcher matcher = MATCHERS.get(patternsHolder);
+        if (matcher != null) {
+            return matcher;
+        }
+        return MATCHERS.computeIfAbsent(patternsHolder, TimeAgoMatcher::new);
+    }
+
+    /**
+     * Find the matching phrase with the highest priority in a textual date.
+     *
+     * <p>
+     * Special cases come first, in the order they were put in the patterns holder, then the units
+     * from seconds to years.
+     * </p>
+     *
+     * @param textualDate         the textual date
+     * @param includeSpecialCases whether special cases may match
+     * @return the priority of the match, to be passed to {@link #getUnit(int)} and
+     * {@link #getAmount(int)}, or {@link #NO_MATCH}
+     */
+    int match(@Nonnull final String textualDate, final boolean includeSpecialCases) {
+        final int length = textualDate.length();
+        int best = NO_MATCH;
+
+        for (int start = 0; start < length; start++) {
+            if (!isWordStart(textualDate, start)) {
+                continue;
+            }
+
+            int node = 0;
+            for (int i = start; i < length; i++) {
+                node = getChild(node, fold(textualDate.charAt(i)));
+                if (node == NO_MATCH) {
+                    break;
+                }
+
+                final int priority = getPriority(node, includeSpecialCases);
+                if (priority != NO_MATCH && (best == NO_MATCH || priority < best)
+                        && isWordEnd(textualDate, i + 1)) {
+                    best = priority;
+                    if (best == 0) {
+                        return best;
+                    }
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * @param priority a priority returned by {@link #match(String, boolean)}
+     * @return the time unit of the match
+     */
+    @Nonnull
+    ChronoUnit getUnit(final int priority) {
+        return resultUnits[priority];
+    }
+
+    /**
+     * @param priority a priority returned by {@link #match(String, boolean)}
+     * @return the amount of a special case, or {@link #NO_MATCH} if the amount has to be parsed
+     * from the textual date
+     */
+    int getAmount(final int priority) {
+        return resultAmounts[priority];
+    }
+
+    private int getPriority(final int node, final boolean includeSpecialCases) {
+        if (includeSpecialCases && specialCasePriorities[node] != NO_MATCH) {
+            return specialCasePriorities[node];
+        }
+        return unitPriorities[node];
+    }
+
+    private int getChild(final int node, final char key) {
+        final char[] keys = childKeys[node];
+        int low = 0;
+        int high = keys.length - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (keys[middle] < key) {
+                low = middle + 1;
+            } else if (keys[middle] > key) {
+                high = middle - 1;
+            } else {
+                return children[node][middle];
+            }
+        }
+        return NO_MATCH;
+    }
+
+    private boolean isWordStart(@Nonnull final String text, final int index) {
+        if (!hasWordSeparator || index == 0) {
+            return true;
+        }
+        if (wordSeparator == null) {
+            return isHorizontalSpace(text.charAt(index - 1));
+        }
+        return text.startsWith(wordSeparator, index - wordSeparator.length());
+    }
+
+    private boolean isWordEnd(@Nonnull final String text, final int index) {
+        if (!hasWordSeparator || index == text.length()) {
+            return true;
+        }
+        if (wordSeparator == null) {
+            return isHorizontalSpace(text.charAt(index));
+        }
+        return text.startsWith(wordSeparator, index);
+    }
+
+    /**
+     * Lowercase a character, also folding the Greek final sigma, which {@link String#toLowerCase()}
+     * produces depending on the position of the character in the word.
+     */
+    private static char fold(final char c) {
+        final char lowercase = Character.toLowerCase(c);
+        return lowercase == '\u03C2' ? '\u03C3' : lowercase;
+    }
+
+    /**
+     * Same characters as the {@code \h} regular expression class.
+     */
+    private static boolean isHorizontalSpace(final char c) {
+        return c == ' ' || c == '\t' || c == '\u00A0' || c == '\u1680' || c == '\u180E'
+                || (c >= '\u2000' && c <= '\u200A') || c == '\u202F' || c == '\u205F'
+                || c == '\u3000';
+    }
+
+    private static final class Builder {
+        private final List<Node> nodes = new ArrayList<>();
+
+        private Builder() {
+            nodes.add(new Node());
+        }
+
+        private void add(@Nonnull final String phrase, final int priority,
+                         final boolean isSpecialCase) {
+            if (phrase.isEmpty()) {
+                return;
+            }
+
+            int node = 0;
+            for (int i = 0; i < phrase.length(); i++) {
+                final char key = fold(phrase.charAt(i));
+                Integer child = nodes.get(node).children.get(key);
+                if (child == null) {
+                    child = nodes.size();
+                    nodes.get(node).children.put(key, child);
+                    nodes.add(new Node());
+                }
+                node = child;
+            }
+
+            final Node terminal = nodes.get(node);
+            if (isSpecialCase) {
+                if (terminal.specialCasePriority == NO_MATCH) {
+                    terminal.specialCasePriority = priority;
+                }
+            } else if (terminal.unitPriority == NO_MATCH) {
+                terminal.unitPriority = priority;
+            }
+        }
+
+        private static final class Node {
+            private final TreeMap<Character, Integer> children = new TreeMap<>();
+            private int specialCasePriority = NO_MATCH;
+            private int unitPriority = NO_MATCH;
+        }
+    }
+}
@@ -2,34 +2,45 @@ package org.schabi.newpipe.extractor.localization;
 
 import org.schabi.newpipe.extractor.exceptions.ParsingException;
 import org.schabi.newpipe.extractor.timeago.PatternsHolder;
-import org.schabi.newpipe.extractor.utils.Parser;
 
+import java.time.Clock;
 import java.time.OffsetDateTime;
-import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
-import java.util.Map;
-import java.util.regex.Pattern;
 
 /**
  * A helper class that is meant to be used by services that need to parse upload dates in the
  * format '2 days ago' or similar.
  */
 public class TimeAgoParser {
-    private final PatternsHolder patternsHolder;
-    private final OffsetDateTime now;
+    private final TimeAgoMatcher matcher;
+    private final Clock clock;
 
     /**
-     * Creates a helper to parse upload dates in the format '2 days ago'.
+     * Creates a helper to parse upload dates in the format '2 days ago', relative to the current
+     * UTC time.
      * <p>
-     * Instantiate a new {@link TimeAgoParser} every time you extract a new batch of items.
+     * Parsers don't hold any state, so they can be shared between threads and extractions, see
+     * {@link TimeAgoPatternsManager#getTimeAgoParserFor(Localization)}.
      * </p>
      *
      * @param patternsHolder An object that holds the "time ago" patterns, special cases, and the
      *                       language word separator.
      */
     public TimeAgoParser(final PatternsHolder patternsHolder) {
-        this.patternsHolder = patternsHolder;
-        now = OffsetDateTime.now(ZoneOffset.UTC);
+        this(patternsHolder, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a helper to parse upload dates in the format '2 days ago'.
+     *
+     * @param patternsHolder An object that holds the "time ago" patterns, special cases, and the
+     *                       language word separator.
+     * @param clock          The clock giving the time parsed dates are relative to, read on
+     *                       every parse.
+     */
+    public TimeAgoParser(final PatternsHolder patternsHolder, final Clock clock) {
+        this.matcher = TimeAgoMatcher.of(patternsHolder);
+        this.clock = clock;
     }
 
     /**
@@ -43,81 +54,51 @@ public class TimeAgoParser {
      * @throws ParsingException if the time unit could not be recognized
      */
     public DateWrapper parse(final String textualDate) throws ParsingException {
-        for (final Map.Entry<ChronoUnit, Map<String, Integer>> caseUnitEntry
-                : patternsHolder.specialCases().entrySet()) {
-            final ChronoUnit chronoUnit = caseUnitEntry.getKey();
-            for (final Map.Entry<String, Integer> caseMapToAmountEntry
-                    : caseUnitEntry.getValue().entrySet()) {
-                final String caseText = caseMapToAmountEntry.getKey();
-                final Integer caseAmount = caseMapToAmountEntry.getValue();
-
-                if (textualDateMatches(textualDate, caseText)) {
-                    return getResultFor(caseAmount, chronoUnit);
-                }
-            }
+        final int match = matcher.match(textualDate, true);
+        if (match == TimeAgoMatcher.NO_MATCH) {
+            throw new ParsingException("Unable to parse the date: " + textualDate);
         }
 
-        return getResultFor(parseTimeAgoAmount(textualDate), parseChronoUnit(textualDate));
+        final int specialCaseAmount = matcher.getAmount(match);
+        return getResultFor(specialCaseAmount != TimeAgoMatcher.NO_MATCH
+                ? specialCaseAmount : parseTimeAgoAmount(textualDate), matcher.getUnit(match));
     }
 
     public long parseDuration(final String textualDuration) {
         final int amount = parseTimeAgoAmount(textualDuration);
-        ChronoUnit unit;
-        try {
-            unit = parseChronoUnit(textualDuration);
-        } catch (final ParsingException e) {
-            unit = ChronoUnit.SECONDS;
-        }
+        final int match = matcher.match(textualDuration, false);
+        final ChronoUnit unit = match == TimeAgoMatcher.NO_MATCH
+                ? ChronoUnit.SECONDS : matcher.getUnit(match);
 
         return amount * unit.getDuration().getSeconds();
     }
 
-    private int parseTimeAgoAmount(final String textualDate) {
-        try {
-            return Integer.parseInt(textualDate.replaceAll("\\D+", ""));
-        } catch (final NumberFormatException ignored) {
-            // If there is no valid number in the textual date,
-            // assume it is 1 (as in 'a second ago').
-            return 1;
-        }
-    }
-
-    private ChronoUnit parseChronoUnit(final String textualDate) throws ParsingException {
-        return patternsHolder.asMap().entrySet().stream()
-                .filter(e -> e.getValue().stream()
-                        .anyMatch(agoPhrase -> textualDateMatches(textualDate, agoPhrase)))
-                .map(Map.Entry::getKey)
-                .findFirst()
-                .orElseThrow(() ->
-                        new ParsingException("Unable to parse the date: " + textualDate));
-    }
-
-    private boolean textualDateMatches(final String textualDate, final String agoPhrase) {
-        if (textualDate.equals(agoPhrase)) {
-            return true;
-        }
-
-        if (patternsHolder.wordSeparator().isEmpty()) {
-            return textualDate.toLowerCase().contains(agoPhrase.toLowerCase());
+    /**
+     * Concatenate all the ASCII digits of a textual date into a number.
+     *
+     * @return the number, or 1 if there is no digit or if the number doesn't fit in an int
+     */
+    private static int parseTimeAgoAmount(final String textualDate) {
+        long amount = 0;
+        boolean hasDigit = false;
+        for (int i = 0; i < textualDate.length(); i++) {
+            final char c = textualDate.charAt(i);
+            if (c >= '0' && c <= '9') {
+                hasDigit = true;
+                amount = amount * 10 + (c - '0');
+                if (amount > Integer.MAX_VALUE) {
+                    return 1;
+                }
+            }
         }
 
-        final String escapedPhrase = Pattern.quote(agoPhrase.toLowerCase());
-        final String escapedSeparator = patternsHolder.wordSeparator().equals(" ")
-                // From JDK8 → \h - Treat horizontal spaces as a normal one
-                // (non-breaking space, thin space, etc.)
-                ? "[ \\t\\xA0\\u1680\\u180e\\u2000-\\u200a\\u202f\\u205f\\u3000]"
-                : Pattern.quote(patternsHolder.wordSeparator());
-
-        // (^|separator)pattern($|separator)
-        // Check if the pattern is surrounded by separators or start/end of the string.
-        final String pattern =
-                "(^|" + escapedSeparator + ")" + escapedPhrase + "($|" + escapedSeparator + ")";
-
-        return Parser.isMatch(pattern, textualDate.toLowerCase());
+        // If there is no valid number in the textual date,
+        // assume it is 1 (as in 'a second ago').
+        return hasDigit ? (int) amount : 1;
     }
 
     private DateWrapper getResultFor(final int timeAgoAmount, final ChronoUnit chronoUnit) {
-        OffsetDateTime offsetDateTime = now;
+        OffsetDateTime offsetDateTime = OffsetDateTime.now(clock);
         boolean isApproximation = false;
 
         switch (chronoUnit) {
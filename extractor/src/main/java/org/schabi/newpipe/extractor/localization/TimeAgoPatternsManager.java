@@ -5,8 +5,15 @@ import org.schabi.newpipe.extractor.timeago.PatternsManager;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class TimeAgoPatternsManager {
+    /**
+     * Parsers are stateless, so a single one is shared per patterns holder.
+     */
+    private static final ConcurrentHashMap<PatternsHolder, TimeAgoParser> PARSERS =
+            new ConcurrentHashMap<>();
+
     private TimeAgoPatternsManager() {
     }
 
@@ -24,6 +31,10 @@ public final class TimeAgoPatternsManager {
             return null;
         }
 
-        return new TimeAgoParser(holder);
+        final TimeAgoParser parser = PARSERS.get(holder);
+        if (parser != null) {
+            return parser;
+        }
+        return PARSERS.computeIfAbsent(holder, TimeAgoParser::new);
     }
 }
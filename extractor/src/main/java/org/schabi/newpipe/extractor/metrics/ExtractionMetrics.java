@@ -0,0 +1,96 @@
+package org.schabi.newpipe.extractor.metrics;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Receives timings, counters and values recorded by the extractor, keyed by service ID and
+ * stage name (e.g. {@code request.jsonPlayer}, {@code await.required} or
+ * {@code streamInfo.streams}).
+ *
+ * <p>
+ * An implementation can be registered with
+ * {@link org.schabi.newpipe.extractor.NewPipe#setExtractionMetrics(ExtractionMetrics)}. The
+ * default one, {@link #NO_OP}, records nothing: its {@link #isEnabled()} method always returns
+ * {@code false}, so that the timers used on hot paths don't even read the clock.
+ * </p>
+ *
+ * <p>
+ * Implementations must be thread-safe, as metrics are recorded from all extraction threads.
+ * </p>
+ *
+ * @see InMemoryExtractionMetrics
+ */
+public interface ExtractionMetrics {
+
+    /**
+     * The metrics implementation which records nothing, used by default.
+     */
+    ExtractionMetrics NO_OP = new NoOpExtractionMetrics();
+
+    /**
+     * @return whether this implementation records anything
+     */
+    boolean isEnabled();
+
+    /**
+     * Record the duration of a stage.
+     *
+     * @param serviceId     the ID of the service the stage belongs to
+     * @param stage         the name of the stage
+     * @param durationNanos the duration of the stage, in nanoseconds
+     */
+    void recordDuration(int serviceId, @Nonnull String stage, long durationNanos);
+
+    /**
+     * Record a value in the histogram of a metric.
+     *
+     * @param serviceId the ID of the service the metric belongs to
+     * @param name      the name of the metric
+     * @param value     the value to record, which must not be negative
+     */
+    void recordValue(int serviceId, @Nonnull String name, long value);
+
+    /**
+     * Increment a counter.
+     *
+     * @param serviceId the ID of the service the counter belongs to
+     * @param name      the name of the counter
+     * @param delta     the amount to add to the counter
+     */
+    void incrementCounter(int serviceId, @Nonnull String name, long delta);
+
+    /**
+     * Increment a counter by one.
+     *
+     * @param serviceId the ID of the service the counter belongs to
+     * @param name      the name of the counter
+     */
+    default void incrementCounter(final int serviceId, @Nonnull final String name) {
+        incrementCounter(serviceId, name, 1);
+    }
+
+    /**
+     * Start timing a stage.
+     *
+     * @return the value to pass to {@link #stopTimer(int, String, long)}, which is {@code 0} if
+     * this implementation is not enabled
+     */
+    default long startTimer() {
+        return isEnabled() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the duration of a stage started with {@link #startTimer()}.
+     *
+     * @param serviceId      the ID of the service the stage belongs to
+     * @param stage          the name of the stage
+     * @param startedAtNanos the value returned by {@link #startTimer()}
+     */
+    default void stopTimer(final int serviceId,
+                           @Nonnull final String stage,
+                           final long startedAtNanos) {
+        if (isEnabled()) {
+            recordDuration(serviceId, stage, System.nanoTime() - startedAtNanos);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.schabi.newpipe.extractor.metrics;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An {@link ExtractionMetrics} implementation keeping a {@link MetricsHistogram} per service and
+ * stage, and a counter per service and name, in memory.
+ *
+ * <p>
+ * Durations are recorded in nanoseconds. Clients can scrape the histograms periodically, e.g.
+ * to export the p50 and the p99 of each stage, and {@link #reset()} them afterwards.
+ * </p>
+ */
+public final class InMemoryExtractionMetrics implements ExtractionMetrics {
+
+    @Nonnull
+    private final ConcurrentHashMap<Integer, ConcurrentHashMap<String, MetricsHistogram>>
+            histograms = new ConcurrentHashMap<>();
+    @Nonnull
+    private final ConcurrentHashMap<Integer, ConcurrentHashMap<String, LongAdder>> counters =
+            new ConcurrentHashMap<>();
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void recordDuration(final int serviceId,
+                               @Nonnull final String stage,
+                               final long durationNanos) {
+        getOrCreateHistogram(serviceId, stage).record(durationNanos);
+    }
+
+    @Override
+    public void recordValue(final int serviceId, @Nonnull final String name, final long value) {
+        getOrCreateHistogram(serviceId, name).record(value);
+    }
+
+    @Override
+    public void incrementCounter(final int serviceId,
+                                 @Nonnull final String name,
+                                 final long delta) {
+        ConcurrentHashMap<String, LongAdder> serviceCounters = counters.get(serviceId);
+        if (serviceCounters == null) {
+            serviceCounters = counters.computeIfAbsent(serviceId,
+                    id -> new ConcurrentHashMap<>());
+        }
+
+        LongAdder counter = serviceCounters.get(name);
+        if (counter == null) {
+            counter = serviceCounters.computeIfAbsent(name, key -> new LongAdder());
+        }
+        counter.add(delta);
+    }
+
+    /**
+     * Get the histogram of a stage or a metric.
+     *
+     * @param serviceId the ID of the service
+     * @param name      the name of the stage or the metric
+     * @return the histogram, or {@code null} if nothing has been recorded for it
+     */
+    @Nullable
+    public MetricsHistogram getHistogram(final int serviceId, @Nonnull final String name) {
+        final Map<String, MetricsHistogram> serviceHistograms = histograms.get(serviceId);
+        return serviceHistograms == null ? null : serviceHistograms.get(name);
+    }
+
+    /**
+     * Get the value of a counter.
+     *
+     * @param serviceId the ID of the service
+     * @param name      the name of the counter
+     * @return the value of the counter, which is {@code 0} if it has never been incremented
+     */
+    public long getCounter(final int serviceId, @Nonnull final String name) {
+        final Map<String, LongAdder> serviceCounters = counters.get(serviceId);
+        if (serviceCounters == null) {
+            return 0;
+        }
+        final LongAdder counter = serviceCounters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * @return the histograms of a service, by stage or metric name
+     */
+    @Nonnull
+    public Map<String, MetricsHistogram> getHistograms(final int serviceId) {
+        final Map<String, MetricsHistogram> serviceHistograms = histograms.get(serviceId);
+        return serviceHistograms == null
+                ? Collections.emptyMap() : Collections.unmodifiableMap(serviceHistograms);
+    }
+
+    /**
+     * @return a snapshot of the counters of a service, by name
+     */
+    @Nonnull
+    public Map<String, Long> getCounters(final int serviceId) {
+        final Map<String, LongAdder> serviceCounters = counters.get(serviceId);
+        if (serviceCounters == null) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, Long> snapshot = new HashMap<>();
+        for (final Map.Entry<String, LongAdder> entry : serviceCounters.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reset all histograms and counters.
+     */
+    public void reset() {
+        for (final Map<String, MetricsHistogram> serviceHistograms : histograms.values()) {
+            for (final MetricsHistogram histogram : serviceHistograms.values()) {
+                histogram.reset();
+            }
+        }
+        for (final Map<String, LongAdder> serviceCounters : counters.values()) {
+            for (final LongAdder counter : serviceCounters.values()) {
+                counter.reset();
+            }
+        }
+    }
+
+    @Nonnull
+    private MetricsHistogram getOrCreateHistogram(final int serviceId,
+                                                  @Nonnull final String name) {
+        ConcurrentHashMap<String, MetricsHistogram> serviceHistograms =
+                histograms.get(serviceId);
+        if (serviceHistograms == null) {
+            serviceHistograms = histograms.computeIfAbsent(serviceId,
+                    id -> new ConcurrentHashMap<>());
+        }
+
+        final MetricsHistogram histogram = serviceHistograms.get(name);
+        if (histogram != null) {
+            return histogram;
+        }
+        return serviceHistograms.computeIfAbsent(name, key -> new MetricsHistogram());
+    }
+}
@@ -0,0 +1,160 @@
+package org.schabi.newpipe.extractor.metrics;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of non-negative long values, with buckets laid out like an HDR
+ * histogram.
+ *
+ * <p>
+ * Values below {@code 128} have their own bucket. Above, every power of two range is split into
+ * {@code 64} buckets of equal width, so that recorded values are known with a relative error of
+ * at most {@code 1/64}, whatever their magnitude, using a fixed amount of memory.
+ * </p>
+ *
+ * <p>
+ * Recording a value only increments a few atomic counters and never allocates.
+ * </p>
+ */
+public final class MetricsHistogram {
+
+    private static final int SUB_BUCKET_HALF_COUNT_BITS = 6;
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_HALF_COUNT_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKET_HALF_COUNT << 1;
+    private static final int BUCKET_COUNT =
+            (64 - SUB_BUCKET_HALF_COUNT_BITS) * SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+
+    @Nonnull
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a value.
+     *
+     * @param value the value to record; negative values are recorded as {@code 0}
+     */
+    public void record(final long value) {
+        final long recordedValue = Math.max(0, value);
+        counts.incrementAndGet(getBucketIndex(recordedValue));
+        totalCount.incrementAndGet();
+        sum.addAndGet(recordedValue);
+        updateMin(recordedValue);
+        updateMax(recordedValue);
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * @return the smallest recorded value, or {@code 0} if no value has been recorded
+     */
+    public long getMin() {
+        final long currentMin = min.get();
+        return currentMin == Long.MAX_VALUE ? 0 : currentMin;
+    }
+
+    /**
+     * @return the largest recorded value, or {@code 0} if no value has been recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the recorded values, or {@code 0} if no value has been recorded
+     */
+    public double getMean() {
+        final long count = totalCount.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * Get the value at a given percentile.
+     *
+     * @param percentile the percentile, between {@code 0} and {@code 100}
+     * @return the highest value which is equivalent, within the precision of the histogram, to the
+     * value at the given percentile, or {@code 0} if no value has been recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        final long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+
+        final double boundedPercentile = Math.min(Math.max(percentile, 0), 100);
+        final long targetRank = Math.max(1, (long) Math.ceil(boundedPercentile / 100 * count));
+        long rank = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            rank += counts.get(i);
+            if (rank >= targetRank) {
+                return Math.min(getHighestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Remove all recorded values.
+     *
+     * <p>
+     * Values recorded concurrently may be partially kept.
+     * </p>
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return "MetricsHistogram[count=" + getCount() + ", min=" + getMin()
+                + ", p50=" + getValueAtPercentile(50) + ", p99=" + getValueAtPercentile(99)
+                + ", max=" + getMax() + "]";
+    }
+
+    static int getBucketIndex(final long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_HALF_COUNT_BITS;
+        return (shift << SUB_BUCKET_HALF_COUNT_BITS) + (int) (value >>> shift);
+    }
+
+    static long getHighestEquivalentValue(final int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        final int shift = (index >>> SUB_BUCKET_HALF_COUNT_BITS) - 1;
+        final long subBucket = (index & (SUB_BUCKET_HALF_COUNT - 1)) + SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    private void updateMin(final long value) {
+        long currentMin = min.get();
+        while (value < currentMin && !min.compareAndSet(currentMin, value)) {
+            currentMin = min.get();
+        }
+    }
+
+    private void updateMax(final long value) {
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.schabi.newpipe.extractor.metrics;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The {@link ExtractionMetrics} implementation which records nothing.
+ *
+ * <p>
+ * All its methods are empty, so calls to them are removed once inlined.
+ * </p>
+ */
+final class NoOpExtractionMetrics implements ExtractionMetrics {
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    @Override
+    public void recordDuration(final int serviceId,
+                               @Nonnull final String stage,
+                               final long durationNanos) {
+    }
+
+    @Override
+    public void recordValue(final int serviceId, @Nonnull final String name, final long value) {
+    }
+
+    @Override
+    public void incrementCounter(final int serviceId,
+                                 @Nonnull final String name,
+                                 final long delta) {
+    }
+
+    @Override
+    public long startTimer() {
+        return 0;
+    }
+
+    @Override
+    public void stopTimer(final int serviceId,
+                          @Nonnull final String stage,
+                          final long startedAtNanos) {
+    }
+}
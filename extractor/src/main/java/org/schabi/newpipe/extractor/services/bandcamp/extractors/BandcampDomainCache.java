@@ -0,0 +1,261 @@
+package org.schabi.newpipe.extractor.services.bandcamp.extractors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of whether hosts which are not on {@code bandcamp.com} are Bandcamp custom domains.
+ *
+ * <p>
+ * Finding out whether a custom domain is supported requires downloading one of its pages, which
+ * {@link BandcampExtractorHelper#isSupportedDomain(String)} would otherwise do from every link
+ * handler factory for every URL to classify. Both positive and negative verdicts are cached per
+ * host and shared by all Bandcamp link handler factories. At most {@link #MAXIMUM_SIZE} verdicts
+ * are kept, the least recently used one being dropped first; custom domains added with
+ * {@link #addCustomDomain(String)} are kept apart and never dropped.
+ * </p>
+ *
+ * <p>
+ * Verdicts can be persisted by the client with {@link #snapshot()} and {@link #restore(Map)}, and
+ * the offline-only mode makes URL routing never touch the network: hosts without a cached
+ * verdict are then considered unsupported.
+ * </p>
+ */
+public final class BandcampDomainCache {
+
+    /**
+     * The default time to live of a verdict for a host which is a Bandcamp custom domain.
+     */
+    public static final long DEFAULT_POSITIVE_TTL_MILLIS = 30L * 24L * 60L * 60L * 1000L;
+
+    /**
+     * The default time to live of a verdict for a host which is not a Bandcamp custom domain.
+     */
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 24L * 60L * 60L * 1000L;
+
+    /**
+     * The maximum number of cached verdicts, not counting the custom domains added with
+     * {@link #addCustomDomain(String)}.
+     */
+    public static final int MAXIMUM_SIZE = 1024;
+
+    // Access-ordered, so that the least recently used verdict is evicted first; guarded by itself
+    @Nonnull
+    private static final LinkedHashMap<String, Verdict> VERDICTS =
+            new LinkedHashMap<String, Verdict>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Verdict> eldest) {
+                    return size() > MAXIMUM_SIZE;
+                }
+            };
+    @Nonnull
+    private static final Set<String> CUSTOM_DOMAINS = ConcurrentHashMap.newKeySet();
+
+    private static volatile long positiveTtlMillis = DEFAULT_POSITIVE_TTL_MILLIS;
+    private static volatile long negativeTtlMillis = DEFAULT_NEGATIVE_TTL_MILLIS;
+    private static volatile boolean offlineOnly = false;
+
+    private BandcampDomainCache() {
+    }
+
+    /**
+     * Get the cached verdict for the host of the given URL.
+     *
+     * @param url the URL to check
+     * @return {@link Boolean#TRUE} if the host is a known custom domain, {@link Boolean#FALSE} if
+     * it is known not to be one, or {@code null} if there is no valid verdict for it
+     */
+    @Nullable
+    static Boolean get(@Nonnull final String url) {
+        final String host = getHost(url);
+        if (host == null) {
+            return Boolean.FALSE;
+        }
+
+        if (CUSTOM_DOMAINS.contains(host)) {
+            return Boolean.TRUE;
+        }
+        synchronized (VERDICTS) {
+            final Verdict verdict = VERDICTS.get(host);
+            if (verdict == null) {
+                return null;
+            }
+            if (verdict.isExpired()) {
+                VERDICTS.remove(host);
+                return null;
+            }
+            return verdict.isSupported();
+        }
+    }
+
+    /**
+     * Cache the verdict for the host of the given URL.
+     *
+     * @param url       the URL which has been checked
+     * @param supported whether the host is a Bandcamp custom domain
+     */
+    static void put(@Nonnull final String url, final boolean supported) {
+        final String host = getHost(url);
+        if (host != null) {
+            final Verdict verdict = new Verdict(supported, System.currentTimeMillis()
+                    + (supported ? positiveTtlMillis : negativeTtlMillis));
+            synchronized (VERDICTS) {
+                VERDICTS.put(host, verdict);
+            }
+        }
+    }
+
+    /**
+     * Mark a host as a Bandcamp custom domain, without expiration.
+     *
+     * @param host the host of the custom domain, e.g. {@code music.example.com}
+     */
+    public static void addCustomDomain(@Nonnull final String host) {
+        CUSTOM_DOMAINS.add(host.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return whether URL routing is allowed to download pages of unknown hosts
+     */
+    public static boolean isOfflineOnly() {
+        return offlineOnly;
+    }
+
+    /**
+     * Set whether URL routing must never touch the network.
+     *
+     * <p>
+     * When enabled, hosts without a cached verdict are considered as not supported.
+     * </p>
+     *
+     * @param offlineOnly {@code true} to never download pages to check custom domains
+     */
+    public static void setOfflineOnly(final boolean offlineOnly) {
+        BandcampDomainCache.offlineOnly = offlineOnly;
+    }
+
+    /**
+     * Set the time to live of cached verdicts.
+     *
+     * <p>
+     * It only applies to verdicts cached after this call.
+     * </p>
+     *
+     * @param positiveTtlMillis the time to live of verdicts for custom domains
+     * @param negativeTtlMillis the time to live of verdicts for other hosts
+     * @throws IllegalArgumentException if a time to live is not positive
+     */
+    public static void setTtl(final long positiveTtlMillis, final long negativeTtlMillis) {
+        if (positiveTtlMillis <= 0 || negativeTtlMillis <= 0) {
+            throw new IllegalArgumentException("Invalid time to live");
+        }
+        BandcampDomainCache.positiveTtlMillis = positiveTtlMillis;
+        BandcampDomainCache.negativeTtlMillis = negativeTtlMillis;
+    }
+
+    /**
+     * Get a copy of all valid verdicts, which can be persisted and given back to
+     * {@link #restore(Map)} on the next start.
+     *
+     * @return a map of hosts to their verdict
+     */
+    @Nonnull
+    public static Map<String, Verdict> snapshot() {
+        final Map<String, Verdict> snapshot = new HashMap<>();
+        synchronized (VERDICTS) {
+            for (final Map.Entry<String, Verdict> entry : VERDICTS.entrySet()) {
+                if (!entry.getValue().isExpired()) {
+                    snapshot.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        for (final String host : CUSTOM_DOMAINS) {
+            snapshot.put(host, new Verdict(true, Long.MAX_VALUE));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Restore verdicts previously returned by {@link #snapshot()}.
+     *
+     * <p>
+     * Expired verdicts are ignored.
+     * </p>
+     *
+     * @param verdicts a map of hosts to their verdict
+     */
+    public static void restore(@Nonnull final Map<String, Verdict> verdicts) {
+        synchronized (VERDICTS) {
+            for (final Map.Entry<String, Verdict> entry : verdicts.entrySet()) {
+                final String host = entry.getKey().toLowerCase(Locale.ROOT);
+                final Verdict verdict = entry.getValue();
+                if (verdict.isSupported() && verdict.getExpiresAt() == Long.MAX_VALUE) {
+                    // Saved from addCustomDomain(String)
+                    CUSTOM_DOMAINS.add(host);
+                } else if (!verdict.isExpired()) {
+                    VERDICTS.put(host, verdict);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all cached verdicts.
+     */
+    public static void clear() {
+        synchronized (VERDICTS) {
+            VERDICTS.clear();
+        }
+        CUSTOM_DOMAINS.clear();
+    }
+
+    @Nullable
+    private static String getHost(@Nonnull final String url) {
+        try {
+            final String host = new URI(url).getHost();
+            return host == null ? null : host.toLowerCase(Locale.ROOT);
+        } catch (final URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether a host is a Bandcamp custom domain, and until when this is considered valid.
+     */
+    public static final class Verdict implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean supported;
+        private final long expiresAt;
+
+        public Verdict(final boolean supported, final long expiresAt) {
+            this.supported = supported;
+            this.expiresAt = expiresAt;
+        }
+
+        public boolean isSupported() {
+            return supported;
+        }
+
+        /**
+         * @return the time, in milliseconds since epoch, after which the verdict is not valid
+         * anymore
+         */
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        public boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+}
@@ -19,6 +19,7 @@ import java.time.DateTimeException;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Locale;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
 
@@ -27,6 +28,9 @@ public final class BandcampExtractorHelper {
     public static final String BASE_URL = "https://bandcamp.com";
     public static final String BASE_API_URL = BASE_URL + "/api";
 
+    private static final Pattern BANDCAMP_DOMAIN_PATTERN =
+            Pattern.compile("https?://.+\\.bandcamp\\.com(/.*)?", Pattern.CASE_INSENSITIVE);
+
     private BandcampExtractorHelper() {
     }
 
@@ -95,17 +99,27 @@ public final class BandcampExtractorHelper {
     /**
      * @return <code>true</code> if the given URL looks like it comes from a bandcamp custom domain
      * or if it comes from <code>bandcamp.com</code> itself
+     * @see BandcampDomainCache
      */
     public static boolean isSupportedDomain(final String url) throws ParsingException {
 
         // Accept all bandcamp.com URLs
-        if (url.toLowerCase().matches("https?://.+\\.bandcamp\\.com(/.*)?")) {
+        if (BANDCAMP_DOMAIN_PATTERN.matcher(url).matches()) {
             return true;
         }
 
+        final Boolean cachedVerdict = BandcampDomainCache.get(url);
+        if (cachedVerdict != null) {
+            return cachedVerdict;
+        }
+        if (BandcampDomainCache.isOfflineOnly()) {
+            return false;
+        }
+
+        final boolean supported;
         try {
             // Test other URLs for whether they contain a footer that links to bandcamp
-            return Jsoup.parse(NewPipe.getDownloader().get(url).responseBody())
+            supported = Jsoup.parse(NewPipe.getDownloader().get(url).responseBody())
                     .getElementById("pgFt")
                     .getElementById("pgFt-inner")
                     .getElementById("footer-logo-wrapper")
@@ -113,11 +127,15 @@ public final class BandcampExtractorHelper {
                     .getElementsByClass("hiddenAccess")
                     .text().equals("Bandcamp");
         } catch (final NullPointerException e) {
+            BandcampDomainCache.put(url, false);
             return false;
         } catch (final IOException | ReCaptchaException e) {
             throw new ParsingException("Could not determine whether URL is custom domain "
                     + "(not available? network error?)");
         }
+
+        BandcampDomainCache.put(url, supported);
+        return supported;
     }
 
     /**
@@ -4,10 +4,6 @@ import com.grack.nanojson.JsonObject;
 import com.grack.nanojson.JsonParserException;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.schabi.newpipe.extractor.StreamingService;
 import org.schabi.newpipe.extractor.bulletComments.BulletCommentsExtractor;
 import org.schabi.newpipe.extractor.bulletComments.BulletCommentsInfoItem;
@@ -22,6 +18,7 @@ import org.schabi.newpipe.extractor.services.bilibili.utils;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
@@ -32,7 +29,8 @@ public class BilibiliBulletCommentsExtractor extends BulletCommentsExtractor {
     private long cid;
     private long roomId;
     private long startTime;
-    private Document result;
+    // Compressed, as the comments are only parsed while they are read
+    private byte[] bulletComments;
     private BilibiliWebSocketClient webSocketClient;
     private boolean isLive = false;
     private WatchDataCache watchDataCache;
@@ -60,8 +58,7 @@ public class BilibiliBulletCommentsExtractor extends BulletCommentsExtractor {
             return;
         }
         cid = watchDataCache.getCid(getId());
-        result = Jsoup.parse(new String(utils.decompress(downloader.get(
-                QUERY_VIDEO_BULLET_COMMENTS_URL + cid).rawResponseBody())));
+        bulletComments = downloader.get(QUERY_VIDEO_BULLET_COMMENTS_URL + cid).rawResponseBody();
     }
 
     @Override
@@ -93,16 +90,19 @@ public class BilibiliBulletCommentsExtractor extends BulletCommentsExtractor {
         if (getUrl().contains(LIVE_BASE_URL)) {
             return new InfoItemsPage<>(collector, null);
         } else {
-            if (result.select("state").text().equals("1")) {
-                return new InfoItemsPage<>(collector, null);
-            } else {
-                Elements elements = result.select("d");
-                for (final Element element : elements) {
-                    if (Integer.parseInt(element.attr("p").split(",")[5]) == 3) { // voting
-                        continue;
+            final ParsingException malformed;
+            try (InputStream xml = utils.decompressStream(bulletComments)) {
+                malformed = BilibiliBulletCommentsParser.parse(xml, comment -> {
+                    if (comment.getPool() != 3) { // voting
+                        collector.commit(comment);
                     }
-                    collector.commit(new BilibiliBulletCommentsInfoItemExtractor(element));
-                }
+                });
+            }
+            if (malformed != null) {
+                // Keep the comments before the error, and report it with them
+                final List<Throwable> errors = new ArrayList<>(collector.getErrors());
+                errors.add(malformed);
+                return new InfoItemsPage<>(collector.getItems(), null, errors);
             }
             return new InfoItemsPage<>(collector, null);
         }
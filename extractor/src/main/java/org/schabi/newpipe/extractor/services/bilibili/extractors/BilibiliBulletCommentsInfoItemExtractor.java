@@ -1,7 +1,6 @@
 package org.schabi.newpipe.extractor.services.bilibili.extractors;
 
 import com.grack.nanojson.JsonParser;
-import org.jsoup.nodes.Element;
 import org.schabi.newpipe.extractor.bulletComments.BulletCommentsInfoItem;
 import org.schabi.newpipe.extractor.bulletComments.BulletCommentsInfoItemExtractor;
 import org.schabi.newpipe.extractor.exceptions.ParsingException;
@@ -9,17 +8,34 @@ import org.schabi.newpipe.extractor.exceptions.ParsingException;
 import java.time.Duration;
 
 public class BilibiliBulletCommentsInfoItemExtractor implements BulletCommentsInfoItemExtractor {
-    private final Element element;
-    private final String[] attr;
+    private final String text;
+    private final long timeMillis;
+    private final int mode;
+    private final int fontSize;
+    private final int color;
+    private final int pool;
 
-    public BilibiliBulletCommentsInfoItemExtractor(Element element) {
-        this.element = element;
-        attr = element.attr("p").split(",");
+    /**
+     * @param text       the text of the {@code d} element
+     * @param timeMillis the time in the video, the first field of the {@code p} attribute
+     * @param mode       the second field
+     * @param fontSize   the third field
+     * @param color      the fourth field
+     * @param pool       the sixth field
+     * @see BilibiliBulletCommentsParser
+     */
+    BilibiliBulletCommentsInfoItemExtractor(String text, long timeMillis, int mode, int fontSize,
+                                            int color, int pool) {
+        this.text = text;
+        this.timeMillis = timeMillis;
+        this.mode = mode;
+        this.fontSize = fontSize;
+        this.color = color;
+        this.pool = pool;
     }
 
     @Override
     public String getCommentText() throws ParsingException {
-        String text = element.text();
         try{
             String possibleText = JsonParser.array().from(text).getString(4);
             return possibleText == null || possibleText.isEmpty() ? text : possibleText;
@@ -30,14 +46,14 @@ public class BilibiliBulletCommentsInfoItemExtractor implements BulletCommentsIn
 
     @Override
     public int getArgbColor() throws ParsingException {
-        return Integer.parseInt(attr[3]) + 0xFF000000;
+        return color + 0xFF000000;
     }
 
     @Override
     public BulletCommentsInfoItem.Position getPosition() throws ParsingException {
-        if(attr[1].equals("4")){
+        if(mode == 4){
             return BulletCommentsInfoItem.Position.BOTTOM;
-        } else if (attr[1].equals("5")) {
+        } else if (mode == 5) {
             return BulletCommentsInfoItem.Position.TOP;
         }
         return BulletCommentsInfoItem.Position.REGULAR;
@@ -45,19 +61,23 @@ public class BilibiliBulletCommentsInfoItemExtractor implements BulletCommentsIn
 
     @Override
     public double getRelativeFontSize() throws ParsingException {
-        switch (attr[2]){
-            case "18":
+        switch (fontSize){
+            case 18:
                 return 0.5;
-            case "25":
+            case 25:
             default:
                 return 0.6;
-            case "36":
+            case 36:
                 return 0.7;
         }
     }
 
     @Override
     public Duration getDuration() throws ParsingException {
-        return Duration.ofMillis((long) (Double.parseDouble(attr[0])*1000) + 2500); //2500 for sync
+        return Duration.ofMillis(timeMillis + 2500); //2500 for sync
+    }
+
+    int getPool() {
+        return pool;
     }
 }
@@ -0,0 +1,251 @@
+package org.schabi.newpipe.extractor.services.bilibili.extractors;
+
+import org.schabi.newpipe.extractor.exceptions.ParsingException;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Parses the bullet comments of a video, as returned by the {@code list.so} endpoint, while they
+ * are read.
+ *
+ * <p>
+ * The document looks like {@code <i>...<state>0</state>...<d p="12.5,1,25,16777215,...">text</d>
+ * ...</i>}. It can hold tens of thousands of comments, so it is read with a SAX parser instead of
+ * being loaded into a DOM, and each comment is passed on as soon as it has been read. The fields
+ * of the {@code p} attribute are parsed in place, without splitting it.
+ * </p>
+ *
+ * <p>
+ * A strict parser stops at the first error, e.g. a raw {@code &} in the text of a comment. When
+ * that happens after some comments have been read, they are kept and the error is returned, so
+ * that one malformed comment doesn't lose the whole page.
+ * </p>
+ */
+final class BilibiliBulletCommentsParser {
+    // Fields of the p attribute
+    private static final int TIME = 0;
+    private static final int MODE = 1;
+    private static final int FONT_SIZE = 2;
+    private static final int COLOR = 3;
+    private static final int POOL = 5;
+
+    private BilibiliBulletCommentsParser() {
+    }
+
+    /**
+     * Parse bullet comments.
+     *
+     * @param xml      the document, which is not closed
+     * @param consumer called with each comment, in document order; comments whose attributes are
+     *                 malformed are skipped
+     * @return {@code null}, or the error at which the document stopped being well-formed after
+     * some comments, which have been passed to {@code consumer}
+     * @throws ParsingException if the document can't be read, or is not well-formed before its
+     *                          first comment
+     */
+    @Nullable
+    static ParsingException parse(
+            @Nonnull final InputStream xml,
+            @Nonnull final Consumer<BilibiliBulletCommentsInfoItemExtractor> consumer)
+            throws ParsingException {
+        final SAXParserFactory factory = SAXParserFactory.newInstance();
+        try {
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        } catch (final Exception ignored) {
+            // Ignore exceptions as disallowing DTDs to prevent XXE attacks is not supported by all
+            // platforms (like the Android implementation)
+        }
+        final Handler handler = new Handler(consumer);
+        try {
+            factory.newSAXParser().parse(new InputSource(new XmlCharacterFilter(
+                    new InputStreamReader(xml, StandardCharsets.UTF_8))), handler);
+        } catch (final CommentsDisabledException ignored) {
+            // Nothing follows
+        } catch (final SAXException e) {
+            if (handler.comments == 0) {
+                throw new ParsingException("Could not parse bullet comments", e);
+            }
+            return new ParsingException("Could not parse bullet comments after "
+                    + handler.comments + " comments", e);
+        } catch (final ParserConfigurationException | IOException e) {
+            throw new ParsingException("Could not parse bullet comments", e);
+        }
+        return null;
+    }
+
+    private static final class Handler extends DefaultHandler {
+        @Nonnull
+        private final Consumer<BilibiliBulletCommentsInfoItemExtractor> consumer;
+        private final StringBuilder text = new StringBuilder();
+        private boolean inText;
+        private String attributes;
+        private int comments;
+
+        Handler(@Nonnull final Consumer<BilibiliBulletCommentsInfoItemExtractor> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void startElement(final String uri, final String localName, final String qName,
+                                 final Attributes attrs) {
+            if ("d".equals(qName)) {
+                attributes = attrs.getValue("p");
+            } else if (!"state".equals(qName)) {
+                return;
+            }
+            text.setLength(0);
+            inText = true;
+        }
+
+        @Override
+        public void characters(final char[] ch, final int start, final int length) {
+            if (inText) {
+                text.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(final String uri, final String localName, final String qName)
+                throws SAXException {
+            if (!inText) {
+                return;
+            }
+            inText = false;
+            if ("state".equals(qName)) {
+                // Set when the comments of the video have been closed, before any comment
+                if (text.toString().trim().equals("1")) {
+                    throw new CommentsDisabledException();
+                }
+            } else if (attributes != null) {
+                final BilibiliBulletCommentsInfoItemExtractor comment;
+                try {
+                    comment = new BilibiliBulletCommentsInfoItemExtractor(text.toString(),
+                            parseMillis(attributes, fieldStart(attributes, TIME)),
+                            parseInt(attributes, fieldStart(attributes, MODE)),
+                            parseInt(attributes, fieldStart(attributes, FONT_SIZE)),
+                            parseInt(attributes, fieldStart(attributes, COLOR)),
+                            parseInt(attributes, fieldStart(attributes, POOL)));
+                } catch (final NumberFormatException e) {
+                    return;
+                }
+                comments++;
+                consumer.accept(comment);
+            }
+        }
+    }
+
+    private static final class CommentsDisabledException extends SAXException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Replace the control characters which are not allowed in XML 1.0, and which some comments
+     * contain, with spaces, so that they don't make the whole document unreadable.
+     */
+    private static final class XmlCharacterFilter extends FilterReader {
+        XmlCharacterFilter(@Nonnull final Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int c = super.read();
+            return c >= 0 && isIllegal((char) c) ? ' ' : c;
+        }
+
+        @Override
+        public int read(final char[] buffer, final int offset, final int length)
+                throws IOException {
+            final int read = super.read(buffer, offset, length);
+            for (int i = offset; i < offset + read; i++) {
+                if (isIllegal(buffer[i])) {
+                    buffer[i] = ' ';
+                }
+            }
+            return read;
+        }
+
+        private static boolean isIllegal(final char c) {
+            return c < 0x20 && c != '\t' && c != '\n' && c != '\r';
+        }
+    }
+
+    /*
+    Tokenizer of the p attribute
+     */
+
+    static int fieldStart(@Nonnull final String p, final int field) {
+        int start = 0;
+        for (int i = 0; i < field; i++) {
+            start = p.indexOf(',', start) + 1;
+            if (start == 0) {
+                throw new NumberFormatException("Missing field " + field + " in " + p);
+            }
+        }
+        return start;
+    }
+
+    static int parseInt(@Nonnull final String p, final int start) {
+        int i = start;
+        final boolean negative = i < p.length() && p.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        if (i >= p.length() || p.charAt(i) == ',') {
+            throw new NumberFormatException("Empty field at " + start + " in " + p);
+        }
+        long value = 0;
+        for (; i < p.length() && p.charAt(i) != ','; i++) {
+            value = value * 10 + digit(p, i);
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw new NumberFormatException("Overflow at " + start + " in " + p);
+            }
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /** Parse a number of seconds with an optional fractional part, e.g. {@code 12.345}. */
+    static long parseMillis(@Nonnull final String p, final int start) {
+        int i = start;
+        if (i >= p.length() || p.charAt(i) == ',') {
+            throw new NumberFormatException("Empty field at " + start + " in " + p);
+        }
+        long millis = 0;
+        for (; i < p.length() && p.charAt(i) != ',' && p.charAt(i) != '.'; i++) {
+            millis = millis * 10 + digit(p, i);
+            if (millis > Long.MAX_VALUE / 10_000) {
+                throw new NumberFormatException("Overflow at " + start + " in " + p);
+            }
+        }
+        millis *= 1000;
+        if (i < p.length() && p.charAt(i) == '.') {
+            i++;
+            for (int scale = 100; i < p.length() && p.charAt(i) != ','; i++, scale /= 10) {
+                millis += digit(p, i) * scale;
+            }
+        }
+        return millis;
+    }
+
+    private static int digit(@Nonnull final String p, final int i) {
+        final char c = p.charAt(i);
+        if (c < '0' || c > '9') {
+            throw new NumberFormatException("Unexpected '" + c + "' at " + i + " in " + p);
+        }
+        return c - '0';
+    }
+}
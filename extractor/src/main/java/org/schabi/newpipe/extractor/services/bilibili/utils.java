@@ -19,6 +19,7 @@ import java.util.concurrent.ThreadLocalRandom;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import okio.ByteString;
 
@@ -185,6 +186,22 @@ public class utils {
         return decompressData;
     }
 
+    /**
+     * Like {@link #decompress(byte[])}, but inflating as the returned stream is read, so that the
+     * whole decompressed data is never held in memory.
+     */
+    public static InputStream decompressStream(final byte[] data) {
+        final Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(new ByteArrayInputStream(data), inflater) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                // Not done by InflaterInputStream for an inflater it has been given
+                inflater.end();
+            }
+        };
+    }
+
     public static byte[] decompressZlib(byte[] data) {
         byte[] output = new byte[0];
 
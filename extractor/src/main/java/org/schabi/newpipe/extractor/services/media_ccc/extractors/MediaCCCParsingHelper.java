@@ -4,6 +4,7 @@ import com.grack.nanojson.JsonArray;
 import com.grack.nanojson.JsonParser;
 import com.grack.nanojson.JsonParserException;
 import org.schabi.newpipe.extractor.downloader.Downloader;
+import org.schabi.newpipe.extractor.downloader.Request;
 import org.schabi.newpipe.extractor.exceptions.ExtractionException;
 import org.schabi.newpipe.extractor.exceptions.ParsingException;
 import org.schabi.newpipe.extractor.exceptions.ReCaptchaException;
@@ -17,6 +18,9 @@ import java.util.regex.Pattern;
 public final class MediaCCCParsingHelper {
     // {conference_slug}/{room_slug}
     private static final Pattern LIVE_STREAM_ID_PATTERN = Pattern.compile("\\w+/\\w+");
+    private static final String LIVE_STREAMS_URL = "https://streaming.media.ccc.de/streams/v2.json";
+    // Lets a caching downloader share the list between processes for a short while
+    private static final long LIVE_STREAMS_MAX_AGE_MILLIS = 60L * 1000L;
     private static JsonArray liveStreams = null;
 
     private MediaCCCParsingHelper() { }
@@ -58,8 +62,11 @@ public final class MediaCCCParsingHelper {
             throws ExtractionException {
         if (liveStreams == null) {
             try {
-                final String site = downloader.get("https://streaming.media.ccc.de/streams/v2.json",
-                        localization).responseBody();
+                final String site = downloader.execute(Request.newBuilder()
+                        .get(LIVE_STREAMS_URL)
+                        .localization(localization)
+                        .cacheMaxAge(LIVE_STREAMS_MAX_AGE_MILLIS)
+                        .build()).responseBody();
                 liveStreams = JsonParser.array().from(site);
             } catch (final IOException | ReCaptchaException e) {
                 throw new ExtractionException("Could not get live stream JSON.", e);
@@ -1,8 +1,10 @@
 package org.schabi.newpipe.extractor.services.niconico.extractors;
 
 import com.grack.nanojson.JsonObject;
+import org.schabi.newpipe.extractor.NewPipe;
 import org.schabi.newpipe.extractor.Page;
 import org.schabi.newpipe.extractor.StreamingService;
+import org.schabi.newpipe.extractor.bulletComments.BulletCommentsDeduplicator;
 import org.schabi.newpipe.extractor.bulletComments.BulletCommentsExtractor;
 import org.schabi.newpipe.extractor.bulletComments.BulletCommentsInfoItem;
 import org.schabi.newpipe.extractor.bulletComments.BulletCommentsInfoItemsCollector;
@@ -11,16 +13,16 @@ import org.schabi.newpipe.extractor.exceptions.ExtractionException;
 import org.schabi.newpipe.extractor.exceptions.ParsingException;
 import org.schabi.newpipe.extractor.exceptions.ReCaptchaException;
 import org.schabi.newpipe.extractor.linkhandler.ListLinkHandler;
+import org.schabi.newpipe.extractor.services.niconico.protobuf.BulletComment;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import okio.ByteString;
+
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class NiconicoBulletCommentsExtractor extends BulletCommentsExtractor {
 
@@ -30,12 +32,14 @@ public class NiconicoBulletCommentsExtractor extends BulletCommentsExtractor {
     @Nonnull
     private final NiconicoCommentsCache commentsCache;
     private boolean isLive = true;
-    private ScheduledExecutorService executor;
     private ScheduledFuture<?> future;
     private String lastContinuation;
-    private final CopyOnWriteArrayList<byte[]> messages = new CopyOnWriteArrayList<>();
-    private final CopyOnWriteArrayList<Integer> IDList= new CopyOnWriteArrayList<>();
-    private final CopyOnWriteArrayList<String> URLList= new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<BulletComment.MessageItem> messages =
+            new ConcurrentLinkedQueue<>();
+    private final BulletCommentsDeduplicator<Integer> seenIds = new BulletCommentsDeduplicator<>();
+    // Created with the polling of a live room, so that the constructor doesn't leak this
+    @Nullable
+    private NiconicoLiveCommentSegmentTracker segmentTracker;
 
     public NiconicoBulletCommentsExtractor(
             final StreamingService service,
@@ -47,6 +51,11 @@ public class NiconicoBulletCommentsExtractor extends BulletCommentsExtractor {
         this.commentsCache = commentsCache;
     }
 
+    private void onSegment(@Nonnull final byte[] body) {
+        messages.addAll(decodeSegment(body));
+        publishLiveMessages();
+    }
+
     @Override
     public void onFetchPage(@Nonnull final Downloader downloader)
             throws IOException, ExtractionException {
@@ -55,8 +64,9 @@ public class NiconicoBulletCommentsExtractor extends BulletCommentsExtractor {
             this.watch = watchDataCache.refreshAndGetWatchData(downloader, getId());
             return;
         }
-        executor = Executors.newSingleThreadScheduledExecutor();
-        future = executor.scheduleAtFixedRate(this::fetchMessage, 1000, 10000, TimeUnit.MILLISECONDS);
+        segmentTracker = new NiconicoLiveCommentSegmentTracker(this::onSegment);
+        future = NewPipe.getBulletCommentsScheduler()
+                .schedulePolling(this::fetchMessage, 1000, 10000);
     }
 
     private void fetchMessage() {
@@ -66,28 +76,7 @@ public class NiconicoBulletCommentsExtractor extends BulletCommentsExtractor {
         try {
             byte[] response = getDownloader().get(watchDataCache.getThreadServer() + "?at=" + (System.currentTimeMillis() / 1000)).rawResponseBody();
             try {
-//                List<String> segments = BulletComment.ADAPTER.decode(response).segments;
-                String urls = new String(response, StandardCharsets.UTF_8);
-                String urlPattern = "(https://).*?(?=[^a-zA-Z0-9./_-])";
-                Pattern pattern = Pattern.compile(urlPattern);
-                Matcher matcher = pattern.matcher(urls);
-                while (matcher.find()) {
-                    String url = matcher.group();
-                    if(url.contains("/segment/")) {
-                        new Thread(() -> {
-                            try {
-                                messages.addAll(decodeString(getDownloader().get(url).rawResponseBody()));
-                            } catch (IOException | ReCaptchaException e) {
-                                throw new RuntimeException(e);
-                            }
-                        }).start();
-                    }
-                }
-//                List<String> segments = BulletComment.ADAPTER.decode(response).segments;
-//                for (String segment : segments) {
-//                    response = getDownloader().get(segment).rawResponseBody();
-//                    messages.add(response);
-//                }
+                segmentTracker.onSegmentList(getDownloader(), response);
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -103,27 +92,15 @@ public class NiconicoBulletCommentsExtractor extends BulletCommentsExtractor {
         }
         final BulletCommentsInfoItemsCollector collector =
                 new BulletCommentsInfoItemsCollector(getServiceId());
-//        for(final byte[] s: messages) {
-//            try {
-//                List<BulletComment.MessageItem> decodeMessages = BulletComment.ADAPTER.decode(s).items;
-//                for (final BulletComment.MessageItem message : decodeMessages) {
-//                    collector.commit(new NiconicoBulletCommentsNewInfoItemExtractor(message));
-//                }
-//            } catch (IOException e) {
-//                throw new RuntimeException(e);
-//            }
-//        }
-        for (final byte[] s: messages) {
-            int id = decodeVarInt(s, (byte) 0x40);
-            if(id == -1) {
-                continue;
-            }
-            if (!IDList.contains(id)) {
-                collector.commit(new NiconicoBulletCommentsNewInfoItemExtractor(s, watchDataCache.getStartAt()));
-                IDList.add(id);
+        BulletComment.MessageItem item;
+        while ((item = messages.poll()) != null) {
+            // Gifts and other notifications have no text message
+            final BulletComment.MessageItem.Message.InnerMessage chat =
+                    item.message == null ? null : item.message.text_message;
+            if (chat != null && seenIds.add(chat.id)) {
+                collector.commit(new NiconicoBulletCommentsNewInfoItemExtractor(chat));
             }
         }
-        messages.clear();
         return new InfoItemsPage<>(collector, null).getItems();
     }
 
@@ -156,110 +133,59 @@ public class NiconicoBulletCommentsExtractor extends BulletCommentsExtractor {
     @Override
     public void disconnect() {
         if(future != null && !future.isCancelled()){
-            future.cancel(true);
+            future.cancel(false);
+        }
+        if (segmentTracker != null) {
+            segmentTracker.cancel();
         }
     }
     @Override
     public void reconnect() {
         if(!isDisabled() && future != null && future.isCancelled()){
-            future = executor.scheduleAtFixedRate(this::fetchMessage, 1000, 10000, TimeUnit.MILLISECONDS);
+            future = NewPipe.getBulletCommentsScheduler()
+                    .schedulePolling(this::fetchMessage, 1000, 10000);
         }
     }
 
-    /*
-    Byte helpers
+    /**
+     * Decode a live comment segment, a stream of {@link BulletComment.MessageItem}s each
+     * preceded by its size as a varint.
+     *
+     * <p>
+     * A message which can't be decoded is skipped, as the size of each message is known. Decoding
+     * stops at a size which overruns the segment, e.g. if it has been truncated.
+     * </p>
+     *
+     * @param segment the body of a segment
+     * @return the messages of the segment, in order
      */
-
-    public static int decodeVarInt(byte[] data, byte startByte) {
-        int start = -1;
-        for (int i = 0; i < data.length; i++) {
-            if (data[i] == startByte) {
-                start = i + 1;
-                break;
-            }
-        }
-        if(start == -1) {
-            return -1;
-        }
-        int position = start;
-
-        while (position < data.length) {
-            int value = data[position] & 0xFF;
-            if ((value & 0x80) == 0) {
-                break;
-            }
-            position++;
-        }
-
-        int result = 0;
-        for (int i = 0; i < position + 1 - start; i++) {
-            result |= (data[start + i] & 0x7f) << (i * 7);
-        }
-
-        return result;
-    }
-
-
-    public static List<byte[]> splitByByte(byte[] array, byte delimiter) {
-        List<byte[]> byteArrays = new ArrayList<>();
-        int start = 0;
-
-        for (int i = 0; i < array.length; i++) {
-            if (array[i] == delimiter) {
-                byte[] part = Arrays.copyOfRange(array, start, i);
-                byteArrays.add(part);
-                start = i + 1;
-            }
-        }
-
-        if (start < array.length) {
-            byte[] part = Arrays.copyOfRange(array, start, array.length);
-            byteArrays.add(part);
-        }
-
-        return byteArrays;
-    }
-
-    public static boolean contains(byte[] array, byte[] sequence) {
-        if (sequence.length == 0) {
-            return true;
-        }
-        if (sequence.length > array.length) {
-            return false;
-        }
-        for (int i = 0; i <= array.length - sequence.length; i++) {
-            boolean found = true;
-            for (int j = 0; j < sequence.length; j++) {
-                if (array[i + j] != sequence[j]) {
-                    found = false;
-                    break;
+    @Nonnull
+    static List<BulletComment.MessageItem> decodeSegment(@Nonnull final byte[] segment) {
+        final List<BulletComment.MessageItem> items = new ArrayList<>();
+        int position = 0;
+        while (position < segment.length) {
+            long size = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (position >= segment.length || shift > 28) {
+                    return items;
                 }
+                b = segment[position++];
+                size |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            if (size > segment.length - position) {
+                return items;
             }
-            if (found) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-
-    public static ArrayList<byte[]> decodeString(byte[] decodedBytes) { //type 0: meta, 1: segment
-        ArrayList<byte[]> result = new ArrayList<>();
-
-        try {
-
-            // Split the decoded string into lines
-            List<byte[]> lines = splitByByte(decodedBytes, (byte) 0x0A);
-
-            for (byte[] line : lines) {
-                if (contains(line, new byte[]{(byte) 0x61, (byte) 0x3A})) {
-                    result.add(line);
-                }
+            try {
+                items.add(BulletComment.MessageItem.ADAPTER.decode(
+                        ByteString.of(segment, position, (int) size)));
+            } catch (final IOException | RuntimeException ignored) {
+                // Only this message is malformed, the next one starts after it
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            position += (int) size;
         }
-
-        return result;
+        return items;
     }
 }
@@ -0,0 +1,247 @@
+package org.schabi.newpipe.extractor.services.niconico.extractors;
+
+import org.schabi.newpipe.extractor.bulletComments.BulletCommentsDeduplicator;
+import org.schabi.newpipe.extractor.downloader.CancellableCall;
+import org.schabi.newpipe.extractor.downloader.Downloader;
+import org.schabi.newpipe.extractor.downloader.Response;
+import org.schabi.newpipe.extractor.exceptions.ReCaptchaException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads the comment segments of a Niconico live room as they are announced by its thread
+ * server.
+ *
+ * <p>
+ * Each poll of the thread server lists the URLs of recent segments, most of which have already
+ * been listed before. Only segments which have not been seen yet are downloaded, with
+ * {@link Downloader#getAsync(String, Downloader.AsyncCallback)} and at most
+ * {@link #MAX_CONCURRENT_FETCHES} at the same time. Their bodies are passed to the listener in
+ * the order in which they were announced, whatever the order in which the downloads complete.
+ * The listener is called without holding the lock of the tracker, by whichever thread made the
+ * next bodies ready while no other one was delivering.
+ * </p>
+ *
+ * <p>
+ * A segment which could not be downloaded is skipped, and forgotten so that it is downloaded if
+ * it is listed again.
+ * </p>
+ */
+final class NiconicoLiveCommentSegmentTracker {
+    static final int MAX_CONCURRENT_FETCHES = 4;
+    // Older segments waiting for a download are dropped beyond this, as their comments are stale
+    private static final int MAX_QUEUED_FETCHES = 64;
+    private static final int REMEMBERED_SEGMENTS = 1024;
+    private static final Pattern URL_PATTERN =
+            Pattern.compile("(https://).*?(?=[^a-zA-Z0-9./_-])");
+
+    interface SegmentListener {
+        /**
+         * Called in the order in which segments were announced, one call at a time.
+         *
+         * @param body the body of a segment
+         */
+        void onSegment(@Nonnull byte[] body);
+    }
+
+    @Nonnull
+    private final SegmentListener listener;
+    private final BulletCommentsDeduplicator<String> seenUrls =
+            new BulletCommentsDeduplicator<>(REMEMBERED_SEGMENTS);
+
+    // Guarded by this
+    private long nextSequence;
+    private long nextDelivery;
+    private final ArrayDeque<Segment> queued = new ArrayDeque<>();
+    private final Map<Long, Segment> inFlight = new HashMap<>();
+    // Completed segments waiting for older ones, by sequence; a null body is a failed segment
+    private final TreeMap<Long, Segment> completed = new TreeMap<>();
+    // Bodies to pass to the listener, in order, and whether a thread is passing them
+    private final ArrayDeque<byte[]> ready = new ArrayDeque<>();
+    private boolean delivering;
+
+    NiconicoLiveCommentSegmentTracker(@Nonnull final SegmentListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Download the segments of a thread server response which have not been seen yet.
+     *
+     * @param downloader the downloader to use
+     * @param response   the body of the thread server response
+     */
+    void onSegmentList(@Nonnull final Downloader downloader, @Nonnull final byte[] response) {
+        final Matcher matcher = URL_PATTERN.matcher(new String(response, StandardCharsets.UTF_8));
+        synchronized (this) {
+            while (matcher.find()) {
+                final String url = matcher.group();
+                if (url.contains("/segment/") && seenUrls.add(url)) {
+                    queued.addLast(new Segment(nextSequence++, url));
+                }
+            }
+            while (queued.size() > MAX_QUEUED_FETCHES) {
+                skip(queued.removeFirst());
+            }
+            collectReady();
+        }
+        deliverReady();
+        startFetches(downloader);
+    }
+
+    /** @return the number of segments being downloaded */
+    synchronized int getFetchesInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Cancel the downloads in progress and forget the queued segments, so that they are
+     * downloaded if they are listed again.
+     */
+    void cancel() {
+        final Segment[] cancelled;
+        synchronized (this) {
+            cancelled = inFlight.values().toArray(new Segment[0]);
+            for (final Segment segment : cancelled) {
+                seenUrls.remove(segment.url);
+            }
+            for (final Segment segment : queued) {
+                seenUrls.remove(segment.url);
+            }
+            inFlight.clear();
+            queued.clear();
+            completed.clear();
+            ready.clear();
+            nextDelivery = nextSequence;
+        }
+        for (final Segment segment : cancelled) {
+            if (segment.call != null) {
+                segment.call.cancel();
+            }
+        }
+    }
+
+    private void startFetches(@Nonnull final Downloader downloader) {
+        while (true) {
+            final Segment segment;
+            synchronized (this) {
+                if (inFlight.size() >= MAX_CONCURRENT_FETCHES || queued.isEmpty()) {
+                    return;
+                }
+                segment = queued.removeFirst();
+                inFlight.put(segment.sequence, segment);
+            }
+            try {
+                final CancellableCall call = downloader.getAsync(segment.url,
+                        new Downloader.AsyncCallback() {
+                            @Override
+                            public void onSuccess(final Response response) {
+                                complete(downloader, segment, response.responseCode() >= 400
+                                        ? null : response.rawResponseBody());
+                            }
+
+                            @Override
+                            public void onError(final Exception e) {
+                                complete(downloader, segment, null);
+                            }
+                        });
+                synchronized (this) {
+                    segment.call = call;
+                }
+            } catch (final IOException | ReCaptchaException | RuntimeException e) {
+                complete(downloader, segment, null);
+            }
+        }
+    }
+
+    private void complete(@Nonnull final Downloader downloader,
+                          @Nonnull final Segment segment,
+                          @Nullable final byte[] body) {
+        synchronized (this) {
+            if (inFlight.remove(segment.sequence) == null) {
+                // Completed twice, or cancelled
+                return;
+            }
+            if (body == null) {
+                fail(segment);
+            } else {
+                segment.body = body;
+                completed.put(segment.sequence, segment);
+            }
+            collectReady();
+        }
+        deliverReady();
+        startFetches(downloader);
+    }
+
+    private void fail(@Nonnull final Segment segment) {
+        seenUrls.remove(segment.url);
+        skip(segment);
+    }
+
+    private void skip(@Nonnull final Segment segment) {
+        segment.body = null;
+        completed.put(segment.sequence, segment);
+    }
+
+    // Called with this locked: queue the bodies of the segments which are next in order
+    private void collectReady() {
+        Map.Entry<Long, Segment> first;
+        while ((first = completed.firstEntry()) != null && first.getKey() <= nextDelivery) {
+            completed.pollFirstEntry();
+            nextDelivery = first.getKey() + 1;
+            final byte[] body = first.getValue().body;
+            if (body != null) {
+                ready.addLast(body);
+            }
+        }
+    }
+
+    // Called without this locked; the thread already delivering passes on new bodies as well
+    private void deliverReady() {
+        synchronized (this) {
+            if (delivering) {
+                return;
+            }
+            delivering = true;
+        }
+        while (true) {
+            final byte[] body;
+            synchronized (this) {
+                body = ready.pollFirst();
+                if (body == null) {
+                    delivering = false;
+                    return;
+                }
+            }
+            try {
+                listener.onSegment(body);
+            } catch (final RuntimeException ignored) {
+                // A broken segment must not stop the delivery of the following ones
+            }
+        }
+    }
+
+    private static final class Segment {
+        private final long sequence;
+        @Nonnull
+        private final String url;
+        @Nullable
+        private CancellableCall call;
+        @Nullable
+        private byte[] body;
+
+        private Segment(final long sequence, @Nonnull final String url) {
+            this.sequence = sequence;
+            this.url = url;
+        }
+    }
+}
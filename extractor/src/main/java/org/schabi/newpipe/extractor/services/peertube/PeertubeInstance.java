@@ -5,9 +5,11 @@ import com.grack.nanojson.JsonParser;
 import com.grack.nanojson.JsonParserException;
 
 import org.schabi.newpipe.extractor.NewPipe;
+import org.schabi.newpipe.extractor.downloader.Request;
 import org.schabi.newpipe.extractor.downloader.Response;
 import org.schabi.newpipe.extractor.exceptions.ParsingException;
 import org.schabi.newpipe.extractor.exceptions.ReCaptchaException;
+import org.schabi.newpipe.extractor.localization.Localization;
 import org.schabi.newpipe.extractor.utils.JsonUtils;
 import org.schabi.newpipe.extractor.utils.Utils;
 
@@ -15,6 +17,9 @@ import java.io.IOException;
 
 public class PeertubeInstance {
 
+    // The instance name rarely changes, so a caching downloader may reuse it for a day
+    private static final long CONFIG_MAX_AGE_MILLIS = 24L * 60L * 60L * 1000L;
+
     private final String url;
     private String name;
     public static final PeertubeInstance DEFAULT_INSTANCE
@@ -37,7 +42,11 @@ public class PeertubeInstance {
     public void fetchInstanceMetaData() throws Exception {
         final Response response;
         try {
-            response = NewPipe.getDownloader().get(url + "/api/v1/config");
+            response = NewPipe.getDownloader().execute(Request.newBuilder()
+                    .get(url + "/api/v1/config")
+                    .localization(Localization.DEFAULT)
+                    .cacheMaxAge(CONFIG_MAX_AGE_MILLIS)
+                    .build());
         } catch (ReCaptchaException | IOException e) {
             throw new Exception("unable to configure instance " + url, e);
         }
@@ -33,7 +33,7 @@ public final class YoutubeApiDecoder {
     private static final String USER_AGENT = "PipePipe/4.9.0";
 
     @Nonnull
-    private static final Map<String, String> DECODE_CACHE = new HashMap<>();
+    private static final YoutubeDecodeCache DECODE_CACHE = new YoutubeDecodeCache();
 
     @Nullable
     private static volatile YoutubeJavaScriptDecoder localDecoder;
@@ -83,8 +83,7 @@ public final class YoutubeApiDecoder {
     private static String decode(@Nonnull final String playerId,
                                  @Nonnull final String paramType,
                                  @Nonnull final String value) throws ParsingException {
-        final String cacheKey = playerId + ":" + paramType + ":" + value;
-        final String cachedResult = DECODE_CACHE.get(cacheKey);
+        final String cachedResult = DECODE_CACHE.get(playerId, paramType, value);
         if (cachedResult != null) {
             return cachedResult;
         }
@@ -100,7 +99,7 @@ public final class YoutubeApiDecoder {
                 if (decodedValue == null || decodedValue.isEmpty()) {
                     throw new ParsingException("Local decoder returned empty value for: " + value);
                 }
-                DECODE_CACHE.put(cacheKey, decodedValue);
+                DECODE_CACHE.put(playerId, paramType, value, decodedValue);
                 return decodedValue;
             } catch (final Exception localFailure) {
                 disableLocalDecoder(decoder);
@@ -134,7 +133,7 @@ public final class YoutubeApiDecoder {
                 throw new ParsingException("API returned empty decoded value for: " + value);
             }
 
-            DECODE_CACHE.put(cacheKey, decodedValue);
+            DECODE_CACHE.put(playerId, paramType, value, decodedValue);
             return decodedValue;
         } catch (final IOException e) {
             throw new ParsingException("Failed to call decode API", e);
@@ -149,16 +148,33 @@ public final class YoutubeApiDecoder {
         DECODE_CACHE.clear();
     }
 
+    /**
+     * Drop the cached values decoded for players older than the previous one.
+     *
+     * @param playerId the ID of the current player
+     */
+    static void onPlayerRotated(@Nonnull final String playerId) {
+        DECODE_CACHE.onPlayerRotated(playerId);
+    }
+
     private static void disableLocalDecoder(@Nonnull final YoutubeJavaScriptDecoder decoder) {
         if (localDecoder == decoder) {
             localDecoder = null;
-            clearCache();
         }
     }
 
+    /**
+     * Set the decoder used before falling back to the PipePipe API.
+     *
+     * <p>
+     * The decode cache is kept: decoded values only depend on the player ID, not on the decoder
+     * which produced them.
+     * </p>
+     *
+     * @param decoder the local decoder, or {@code null} to only use the API
+     */
     public static void setLocalDecoder(@Nullable final YoutubeJavaScriptDecoder decoder) {
         localDecoder = decoder;
-        clearCache();
     }
 
     @Nullable
@@ -170,6 +186,11 @@ public final class YoutubeApiDecoder {
         return DECODE_CACHE.size();
     }
 
+    @Nonnull
+    static DecodeCacheStats getCacheStats() {
+        return DECODE_CACHE.getStats();
+    }
+
     /**
      * Batch decode multiple signatures and throttling parameters in a single API call.
      *
@@ -207,7 +228,7 @@ public final class YoutubeApiDecoder {
 
         if (hasSigs) {
             for (final String sig : signatureParams) {
-                final String cachedResult = DECODE_CACHE.get(playerId + ":sig:" + sig);
+                final String cachedResult = DECODE_CACHE.get(playerId, "sig", sig);
                 if (cachedResult != null) {
                     sigResults.put(sig, cachedResult);
                 } else {
@@ -218,7 +239,7 @@ public final class YoutubeApiDecoder {
 
         if (hasNs) {
             for (final String n : nParams) {
-                final String cachedResult = DECODE_CACHE.get(playerId + ":n:" + n);
+                final String cachedResult = DECODE_CACHE.get(playerId, "n", n);
                 if (cachedResult != null) {
                     nResults.put(n, cachedResult);
                 } else {
@@ -282,7 +303,7 @@ public final class YoutubeApiDecoder {
                         throw new ParsingException("API returned empty decoded value for n parameter: " + nParam);
                     }
                     nResults.put(nParam, decodedValue);
-                    DECODE_CACHE.put(playerId + ":n:" + nParam, decodedValue);
+                    DECODE_CACHE.put(playerId, "n", nParam, decodedValue);
                 }
             }
 
@@ -299,7 +320,7 @@ public final class YoutubeApiDecoder {
                         throw new ParsingException("API returned empty decoded value for signature: " + sig);
                     }
                     sigResults.put(sig, decodedValue);
-                    DECODE_CACHE.put(playerId + ":sig:" + sig, decodedValue);
+                    DECODE_CACHE.put(playerId, "sig", sig, decodedValue);
                 }
             }
 
@@ -336,4 +357,65 @@ public final class YoutubeApiDecoder {
             return nParameters;
         }
     }
+
+    /**
+     * Snapshot of the decode cache statistics.
+     */
+    public static final class DecodeCacheStats {
+        private final int size;
+        private final int playerCount;
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+
+        public DecodeCacheStats(final int size,
+                                final int playerCount,
+                                final long hitCount,
+                                final long missCount,
+                                final long evictionCount) {
+            this.size = size;
+            this.playerCount = playerCount;
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+        }
+
+        /**
+         * @return the number of decoded values in the cache
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return the number of players which have decoded values in the cache
+         */
+        public int getPlayerCount() {
+            return playerCount;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * @return the number of decoded values removed because the cache was full, they expired
+         * or their player has been rotated
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        @Nonnull
+        @Override
+        public String toString() {
+            return "DecodeCacheStats[size=" + size + ", playerCount=" + playerCount
+                    + ", hitCount=" + hitCount + ", missCount=" + missCount
+                    + ", evictionCount=" + evictionCount + "]";
+        }
+    }
 }
@@ -0,0 +1,264 @@
+package org.schabi.newpipe.extractor.services.youtube;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe cache of deobfuscated signatures and throttling parameters used by
+ * {@link YoutubeApiDecoder}.
+ *
+ * <p>
+ * Decoded values only depend on the player which decoded them, so entries are partitioned per
+ * player ID. Each partition is a bounded LRU map whose entries also expire after a time to
+ * live. Only a few partitions are kept at the same time: when YouTube rotates its player, the
+ * partitions of players older than the previous one are dropped with
+ * {@link #onPlayerRotated(String)} instead of clearing the whole cache. Values decoded by a
+ * player without a partition are only cached while there is room for another one, so that late
+ * values of a rotated out player never push out the current or the previous player.
+ * </p>
+ */
+final class YoutubeDecodeCache {
+
+    /**
+     * The default maximum number of decoded values kept per player.
+     */
+    static final int DEFAULT_MAXIMUM_SIZE_PER_PLAYER = 4096;
+
+    /**
+     * The default time to live of a decoded value.
+     */
+    static final long DEFAULT_TTL_MILLIS = 6L * 60L * 60L * 1000L;
+
+    /**
+     * The maximum number of player partitions kept at the same time, i.e. the current player and
+     * the previous one while extractions started before a rotation are still running.
+     */
+    static final int MAXIMUM_PLAYERS = 2;
+
+    @Nonnull
+    private final ConcurrentHashMap<String, Partition> partitions = new ConcurrentHashMap<>();
+    // Guards the creation and removal of partitions, and their rotation sequences
+    @Nonnull
+    private final Object partitionsLock = new Object();
+    private long rotationSequence;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final int maximumSizePerPlayer;
+    private final long ttlMillis;
+
+    YoutubeDecodeCache() {
+        this(DEFAULT_MAXIMUM_SIZE_PER_PLAYER, DEFAULT_TTL_MILLIS);
+    }
+
+    YoutubeDecodeCache(final int maximumSizePerPlayer, final long ttlMillis) {
+        if (maximumSizePerPlayer <= 0) {
+            throw new IllegalArgumentException("Invalid maximum size");
+        }
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("Invalid time to live");
+        }
+        this.maximumSizePerPlayer = maximumSizePerPlayer;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Get a decoded value from the cache.
+     *
+     * @param playerId  the player ID which decoded the value
+     * @param paramType the parameter type ("sig" or "n")
+     * @param value     the obfuscated value
+     * @return the decoded value, or {@code null} if it is not cached or has expired
+     */
+    @Nullable
+    String get(@Nonnull final String playerId,
+               @Nonnull final String paramType,
+               @Nonnull final String value) {
+        final Partition partition = partitions.get(playerId);
+        if (partition == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        final String decodedValue = partition.get(toKey(paramType, value),
+                System.currentTimeMillis());
+        if (decodedValue == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return decodedValue;
+    }
+
+    /**
+     * Put a decoded value into the cache.
+     *
+     * @param playerId     the player ID which decoded the value
+     * @param paramType    the parameter type ("sig" or "n")
+     * @param value        the obfuscated value
+     * @param decodedValue the deobfuscated value
+     */
+    void put(@Nonnull final String playerId,
+             @Nonnull final String paramType,
+             @Nonnull final String value,
+             @Nonnull final String decodedValue) {
+        Partition partition = partitions.get(playerId);
+        if (partition == null) {
+            synchronized (partitionsLock) {
+                partition = partitions.get(playerId);
+                if (partition == null) {
+                    if (partitions.size() >= MAXIMUM_PLAYERS) {
+                        // Most likely a player which has already been rotated out
+                        return;
+                    }
+                    partition = new Partition(++rotationSequence);
+                    partitions.put(playerId, partition);
+                }
+            }
+        }
+        partition.put(toKey(paramType, value), decodedValue,
+                System.currentTimeMillis() + ttlMillis);
+    }
+
+    /**
+     * Make the given player the newest one, and drop the partitions of the players older than
+     * the previous one.
+     *
+     * <p>
+     * This is called when the player has been rotated. Values decoded by an older player are not
+     * valid for streaming URLs returned with the new one, but the partition of the previous
+     * player is kept for the extractions started before the rotation.
+     * </p>
+     *
+     * @param playerId the ID of the current player
+     */
+    void onPlayerRotated(@Nonnull final String playerId) {
+        synchronized (partitionsLock) {
+            final Partition partition = partitions.get(playerId);
+            if (partition == null) {
+                partitions.put(playerId, new Partition(++rotationSequence));
+            } else {
+                partition.rotationSequence = ++rotationSequence;
+            }
+            removeOldestPartitions();
+        }
+    }
+
+    /**
+     * Clear all cached values.
+     *
+     * <p>
+     * Statistics are not reset.
+     * </p>
+     */
+    void clear() {
+        synchronized (partitionsLock) {
+            partitions.clear();
+        }
+    }
+
+    /**
+     * @return the number of decoded values in the cache, over all players
+     */
+    int size() {
+        int size = 0;
+        for (final Partition partition : partitions.values()) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    @Nonnull
+    YoutubeApiDecoder.DecodeCacheStats getStats() {
+        return new YoutubeApiDecoder.DecodeCacheStats(size(), partitions.size(),
+                hitCount.get(), missCount.get(), evictionCount.get());
+    }
+
+    /**
+     * Remove the partitions of the players rotated out longest ago; must hold
+     * {@link #partitionsLock}.
+     */
+    private void removeOldestPartitions() {
+        while (partitions.size() > MAXIMUM_PLAYERS) {
+            Map.Entry<String, Partition> oldest = null;
+            for (final Map.Entry<String, Partition> entry : partitions.entrySet()) {
+                if (oldest == null || entry.getValue().rotationSequence
+                        < oldest.getValue().rotationSequence) {
+                    oldest = entry;
+                }
+            }
+            partitions.remove(oldest.getKey());
+            evictionCount.addAndGet(oldest.getValue().size());
+        }
+    }
+
+    @Nonnull
+    private static String toKey(@Nonnull final String paramType, @Nonnull final String value) {
+        return paramType + ':' + value;
+    }
+
+    private static final class CacheEntry {
+        @Nonnull
+        private final String decodedValue;
+        private final long expiresAt;
+
+        private CacheEntry(@Nonnull final String decodedValue, final long expiresAt) {
+            this.decodedValue = decodedValue;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * The decoded values of a single player, in access order so that the least recently used one
+     * is evicted first when the partition is full.
+     */
+    private final class Partition {
+        // When the player became the current one; guarded by partitionsLock
+        private long rotationSequence;
+        @Nonnull
+        private final LinkedHashMap<String, CacheEntry> entries =
+                new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(
+                            final Map.Entry<String, CacheEntry> eldest) {
+                        if (size() > maximumSizePerPlayer) {
+                            evictionCount.incrementAndGet();
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+
+        private Partition(final long rotationSequence) {
+            this.rotationSequence = rotationSequence;
+        }
+
+        @Nullable
+        synchronized String get(@Nonnull final String key, final long now) {
+            final CacheEntry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (now >= entry.expiresAt) {
+                entries.remove(key);
+                evictionCount.incrementAndGet();
+                return null;
+            }
+            return entry.decodedValue;
+        }
+
+        synchronized void put(@Nonnull final String key,
+                              @Nonnull final String decodedValue,
+                              final long expiresAt) {
+            entries.put(key, new CacheEntry(decodedValue, expiresAt));
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
@@ -4,10 +4,12 @@ import com.grack.nanojson.JsonObject;
 import com.grack.nanojson.JsonParser;
 import com.grack.nanojson.JsonParserException;
 import org.schabi.newpipe.extractor.NewPipe;
+import org.schabi.newpipe.extractor.ServiceList;
 import org.schabi.newpipe.extractor.downloader.Response;
 import org.schabi.newpipe.extractor.exceptions.ParsingException;
 import org.schabi.newpipe.extractor.exceptions.ReCaptchaException;
 import org.schabi.newpipe.extractor.localization.Localization;
+import org.schabi.newpipe.extractor.metrics.ExtractionMetrics;
 import org.schabi.newpipe.extractor.utils.Parser;
 
 import javax.annotation.Nonnull;
@@ -17,6 +19,13 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 /**
@@ -43,9 +52,24 @@ public final class YoutubeJavaScriptPlayerManager {
             "https://api.pipepipe.dev/decoder/latest-player";
     private static final String USER_AGENT = "PipePipe/4.9.0";
     private static final long PLAYER_METADATA_TTL_MILLIS = 24L * 60L * 60L * 1000L;
+    /**
+     * How long before its expiration the player metadata is refreshed in the background.
+     */
+    private static final long PLAYER_METADATA_REFRESH_AHEAD_MILLIS = 60L * 60L * 1000L;
+    /**
+     * How long after its expiration the player metadata is still served while it is refreshed.
+     */
+    private static final long PLAYER_METADATA_STALE_GRACE_MILLIS = 60L * 60L * 1000L;
+    private static final long REFRESH_RETRY_DELAY_MILLIS = 60L * 1000L;
+
+    private static final Object REFRESH_LOCK = new Object();
 
     @Nullable
-    private static PlayerMetadata playerMetadata;
+    private static volatile PlayerMetadata playerMetadata;
+    // Guarded by REFRESH_LOCK
+    @Nullable
+    private static CompletableFuture<PlayerMetadata> refreshInFlight;
+    private static long nextBackgroundRefreshAllowedAt;
 
     private YoutubeJavaScriptPlayerManager() {
     }
@@ -75,9 +99,11 @@ public final class YoutubeJavaScriptPlayerManager {
     @Nonnull
     public static Integer getSignatureTimestamp(@Nonnull final String videoId)
             throws ParsingException {
-        final long startedAtNanos = System.nanoTime();
+        final ExtractionMetrics metrics = NewPipe.getExtractionMetrics();
+        final long startedAtNanos = metrics.startTimer();
         final int signatureTimestamp = getPlayerMetadata(videoId).signatureTimestamp;
-        logPerformance(videoId, "ejs.signatureTimestamp", startedAtNanos);
+        metrics.stopTimer(ServiceList.YouTube.getServiceId(), "ejs.signatureTimestamp",
+                startedAtNanos);
         return signatureTimestamp;
     }
 
@@ -164,6 +190,15 @@ public final class YoutubeJavaScriptPlayerManager {
         return YoutubeApiDecoder.getCacheSize();
     }
 
+    /**
+     * @return a snapshot of the size, hit, miss and eviction counters of the cache of
+     * deobfuscated signatures and throttling parameters
+     */
+    @Nonnull
+    public static YoutubeApiDecoder.DecodeCacheStats getThrottlingParametersCacheStats() {
+        return YoutubeApiDecoder.getCacheStats();
+    }
+
     @Nullable
     public static String getThrottlingParameterFromStreamingUrl(
             @Nonnull final String streamingUrl) {
@@ -195,59 +230,172 @@ public final class YoutubeJavaScriptPlayerManager {
             @Nullable final List<String> signatures,
             @Nullable final List<String> throttlingParams) throws ParsingException {
         final String playerId = getPlayerMetadata(videoId).playerId;
-        final long startedAtNanos = System.nanoTime();
+        final ExtractionMetrics metrics = NewPipe.getExtractionMetrics();
+        final long startedAtNanos = metrics.startTimer();
         final YoutubeApiDecoder.BatchDecodeResult result = YoutubeApiDecoder.decodeBatch(
                 playerId, signatures, throttlingParams);
-        logPerformanceIfSlow(videoId, "ejs.batch.decode", startedAtNanos);
+        metrics.stopTimer(ServiceList.YouTube.getServiceId(), "ejs.batch.decode",
+                startedAtNanos);
         return result;
     }
 
+    /**
+     * Refresh the player metadata in the background if it is about to expire.
+     *
+     * <p>
+     * This can be called periodically, e.g. when the app goes to the foreground, so that
+     * extractions never have to wait for the player metadata. It does nothing if the metadata is
+     * still fresh or if a refresh is already running.
+     * </p>
+     *
+     * <p>
+     * The {@link YoutubeJavaScriptDecoder local decoder} needs a video ID, which is not known
+     * here, so nothing is prefetched while one is set: its metadata is refreshed ahead of time by
+     * the extractions themselves.
+     * </p>
+     */
+    public static void prefetchPlayerMetadata() {
+        final PlayerMetadata currentMetadata = playerMetadata;
+        if (YoutubeApiDecoder.getLocalDecoder() == null
+                && (currentMetadata == null || currentMetadata.shouldRefresh())) {
+            refreshInBackground(null);
+        }
+    }
+
     /**
      * Load player metadata from memory or refresh it from the decoder API.
      *
-     * @param videoId unused, kept to avoid changing public call sites
+     * <p>
+     * Metadata close to its expiration is refreshed ahead of time in the background, and expired
+     * metadata is still served for a grace period while it is being refreshed. Callers only block
+     * when there is no usable metadata, and then all of them wait for a single refresh.
+     * </p>
+     *
+     * @param videoId the video ID passed to the local decoder if the metadata has to be refreshed
      * @throws ParsingException if loading the player metadata failed
      */
     @Nonnull
     private static PlayerMetadata getPlayerMetadata(@Nonnull final String videoId)
             throws ParsingException {
         final PlayerMetadata currentMetadata = playerMetadata;
-        if (currentMetadata != null && !currentMetadata.isExpired()) {
+        if (currentMetadata != null && !currentMetadata.shouldRefresh()) {
+            return currentMetadata;
+        }
+
+        if (currentMetadata != null && !currentMetadata.isStale()) {
+            refreshInBackground(videoId);
             return currentMetadata;
         }
 
-        final long startedAtNanos = System.nanoTime();
+        return awaitRefresh(videoId);
+    }
+
+    @Nonnull
+    private static PlayerMetadata awaitRefresh(@Nonnull final String videoId)
+            throws ParsingException {
+        final CompletableFuture<PlayerMetadata> refresh;
+        final boolean isOwner;
+        synchronized (REFRESH_LOCK) {
+            isOwner = refreshInFlight == null;
+            if (isOwner) {
+                refreshInFlight = new CompletableFuture<>();
+            }
+            refresh = refreshInFlight;
+        }
+
+        if (isOwner) {
+            runRefresh(refresh, videoId);
+        }
+
+        try {
+            return refresh.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ParsingException("Interrupted while waiting for player metadata", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof ParsingException) {
+                throw (ParsingException) e.getCause();
+            }
+            throw new ParsingException("Failed to load player metadata", e.getCause());
+        }
+    }
+
+    /**
+     * @param videoId the video ID to pass to the local decoder, or {@code null} to only refresh
+     *                from the decoder API
+     */
+    private static void refreshInBackground(@Nullable final String videoId) {
+        final CompletableFuture<PlayerMetadata> refresh;
+        synchronized (REFRESH_LOCK) {
+            if (refreshInFlight != null
+                    || System.currentTimeMillis() < nextBackgroundRefreshAllowedAt) {
+                return;
+            }
+            refresh = new CompletableFuture<>();
+            refreshInFlight = refresh;
+        }
+
+        try {
+            RefreshExecutorHolder.EXECUTOR.execute(() -> runRefresh(refresh, videoId));
+        } catch (final RejectedExecutionException e) {
+            // The current metadata keeps being served until a later call refreshes it
+            synchronized (REFRESH_LOCK) {
+                if (refreshInFlight == refresh) {
+                    refreshInFlight = null;
+                }
+            }
+            refresh.completeExceptionally(e);
+        }
+    }
+
+    private static void runRefresh(@Nonnull final CompletableFuture<PlayerMetadata> refresh,
+                                   @Nullable final String videoId) {
+        try {
+            final PlayerMetadata newMetadata = loadPlayerMetadata(videoId);
+            setPlayerMetadata(newMetadata);
+            refresh.complete(newMetadata);
+        } catch (final Throwable e) {
+            synchronized (REFRESH_LOCK) {
+                nextBackgroundRefreshAllowedAt =
+                        System.currentTimeMillis() + REFRESH_RETRY_DELAY_MILLIS;
+            }
+            refresh.completeExceptionally(e);
+        } finally {
+            synchronized (REFRESH_LOCK) {
+                if (refreshInFlight == refresh) {
+                    refreshInFlight = null;
+                }
+            }
+        }
+    }
+
+    @Nonnull
+    private static PlayerMetadata loadPlayerMetadata(@Nullable final String videoId)
+            throws ParsingException {
+        final ExtractionMetrics metrics = NewPipe.getExtractionMetrics();
+        final long startedAtNanos = metrics.startTimer();
         final YoutubeJavaScriptDecoder decoder = YoutubeApiDecoder.getLocalDecoder();
-        if (decoder != null) {
+        if (decoder != null && videoId != null) {
             final YoutubeJavaScriptDecoder.PlayerData data = decoder.getPlayerData(videoId);
-            playerMetadata = new PlayerMetadata(data.getPlayerId(), data.getSignatureTimestamp(),
+            final PlayerMetadata newMetadata = new PlayerMetadata(data.getPlayerId(),
+                    data.getSignatureTimestamp(),
                     System.currentTimeMillis() + PLAYER_METADATA_TTL_MILLIS);
-            logPerformance(videoId, "ejs.playerMetadata.local", startedAtNanos);
-            return playerMetadata;
+            metrics.stopTimer(ServiceList.YouTube.getServiceId(), "ejs.playerMetadata.local",
+                    startedAtNanos);
+            return newMetadata;
         }
 
-        playerMetadata = fetchLatestPlayerMetadata();
-        logPerformance(videoId, "ejs.playerMetadata.remoteFallback", startedAtNanos);
-        return playerMetadata;
-    }
-
-    private static void logPerformance(@Nonnull final String videoId,
-                                       @Nonnull final String stage,
-                                       final long startedAtNanos) {
-        System.out.println("YT_PERF videoId=" + videoId + " stage=" + stage
-                + " durationMs="
-                + java.util.concurrent.TimeUnit.NANOSECONDS.toMillis(
-                        System.nanoTime() - startedAtNanos));
+        final PlayerMetadata newMetadata = fetchLatestPlayerMetadata();
+        metrics.stopTimer(ServiceList.YouTube.getServiceId(), "ejs.playerMetadata.remoteFallback",
+                startedAtNanos);
+        return newMetadata;
     }
 
-    private static void logPerformanceIfSlow(@Nonnull final String videoId,
-                                             @Nonnull final String stage,
-                                             final long startedAtNanos) {
-        final long durationMs = java.util.concurrent.TimeUnit.NANOSECONDS.toMillis(
-                System.nanoTime() - startedAtNanos);
-        if (durationMs >= 5) {
-            System.out.println("YT_PERF videoId=" + videoId + " stage=" + stage
-                    + " durationMs=" + durationMs);
+    private static void setPlayerMetadata(@Nonnull final PlayerMetadata newMetadata) {
+        final PlayerMetadata previousMetadata = playerMetadata;
+        playerMetadata = newMetadata;
+        if (previousMetadata != null && !previousMetadata.playerId.equals(newMetadata.playerId)) {
+            YoutubeApiDecoder.onPlayerRotated(newMetadata.playerId);
         }
     }
 
@@ -296,8 +444,32 @@ public final class YoutubeJavaScriptPlayerManager {
             this.expiresAt = expiresAt;
         }
 
-        private boolean isExpired() {
-            return System.currentTimeMillis() >= expiresAt;
+        private boolean shouldRefresh() {
+            return System.currentTimeMillis() >= expiresAt - PLAYER_METADATA_REFRESH_AHEAD_MILLIS;
+        }
+
+        private boolean isStale() {
+            return System.currentTimeMillis() >= expiresAt + PLAYER_METADATA_STALE_GRACE_MILLIS;
+        }
+    }
+
+    /**
+     * Runs background refreshes, which are coalesced so that at most one is in flight, on their
+     * own daemon thread, so that they never wait behind other background work.
+     */
+    private static final class RefreshExecutorHolder {
+        private static final Executor EXECUTOR = createExecutor();
+
+        @Nonnull
+        private static Executor createExecutor() {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(1), runnable -> {
+                        final Thread thread = new Thread(runnable, "YoutubePlayerRefresh");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
         }
     }
 }
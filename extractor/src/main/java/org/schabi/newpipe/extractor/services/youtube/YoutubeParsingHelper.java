@@ -38,6 +38,7 @@ import org.schabi.newpipe.extractor.downloader.Response;
 import org.schabi.newpipe.extractor.exceptions.*;
 import org.schabi.newpipe.extractor.localization.ContentCountry;
 import org.schabi.newpipe.extractor.localization.Localization;
+import org.schabi.newpipe.extractor.metrics.ExtractionMetrics;
 import org.schabi.newpipe.extractor.playlist.PlaylistInfo;
 import org.schabi.newpipe.extractor.services.youtube.extractors.YoutubeStreamExtractor;
 import org.schabi.newpipe.extractor.stream.Description;
@@ -1712,7 +1713,9 @@ YoutubeParsingHelper {
             @Nonnull final ContentCountry contentCountry,
             @Nonnull final String videoId,
             final YoutubeStreamExtractor streamExtractor) throws IOException, ExtractionException {
-        long stageStartedAt = System.nanoTime();
+        final ExtractionMetrics metrics = NewPipe.getExtractionMetrics();
+        final int serviceId = ServiceList.YouTube.getServiceId();
+        long stageStartedAt = metrics.startTimer();
         final byte[] body = JsonWriter.string(
                         prepareDesktopJsonBuilder(localization, contentCountry)
                                 .value(VIDEO_ID, videoId)
@@ -1720,17 +1723,17 @@ YoutubeParsingHelper {
                                 .value(RACY_CHECK_OK, true)
                                 .done())
                 .getBytes(StandardCharsets.UTF_8);
-        logPerformance(videoId, "webPlayer.prepareBody", stageStartedAt);
+        metrics.stopTimer(serviceId, "webPlayer.prepareBody", stageStartedAt);
         final String url = YOUTUBEI_V1_URL + "player" + "?" + DISABLE_PRETTY_PRINT_PARAMETER
                 + "&$fields=microformat,playabilityStatus,storyboards,videoDetails";
 
-        stageStartedAt = System.nanoTime();
+        stageStartedAt = metrics.startTimer();
         final Map<String, List<String>> headers = new HashMap<>();
         addYoutubeHeaders(headers);
         headers.put("Content-Type", singletonList("application/json"));
         addLoggedInHeaders(headers);
-        logPerformance(videoId, "webPlayer.prepareHeaders", stageStartedAt);
-        stageStartedAt = System.nanoTime();
+        metrics.stopTimer(serviceId, "webPlayer.prepareHeaders", stageStartedAt);
+        stageStartedAt = metrics.startTimer();
         final CancellableCall call = getDownloader().postAsync(
                 url, headers, body, localization, new Downloader.AsyncCallback() {
                     @Override
@@ -1773,7 +1776,7 @@ YoutubeParsingHelper {
                         streamExtractor.addError(error);
                     }
                 });
-        logPerformance(videoId, "webPlayer.enqueue", stageStartedAt);
+        metrics.stopTimer(serviceId, "webPlayer.enqueue", stageStartedAt);
         return call;
     }
 
@@ -2653,13 +2656,4 @@ YoutubeParsingHelper {
 
         return builder;
     }
-
-    private static void logPerformance(@Nonnull final String videoId,
-                                       @Nonnull final String stage,
-                                       final long startedAtNanos) {
-        System.out.println("YT_PERF videoId=" + videoId + " stage=" + stage
-                + " durationMs="
-                + java.util.concurrent.TimeUnit.NANOSECONDS.toMillis(
-                        System.nanoTime() - startedAtNanos));
-    }
 }
@@ -9,8 +9,10 @@ import com.grack.nanojson.JsonObject;
 import com.grack.nanojson.JsonParser;
 import com.grack.nanojson.JsonWriter;
 
+import org.schabi.newpipe.extractor.NewPipe;
 import org.schabi.newpipe.extractor.Page;
 import org.schabi.newpipe.extractor.StreamingService;
+import org.schabi.newpipe.extractor.bulletComments.BulletCommentsDeduplicator;
 import org.schabi.newpipe.extractor.bulletComments.BulletCommentsExtractor;
 import org.schabi.newpipe.extractor.bulletComments.BulletCommentsInfoItem;
 import org.schabi.newpipe.extractor.bulletComments.BulletCommentsInfoItemsCollector;
@@ -37,7 +39,6 @@ public class YoutubeBulletCommentsExtractor extends BulletCommentsExtractor {
     private JsonObject data;
     private String key;
     private StreamType streamType;
-    private ScheduledExecutorService executor;
     private final CopyOnWriteArrayList<YoutubeBulletCommentPair> messages = new CopyOnWriteArrayList<>();
     private final CopyOnWriteArrayList<YoutubeBulletCommentPair> SuperChatMessages = new CopyOnWriteArrayList<>();
     private String lastContinuation;
@@ -51,7 +52,7 @@ public class YoutubeBulletCommentsExtractor extends BulletCommentsExtractor {
             "timedContinuationData", "invalidationContinuationData"
 //           , "playerSeekContinuationData" , "liveChatReplayContinuationData"
     };
-    private final CopyOnWriteArrayList<String> IDList= new CopyOnWriteArrayList<>();
+    private final BulletCommentsDeduplicator<String> seenIds = new BulletCommentsDeduplicator<>();
     private boolean shouldSkipFetch = false;
 
     public YoutubeBulletCommentsExtractor(StreamingService service, ListLinkHandler uiHandler, WatchDataCache watchDataCache) throws ExtractionException {
@@ -151,26 +152,25 @@ public class YoutubeBulletCommentsExtractor extends BulletCommentsExtractor {
                 if(item.has("liveChatTextMessageRenderer")){
                     JsonObject temp = item.getObject("liveChatTextMessageRenderer");
                     String id = temp.getString("id");
-                    if(!IDList.contains(id)){
+                    if(seenIds.add(id)){
                         messages.add(new YoutubeBulletCommentPair(temp, isLiveStream?
                                 -1 : Long.parseLong(actions.getObject(i).getObject("replayChatItemAction")
                                 .getString("videoOffsetTimeMsec"))));
-                        IDList.add(id);
                     }
                 } else if (item.has("liveChatPaidMessageRenderer")) {
                     JsonObject temp = item.getObject("liveChatPaidMessageRenderer");
                     String id = temp.getString("id");
-                    if(!IDList.contains(id)){
+                    if(seenIds.add(id)){
                         SuperChatMessages.add(new YoutubeBulletCommentPair(temp, isLiveStream?
                                 -1 : Long.parseLong(actions.getObject(i).getObject("replayChatItemAction")
                                 .getString("videoOffsetTimeMsec"))));
-                        IDList.add(id);
                     }
                 }
             }
         } catch (Exception e) {
             // should never throw any exception as that will stop fetching and unable to reconnect
         }
+        publishLiveMessages();
     }
 
     @Nonnull
@@ -179,8 +179,8 @@ public class YoutubeBulletCommentsExtractor extends BulletCommentsExtractor {
         if(isDisabled()){
             return null;
         }
-        executor = Executors.newSingleThreadScheduledExecutor();
-        future = executor.scheduleAtFixedRate(this::fetchMessage, 1000, 1000, TimeUnit.MILLISECONDS);
+        future = NewPipe.getBulletCommentsScheduler()
+                .schedulePolling(this::fetchMessage, 1000, 1000);
         return null;
     }
 
@@ -212,14 +212,15 @@ public class YoutubeBulletCommentsExtractor extends BulletCommentsExtractor {
     @Override
     public void disconnect() {
         if(future != null && !future.isCancelled()){
-            future.cancel(true);
+            future.cancel(false);
         }
     }
 
     @Override
     public void reconnect() {
         if(!isDisabled() && future != null && future.isCancelled()){
-            future = executor.scheduleAtFixedRate(this::fetchMessage, 1000, 1000, TimeUnit.MILLISECONDS);
+            future = NewPipe.getBulletCommentsScheduler()
+                    .schedulePolling(this::fetchMessage, 1000, 1000);
         }
     }
 
@@ -234,7 +235,7 @@ public class YoutubeBulletCommentsExtractor extends BulletCommentsExtractor {
             return;
         }
         if(this.currentPlayPosition > currentPlayPosition){
-            IDList.clear();
+            seenIds.clear();
             shouldSkipFetch = true;
         }
         this.currentPlayPosition = currentPlayPosition;
@@ -242,6 +243,6 @@ public class YoutubeBulletCommentsExtractor extends BulletCommentsExtractor {
 
     @Override
     public void clearMappingState() {
-        IDList.clear();
+        seenIds.clear();
     }
 }
@@ -3,9 +3,6 @@ package org.schabi.newpipe.extractor.services.youtube.extractors;
 import com.grack.nanojson.JsonArray;
 import com.grack.nanojson.JsonObject;
 import com.grack.nanojson.JsonWriter;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.schabi.newpipe.extractor.Page;
 import org.schabi.newpipe.extractor.StreamingService;
 import org.schabi.newpipe.extractor.comments.CommentsExtractor;
@@ -43,7 +40,6 @@ public class YoutubeCommentsExtractor extends CommentsExtractor {
      * The second ajax <b>/next</b> response.
      */
     private JsonObject ajaxJson;
-    private JSONObject ajaxJsonSafe;
 
     public YoutubeCommentsExtractor(
             final StreamingService service,
@@ -60,7 +56,7 @@ public class YoutubeCommentsExtractor extends CommentsExtractor {
             return getInfoItemsPageForDisabledComments();
         }
 
-        return extractComments(ajaxJson, ajaxJsonSafe);
+        return extractComments(ajaxJson);
     }
 
     /**
@@ -145,7 +141,7 @@ public class YoutubeCommentsExtractor extends CommentsExtractor {
     }
 
     @Nullable
-    private Page getNextPage(@Nonnull final JsonObject jsonObject, JSONObject jsonObjectSafe) throws ExtractionException {
+    private Page getNextPage(@Nonnull final JsonObject jsonObject) throws ExtractionException {
         final JsonArray onResponseReceivedEndpoints =
                 jsonObject.getArray("onResponseReceivedEndpoints");
 
@@ -154,83 +150,38 @@ public class YoutubeCommentsExtractor extends CommentsExtractor {
             return null;
         }
 
-        if(jsonObjectSafe == null) {
-            return getNextPage(onResponseReceivedEndpoints
-                    .getObject(0)
-                    .getObject("reloadContinuationItemsCommand")
-                    .getArray("continuationItems")
-                    .getObject(0)
-                    .getObject("commentsHeaderRenderer")
-                    .getObject("sortMenu")
-                    .getObject("sortFilterSubMenuRenderer")
-                    .getArray("subMenuItems")
-                    .getObject(0)
-                    .getObject("serviceEndpoint")
-                    .getObject("continuationCommand")
-                    .getString("token"));
-        }
-
-        final JsonArray continuationItemsArray;
-        try {
-            final JsonObject endpoint = onResponseReceivedEndpoints
-                    .getObject(onResponseReceivedEndpoints.size() - 1);
-            continuationItemsArray = endpoint
-                    .getObject("reloadContinuationItemsCommand",
-                            endpoint.getObject("appendContinuationItemsAction"))
-                    .getArray("continuationItems");
-        } catch (final Exception e) {
-            return null;
-        }
+        final JsonObject endpoint = onResponseReceivedEndpoints
+                .getObject(onResponseReceivedEndpoints.size() - 1);
+        final JsonArray continuationItems = endpoint
+                .getObject("reloadContinuationItemsCommand",
+                        endpoint.getObject("appendContinuationItemsAction"))
+                .getArray("continuationItems");
         // Prevent ArrayIndexOutOfBoundsException
-        if (continuationItemsArray.isEmpty()) {
+        if (continuationItems.isEmpty()) {
             return null;
         }
 
-        JSONArray continuationItems = null;
-        try {
-            try {
-                continuationItems = jsonObjectSafe
-                        .getJSONArray("onResponseReceivedEndpoints")
-                        .getJSONObject(onResponseReceivedEndpoints.size() - 1)
-                        .getJSONObject("reloadContinuationItemsCommand")
-                        .getJSONArray("continuationItems");
-            } catch (final Exception ignored) {
-
-            }
-            // fall back to "appendContinuationItemsAction"
-            if (continuationItems == null) {
-                continuationItems = jsonObjectSafe
-                        .getJSONArray("onResponseReceivedEndpoints")
-                        .getJSONObject(onResponseReceivedEndpoints.size() - 1)
-                        .getJSONObject("appendContinuationItemsAction")
-                        .getJSONArray("continuationItems");
-            }
-
-            final JSONObject continuationItemRenderer = continuationItems
-                    .getJSONObject(continuationItems.length() - 1)
-                    .getJSONObject("continuationItemRenderer");
-
-            if(continuationItemRenderer.has("button")) { // replies
-                //TODO: seems reply send 2 useless requests which should be avoided
-                //button.buttonRenderer.command.continuationCommand.token
-                return getNextPage(continuationItemRenderer
-                        .getJSONObject("button")
-                        .getJSONObject("buttonRenderer")
-                        .getJSONObject("command")
-                        .getJSONObject("continuationCommand")
-                        .getString("token")
-                );
-            }
-
-
-            return getNextPage(continuationItemRenderer
-                    .getJSONObject("continuationEndpoint")
-                    .getJSONObject("continuationCommand")
-                    .getString("token")
-            );
-        } catch (JSONException e) {
-            return null;
+        final JsonObject continuationItemRenderer = continuationItems
+                .getObject(continuationItems.size() - 1)
+                .getObject("continuationItemRenderer");
+
+        final String token;
+        if (continuationItemRenderer.has("button")) { // replies
+            //TODO: seems reply send 2 useless requests which should be avoided
+            token = continuationItemRenderer
+                    .getObject("button")
+                    .getObject("buttonRenderer")
+                    .getObject("command")
+                    .getObject("continuationCommand")
+                    .getString("token");
+        } else {
+            token = continuationItemRenderer
+                    .getObject("continuationEndpoint")
+                    .getObject("continuationCommand")
+                    .getString("token");
         }
+
+        return isNullOrEmpty(token) ? null : getNextPage(token);
     }
 
     @Nonnull
@@ -259,26 +210,18 @@ public class YoutubeCommentsExtractor extends CommentsExtractor {
                 .getBytes(StandardCharsets.UTF_8);
         // @formatter:on
 
-        String resp = getJsonPostResponseRaw("next", body, localization);
-        final JsonObject jsonObject = JsonUtils.toJsonObject(resp);
-        final JSONObject jsonObjectSafe;
-        try {
-            jsonObjectSafe = new JSONObject(resp);
-        } catch (JSONException e) {
-            throw new RuntimeException(e);
-        }
+        final JsonObject jsonObject = JsonUtils.toJsonObject(
+                getJsonPostResponseRaw("next", body, localization));
 
-        return extractComments(jsonObject, jsonObjectSafe);
+        return extractComments(jsonObject);
     }
 
-    private InfoItemsPage<CommentsInfoItem> extractComments(final JsonObject jsonObject, final JSONObject jsonObjectSafe)
+    private InfoItemsPage<CommentsInfoItem> extractComments(final JsonObject jsonObject)
             throws ExtractionException {
         final CommentsInfoItemsCollector collector = new CommentsInfoItemsCollector(
                 getServiceId());
-        if(jsonObjectSafe != null) {
-            collectCommentsFrom(collector, jsonObject);
-        }
-        return new InfoItemsPage<>(collector, getNextPage(jsonObject, jsonObjectSafe));
+        collectCommentsFrom(collector, jsonObject);
+        return new InfoItemsPage<>(collector, getNextPage(jsonObject));
     }
 
     private void collectCommentsFrom(@Nonnull final CommentsInfoItemsCollector collector,
@@ -313,10 +256,8 @@ public class YoutubeCommentsExtractor extends CommentsExtractor {
             return;
         }
 
-        final int index = contents.size() - 1;
-        if (!contents.isEmpty() && contents.getObject(index).has("continuationItemRenderer")) {
-            contents.remove(index);
-        }
+        // The last item may be a continuationItemRenderer, which is skipped by
+        // collectCommentItem: it is kept in the response for getNextPage
 
         // The mutations object, which is returned in the comments' continuation
         // It contains parts of comment data when comments are returned with a view model
@@ -421,13 +362,8 @@ public class YoutubeCommentsExtractor extends CommentsExtractor {
                 .getBytes(StandardCharsets.UTF_8);
         // @formatter:on
 
-        String resp = getJsonPostResponseRaw("next", ajaxBody, localization);
-        ajaxJson = JsonUtils.toJsonObject(resp);
-        try {
-            ajaxJsonSafe = new JSONObject(resp);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
+        ajaxJson = JsonUtils.toJsonObject(
+                getJsonPostResponseRaw("next", ajaxBody, localization));
     }
 
 
@@ -32,6 +32,7 @@ import org.schabi.newpipe.extractor.downloader.Response;
 import org.schabi.newpipe.extractor.exceptions.*;
 import org.schabi.newpipe.extractor.linkhandler.LinkHandler;
 import org.schabi.newpipe.extractor.localization.*;
+import org.schabi.newpipe.extractor.metrics.ExtractionMetrics;
 import org.schabi.newpipe.extractor.services.youtube.*;
 import org.schabi.newpipe.extractor.services.youtube.linkHandler.YoutubeChannelLinkHandlerFactory;
 import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrProtocolException;
@@ -2108,7 +2109,9 @@ public class YoutubeStreamExtractor extends StreamExtractor {
     public void onFetchPage(@Nonnull final Downloader downloader)
             throws IOException, ExtractionException {
 
-        final long fetchStartedAt = System.nanoTime();
+        final ExtractionMetrics metrics = NewPipe.getExtractionMetrics();
+        final int serviceId = getServiceId();
+        final long fetchStartedAt = metrics.startTimer();
         NewPipe.checkWebViewAvailable();
 
         final String videoId = getId();
@@ -2125,10 +2128,10 @@ public class YoutubeStreamExtractor extends StreamExtractor {
         androidReelFormats = null;
         androidReelCpn = null;
 
-        long stageStartedAt = System.nanoTime();
+        long stageStartedAt = metrics.startTimer();
         final CancellableCall webPageCall = YoutubeParsingHelper.getWebPlayerResponse(
                 localization, contentCountry, videoId, this);
-        logPerformance(videoId, "schedule.webPlayer", stageStartedAt);
+        metrics.stopTimer(serviceId, "schedule.webPlayer", stageStartedAt);
 
         final byte[] body = JsonWriter.string(
                 prepareDesktopJsonBuilder(getExtractorLocalization(), contentCountry)
@@ -2137,7 +2140,7 @@ public class YoutubeStreamExtractor extends StreamExtractor {
                         .value(RACY_CHECK_OK, true)
                         .done())
                 .getBytes(StandardCharsets.UTF_8);
-        stageStartedAt = System.nanoTime();
+        stageStartedAt = metrics.startTimer();
         final CancellableCall nextDataCall = getJsonPostResponseAsync(
                 NEXT, body, localization, new Downloader.AsyncCallback() {
                     @Override
@@ -2157,11 +2160,11 @@ public class YoutubeStreamExtractor extends StreamExtractor {
                     }
                 }
         );
-        logPerformance(videoId, "schedule.next", stageStartedAt);
+        metrics.stopTimer(serviceId, "schedule.next", stageStartedAt);
 
         CancellableCall dislikeCall = null;
         if (ServiceList.YouTube.isFetchDislike()) {
-            stageStartedAt = System.nanoTime();
+            stageStartedAt = metrics.startTimer();
             dislikeCall = downloader.getAsync(
                     "https://returnyoutubedislikeapi.com/votes?videoId=" + videoId,
                     new Downloader.AsyncCallback() {
@@ -2176,11 +2179,11 @@ public class YoutubeStreamExtractor extends StreamExtractor {
                         }
                     }
             );
-            logPerformance(videoId, "schedule.dislike", stageStartedAt);
+            metrics.stopTimer(serviceId, "schedule.dislike", stageStartedAt);
         }
 
         final CancellableCall jsonPlayerCall;
-        stageStartedAt = System.nanoTime();
+        stageStartedAt = metrics.startTimer();
         switch (NewPipe.getYoutubePlayerClient()) {
             case "android_vr":
             case "visionos":
@@ -2199,7 +2202,7 @@ public class YoutubeStreamExtractor extends StreamExtractor {
                         contentCountry, localization, videoId);
                 break;
         }
-        logPerformance(videoId, "schedule.jsonPlayer", stageStartedAt);
+        metrics.stopTimer(serviceId, "schedule.jsonPlayer", stageStartedAt);
 
         CancellableCall androidReelCall = null;
         if ("android_vr".equals(NewPipe.getYoutubePlayerClient())
@@ -2218,17 +2221,22 @@ public class YoutubeStreamExtractor extends StreamExtractor {
         }
         final CancellableCall[] requiredCalls =
                 requiredCallList.toArray(new CancellableCall[0]);
-        stageStartedAt = System.nanoTime();
+        stageStartedAt = metrics.startTimer();
         awaitRequiredCalls(requiredCalls, ServiceList.YouTube.getLoadingTimeout());
-        logPerformance(videoId, "await.required", stageStartedAt);
-        logCallPerformance(videoId, "request.jsonPlayer", jsonPlayerCall);
-        logCallPerformance(videoId, "request.webPlayer", webPageCall);
-        logCallPerformance(videoId, "request.next", nextDataCall);
+        metrics.stopTimer(serviceId, "await.required", stageStartedAt);
+        recordCallMetrics(metrics, serviceId, "request.jsonPlayer",
+                "request.jsonPlayer.unfinished", jsonPlayerCall);
+        recordCallMetrics(metrics, serviceId, "request.webPlayer",
+                "request.webPlayer.unfinished", webPageCall);
+        recordCallMetrics(metrics, serviceId, "request.next",
+                "request.next.unfinished", nextDataCall);
         if (androidReelCall != null) {
-            logCallPerformance(videoId, "request.androidReel", androidReelCall);
+            recordCallMetrics(metrics, serviceId, "request.androidReel",
+                    "request.androidReel.unfinished", androidReelCall);
         }
         if (dislikeCall != null) {
-            logCallPerformance(videoId, "request.dislike", dislikeCall);
+            recordCallMetrics(metrics, serviceId, "request.dislike",
+                    "request.dislike.unfinished", dislikeCall);
         }
 
         throwIfErrors();
@@ -2257,26 +2265,24 @@ public class YoutubeStreamExtractor extends StreamExtractor {
         if (nextResponse == null) {
             throw new ExtractionException("YouTube next response is missing");
         }
-        logPerformance(videoId, "fetchPage.total", fetchStartedAt);
+        metrics.stopTimer(serviceId, "fetchPage.total", fetchStartedAt);
 
         // SABR-only responses are no longer a hard failure: ensureStreamsAreCached() builds
         // session-based SABR streams (DeliveryMethod.SABR) from the adaptiveFormats instead.
     }
 
-    private static void logCallPerformance(@Nonnull final String videoId,
-                                           @Nonnull final String stage,
-                                           @Nonnull final CancellableCall call) {
-        System.out.println("YT_PERF videoId=" + videoId + " stage=" + stage
-                + " durationMs=" + call.getElapsedTimeMillis()
-                + " finished=" + call.isFinished());
-    }
-
-    private static void logPerformance(@Nonnull final String videoId,
-                                       @Nonnull final String stage,
-                                       final long startedAtNanos) {
-        System.out.println("YT_PERF videoId=" + videoId + " stage=" + stage
-                + " durationMs="
-                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtNanos));
+    private static void recordCallMetrics(@Nonnull final ExtractionMetrics metrics,
+                                          final int serviceId,
+                                          @Nonnull final String stage,
+                                          @Nonnull final String unfinishedCounter,
+                                          @Nonnull final CancellableCall call) {
+        if (!metrics.isEnabled()) {
+            return;
+        }
+        metrics.recordDuration(serviceId, stage, call.getElapsedTimeNanos());
+        if (!call.isFinished()) {
+            metrics.incrementCounter(serviceId, unfinishedCounter);
+        }
     }
 
     private void awaitRequiredCalls(@Nonnull final CancellableCall[] calls,
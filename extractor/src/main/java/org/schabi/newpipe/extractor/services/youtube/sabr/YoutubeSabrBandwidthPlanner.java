@@ -0,0 +1,193 @@
+package org.schabi.newpipe.extractor.services.youtube.sabr;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link YoutubeSabrReadaheadPlanner} which buffers further ahead the more the bandwidth
+ * exceeds the bitrate of the played formats, and picks the video format with the highest
+ * bitrate the bandwidth can sustain.
+ *
+ * <p>
+ * On fast links, the target readahead grows up to the maximum readahead, and the next request
+ * is only sent once the buffer has drained to halfway between the minimum and the target, so
+ * that media is fetched in few large requests. On slow links, the target stays at the minimum
+ * readahead and requests are sent as soon as the buffer is below it.
+ * </p>
+ *
+ * <p>
+ * Switching to another video format takes effect at the end of what is already buffered: the
+ * new track is declared buffered through the segment which ends there, so that the server
+ * continues from it instead of sending media from the playback position again. The planner
+ * only switches to a higher bitrate once at least the minimum readahead is buffered.
+ * </p>
+ */
+public final class YoutubeSabrBandwidthPlanner implements YoutubeSabrReadaheadPlanner {
+    public static final long DEFAULT_MIN_READAHEAD_MS = 10_000;
+    public static final long DEFAULT_MAX_READAHEAD_MS = 120_000;
+    /** The share of the estimated bandwidth which the played formats may use. */
+    public static final double DEFAULT_BANDWIDTH_SAFETY_FACTOR = 0.75;
+    // With this much more bandwidth than bitrate, the target readahead is the maximum
+    private static final double FULL_READAHEAD_BANDWIDTH_RATIO = 4;
+
+    private final long minReadaheadMs;
+    private final long maxReadaheadMs;
+    private final double bandwidthSafetyFactor;
+
+    public YoutubeSabrBandwidthPlanner() {
+        this(DEFAULT_MIN_READAHEAD_MS, DEFAULT_MAX_READAHEAD_MS, DEFAULT_BANDWIDTH_SAFETY_FACTOR);
+    }
+
+    /**
+     * @param minReadaheadMs        the readahead to keep on slow links
+     * @param maxReadaheadMs        the readahead to keep on fast links
+     * @param bandwidthSafetyFactor the share of the estimated bandwidth which the played formats
+     *                              may use, between 0 exclusive and 1 inclusive
+     */
+    public YoutubeSabrBandwidthPlanner(final long minReadaheadMs,
+                                       final long maxReadaheadMs,
+                                       final double bandwidthSafetyFactor) {
+        if (minReadaheadMs <= 0 || maxReadaheadMs < minReadaheadMs) {
+            throw new IllegalArgumentException("Invalid SABR readahead range: "
+                    + minReadaheadMs + ".." + maxReadaheadMs);
+        }
+        if (!(bandwidthSafetyFactor > 0 && bandwidthSafetyFactor <= 1)) {
+            throw new IllegalArgumentException("Invalid SABR bandwidth safety factor: "
+                    + bandwidthSafetyFactor);
+        }
+        this.minReadaheadMs = minReadaheadMs;
+        this.maxReadaheadMs = maxReadaheadMs;
+        this.bandwidthSafetyFactor = bandwidthSafetyFactor;
+    }
+
+    @Nonnull
+    @Override
+    public Plan plan(@Nonnull final Input input) {
+        final long playerTimeMs = input.getPlayerTimeMs();
+        final long bandwidth = input.getBandwidthEstimate();
+
+        long bufferedAheadMs = Long.MAX_VALUE;
+        long otherBitrate = 0;
+        for (final YoutubeSabrRequest.Track track : input.getTracks()) {
+            bufferedAheadMs = Math.min(bufferedAheadMs,
+                    Math.max(0, getBufferedEndMs(track) - playerTimeMs));
+            if (!track.getFormat().isVideo()) {
+                otherBitrate += Math.max(0, track.getFormat().getBitrate());
+            }
+        }
+
+        final List<YoutubeSabrRequest.Track> selected = new ArrayList<>(input.getTracks().size());
+        long totalBitrate = 0;
+        boolean switched = false;
+        for (final YoutubeSabrRequest.Track track : input.getTracks()) {
+            final YoutubeSabrRequest.Track choice = track.getFormat().isVideo() && bandwidth > 0
+                    ? chooseVideoTrack(track, input.getCandidates(),
+                            (long) (bandwidth * bandwidthSafetyFactor) - otherBitrate,
+                            bufferedAheadMs)
+                    : track;
+            switched |= choice != track;
+            selected.add(choice);
+            totalBitrate += Math.max(0, choice.getFormat().getBitrate());
+        }
+
+        final long targetReadaheadMs = getTargetReadaheadMs(bandwidth, totalBitrate);
+        final long lowWatermarkMs = targetReadaheadMs - (targetReadaheadMs - minReadaheadMs) / 2;
+        final long requestDelayMs = switched || bufferedAheadMs <= lowWatermarkMs ? 0
+                : (long) ((bufferedAheadMs - lowWatermarkMs) / input.getPlaybackRate());
+
+        final List<PlannedTrack> tracks = new ArrayList<>(selected.size());
+        for (int i = 0; i < selected.size(); i++) {
+            final YoutubeSabrRequest.Track previous = input.getTracks().get(i);
+            YoutubeSabrRequest.Track track = selected.get(i);
+            if (track != previous) {
+                track = continueAfter(track, getBufferedEndMs(previous));
+            }
+            tracks.add(new PlannedTrack(track, track != previous));
+        }
+        return new Plan(tracks, targetReadaheadMs, requestDelayMs);
+    }
+
+    private long getTargetReadaheadMs(final long bandwidth, final long bitrate) {
+        if (bandwidth <= 0 || bitrate <= 0) {
+            return minReadaheadMs;
+        }
+        final double ratio = (double) bandwidth / bitrate;
+        final double share = Math.max(0, Math.min(1,
+                (ratio - 1) / (FULL_READAHEAD_BANDWIDTH_RATIO - 1)));
+        return minReadaheadMs + (long) ((maxReadaheadMs - minReadaheadMs) * share);
+    }
+
+    /**
+     * Choose the video format with the highest bitrate within the budget, or the one with the
+     * lowest bitrate if none is.
+     */
+    @Nonnull
+    private YoutubeSabrRequest.Track chooseVideoTrack(
+            @Nonnull final YoutubeSabrRequest.Track current,
+            @Nonnull final List<YoutubeSabrRequest.Track> candidates,
+            final long bitrateBudget,
+            final long bufferedAheadMs) {
+        YoutubeSabrRequest.Track best = null;
+        YoutubeSabrRequest.Track lowest = current;
+        for (final YoutubeSabrRequest.Track candidate : candidates) {
+            final YoutubeSabrInfo.Format format = candidate.getFormat();
+            if (!format.isVideo() || candidate.getTimeline() == null || format.getBitrate() <= 0
+                    || format.getItag() == current.getFormat().getItag()) {
+                continue;
+            }
+            if (format.getBitrate() <= bitrateBudget
+                    && (best == null || format.getBitrate() > best.getFormat().getBitrate())) {
+                best = candidate;
+            }
+            if (format.getBitrate() < lowest.getFormat().getBitrate()) {
+                lowest = candidate;
+            }
+        }
+
+        final int currentBitrate = current.getFormat().getBitrate();
+        if (currentBitrate <= bitrateBudget
+                && (best == null || best.getFormat().getBitrate() <= currentBitrate)) {
+            return current;
+        }
+        if (best == null) {
+            return lowest;
+        }
+        if (best.getFormat().getBitrate() > currentBitrate && bufferedAheadMs < minReadaheadMs) {
+            // Don't risk a stall for a better quality
+            return current;
+        }
+        return best;
+    }
+
+    /**
+     * @return the track, declared buffered through the segment ending at or before
+     * {@code bufferedEndMs}
+     */
+    @Nonnull
+    private static YoutubeSabrRequest.Track continueAfter(
+            @Nonnull final YoutubeSabrRequest.Track track,
+            final long bufferedEndMs) {
+        final YoutubeSabrFormatTimeline timeline = track.getTimeline();
+        if (timeline == null || bufferedEndMs <= 0) {
+            return YoutubeSabrRequest.Track.of(track.getFormat(), timeline, 0);
+        }
+        final int bufferedThrough = Math.min(timeline.getEndSequence(),
+                timeline.getSequenceAt(bufferedEndMs) - 1);
+        return YoutubeSabrRequest.Track.of(track.getFormat(), timeline,
+                Math.max(0, bufferedThrough));
+    }
+
+    /**
+     * @return the end of the buffered media of a track, or 0 if nothing or nothing known is
+     * buffered
+     */
+    static long getBufferedEndMs(@Nonnull final YoutubeSabrRequest.Track track) {
+        final YoutubeSabrFormatTimeline timeline = track.getTimeline();
+        if (timeline == null || track.getBufferedThrough() <= 0) {
+            return 0;
+        }
+        return Math.max(0, timeline.getEndMs(Math.min(track.getBufferedThrough(),
+                timeline.getEndSequence())));
+    }
+}
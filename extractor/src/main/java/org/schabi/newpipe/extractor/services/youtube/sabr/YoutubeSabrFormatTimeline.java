@@ -38,24 +38,42 @@ public final class YoutubeSabrFormatTimeline {
         return new YoutubeSabrFormatTimeline(index);
     }
 
+    /**
+     * Read a timeline serialized with {@link #toByteArray()}, e.g. one cached by a previous
+     * session for the same format.
+     */
+    @Nonnull
+    public static YoutubeSabrFormatTimeline fromByteArray(@Nonnull final byte[] data)
+            throws SabrProtocolException {
+        final SabrSegmentIndex index = SabrSegmentIndex.fromByteArray(data);
+        if (index.size() == 0) {
+            throw new SabrProtocolException("Empty SABR segment index");
+        }
+        return new YoutubeSabrFormatTimeline(index);
+    }
+
+    /** @return a compact serialized form of this timeline */
+    @Nonnull
+    public byte[] toByteArray() {
+        return index.toByteArray();
+    }
+
     public int getEndSequence() { return index.size(); }
 
+    public long getDurationMs(final int sequenceNumber) {
+        return index.getDurationMs(sequenceNumber);
+    }
+
     public long getStartMs(final int sequenceNumber) {
-        final SabrSegmentIndex.Entry entry = index.getEntry(sequenceNumber);
-        return entry == null ? -1 : entry.getStartMs();
+        return index.getStartMs(sequenceNumber);
     }
 
     public long getEndMs(final int sequenceNumber) {
-        final SabrSegmentIndex.Entry entry = index.getEntry(sequenceNumber);
-        return entry == null ? -1 : entry.getEndMs();
+        return index.getEndMs(sequenceNumber);
     }
 
     public int getSequenceAt(final long timeMs) {
         if (timeMs <= 0) return 1;
-        for (int sequence = 1; sequence <= index.size(); sequence++) {
-            final SabrSegmentIndex.Entry entry = index.getEntry(sequence);
-            if (entry != null && entry.getEndMs() > timeMs) return sequence;
-        }
-        return index.size() == Integer.MAX_VALUE ? Integer.MAX_VALUE : index.size() + 1;
+        return index.getSequenceAt(timeMs);
     }
 }
@@ -0,0 +1,212 @@
+package org.schabi.newpipe.extractor.services.youtube.sabr;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Decides when to send the next request and which formats to request, from the
+ * {@link YoutubeSabrSession#getBandwidthEstimate() bandwidth estimate} of a session and from
+ * what is already buffered.
+ *
+ * <p>
+ * A planner doesn't send anything: callers turn its {@link Plan} into the next
+ * {@link YoutubeSabrRequest} with {@link Plan#toRequest(long, float)}, after waiting
+ * {@link Plan#getRequestDelayMs()} if the buffer is still full enough. The server decides how
+ * much media each response contains, so a planner keeps the buffer near its target readahead
+ * by timing its requests rather than by asking for a range. Plans can be evaluated
+ * offline against recorded response timings with the {@code YoutubeSabrPlannerSimulation} of
+ * the benchmarks module.
+ * </p>
+ *
+ * @see YoutubeSabrBandwidthPlanner
+ */
+public interface YoutubeSabrReadaheadPlanner {
+
+    /**
+     * Plan the next request. Implementations must be stateless or thread-safe, and must not
+     * block.
+     *
+     * @param input the state of the playback
+     * @return the plan for the next request
+     */
+    @Nonnull
+    Plan plan(@Nonnull Input input);
+
+    /** What is known about the playback when planning the next request. */
+    final class Input {
+        private final long bandwidthEstimate;
+        private final long playerTimeMs;
+        private final float playbackRate;
+        @Nonnull
+        private final List<YoutubeSabrRequest.Track> tracks;
+        @Nonnull
+        private final List<YoutubeSabrRequest.Track> candidates;
+
+        private Input(final long bandwidthEstimate,
+                      final long playerTimeMs,
+                      final float playbackRate,
+                      @Nonnull final List<YoutubeSabrRequest.Track> tracks,
+                      @Nonnull final List<YoutubeSabrRequest.Track> candidates) {
+            this.bandwidthEstimate = bandwidthEstimate;
+            this.playerTimeMs = playerTimeMs;
+            this.playbackRate = playbackRate;
+            this.tracks = tracks;
+            this.candidates = candidates;
+        }
+
+        /**
+         * @param bandwidthEstimate the estimated throughput, in bits per second, or -1 if it
+         *                          is not known yet
+         * @param playerTimeMs      the playback position
+         * @param playbackRate      the playback rate
+         * @param tracks            the tracks currently played, at most one audio and one video
+         *                          track, with what has been buffered of them
+         * @param candidates        the tracks the planner may switch to instead, with the
+         *                          timelines of their formats; tracks of {@code tracks} don't
+         *                          need to be repeated
+         * @return the input of a planner
+         */
+        @Nonnull
+        public static Input of(final long bandwidthEstimate,
+                               final long playerTimeMs,
+                               final float playbackRate,
+                               @Nonnull final Collection<YoutubeSabrRequest.Track> tracks,
+                               @Nonnull final Collection<YoutubeSabrRequest.Track> candidates) {
+            if (playerTimeMs < 0) {
+                throw new IllegalArgumentException("SABR player time must not be negative");
+            }
+            if (!(playbackRate > 0)) {
+                throw new IllegalArgumentException("SABR playback rate must be positive");
+            }
+            Objects.requireNonNull(tracks, "tracks");
+            Objects.requireNonNull(candidates, "candidates");
+            if (tracks.isEmpty()) {
+                throw new IllegalArgumentException("SABR plan must contain at least one track");
+            }
+            return new Input(bandwidthEstimate, playerTimeMs, playbackRate,
+                    Collections.unmodifiableList(new ArrayList<>(tracks)),
+                    Collections.unmodifiableList(new ArrayList<>(candidates)));
+        }
+
+        public long getBandwidthEstimate() {
+            return bandwidthEstimate;
+        }
+
+        public long getPlayerTimeMs() {
+            return playerTimeMs;
+        }
+
+        public float getPlaybackRate() {
+            return playbackRate;
+        }
+
+        @Nonnull
+        public List<YoutubeSabrRequest.Track> getTracks() {
+            return tracks;
+        }
+
+        @Nonnull
+        public List<YoutubeSabrRequest.Track> getCandidates() {
+            return candidates;
+        }
+    }
+
+    /** The tracks to request next, and when. */
+    final class Plan {
+        @Nonnull
+        private final List<PlannedTrack> tracks;
+        private final long targetReadaheadMs;
+        private final long requestDelayMs;
+
+        /**
+         * @param tracks            the tracks to request
+         * @param targetReadaheadMs how far ahead of the playback position the planner aims to
+         *                          buffer
+         * @param requestDelayMs    how long to wait before sending the request, 0 to send it
+         *                          now
+         */
+        public Plan(@Nonnull final Collection<PlannedTrack> tracks,
+                    final long targetReadaheadMs,
+                    final long requestDelayMs) {
+            Objects.requireNonNull(tracks, "tracks");
+            if (tracks.isEmpty()) {
+                throw new IllegalArgumentException("SABR plan must contain at least one track");
+            }
+            if (targetReadaheadMs < 0 || requestDelayMs < 0) {
+                throw new IllegalArgumentException("SABR plan durations must not be negative");
+            }
+            this.tracks = Collections.unmodifiableList(new ArrayList<>(tracks));
+            this.targetReadaheadMs = targetReadaheadMs;
+            this.requestDelayMs = requestDelayMs;
+        }
+
+        @Nonnull
+        public List<PlannedTrack> getTracks() {
+            return tracks;
+        }
+
+        /**
+         * @return how far ahead of the playback position the planner aims to buffer. It is not
+         * sent to the server, which decides how much media a response contains: the planner
+         * reaches it through {@link #getRequestDelayMs()}.
+         */
+        public long getTargetReadaheadMs() {
+            return targetReadaheadMs;
+        }
+
+        public long getRequestDelayMs() {
+            return requestDelayMs;
+        }
+
+        /**
+         * @return the request for the tracks of this plan
+         */
+        @Nonnull
+        public YoutubeSabrRequest toRequest(final long playerTimeMs, final float playbackRate) {
+            final List<YoutubeSabrRequest.Track> requestTracks = new ArrayList<>(tracks.size());
+            for (final PlannedTrack track : tracks) {
+                requestTracks.add(track.getTrack());
+            }
+            return YoutubeSabrRequest.playback(playerTimeMs, playbackRate, requestTracks);
+        }
+    }
+
+    /**
+     * A track to request. The server chooses which segments a response contains, continuing
+     * after the segment the track is declared buffered through, so that the track, its format
+     * and the time the request is sent are all a plan can steer.
+     */
+    final class PlannedTrack {
+        @Nonnull
+        private final YoutubeSabrRequest.Track track;
+        private final boolean switched;
+
+        /**
+         * @param track    the track, with the format to request and what is buffered of it
+         * @param switched whether the format differs from the one played until now
+         */
+        public PlannedTrack(@Nonnull final YoutubeSabrRequest.Track track,
+                            final boolean switched) {
+            this.track = Objects.requireNonNull(track, "track");
+            this.switched = switched;
+        }
+
+        @Nonnull
+        public YoutubeSabrRequest.Track getTrack() {
+            return track;
+        }
+
+        @Nonnull
+        public YoutubeSabrInfo.Format getFormat() {
+            return track.getFormat();
+        }
+
+        public boolean isSwitched() {
+            return switched;
+        }
+    }
+}
@@ -149,16 +149,19 @@ public final class YoutubeSabrRequest {
         }
 
         @Nonnull
-        YoutubeSabrInfo.Format getFormat() {
+        public YoutubeSabrInfo.Format getFormat() {
             return format;
         }
 
         @Nullable
-        YoutubeSabrFormatTimeline getTimeline() {
+        public YoutubeSabrFormatTimeline getTimeline() {
             return timeline;
         }
 
-        int getBufferedThrough() {
+        /**
+         * @return the last segment which is buffered, or 0 if none is
+         */
+        public int getBufferedThrough() {
             return bufferedThrough;
         }
     }
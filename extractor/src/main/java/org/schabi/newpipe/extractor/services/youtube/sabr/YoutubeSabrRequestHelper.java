@@ -5,6 +5,7 @@ import org.schabi.newpipe.extractor.downloader.StreamingResponse;
 import org.schabi.newpipe.extractor.exceptions.ExtractionException;
 import org.schabi.newpipe.extractor.localization.Localization;
 import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrProtocolException;
+import org.schabi.newpipe.extractor.services.youtube.sabr.media.SabrSegmentCache;
 import org.schabi.newpipe.extractor.services.youtube.sabr.protocol.SabrProto;
 import org.schabi.newpipe.extractor.services.youtube.sabr.protocol.SabrStreamingResponseReader;
 
@@ -14,6 +15,7 @@ import java.io.File;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collections;
@@ -21,6 +23,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper.MWEB_USER_AGENT;
 
@@ -73,16 +76,17 @@ public final class YoutubeSabrRequestHelper {
     @Nonnull
     static YoutubeSabrResponse post(@Nonnull final YoutubeSabrInfo info,
                                     @Nonnull final YoutubeSabrRequest request,
-                                    @Nonnull final YoutubeSabrSession session,
-                                    @Nonnull final String serverAbrStreamingUrl,
-                                    final int requestNumber,
+                                    @Nonnull final YoutubeSabrSession.RequestState state,
                                     @Nullable final SabrStreamingResponseReader
                                             .SegmentConsumer segmentConsumer,
                                     @Nullable final SabrStreamingResponseReader
                                             .SegmentConsumer segmentStartConsumer,
-                                    @Nullable final File segmentSpoolDirectory)
+                                    @Nullable final File segmentSpoolDirectory,
+                                    @Nullable final SabrSegmentCache segmentCache,
+                                    @Nullable final AtomicBoolean cancelled)
             throws IOException, ExtractionException {
-        final byte[] requestBody = buildMediaRequest(info, request, session, requestNumber > 0);
+        final int requestNumber = state.getRequestNumber();
+        final byte[] requestBody = buildMediaRequest(info, request, state, requestNumber > 0);
         final long requestStartNs = System.nanoTime();
         final long[] firstSegmentElapsedMs = {-1};
         final SabrStreamingResponseReader.SegmentConsumer timedConsumer =
@@ -100,7 +104,8 @@ public final class YoutubeSabrRequestHelper {
                     segmentStartConsumer.accept(segment);
                 };
         try (StreamingResponse response = NewPipe.getDownloader().postStreaming(
-                withSessionParameters(serverAbrStreamingUrl, info.getCpn(), requestNumber),
+                withSessionParameters(state.getServerAbrStreamingUrl(), info.getCpn(),
+                        requestNumber),
                 buildRequestHeaders(), requestBody, MWEB_LOCALIZATION)) {
             final String contentType = response.getHeader("Content-Type");
             if (contentType == null
@@ -108,10 +113,12 @@ public final class YoutubeSabrRequestHelper {
                 throw new SabrProtocolException("Expected UMP response, got content type: "
                         + contentType + ", status=" + response.responseCode());
             }
-            final CountingInputStream body = new CountingInputStream(response.body());
+            final CountingInputStream body = new CountingInputStream(response.body(),
+                    cancelled);
             final SabrStreamingResponseReader.Result streamed =
                     SabrStreamingResponseReader.read(body, timedConsumer,
-                            timedStartConsumer, segmentSpoolDirectory);
+                            timedStartConsumer, segmentSpoolDirectory, segmentCache,
+                            info.getVideoId());
             final YoutubeSabrResponse result = streamed.getProbeResult();
             result.complete(info, streamed.getSegments(), streamed.getSegmentCount(),
                     response.responseCode(), contentType, body.getCount(),
@@ -127,7 +134,7 @@ public final class YoutubeSabrRequestHelper {
     @Nonnull
     private static byte[] buildMediaRequest(@Nonnull final YoutubeSabrInfo info,
                                             @Nonnull final YoutubeSabrRequest sabrRequest,
-                                            @Nonnull final YoutubeSabrSession session,
+                                            @Nonnull final YoutubeSabrSession.RequestState state,
                                             final boolean followUp)
             throws SabrProtocolException {
         final String ustreamerConfig = info.getVideoPlaybackUstreamerConfig();
@@ -160,7 +167,7 @@ public final class YoutubeSabrRequestHelper {
         final SabrProto.Writer request = new SabrProto.Writer();
         request.writeMessage(1, buildClientAbrState(audioFormat, videoFormat, playerTimeMs,
                 followUp || includePlaybackState, trackMode,
-                session.getBandwidthEstimate(), playbackRate));
+                state.getBandwidthEstimate(), playbackRate));
         if (includePlaybackState) {
             if (includeSelectedTracks) {
                 for (final YoutubeSabrRequest.Track track : sabrRequest.getTracks()) {
@@ -174,7 +181,7 @@ public final class YoutubeSabrRequestHelper {
         }
         request.writeBytes(5, decodeBase64(ustreamerConfig));
         writePreferredFormats(request, audioFormat, videoFormat);
-        request.writeMessage(19, buildStreamerContext(info, session));
+        request.writeMessage(19, buildStreamerContext(info, state));
         return request.toByteArray();
     }
 
@@ -244,26 +251,27 @@ public final class YoutubeSabrRequestHelper {
     }
 
     @Nonnull
-    private static byte[] buildStreamerContext(@Nonnull final YoutubeSabrInfo info,
-                                               @Nonnull final YoutubeSabrSession session) {
+    private static byte[] buildStreamerContext(
+            @Nonnull final YoutubeSabrInfo info,
+            @Nonnull final YoutubeSabrSession.RequestState state) {
         final SabrProto.Writer context = new SabrProto.Writer();
         context.writeMessage(1, buildClientInfo(info));
-        final byte[] poToken = session.getRawPoToken();
+        final byte[] poToken = state.getPoToken();
         if (poToken != null && poToken.length > 0) {
             context.writeBytes(2, poToken);
         }
-        final byte[] playbackCookie = session.getRawPlaybackCookie();
+        final byte[] playbackCookie = state.getPlaybackCookie();
         if (playbackCookie != null && playbackCookie.length > 0) {
             context.writeBytes(3, playbackCookie);
         }
         for (final Map.Entry<Integer, byte[]> entry
-                : session.getActiveSabrContexts().entrySet()) {
+                : state.getActiveSabrContexts().entrySet()) {
             final SabrProto.Writer sabrContext = new SabrProto.Writer();
             sabrContext.writeInt32(1, entry.getKey());
             sabrContext.writeBytes(2, entry.getValue());
             context.writeMessage(5, sabrContext.toByteArray());
         }
-        for (final Integer type : session.getUnsentSabrContextTypes()) {
+        for (final Integer type : state.getUnsentSabrContextTypes()) {
             context.writeInt32(6, type);
         }
         return context.toByteArray();
@@ -434,14 +442,19 @@ public final class YoutubeSabrRequestHelper {
     }
 
     private static final class CountingInputStream extends FilterInputStream {
+        @Nullable
+        private final AtomicBoolean cancelled;
         private long count;
 
-        private CountingInputStream(@Nonnull final InputStream input) {
+        private CountingInputStream(@Nonnull final InputStream input,
+                                    @Nullable final AtomicBoolean cancelled) {
             super(input);
+            this.cancelled = cancelled;
         }
 
         @Override
         public int read() throws IOException {
+            throwIfCancelled();
             final int value = super.read();
             if (value >= 0) {
                 count++;
@@ -452,6 +465,7 @@ public final class YoutubeSabrRequestHelper {
         @Override
         public int read(@Nonnull final byte[] buffer, final int offset, final int length)
                 throws IOException {
+            throwIfCancelled();
             final int read = super.read(buffer, offset, length);
             if (read > 0) {
                 count += read;
@@ -462,5 +476,11 @@ public final class YoutubeSabrRequestHelper {
         private long getCount() {
             return count;
         }
+
+        private void throwIfCancelled() throws InterruptedIOException {
+            if (cancelled != null && cancelled.get()) {
+                throw new InterruptedIOException("SABR request cancelled");
+            }
+        }
     }
 }
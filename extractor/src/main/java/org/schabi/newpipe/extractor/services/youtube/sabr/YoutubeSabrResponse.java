@@ -58,6 +58,9 @@ public final class YoutubeSabrResponse {
     private int streamProtectionMaxRetries = -1;
     private int backoffTimeMs = -1;
     private boolean reloadRequested;
+    private boolean requestPipeliningAllowed;
+    private int pipelinedRequestLimit = -1;
+    private long cancellationMinReadaheadMs = -1;
 
     public YoutubeSabrResponse() { }
 
@@ -152,6 +155,13 @@ public final class YoutubeSabrResponse {
     public void setStreamProtectionMaxRetries(final int value) { streamProtectionMaxRetries = value; }
     public void setBackoffTimeMs(final int value) { backoffTimeMs = value; }
     public void setReloadRequested(final boolean value) { reloadRequested = value; }
+    public void setRequestPipeliningAllowed(final boolean value) {
+        requestPipeliningAllowed = value;
+    }
+    public void setPipelinedRequestLimit(final int value) { pipelinedRequestLimit = value; }
+    public void setCancellationMinReadaheadMs(final long value) {
+        cancellationMinReadaheadMs = value;
+    }
 
     @Nonnull public YoutubeSabrInfo getInfo() { return java.util.Objects.requireNonNull(info); }
     @Nonnull public List<SabrMediaSegment> getSegments() { return segments; }
@@ -195,6 +205,15 @@ public final class YoutubeSabrResponse {
     public int getStreamProtectionMaxRetries() { return streamProtectionMaxRetries; }
     public int getBackoffTimeMs() { return backoffTimeMs; }
     public boolean isReloadRequested() { return reloadRequested; }
+    /** True if the server sent a REQUEST_PIPELINING part, allowing concurrent requests. */
+    public boolean isRequestPipeliningAllowed() { return requestPipeliningAllowed; }
+    /** Requests the server allows in flight, or -1 if it didn't say. */
+    public int getPipelinedRequestLimit() { return pipelinedRequestLimit; }
+    /**
+     * Readahead under which in-flight readahead requests should be cancelled, from
+     * REQUEST_CANCELLATION_POLICY, or -1 if there is none.
+     */
+    public long getCancellationMinReadaheadMs() { return cancellationMinReadaheadMs; }
     public boolean hasMedia() { return !mediaHeaders.isEmpty() || !mediaBytesByHeaderId.isEmpty(); }
     public boolean isNoMediaResponse() { return !hasMedia(); }
     public boolean isPolicyOnlyResponse() {
@@ -243,7 +262,9 @@ public final class YoutubeSabrResponse {
                 + ", integrity=" + getIntegrityIssues() + ", malformedParts=" + malformedParts
                 + ", unknownParts=" + unknownPartTypes + ", protection="
                 + streamProtectionStatus + '/' + streamProtectionMaxRetries
-                + ", backoffMs=" + backoffTimeMs + ", reload=" + reloadRequested;
+                + ", backoffMs=" + backoffTimeMs + ", reload=" + reloadRequested
+                + ", pipelining=" + (requestPipeliningAllowed ? pipelinedRequestLimit : 0)
+                + ", cancelBelowMs=" + cancellationMinReadaheadMs;
     }
 
     @Nonnull
@@ -4,6 +4,7 @@ import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrProtocol
 import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrRecoverableException;
 import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrAttestationException;
 import org.schabi.newpipe.extractor.services.youtube.sabr.media.SabrMediaSegment;
+import org.schabi.newpipe.extractor.services.youtube.sabr.media.SabrSegmentCache;
 import org.schabi.newpipe.extractor.services.youtube.sabr.protocol.SabrStreamingResponseReader;
 import org.schabi.newpipe.extractor.services.youtube.sabr.protocol.SabrProto;
 
@@ -13,16 +14,19 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.Collection;
 import java.util.Set;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public final class YoutubeSabrSession {
     // -------------------------------------------------------------------------
@@ -33,10 +37,17 @@ public final class YoutubeSabrSession {
     private static final int MAX_INCOMPLETE_MEDIA_RESPONSES = 3;
     private static final int MAX_CONSECUTIVE_ATTESTATION_PENDING_RESPONSES = 3;
     private static final int MAX_BACKOFF_MS = 30_000;
+    private static final int DEFAULT_MAX_REQUESTS_IN_FLIGHT = 3;
+    // Used when the server allows pipelining without saying how many requests
+    private static final int DEFAULT_PIPELINED_REQUESTS = 2;
+    // How far ahead of the player cached segments are served, like the planner's maximum
+    private static final long MAX_CACHED_READAHEAD_MS = 120_000;
     @Nonnull
     private final YoutubeSabrInfo info;
     @Nullable
     private final File segmentSpoolDirectory;
+    @Nullable
+    private volatile SabrSegmentCache segmentCache;
     @Nonnull
     private String serverAbrStreamingUrl;
     private int requestNumber;
@@ -55,6 +66,14 @@ public final class YoutubeSabrSession {
     private volatile long backoffDeadlineNs;
     @Nullable private byte[] poToken;
 
+    // Request scheduling, guarded by this session
+    private int maxRequestsInFlight = DEFAULT_MAX_REQUESTS_IN_FLIGHT;
+    private int serverRequestsInFlight = 1;
+    private long cancellationMinReadaheadMs = -1;
+    private int requestsInFlight;
+    // Sent requests whose response has not been merged yet, in request order
+    private final Deque<PendingRequest> pendingRequests = new ArrayDeque<>();
+
     // -------------------------------------------------------------------------
     // Construction
     // -------------------------------------------------------------------------
@@ -73,87 +92,190 @@ public final class YoutubeSabrSession {
         this.serverAbrStreamingUrl = info.getServerAbrStreamingUrl();
     }
 
+    @Nullable
+    public SabrSegmentCache getSegmentCache() {
+        return segmentCache;
+    }
+
+    /**
+     * Set the cache completed media segments are stored in and served from, e.g. the
+     * {@link SabrSegmentCache#forSpoolDirectory(File) cache of the spool directory}. Sessions
+     * have none by default, and only cache segments if they have a spool directory.
+     *
+     * @param segmentCache the cache, or {@code null} to neither store nor serve cached segments
+     */
+    public void setSegmentCache(@Nullable final SabrSegmentCache segmentCache) {
+        this.segmentCache = segmentCache;
+    }
+
     // -------------------------------------------------------------------------
     // SABR transactions
     // -------------------------------------------------------------------------
 
-    @Nonnull
-    private YoutubeSabrResponse fetchNextResponse(
+    /**
+     * Send one SABR request and merge its response into the session.
+     *
+     * <p>
+     * Several threads, e.g. one per track and one for readahead, may call this concurrently:
+     * once the server allows it with a {@code REQUEST_PIPELINING} part, up to
+     * {@link #setMaxRequestsInFlight(int)} requests are sent without waiting for each other.
+     * Each request is built from a snapshot of the playback cookie and SABR contexts taken when
+     * it is sent, and responses update the session in request order, so that a late response
+     * never overwrites the state of a newer one. Segments are passed to {@code consumer} as soon
+     * as they are read.
+     * </p>
+     *
+     * <p>
+     * Segments of a playback request found in the {@link #getSegmentCache() segment cache} are
+     * passed to {@code consumer} first, and the request sent for the rest tells the server that
+     * they are buffered. No request is sent if the cache has all segments of the next two
+     * minutes.
+     * </p>
+     */
+    public RequestResult requestOnce(
             @Nonnull final YoutubeSabrRequest request,
-            @Nullable final SabrStreamingResponseReader.SegmentConsumer segmentConsumer)
+            @Nonnull final SabrStreamingResponseReader.SegmentConsumer consumer)
             throws IOException, ExtractionException {
-        final YoutubeSabrRequest.PlaybackState playbackState = request.getPlaybackState();
-        final YoutubeSabrRequest.Track audioTrack = request.getAudioTrack();
-        final YoutubeSabrRequest.Track videoTrack = request.getVideoTrack();
-        addDiagnosticEvent("request n=" + requestNumber
-                + " playerMs=" + playbackState.getPlayerTimeMs()
-                + " audioThrough=" + (audioTrack == null ? 0 : audioTrack.getBufferedThrough())
-                + " videoThrough=" + (videoTrack == null ? 0 : videoTrack.getBufferedThrough())
-                + " selectedTracks=" + request.hasSelectedTracks()
-                + " poTokenBytes=" + (poToken == null ? -1 : poToken.length));
-        final SabrStreamingResponseReader.SegmentConsumer timedConsumer = segmentConsumer;
-        final SabrStreamingResponseReader.SegmentConsumer startedConsumer = segment -> { };
-        final YoutubeSabrResponse result;
-        try {
-            result = YoutubeSabrRequestHelper.post(info, request, this,
-                    serverAbrStreamingUrl, requestNumber, timedConsumer,
-                    startedConsumer, segmentSpoolDirectory);
-        } catch (final IOException | ExtractionException e) {
-            addDiagnosticEvent("request_failed n=" + requestNumber
-                    + " type=" + e.getClass().getSimpleName()
-                    + " message=" + String.valueOf(e.getMessage()));
-            throw e;
-        }
-        addDiagnosticEvent("response n=" + requestNumber
-                + " http=" + result.getResponseCode()
-                + " contentType=" + result.getContentType()
-                + " segments=" + (result.getSegments().isEmpty()
-                ? "count=" + result.getSegmentCount() : summarizeSegments(result.getSegments()))
-                + " decoded={" + result.summarizeForDiagnostics() + '}');
-        if (result.getBackoffTimeMs() > MAX_BACKOFF_MS) {
-            throw new SabrProtocolException("SABR backoff exceeds limit: "
-                    + result.getBackoffTimeMs() + "ms");
+        final int[] cachedSegments = {0};
+        final YoutubeSabrRequest networkRequest =
+                serveCachedSegments(request, consumer, cachedSegments);
+        if (networkRequest == null) {
+            return new RequestResult(cachedSegments[0], 0, false, false);
         }
-        updateBackoff(result.getBackoffTimeMs());
-        diagnostics.recordResponse(result, requestNumber);
-        updateBandwidthEstimate(result.getResponseBytes(), result.getRequestElapsedMs());
-        requestNumber++;
-        return result;
+        final RequestResult result = send(networkRequest, consumer);
+        return cachedSegments[0] == 0 ? result : new RequestResult(
+                result.getSegmentCount() + cachedSegments[0], result.getBackoffMs(),
+                result.isDeferred(), result.isCancelled());
     }
 
-    public synchronized RequestResult requestOnce(
+    @Nonnull
+    private RequestResult send(
             @Nonnull final YoutubeSabrRequest request,
             @Nonnull final SabrStreamingResponseReader.SegmentConsumer consumer)
             throws IOException, ExtractionException {
-        final long backoffRemainingMs = getBackoffRemainingMs();
-        if (backoffRemainingMs > 0) {
-            return new RequestResult(0, (int) Math.min(Integer.MAX_VALUE,
-                    backoffRemainingMs), true);
+        final PendingRequest pending;
+        synchronized (this) {
+            while (true) {
+                final long backoffRemainingMs = getBackoffRemainingMs();
+                if (backoffRemainingMs > 0) {
+                    return new RequestResult(0, (int) Math.min(Integer.MAX_VALUE,
+                            backoffRemainingMs), true, false);
+                }
+                if (requestsInFlight < getPermittedRequestsInFlight()) {
+                    break;
+                }
+                awaitSchedulingChange();
+            }
+
+            final long readaheadMs = getReadaheadMs(request);
+            cancelReadaheadRequestsIfUrgent(readaheadMs);
+            pending = new PendingRequest(snapshotRequestState(), readaheadMs);
+            pendingRequests.addLast(pending);
+            requestsInFlight++;
+            requestNumber++;
+            logRequest(request, pending.state.getRequestNumber());
+        }
+
+        YoutubeSabrResponse response = null;
+        Exception error = null;
+        try {
+            response = YoutubeSabrRequestHelper.post(info, request, pending.state, consumer,
+                    segment -> { }, segmentSpoolDirectory, segmentCache, pending.cancelled);
+        } catch (final IOException | ExtractionException | RuntimeException e) {
+            error = e;
+        }
+
+        synchronized (this) {
+            requestsInFlight--;
+            pending.complete(response, error);
+            mergeCompletedRequests();
+            notifyAll();
+            while (!pending.merged) {
+                awaitSchedulingChange();
+            }
+        }
+        return pending.getResult();
+    }
+
+    /**
+     * Pass the cached segments which directly follow what the tracks of a playback request have
+     * buffered to the consumer, without going further than {@link #MAX_CACHED_READAHEAD_MS}
+     * ahead of the player.
+     *
+     * @return the request for the rest, which includes the served segments in the buffered
+     * ranges, or {@code null} if the cache served everything up to that point
+     */
+    @Nullable
+    private YoutubeSabrRequest serveCachedSegments(
+            @Nonnull final YoutubeSabrRequest request,
+            @Nonnull final SabrStreamingResponseReader.SegmentConsumer consumer,
+            @Nonnull final int[] servedCount) throws SabrProtocolException {
+        final SabrSegmentCache cache = segmentCache;
+        if (cache == null || !request.hasSelectedTracks()) {
+            return request;
+        }
+        final YoutubeSabrRequest.PlaybackState playbackState = request.getPlaybackState();
+        final long playerTimeMs = playbackState.getPlayerTimeMs();
+        final long endMs = playerTimeMs + MAX_CACHED_READAHEAD_MS;
+        final List<YoutubeSabrRequest.Track> tracks = new ArrayList<>();
+        boolean complete = true;
+        for (final YoutubeSabrRequest.Track track : request.getTracks()) {
+            final YoutubeSabrFormatTimeline timeline = track.getTimeline();
+            int bufferedThrough = track.getBufferedThrough();
+            // Only continue a buffer which reaches the player: buffered ranges can't have gaps
+            if (timeline == null
+                    || bufferedThrough + 1 < timeline.getSequenceAt(playerTimeMs)) {
+                tracks.add(track);
+                complete = false;
+                continue;
+            }
+            final YoutubeSabrInfo.Format format = track.getFormat();
+            while (bufferedThrough < timeline.getEndSequence()
+                    && timeline.getStartMs(bufferedThrough + 1) < endMs) {
+                final SabrMediaSegment segment = cache.get(info.getVideoId(), format.getItag(),
+                        format.getLastModified(), format.getXtags(), bufferedThrough + 1);
+                if (segment == null) {
+                    complete = false;
+                    break;
+                }
+                consumer.accept(segment);
+                bufferedThrough++;
+                servedCount[0]++;
+            }
+            tracks.add(bufferedThrough == track.getBufferedThrough() ? track
+                    : YoutubeSabrRequest.Track.of(format, timeline, bufferedThrough));
         }
-        final YoutubeSabrResponse result = fetchAndProcessResponse(request, consumer);
-        if (result == null) {
-            return new RequestResult(0, (int) Math.min(Integer.MAX_VALUE,
-                    getBackoffRemainingMs()), false);
+        if (servedCount[0] == 0) {
+            return request;
         }
-        return new RequestResult(result.getSegmentCount(), result.getBackoffTimeMs(), false);
+        diagnostics.addCacheServed(servedCount[0], complete);
+        return complete ? null : YoutubeSabrRequest.playback(playerTimeMs,
+                playbackState.getPlaybackRate(), tracks);
     }
 
     public static final class RequestResult {
         private final int segmentCount;
         private final int backoffMs;
         private final boolean deferred;
+        private final boolean cancelled;
 
         private RequestResult(final int segmentCount, final int backoffMs,
-                              final boolean deferred) {
+                              final boolean deferred, final boolean cancelled) {
             this.segmentCount = segmentCount;
             this.backoffMs = backoffMs;
             this.deferred = deferred;
+            this.cancelled = cancelled;
         }
 
         public int getSegmentCount() { return segmentCount; }
         public int getBackoffMs() { return backoffMs; }
         /** True when no HTTP request was sent because this session is still backing off. */
         public boolean isDeferred() { return deferred; }
+        /**
+         * True when the request has been cancelled while reading its response; segments read
+         * before have been passed to the consumer.
+         */
+        public boolean isCancelled() { return cancelled; }
     }
 
     /** Remaining server-requested delay before another transaction may start. */
@@ -165,36 +287,310 @@ public final class YoutubeSabrSession {
     private void updateBackoff(final int backoffMs) {
         backoffDeadlineNs = backoffMs <= 0 ? 0
                 : System.nanoTime() + backoffMs * 1_000_000L;
+        if (backoffMs > 0) {
+            // Requests waiting for a free slot must not be sent before the deadline either
+            notifyAll();
+        }
     }
 
-    @Nullable
-    private YoutubeSabrResponse fetchAndProcessResponse(
-            @Nonnull final YoutubeSabrRequest request,
-            @Nonnull final SabrStreamingResponseReader.SegmentConsumer segmentConsumer)
-            throws IOException, ExtractionException {
-        final YoutubeSabrResponse result;
+    // -------------------------------------------------------------------------
+    // Request scheduling
+    // -------------------------------------------------------------------------
+
+    /**
+     * Set how many requests this session may keep in flight when the server allows pipelining.
+     * The server may allow fewer; without its permission, requests are always sent one at a
+     * time.
+     */
+    public synchronized void setMaxRequestsInFlight(final int maxRequests) {
+        if (maxRequests < 1) {
+            throw new IllegalArgumentException("Invalid maximum requests in flight: "
+                    + maxRequests);
+        }
+        maxRequestsInFlight = maxRequests;
+        notifyAll();
+    }
+
+    /** The number of requests which may currently be in flight at once. */
+    public synchronized int getPermittedRequestsInFlight() {
+        return Math.max(1, Math.min(maxRequestsInFlight, serverRequestsInFlight));
+    }
+
+    /**
+     * Cancel all requests in flight, e.g. after a seek made their media useless. They stop
+     * reading their response and return a {@link RequestResult#isCancelled() cancelled}
+     * result.
+     */
+    public synchronized void cancelRequestsInFlight() {
+        for (final PendingRequest pending : pendingRequests) {
+            if (!pending.completed) {
+                pending.cancelled.set(true);
+            }
+        }
+    }
+
+    /**
+     * Follow the server's cancellation policy: when the readahead of a new request is below its
+     * minimum, requests in flight which were only fetching readahead are cancelled, so that they
+     * don't delay the urgent one.
+     */
+    private void cancelReadaheadRequestsIfUrgent(final long readaheadMs) {
+        if (cancellationMinReadaheadMs < 0 || readaheadMs < 0
+                || readaheadMs >= cancellationMinReadaheadMs) {
+            return;
+        }
+        for (final PendingRequest pending : pendingRequests) {
+            if (!pending.completed && pending.readaheadMs >= cancellationMinReadaheadMs
+                    && !pending.cancelled.getAndSet(true)) {
+                diagnostics.addRequestCancel(pending.state.getRequestNumber(),
+                        pending.readaheadMs, readaheadMs);
+            }
+        }
+    }
+
+    /** The media buffered ahead of the player in the least buffered track, or -1 if unknown. */
+    private static long getReadaheadMs(@Nonnull final YoutubeSabrRequest request) {
+        final long playerTimeMs = request.getPlaybackState().getPlayerTimeMs();
+        long readaheadMs = Long.MAX_VALUE;
+        for (final YoutubeSabrRequest.Track track : request.getTracks()) {
+            final YoutubeSabrFormatTimeline timeline = track.getTimeline();
+            if (timeline == null) {
+                return -1;
+            }
+            final long bufferedEndMs = track.getBufferedThrough() <= 0
+                    ? 0 : timeline.getEndMs(track.getBufferedThrough());
+            readaheadMs = Math.min(readaheadMs, Math.max(0, bufferedEndMs - playerTimeMs));
+        }
+        return readaheadMs;
+    }
+
+    private void awaitSchedulingChange() throws InterruptedIOException {
         try {
-            result = fetchNextResponse(request, segmentConsumer);
-        } catch (final SabrRecoverableException e) {
-            if (recoverFromStreamingMediaException(e)) {
-                return null;
+            wait();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for SABR request");
+        }
+    }
+
+    @Nonnull
+    private RequestState snapshotRequestState() {
+        final Map<Integer, byte[]> activeContexts = new LinkedHashMap<>();
+        for (final Integer type : activeSabrContextTypes) {
+            final byte[] value = sabrContexts.get(type);
+            if (value != null) activeContexts.put(type, value);
+        }
+        final List<Integer> unsentContextTypes = new ArrayList<>();
+        for (final Integer type : sabrContexts.keySet()) {
+            if (!activeSabrContextTypes.contains(type)) unsentContextTypes.add(type);
+        }
+        return new RequestState(serverAbrStreamingUrl, requestNumber, bandwidthEstimate,
+                poToken, playbackCookie, activeContexts, unsentContextTypes);
+    }
+
+    private void logRequest(@Nonnull final YoutubeSabrRequest request, final int number) {
+        if (!diagnostics.isEnabled()) {
+            return;
+        }
+        final YoutubeSabrRequest.Track audioTrack = request.getAudioTrack();
+        final YoutubeSabrRequest.Track videoTrack = request.getVideoTrack();
+        diagnostics.addRequest(number, request.getPlaybackState().getPlayerTimeMs(),
+                audioTrack == null ? 0 : audioTrack.getBufferedThrough(),
+                videoTrack == null ? 0 : videoTrack.getBufferedThrough(),
+                request.hasSelectedTracks(), poToken == null ? -1 : poToken.length,
+                requestsInFlight);
+    }
+
+    /** Merge the responses of completed requests which are not waiting for older ones. */
+    private void mergeCompletedRequests() {
+        while (!pendingRequests.isEmpty() && pendingRequests.peekFirst().completed) {
+            final PendingRequest pending = pendingRequests.removeFirst();
+            try {
+                pending.result = mergeResponse(pending);
+            } catch (final IOException | ExtractionException | RuntimeException e) {
+                pending.mergeError = e;
             }
-            throw e;
+            pending.merged = true;
         }
-        final YoutubeSabrResponse decoded = result;
-        final List<String> integrityIssues = decoded.getIntegrityIssues();
+    }
+
+    @Nonnull
+    private RequestResult mergeResponse(@Nonnull final PendingRequest pending)
+            throws IOException, ExtractionException {
+        final int number = pending.state.getRequestNumber();
+        final Exception error = pending.error;
+        if (error != null) {
+            releaseRequestNumber(number);
+            // Whatever a cancelled request failed with, e.g. an interrupted read wrapped in a
+            // SabrRecoverableException, it is not an integrity failure
+            if (pending.cancelled.get()) {
+                diagnostics.addRequestCancelled(number);
+                return new RequestResult(0, 0, false, true);
+            }
+            diagnostics.addRequestFailed(number, error);
+            if (error instanceof SabrRecoverableException
+                    && recoverFromStreamingMediaException((SabrRecoverableException) error)) {
+                return new RequestResult(0, (int) Math.min(Integer.MAX_VALUE,
+                        getBackoffRemainingMs()), false, false);
+            }
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            } else if (error instanceof ExtractionException) {
+                throw (ExtractionException) error;
+            }
+            throw (RuntimeException) error;
+        }
+
+        final YoutubeSabrResponse result = Objects.requireNonNull(pending.response);
+        diagnostics.addResponse(number, result, !diagnostics.isVerbose() ? null
+                : "segments=" + summarizeSegments(result.getSegments())
+                + " decoded={" + result.summarizeForDiagnostics() + '}');
+        if (result.getBackoffTimeMs() > MAX_BACKOFF_MS) {
+            releaseRequestNumber(number);
+            throw new SabrProtocolException("SABR backoff exceeds limit: "
+                    + result.getBackoffTimeMs() + "ms");
+        }
+        updateBackoff(result.getBackoffTimeMs());
+        diagnostics.recordResponse(result, number);
+        updateBandwidthEstimate(result.getResponseBytes(), result.getRequestElapsedMs());
+
+        final List<String> integrityIssues = result.getIntegrityIssues();
         if (!integrityIssues.isEmpty()) {
-            if (isRecoverableIncompleteMediaResponse(integrityIssues)) {
-                if (recoverFromIncompleteMediaResponse()) {
-                    return null;
-                }
-                throw new SabrProtocolException("SABR media integrity issue: " + integrityIssues);
+            if (isRecoverableIncompleteMediaResponse(integrityIssues)
+                    && recoverFromIncompleteMediaResponse()) {
+                return new RequestResult(0, (int) Math.min(Integer.MAX_VALUE,
+                        getBackoffRemainingMs()), false, false);
             }
             throw new SabrProtocolException("SABR media integrity issue: " + integrityIssues);
         }
         consecutiveIntegrityFailures = 0;
         handleControlResponse(result);
-        return result;
+        return new RequestResult(result.getSegmentCount(), result.getBackoffTimeMs(), false,
+                false);
+    }
+
+    /**
+     * Let the next request reuse the number of a request which got no usable response, as long
+     * as no newer request has been sent.
+     */
+    private void releaseRequestNumber(final int number) {
+        if (requestNumber == number + 1) {
+            requestNumber = number;
+        }
+    }
+
+    /** A request which has been sent and whose response has not been merged yet. */
+    private static final class PendingRequest {
+        @Nonnull
+        private final RequestState state;
+        private final long readaheadMs;
+        @Nonnull
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        // Guarded by the session
+        private boolean completed;
+        @Nullable
+        private YoutubeSabrResponse response;
+        @Nullable
+        private Exception error;
+        private boolean merged;
+        @Nullable
+        private RequestResult result;
+        @Nullable
+        private Exception mergeError;
+
+        private PendingRequest(@Nonnull final RequestState state, final long readaheadMs) {
+            this.state = state;
+            this.readaheadMs = readaheadMs;
+        }
+
+        private void complete(@Nullable final YoutubeSabrResponse sabrResponse,
+                              @Nullable final Exception requestError) {
+            completed = true;
+            response = sabrResponse;
+            error = requestError;
+        }
+
+        @Nonnull
+        private RequestResult getResult() throws IOException, ExtractionException {
+            if (mergeError instanceof IOException) {
+                throw (IOException) mergeError;
+            } else if (mergeError instanceof ExtractionException) {
+                throw (ExtractionException) mergeError;
+            } else if (mergeError != null) {
+                throw (RuntimeException) mergeError;
+            }
+            return Objects.requireNonNull(result);
+        }
+    }
+
+    /**
+     * The session state a request is built from, taken when it is sent, so that requests in
+     * flight are not affected by responses merged in the meantime.
+     */
+    static final class RequestState {
+        @Nonnull
+        private final String serverAbrStreamingUrl;
+        private final int requestNumber;
+        private final long bandwidthEstimate;
+        @Nullable
+        private final byte[] poToken;
+        @Nullable
+        private final byte[] playbackCookie;
+        @Nonnull
+        private final Map<Integer, byte[]> activeSabrContexts;
+        @Nonnull
+        private final List<Integer> unsentSabrContextTypes;
+
+        RequestState(@Nonnull final String serverAbrStreamingUrl,
+                     final int requestNumber,
+                     final long bandwidthEstimate,
+                     @Nullable final byte[] poToken,
+                     @Nullable final byte[] playbackCookie,
+                     @Nonnull final Map<Integer, byte[]> activeSabrContexts,
+                     @Nonnull final List<Integer> unsentSabrContextTypes) {
+            this.serverAbrStreamingUrl = serverAbrStreamingUrl;
+            this.requestNumber = requestNumber;
+            this.bandwidthEstimate = bandwidthEstimate;
+            this.poToken = poToken;
+            this.playbackCookie = playbackCookie;
+            this.activeSabrContexts = Collections.unmodifiableMap(activeSabrContexts);
+            this.unsentSabrContextTypes = Collections.unmodifiableList(unsentSabrContextTypes);
+        }
+
+        @Nonnull
+        String getServerAbrStreamingUrl() {
+            return serverAbrStreamingUrl;
+        }
+
+        int getRequestNumber() {
+            return requestNumber;
+        }
+
+        long getBandwidthEstimate() {
+            return bandwidthEstimate;
+        }
+
+        // Byte arrays of the session are replaced, never modified, so they are not copied
+
+        @Nullable
+        byte[] getPoToken() {
+            return poToken;
+        }
+
+        @Nullable
+        byte[] getPlaybackCookie() {
+            return playbackCookie;
+        }
+
+        @Nonnull
+        Map<Integer, byte[]> getActiveSabrContexts() {
+            return activeSabrContexts;
+        }
+
+        @Nonnull
+        List<Integer> getUnsentSabrContextTypes() {
+            return unsentSabrContextTypes;
+        }
     }
 
     // -------------------------------------------------------------------------
@@ -206,8 +602,7 @@ public final class YoutubeSabrSession {
         final YoutubeSabrResponse decoded = result;
         if (decoded.isAttestationPending() && decoded.isNoMediaResponse()) {
             consecutiveAttestationPendingResponses++;
-            addDiagnosticEvent("attestation_pending_no_media count="
-                    + consecutiveAttestationPendingResponses);
+            diagnostics.addAttestationPending(consecutiveAttestationPendingResponses);
             if (consecutiveAttestationPendingResponses
                     >= MAX_CONSECUTIVE_ATTESTATION_PENDING_RESPONSES) {
                 throw new SabrAttestationException(
@@ -263,17 +658,30 @@ public final class YoutubeSabrSession {
         for (final byte[] metadata : response.getLiveMetadata()) {
             ingestLiveMetadata(metadata);
         }
+        if (response.isRequestPipeliningAllowed()) {
+            serverRequestsInFlight = response.getPipelinedRequestLimit() > 0
+                    ? response.getPipelinedRequestLimit() : DEFAULT_PIPELINED_REQUESTS;
+        }
+        if (response.getCancellationMinReadaheadMs() >= 0) {
+            cancellationMinReadaheadMs = response.getCancellationMinReadaheadMs();
+        }
     }
 
     private void ingestNextRequestPolicy(@Nonnull final byte[] data) {
+        byte[] cookie = null;
         try {
-            for (final SabrProto.Field field : SabrProto.readFields(data)) {
+            final SabrProto.FieldReader field = new SabrProto.FieldReader(data);
+            while (field.next()) {
                 if (field.getNumber() == 7) {
-                    playbackCookie = field.getBytes();
+                    cookie = field.getBytes();
                 }
             }
         } catch (final SabrProtocolException ignored) {
             // The response decoder already records malformed control parts.
+            return;
+        }
+        if (cookie != null) {
+            playbackCookie = cookie;
         }
     }
 
@@ -283,11 +691,12 @@ public final class YoutubeSabrSession {
         long liveHeadSequenceNumber = -1;
         long liveHeadTimeMs = -1;
         try {
-            for (final SabrProto.Field field : SabrProto.readFields(data)) {
+            final SabrProto.FieldReader field = new SabrProto.FieldReader(data);
+            while (field.next()) {
                 switch (field.getNumber()) {
                     case 3: liveHeadSequenceNumber = field.getVarint(); break;
                     case 4: liveHeadTimeMs = field.getVarint(); break;
-                    case 8: postLiveDvr = field.getVarint() != 0; break;
+                    case 8: postLiveDvr = field.getBool(); break;
                     default: break;
                 }
             }
@@ -306,11 +715,12 @@ public final class YoutubeSabrSession {
         boolean sendByDefault = false;
         int writePolicy = -1;
         try {
-            for (final SabrProto.Field field : SabrProto.readFields(data)) {
+            final SabrProto.FieldReader field = new SabrProto.FieldReader(data);
+            while (field.next()) {
                 switch (field.getNumber()) {
                     case 1: type = (int) field.getVarint(); break;
                     case 3: value = field.getBytes(); break;
-                    case 4: sendByDefault = field.getVarint() != 0; break;
+                    case 4: sendByDefault = field.getBool(); break;
                     case 5: writePolicy = (int) field.getVarint(); break;
                     default: break;
                 }
@@ -350,34 +760,10 @@ public final class YoutubeSabrSession {
         }
     }
 
-    @Nullable
-    byte[] getRawPlaybackCookie() {
-        return playbackCookie;
-    }
-
     public synchronized void clearPlaybackCookie() {
         playbackCookie = null;
     }
 
-    @Nonnull
-    Map<Integer, byte[]> getActiveSabrContexts() {
-        final Map<Integer, byte[]> active = new LinkedHashMap<>();
-        for (final Integer type : activeSabrContextTypes) {
-            final byte[] value = sabrContexts.get(type);
-            if (value != null) active.put(type, value);
-        }
-        return active;
-    }
-
-    @Nonnull
-    Collection<Integer> getUnsentSabrContextTypes() {
-        final List<Integer> unsent = new ArrayList<>();
-        for (final Integer type : sabrContexts.keySet()) {
-            if (!activeSabrContextTypes.contains(type)) unsent.add(type);
-        }
-        return unsent;
-    }
-
     private static void validateRedirectUrl(@Nonnull final String redirectUrl)
             throws SabrProtocolException {
         try {
@@ -422,20 +808,34 @@ public final class YoutubeSabrSession {
         poToken = value == null ? null : value.clone();
     }
 
-    @Nullable
-    byte[] getRawPoToken() {
-        return poToken;
-    }
-
-    long getBandwidthEstimate() {
+    /**
+     * @return the estimated throughput of the responses of this session, in bits per second, or
+     * -1 if no response has been received yet
+     * @see YoutubeSabrReadaheadPlanner
+     */
+    public synchronized long getBandwidthEstimate() {
         return bandwidthEstimate;
     }
 
     private void updateBandwidthEstimate(final long responseBytes, final long elapsedMs) {
-        if (responseBytes <= 0 || elapsedMs <= 0) return;
+        bandwidthEstimate = estimateBandwidth(bandwidthEstimate, responseBytes, elapsedMs);
+    }
+
+    /**
+     * Update a bandwidth estimate with the throughput of one response, as an exponentially
+     * weighted moving average.
+     *
+     * @param previousEstimate the current estimate, in bits per second, or -1 if there is none
+     * @param responseBytes    the size of the response
+     * @param elapsedMs        the time the response took to be received
+     * @return the new estimate, in bits per second
+     */
+    public static long estimateBandwidth(final long previousEstimate,
+                                  final long responseBytes,
+                                  final long elapsedMs) {
+        if (responseBytes <= 0 || elapsedMs <= 0) return previousEstimate;
         final long sample = responseBytes * 8_000L / elapsedMs;
-        bandwidthEstimate = bandwidthEstimate <= 0
-                ? sample : (bandwidthEstimate * 3 + sample) / 4;
+        return previousEstimate <= 0 ? sample : (previousEstimate * 3 + sample) / 4;
     }
 
     private boolean matchesFormat(@Nonnull final YoutubeSabrInfo.Format format,
@@ -457,8 +857,7 @@ public final class YoutubeSabrSession {
     private boolean recoverFromStreamingMediaException(
             @Nonnull final SabrRecoverableException error)
             throws IOException, ExtractionException {
-        addDiagnosticEvent("streaming_integrity_recoverable type="
-                + error.getClass().getSimpleName() + " message=" + error.getMessage());
+        diagnostics.addIntegrityRecoverable(error);
         return recoverFromIncompleteMediaResponse();
     }
 
@@ -491,15 +890,32 @@ public final class YoutubeSabrSession {
 
     private final YoutubeSabrSessionDiagnostics diagnostics = new YoutubeSabrSessionDiagnostics();
 
-    public synchronized void addDiagnosticEvent(@Nonnull final String event) {
+    public void addDiagnosticEvent(@Nonnull final String event) {
         diagnostics.addEvent(event);
     }
 
+    /**
+     * @return the last diagnostic events of this session, formatted now from the records kept
+     * since they happened
+     */
     @Nonnull
-    public synchronized String getDiagnosticTrace() {
+    public String getDiagnosticTrace() {
         return diagnostics.getTrace();
     }
 
+    /**
+     * Set how much is recorded for {@link #getDiagnosticTrace()}. The default is
+     * {@link DiagnosticLevel#EVENTS}.
+     */
+    public void setDiagnosticLevel(@Nonnull final DiagnosticLevel level) {
+        diagnostics.setLevel(Objects.requireNonNull(level, "level"));
+    }
+
+    @Nonnull
+    public DiagnosticLevel getDiagnosticLevel() {
+        return diagnostics.getLevel();
+    }
+
     // Response statistics and trace snapshots
 
     /** Raw bytes consumed from all SABR HTTP response bodies in this session. */
@@ -545,6 +961,15 @@ public final class YoutubeSabrSession {
         return diagnostics.snapshot(requestNumber);
     }
 
+    /**
+     * @return the timings of the last responses of this session, oldest first, e.g. to replay
+     * them with the {@code YoutubeSabrPlannerSimulation} of the benchmarks module
+     */
+    @Nonnull
+    public List<ResponseTiming> getResponseTimings() {
+        return diagnostics.getResponseTimings();
+    }
+
     @Nonnull
     private static String summarizeSegments(@Nonnull final List<SabrMediaSegment> segments) {
         if (segments.isEmpty()) {
@@ -563,6 +988,19 @@ public final class YoutubeSabrSession {
         return summary.append(']').toString();
     }
 
+    /** How much a session records for its {@link #getDiagnosticTrace() diagnostic trace}. */
+    public enum DiagnosticLevel {
+        /** Nothing is recorded. */
+        OFF,
+        /** Requests, responses and failures are recorded as a few numbers each. */
+        EVENTS,
+        /**
+         * Responses also record a summary of their segments and parts, which is built for every
+         * response.
+         */
+        VERBOSE
+    }
+
     public static final class TraceSnapshot {
         private final long responseBytes;
         private final long mediaPayloadBytes;
@@ -601,4 +1039,34 @@ public final class YoutubeSabrSession {
         @Nonnull public List<String> getDiscards() { return discards; }
         @Nonnull public List<String> getResponses() { return responses; }
     }
+
+    /** How long one response took to be received. */
+    public static final class ResponseTiming {
+        private final long responseBytes;
+        private final long elapsedMs;
+        private final long firstSegmentElapsedMs;
+
+        /**
+         * @param responseBytes         the size of the response
+         * @param elapsedMs             the time from sending the request to the end of the
+         *                              response
+         * @param firstSegmentElapsedMs the time from sending the request to the first media
+         *                              segment, or -1 if the response had none
+         */
+        public ResponseTiming(final long responseBytes,
+                              final long elapsedMs,
+                              final long firstSegmentElapsedMs) {
+            if (responseBytes < 0 || elapsedMs < 0) {
+                throw new IllegalArgumentException("Invalid SABR response timing: "
+                        + responseBytes + " bytes in " + elapsedMs + "ms");
+            }
+            this.responseBytes = responseBytes;
+            this.elapsedMs = elapsedMs;
+            this.firstSegmentElapsedMs = firstSegmentElapsedMs;
+        }
+
+        public long getResponseBytes() { return responseBytes; }
+        public long getElapsedMs() { return elapsedMs; }
+        public long getFirstSegmentElapsedMs() { return firstSegmentElapsedMs; }
+    }
 }
@@ -1,20 +1,50 @@
 package org.schabi.newpipe.extractor.services.youtube.sabr;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-/** Observability state for a SABR session; it does not participate in requests. */
+/**
+ * Observability state for a SABR session; it does not participate in requests.
+ *
+ * <p>
+ * Diagnostic events are records of primitive fields, kept in a ring buffer of the last
+ * {@value #EVENT_CAPACITY} events: recording one claims a slot with an atomic increment and
+ * fills a small record, without locking and without building any string. Events are formatted
+ * only when {@link #getTrace()} is called. At {@link YoutubeSabrSession.DiagnosticLevel#OFF}
+ * nothing is recorded, and at {@link YoutubeSabrSession.DiagnosticLevel#VERBOSE} responses
+ * additionally keep a summary of their parts, which has to be built for every response.
+ * </p>
+ */
 final class YoutubeSabrSessionDiagnostics {
     private static final int MAX_DIAGNOSTIC_CHARS = 32 * 1024;
     private static final int MAX_TRACE_EVENTS = 1024;
+    private static final int MAX_RESPONSE_TIMINGS = 256;
+    private static final int EVENT_CAPACITY = 256;
+    private static final int EVENT_MASK = EVENT_CAPACITY - 1;
 
-    private final Deque<String> diagnosticEvents = new ArrayDeque<>();
-    private int diagnosticChars;
+    private static final int TEXT = 0;
+    private static final int REQUEST = 1;
+    private static final int REQUEST_CANCEL = 2;
+    private static final int REQUEST_CANCELLED = 3;
+    private static final int REQUEST_FAILED = 4;
+    private static final int RESPONSE = 5;
+    private static final int ATTESTATION_PENDING = 6;
+    private static final int INTEGRITY_RECOVERABLE = 7;
+    private static final int CACHE_SERVED = 8;
+
+    @Nonnull
+    private volatile YoutubeSabrSession.DiagnosticLevel level =
+            YoutubeSabrSession.DiagnosticLevel.EVENTS;
+    private final AtomicLong nextEventSequence = new AtomicLong();
+    private final AtomicReferenceArray<Event> events = new AtomicReferenceArray<>(EVENT_CAPACITY);
     private volatile long totalResponseBytes;
     private volatile long maxResponseBytes;
     private volatile long maxUmpPartBytes;
@@ -29,21 +59,134 @@ final class YoutubeSabrSessionDiagnostics {
     private long traceControlPayloadBytes;
     private long traceUmpOverheadBytes;
     private final Deque<String> traceResponses = new ArrayDeque<>();
+    private final Deque<YoutubeSabrSession.ResponseTiming> responseTimings = new ArrayDeque<>();
+
+    void setLevel(@Nonnull final YoutubeSabrSession.DiagnosticLevel diagnosticLevel) {
+        level = diagnosticLevel;
+    }
+
+    @Nonnull
+    YoutubeSabrSession.DiagnosticLevel getLevel() {
+        return level;
+    }
+
+    boolean isEnabled() {
+        return level != YoutubeSabrSession.DiagnosticLevel.OFF;
+    }
+
+    boolean isVerbose() {
+        return level == YoutubeSabrSession.DiagnosticLevel.VERBOSE;
+    }
+
+    void addEvent(@Nonnull final String event) {
+        if (isEnabled()) {
+            add(new Event(TEXT, -1, 0, 0, 0, 0, 0, 0, event, null));
+        }
+    }
+
+    void addRequest(final int requestNumber,
+                    final long playerTimeMs,
+                    final int audioThrough,
+                    final int videoThrough,
+                    final boolean selectedTracks,
+                    final int poTokenBytes,
+                    final int requestsInFlight) {
+        if (isEnabled()) {
+            add(new Event(REQUEST, requestNumber, playerTimeMs, audioThrough, videoThrough,
+                    selectedTracks ? 1 : 0, poTokenBytes, requestsInFlight, null, null));
+        }
+    }
+
+    void addRequestCancel(final int requestNumber,
+                          final long readaheadMs,
+                          final long urgentReadaheadMs) {
+        if (isEnabled()) {
+            add(new Event(REQUEST_CANCEL, requestNumber, readaheadMs, urgentReadaheadMs,
+                    0, 0, 0, 0, null, null));
+        }
+    }
+
+    void addRequestCancelled(final int requestNumber) {
+        if (isEnabled()) {
+            add(new Event(REQUEST_CANCELLED, requestNumber, 0, 0, 0, 0, 0, 0, null, null));
+        }
+    }
+
+    void addRequestFailed(final int requestNumber, @Nonnull final Throwable error) {
+        if (isEnabled()) {
+            add(new Event(REQUEST_FAILED, requestNumber, 0, 0, 0, 0, 0, 0, null, error));
+        }
+    }
 
-    synchronized void addEvent(@Nonnull final String event) {
-        final String bounded = event.length() > MAX_DIAGNOSTIC_CHARS
-                ? event.substring(0, MAX_DIAGNOSTIC_CHARS) : event;
-        while (!diagnosticEvents.isEmpty()
-                && diagnosticChars + bounded.length() > MAX_DIAGNOSTIC_CHARS) {
-            diagnosticChars -= diagnosticEvents.removeFirst().length();
+    /**
+     * @param summary the summary of the segments and parts of the response, only given at
+     *                {@link YoutubeSabrSession.DiagnosticLevel#VERBOSE}
+     */
+    void addResponse(final int requestNumber,
+                     @Nonnull final YoutubeSabrResponse result,
+                     @Nullable final String summary) {
+        if (isEnabled()) {
+            add(new Event(RESPONSE, requestNumber, result.getResponseCode(),
+                    result.getSegmentCount(), result.getResponseBytes(),
+                    result.getRequestElapsedMs(), result.getBackoffTimeMs(),
+                    result.getStreamProtectionStatus(), summary, result.getContentType()));
         }
-        diagnosticEvents.addLast(bounded);
-        diagnosticChars += bounded.length();
     }
 
+    void addAttestationPending(final int count) {
+        if (isEnabled()) {
+            add(new Event(ATTESTATION_PENDING, -1, count, 0, 0, 0, 0, 0, null, null));
+        }
+    }
+
+    void addIntegrityRecoverable(@Nonnull final Throwable error) {
+        if (isEnabled()) {
+            add(new Event(INTEGRITY_RECOVERABLE, -1, 0, 0, 0, 0, 0, 0, null, error));
+        }
+    }
+
+    void addCacheServed(final int segments, final boolean complete) {
+        if (isEnabled()) {
+            add(new Event(CACHE_SERVED, -1, segments, complete ? 1 : 0, 0, 0, 0, 0,
+                    null, null));
+        }
+    }
+
+    private void add(@Nonnull final Event event) {
+        final long sequence = nextEventSequence.getAndIncrement();
+        event.sequence = sequence;
+        events.set((int) (sequence & EVENT_MASK), event);
+    }
+
+    /**
+     * @return the recorded events, oldest first, at most {@code MAX_DIAGNOSTIC_CHARS} long;
+     * events recorded while formatting may be missing
+     */
     @Nonnull
-    synchronized String getTrace() {
-        return String.join(" | ", diagnosticEvents);
+    String getTrace() {
+        final long end = nextEventSequence.get();
+        final List<String> formatted = new ArrayList<>();
+        int chars = 0;
+        // Newest first, so that the oldest events are the ones left out
+        for (long sequence = end - 1; sequence >= Math.max(0, end - EVENT_CAPACITY);
+                sequence--) {
+            final Event event = events.get((int) (sequence & EVENT_MASK));
+            if (event == null || event.sequence != sequence) {
+                // Overwritten by a newer event, or claimed but not stored yet
+                continue;
+            }
+            String text = event.format();
+            if (text.length() > MAX_DIAGNOSTIC_CHARS) {
+                text = text.substring(0, MAX_DIAGNOSTIC_CHARS);
+            }
+            if (chars + text.length() > MAX_DIAGNOSTIC_CHARS && !formatted.isEmpty()) {
+                break;
+            }
+            formatted.add(text);
+            chars += text.length();
+        }
+        Collections.reverse(formatted);
+        return String.join(" | ", formatted);
     }
 
     void recordResponse(@Nonnull final YoutubeSabrResponse result, final int requestNumber) {
@@ -56,6 +199,15 @@ final class YoutubeSabrSessionDiagnostics {
         maxSegmentsPerResponse = Math.max(maxSegmentsPerResponse, result.getSegmentCount());
         maxStreamProtectionStatus.accumulateAndGet(
                 result.getStreamProtectionStatus(), Math::max);
+        synchronized (responseTimings) {
+            if (responseTimings.size() >= MAX_RESPONSE_TIMINGS) {
+                responseTimings.removeFirst();
+            }
+            responseTimings.addLast(new YoutubeSabrSession.ResponseTiming(
+                    Math.max(0, result.getResponseBytes()),
+                    Math.max(0, result.getRequestElapsedMs()),
+                    result.getFirstSegmentElapsedMs()));
+        }
         if (!traceEnabled) {
             return;
         }
@@ -87,6 +239,13 @@ final class YoutubeSabrSessionDiagnostics {
     int getMaxSegmentsPerResponse() { return maxSegmentsPerResponse; }
     int getMaxStreamProtectionStatus() { return maxStreamProtectionStatus.get(); }
 
+    @Nonnull
+    List<YoutubeSabrSession.ResponseTiming> getResponseTimings() {
+        synchronized (responseTimings) {
+            return Collections.unmodifiableList(new ArrayList<>(responseTimings));
+        }
+    }
+
     @Nonnull
     String getMemorySummary(final int requestNumber) {
         return "requestNumber=" + requestNumber
@@ -108,6 +267,94 @@ final class YoutubeSabrSessionDiagnostics {
         }
     }
 
+    /** One diagnostic event; the meaning of its values depends on its type. */
+    private static final class Event {
+        private final int type;
+        private final int requestNumber;
+        private final long v0;
+        private final long v1;
+        private final long v2;
+        private final long v3;
+        private final long v4;
+        private final long v5;
+        @Nullable
+        private final String text;
+        @Nullable
+        private final Object detail;
+        // Set before the event is published to the ring
+        private long sequence;
+
+        private Event(final int type,
+                      final int requestNumber,
+                      final long v0,
+                      final long v1,
+                      final long v2,
+                      final long v3,
+                      final long v4,
+                      final long v5,
+                      @Nullable final String text,
+                      @Nullable final Object detail) {
+            this.type = type;
+            this.requestNumber = requestNumber;
+            this.v0 = v0;
+            this.v1 = v1;
+            this.v2 = v2;
+            this.v3 = v3;
+            this.v4 = v4;
+            this.v5 = v5;
+            this.text = text;
+            this.detail = detail;
+        }
+
+        @Nonnull
+        private String format() {
+            switch (type) {
+                case REQUEST:
+                    return "request n=" + requestNumber
+                            + " playerMs=" + v0
+                            + " audioThrough=" + v1
+                            + " videoThrough=" + v2
+                            + " selectedTracks=" + (v3 != 0)
+                            + " poTokenBytes=" + v4
+                            + " inFlight=" + v5;
+                case REQUEST_CANCEL:
+                    return "request_cancel n=" + requestNumber
+                            + " readaheadMs=" + v0
+                            + " urgentReadaheadMs=" + v1;
+                case REQUEST_CANCELLED:
+                    return "request_cancelled n=" + requestNumber;
+                case REQUEST_FAILED:
+                    return "request_failed n=" + requestNumber + ' ' + formatError();
+                case RESPONSE:
+                    return "response n=" + requestNumber
+                            + " http=" + v0
+                            + " contentType=" + detail
+                            + " segments=count=" + v1
+                            + " bytes=" + v2
+                            + " elapsedMs=" + v3
+                            + " backoffMs=" + v4
+                            + " protection=" + v5
+                            + (text == null ? "" : " " + text);
+                case ATTESTATION_PENDING:
+                    return "attestation_pending_no_media count=" + v0;
+                case INTEGRITY_RECOVERABLE:
+                    return "streaming_integrity_recoverable " + formatError();
+                case CACHE_SERVED:
+                    return "cache_served segments=" + v0 + " complete=" + (v1 != 0);
+                default:
+                    return String.valueOf(text);
+            }
+        }
+
+        @Nonnull
+        private String formatError() {
+            final Throwable error = (Throwable) detail;
+            return error == null ? "type=null"
+                    : "type=" + error.getClass().getSimpleName()
+                    + " message=" + error.getMessage();
+        }
+    }
+
     private static void addBoundedTraceEvent(@Nonnull final Deque<String> events,
                                              @Nonnull final String value) {
         if (events.size() >= MAX_TRACE_EVENTS) {
@@ -93,13 +93,15 @@ public final class SabrFormatInitializationMetadata {
         long durationUnits = -1;
         long durationTimescale = -1;
 
-        for (final SabrProto.Field field : SabrProto.readFields(data)) {
+        final SabrProto.FieldReader field = new SabrProto.FieldReader(data);
+        while (field.next()) {
             switch (field.getNumber()) {
                 case 1:
                     videoId = field.getString();
                     break;
                 case 2:
-                    for (final SabrProto.Field formatField : SabrProto.readFields(field.getBytes())) {
+                    final SabrProto.FieldReader formatField = field.getMessage();
+                    while (formatField.next()) {
                         if (formatField.getNumber() == 1) {
                             itag = (int) formatField.getVarint();
                         } else if (formatField.getNumber() == 2) {
@@ -119,12 +121,12 @@ public final class SabrFormatInitializationMetadata {
                     mimeType = field.getString();
                     break;
                 case 6:
-                    final Range initRange = decodeRange(field.getBytes());
+                    final Range initRange = decodeRange(field.getMessage());
                     initRangeStart = initRange.start;
                     initRangeEnd = initRange.end;
                     break;
                 case 7:
-                    final Range indexRange = decodeRange(field.getBytes());
+                    final Range indexRange = decodeRange(field.getMessage());
                     indexRangeStart = indexRange.start;
                     indexRangeEnd = indexRange.end;
                     break;
@@ -148,10 +150,11 @@ public final class SabrFormatInitializationMetadata {
     }
 
     @Nonnull
-    private static Range decodeRange(@Nonnull final byte[] data) throws SabrProtocolException {
+    private static Range decodeRange(@Nonnull final SabrProto.FieldReader field)
+            throws SabrProtocolException {
         long start = -1;
         long end = -1;
-        for (final SabrProto.Field field : SabrProto.readFields(data)) {
+        while (field.next()) {
             if ((field.getNumber() == 1 || field.getNumber() == 3)
                     && field.getWireType() == SabrProto.WIRE_VARINT) {
                 start = field.getVarint();
@@ -102,7 +102,8 @@ public final class SabrMediaHeader {
         int timeRangeTimescale = -1;
         long sequenceLastModified = -1;
 
-        for (final SabrProto.Field field : SabrProto.readFields(data)) {
+        final SabrProto.FieldReader field = new SabrProto.FieldReader(data);
+        while (field.next()) {
             switch (field.getNumber()) {
                 case 1:
                     headerId = (int) field.getVarint();
@@ -126,7 +127,7 @@ public final class SabrMediaHeader {
                     compressionAlgorithm = (int) field.getVarint();
                     break;
                 case 8:
-                    initSegment = field.getVarint() != 0;
+                    initSegment = field.getBool();
                     break;
                 case 9:
                     sequenceNumber = (int) field.getVarint();
@@ -141,7 +142,7 @@ public final class SabrMediaHeader {
                     durationMs = field.getVarint();
                     break;
                 case 13:
-                    final FormatId formatId = decodeFormatId(field.getBytes());
+                    final FormatId formatId = decodeFormatId(field.getMessage());
                     if (itag < 0) {
                         itag = formatId.itag;
                     }
@@ -156,7 +157,7 @@ public final class SabrMediaHeader {
                     contentLength = field.getVarint();
                     break;
                 case 15:
-                    final TimeRange timeRange = decodeTimeRange(field.getBytes());
+                    final TimeRange timeRange = decodeTimeRange(field.getMessage());
                     timeRangeStartTicks = timeRange.startTicks;
                     timeRangeDurationTicks = timeRange.durationTicks;
                     timeRangeTimescale = timeRange.timescale;
@@ -185,11 +186,12 @@ public final class SabrMediaHeader {
     }
 
     @Nonnull
-    private static FormatId decodeFormatId(@Nonnull final byte[] data) throws SabrProtocolException {
+    private static FormatId decodeFormatId(@Nonnull final SabrProto.FieldReader field)
+            throws SabrProtocolException {
         int itag = -1;
         long lastModified = -1;
         String xtags = null;
-        for (final SabrProto.Field field : SabrProto.readFields(data)) {
+        while (field.next()) {
             if (field.getNumber() == 1 && field.getWireType() == SabrProto.WIRE_VARINT) {
                 itag = (int) field.getVarint();
             } else if (field.getNumber() == 2 && field.getWireType() == SabrProto.WIRE_VARINT) {
@@ -203,12 +205,12 @@ public final class SabrMediaHeader {
     }
 
     @Nonnull
-    private static TimeRange decodeTimeRange(@Nonnull final byte[] data)
+    private static TimeRange decodeTimeRange(@Nonnull final SabrProto.FieldReader field)
             throws SabrProtocolException {
         long startTicks = -1;
         long durationTicks = -1;
         int timescale = -1;
-        for (final SabrProto.Field field : SabrProto.readFields(data)) {
+        while (field.next()) {
             if (field.getNumber() == 1 && field.getWireType() == SabrProto.WIRE_VARINT) {
                 startTicks = field.getVarint();
             } else if (field.getNumber() == 2 && field.getWireType() == SabrProto.WIRE_VARINT) {
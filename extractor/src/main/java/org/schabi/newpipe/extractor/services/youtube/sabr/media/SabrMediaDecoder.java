@@ -0,0 +1,312 @@
+package org.schabi.newpipe.extractor.services.youtube.sabr.media;
+
+import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrProtocolException;
+
+import org.brotli.dec.BrotliInputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a media segment, writing the decompressed bytes to a sink, so that the
+ * decompressed segment is never held in one array. Gzip is decompressed as its compressed bytes
+ * arrive, brotli once all of them have.
+ */
+abstract class SabrMediaDecoder {
+    static final int GZIP = 1;
+    static final int BROTLI = 2;
+    private static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
+
+    /** Receives decompressed bytes. */
+    @FunctionalInterface
+    interface Sink {
+        void write(@Nonnull byte[] bytes, int offset, int count) throws IOException;
+    }
+
+    @Nonnull
+    static SabrMediaDecoder create(final int compressionAlgorithm, @Nonnull final Sink sink)
+            throws SabrProtocolException {
+        switch (compressionAlgorithm) {
+            case GZIP:
+                return new Gzip(sink);
+            case BROTLI:
+                return new Brotli(sink);
+            default:
+                throw new SabrProtocolException("Unsupported SABR media compression: "
+                        + compressionAlgorithm);
+        }
+    }
+
+    /** Decompress the next compressed bytes. */
+    abstract void write(@Nonnull byte[] bytes, int offset, int count) throws IOException;
+
+    /**
+     * Decompress the rest of the segment after its last compressed bytes.
+     *
+     * @throws IOException if the compressed data is truncated or invalid
+     */
+    abstract void finish() throws IOException;
+
+    /** Stop decompressing a segment which will not be completed. */
+    abstract void abort();
+
+    /**
+     * Gzip, decoded with an {@link Inflater} on the thread writing the compressed bytes.
+     * Concatenated gzip members are decoded one after the other, like {@code GZIPInputStream}
+     * does.
+     */
+    private static final class Gzip extends SabrMediaDecoder {
+        private static final int HEADER_SIZE = 10;
+        private static final int TRAILER_SIZE = 8;
+        private static final int FLAG_HEADER_CRC = 2;
+        private static final int FLAG_EXTRA = 4;
+        private static final int FLAG_NAME = 8;
+        private static final int FLAG_COMMENT = 16;
+
+        @Nonnull
+        private final Sink sink;
+        private final Inflater inflater = new Inflater(true);
+        private final CRC32 crc = new CRC32();
+        private final byte[] output = new byte[OUTPUT_BUFFER_SIZE];
+        // The header or the trailer of the current member, until it is complete
+        private byte[] pending = new byte[64];
+        private int pendingLength;
+        private boolean inHeader = true;
+        private boolean inTrailer;
+        private boolean ignoringRest;
+        private int members;
+
+        private Gzip(@Nonnull final Sink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        void write(@Nonnull final byte[] bytes, final int offset, final int count)
+                throws IOException {
+            int position = offset;
+            final int end = offset + count;
+            while (position < end && !ignoringRest) {
+                if (inHeader) {
+                    position = readHeader(bytes, position, end);
+                } else if (inTrailer) {
+                    position = readTrailer(bytes, position, end);
+                } else {
+                    position = inflate(bytes, position, end);
+                }
+            }
+        }
+
+        private int readHeader(@Nonnull final byte[] bytes, final int offset, final int end)
+                throws IOException {
+            // Header fields have variable lengths: buffer bytes one at a time until it parses
+            int position = offset;
+            while (position < end) {
+                append(bytes[position++]);
+                final int headerLength;
+                try {
+                    headerLength = parseHeaderLength();
+                } catch (final ZipException e) {
+                    if (members == 0) {
+                        throw e;
+                    }
+                    // Trailing garbage after a member, which GZIPInputStream ignores as well
+                    ignoringRest = true;
+                    pendingLength = 0;
+                    return end;
+                }
+                if (headerLength >= 0) {
+                    inHeader = false;
+                    pendingLength = 0;
+                    inflater.reset();
+                    crc.reset();
+                    return position;
+                }
+            }
+            return position;
+        }
+
+        /**
+         * @return the length of the buffered header, or -1 if it is not complete yet
+         */
+        private int parseHeaderLength() throws ZipException {
+            if (pendingLength < HEADER_SIZE) {
+                if (pendingLength >= 1 && (pending[0] & 0xff) != 0x1f
+                        || pendingLength >= 2 && (pending[1] & 0xff) != 0x8b) {
+                    throw new ZipException("Not in GZIP format");
+                }
+                if (pendingLength >= 3 && pending[2] != 8) {
+                    throw new ZipException("Unsupported GZIP compression method");
+                }
+                return -1;
+            }
+            final int flags = pending[3] & 0xff;
+            int length = HEADER_SIZE;
+            if ((flags & FLAG_EXTRA) != 0) {
+                if (pendingLength < length + 2) {
+                    return -1;
+                }
+                length += 2 + ((pending[length] & 0xff) | (pending[length + 1] & 0xff) << 8);
+            }
+            if ((flags & FLAG_NAME) != 0) {
+                length = skipZeroTerminated(length);
+            }
+            if (length >= 0 && (flags & FLAG_COMMENT) != 0) {
+                length = skipZeroTerminated(length);
+            }
+            if (length >= 0 && (flags & FLAG_HEADER_CRC) != 0) {
+                length += 2;
+            }
+            return length >= 0 && pendingLength >= length ? length : -1;
+        }
+
+        private int skipZeroTerminated(final int offset) {
+            for (int i = offset; i < pendingLength; i++) {
+                if (pending[i] == 0) {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        private int inflate(@Nonnull final byte[] bytes, final int offset, final int end)
+                throws IOException {
+            inflater.setInput(bytes, offset, end - offset);
+            try {
+                while (!inflater.finished()) {
+                    final int inflated = inflater.inflate(output);
+                    if (inflated > 0) {
+                        crc.update(output, 0, inflated);
+                        sink.write(output, 0, inflated);
+                    } else if (inflater.needsInput()) {
+                        return end;
+                    } else if (inflater.needsDictionary()) {
+                        throw new ZipException("Invalid GZIP data: preset dictionary");
+                    }
+                }
+            } catch (final DataFormatException e) {
+                final ZipException exception = new ZipException("Invalid GZIP data");
+                exception.initCause(e);
+                throw exception;
+            }
+            inTrailer = true;
+            pendingLength = 0;
+            return end - inflater.getRemaining();
+        }
+
+        private int readTrailer(@Nonnull final byte[] bytes, final int offset, final int end)
+                throws IOException {
+            int position = offset;
+            while (position < end && pendingLength < TRAILER_SIZE) {
+                append(bytes[position++]);
+            }
+            if (pendingLength == TRAILER_SIZE) {
+                if (readInt(0) != (int) crc.getValue()) {
+                    throw new ZipException("Corrupt GZIP trailer: CRC mismatch");
+                }
+                if (readInt(4) != (int) inflater.getBytesWritten()) {
+                    throw new ZipException("Corrupt GZIP trailer: size mismatch");
+                }
+                members++;
+                inTrailer = false;
+                // Another member may follow
+                inHeader = true;
+                pendingLength = 0;
+            }
+            return position;
+        }
+
+        private int readInt(final int offset) {
+            return (pending[offset] & 0xff) | (pending[offset + 1] & 0xff) << 8
+                    | (pending[offset + 2] & 0xff) << 16 | (pending[offset + 3] & 0xff) << 24;
+        }
+
+        private void append(final byte value) {
+            if (pendingLength == pending.length) {
+                final byte[] grown = new byte[pending.length * 2];
+                System.arraycopy(pending, 0, grown, 0, pendingLength);
+                pending = grown;
+            }
+            pending[pendingLength++] = value;
+        }
+
+        @Override
+        void finish() throws IOException {
+            try {
+                if (members == 0 || !ignoringRest && (!inHeader || pendingLength > 0)) {
+                    throw new ZipException("Truncated GZIP data");
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+
+        @Override
+        void abort() {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Brotli, whose decoder can only pull its input: the compressed bytes are buffered, and
+     * decoded on the thread which writes the last of them. Compressed segments are several times
+     * smaller than their decoded bytes, which still go to the sink as they are decoded.
+     */
+    private static final class Brotli extends SabrMediaDecoder {
+        @Nonnull
+        private final Sink sink;
+        @Nullable
+        private CompressedBytes input = new CompressedBytes();
+
+        private Brotli(@Nonnull final Sink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        void write(@Nonnull final byte[] bytes, final int offset, final int count)
+                throws IOException {
+            if (input == null) {
+                throw new IOException("SABR media segment was aborted");
+            }
+            input.write(bytes, offset, count);
+        }
+
+        @Override
+        void finish() throws IOException {
+            final CompressedBytes compressed = input;
+            if (compressed == null) {
+                throw new IOException("SABR media segment was aborted");
+            }
+            input = null;
+            final byte[] output = new byte[OUTPUT_BUFFER_SIZE];
+            try (InputStream decoded = new BrotliInputStream(compressed.toInputStream())) {
+                int read;
+                while ((read = decoded.read(output)) != -1) {
+                    sink.write(output, 0, read);
+                }
+            } catch (final RuntimeException e) {
+                throw new IOException("Could not decode brotli SABR media segment", e);
+            }
+        }
+
+        @Override
+        void abort() {
+            input = null;
+        }
+    }
+
+    /** Gives the buffered bytes to a stream without copying them. */
+    private static final class CompressedBytes extends ByteArrayOutputStream {
+        @Nonnull
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
@@ -6,12 +6,8 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InterruptedIOException;
-import java.io.RandomAccessFile;
 
 public final class SabrMediaSegment {
     private static final int COPY_BUFFER_SIZE = 8192;
@@ -21,10 +17,10 @@ public final class SabrMediaSegment {
     @Nullable
     private final byte[] data;
     @Nullable
-    private final File file;
-    private final int length;
+    private final SabrSpoolFile spoolFile;
     @Nullable
-    private final ProgressiveFileState progressiveState;
+    private final SabrSegmentCache.Entry cacheEntry;
+    private final int length;
 
     SabrMediaSegment(@Nonnull final SabrMediaHeader header, @Nonnull final byte[] data) {
         this.header = header;
@@ -32,37 +28,34 @@ public final class SabrMediaSegment {
         // Media segments reach several MB (4K), so cloning here doubled peak memory and caused OOM
         // under rapid switching. The array is treated as immutable from here on.
         this.data = data;
-        this.file = null;
+        this.spoolFile = null;
+        this.cacheEntry = null;
         this.length = data.length;
-        this.progressiveState = null;
     }
 
+    /**
+     * A segment spooled to disk, which can be read while it is still being written.
+     *
+     * @param length the length of the segment, or -1 if it is only known once complete
+     */
     SabrMediaSegment(@Nonnull final SabrMediaHeader header,
-                     @Nonnull final File file,
+                     @Nonnull final SabrSpoolFile spoolFile,
                      final int length) {
         this.header = header;
         this.data = null;
-        this.file = file;
+        this.spoolFile = spoolFile;
+        this.cacheEntry = null;
         this.length = length;
-        this.progressiveState = null;
     }
 
-    private SabrMediaSegment(@Nonnull final SabrMediaHeader header,
-                             @Nonnull final File file,
-                             final int length,
-                             @Nonnull final ProgressiveFileState progressiveState) {
+    /** A segment read from the {@link SabrSegmentCache}. */
+    SabrMediaSegment(@Nonnull final SabrMediaHeader header,
+                     @Nonnull final SabrSegmentCache.Entry cacheEntry) {
         this.header = header;
         this.data = null;
-        this.file = file;
-        this.length = length;
-        this.progressiveState = progressiveState;
-    }
-
-    @Nonnull
-    static SabrMediaSegment progressive(@Nonnull final SabrMediaHeader header,
-                                        @Nonnull final File file,
-                                        final int length) {
-        return new SabrMediaSegment(header, file, length, new ProgressiveFileState(length));
+        this.spoolFile = null;
+        this.cacheEntry = cacheEntry;
+        this.length = cacheEntry.getLength();
     }
 
     @Nonnull
@@ -81,7 +74,8 @@ public final class SabrMediaSegment {
             return data;
         }
         try (InputStream input = openStream();
-             ByteArrayOutputStream output = new ByteArrayOutputStream(length)) {
+             ByteArrayOutputStream output = new ByteArrayOutputStream(
+                     Math.max(COPY_BUFFER_SIZE, getLength()))) {
             final byte[] buffer = new byte[COPY_BUFFER_SIZE];
             int read;
             while ((read = input.read(buffer)) != -1) {
@@ -98,65 +92,91 @@ public final class SabrMediaSegment {
         if (data != null) {
             return new ByteArrayInputStream(data);
         }
-        if (file == null) {
-            throw new IOException("SABR media segment has no backing data");
+        if (cacheEntry != null) {
+            return cacheEntry.openStream();
         }
-        if (progressiveState != null) {
-            progressiveState.throwIfFailed();
-            try {
-                return new ProgressiveFileInputStream(file, progressiveState);
-            } catch (final IOException e) {
-                progressiveState.throwIfFailed();
-                throw e;
-            }
+        if (spoolFile == null) {
+            throw new IOException("SABR media segment has no backing data");
         }
-        return new FileInputStream(file);
+        return spoolFile.openStream();
     }
 
     public boolean isDiskBacked() {
-        return file != null;
+        return spoolFile != null || cacheEntry != null;
     }
 
-    public boolean isComplete() {
-        return progressiveState == null || progressiveState.isComplete();
+    /** @return the spool file of the segment, if it is spooled */
+    @Nullable
+    SabrSpoolFile getSpoolFile() {
+        return spoolFile;
     }
 
-    public boolean hasFailed() {
-        return progressiveState != null && progressiveState.hasFailed();
+    /** @return whether the segment was read from the {@link SabrSegmentCache} */
+    public boolean isCached() {
+        return cacheEntry != null;
     }
 
-    void onBytesWritten(final int count) {
-        if (progressiveState != null) {
-            progressiveState.onBytesWritten(count);
-        }
+    public boolean isComplete() {
+        return spoolFile == null || spoolFile.isComplete();
     }
 
-    void completeProgressive() {
-        if (progressiveState != null) {
-            progressiveState.complete();
-        }
+    public boolean hasFailed() {
+        return spoolFile != null && spoolFile.hasFailed();
     }
 
     public void failProgressive(@Nonnull final IOException failure) {
-        if (progressiveState != null) {
-            progressiveState.fail(failure);
+        if (spoolFile != null) {
+            spoolFile.fail(failure);
         }
     }
 
+    /**
+     * Delete the spool file of this segment and free its space, failing its open streams if it
+     * is not complete yet. Cached segments stay in the cache.
+     */
     public void delete() {
-        failProgressive(new IOException("SABR media segment was discarded"));
-        if (file != null && !file.delete() && file.exists()) {
-            file.deleteOnExit();
+        if (spoolFile != null) {
+            spoolFile.delete();
         }
     }
 
+    /**
+     * The length of the segment, without waiting. The length of a compressed segment read while
+     * it is being received is only known once it has been decompressed: use
+     * {@link #awaitLength()} to wait for it, but not on the thread reading the response.
+     *
+     * @return the length of the segment, or -1 while a compressed segment is still being
+     * decompressed
+     */
     public int getLength() {
+        if (length < 0 && spoolFile != null && spoolFile.isComplete()) {
+            return spoolFile.getWrittenBytes();
+        }
         return length;
     }
 
-    @Nullable
-    File getFile() {
-        return file;
+    /**
+     * @return whether {@link #getLength()} returns the length of the segment
+     */
+    public boolean isLengthKnown() {
+        return length >= 0 || spoolFile == null || spoolFile.isComplete();
+    }
+
+    /**
+     * Wait until the length of the segment is known. It must not be called on the thread reading
+     * the response, which completes the segment.
+     *
+     * @return the length of the segment
+     * @throws IOException if the segment failed before it was complete, or an
+     *                     {@link java.io.InterruptedIOException} if the thread was interrupted
+     *                     while waiting
+     */
+    public int awaitLength() throws IOException {
+        if (length >= 0 || spoolFile == null) {
+            return length;
+        }
+        spoolFile.awaitComplete();
+        return spoolFile.getWrittenBytes();
     }
 
     /** Internal bridge for media assembly implementations living in the media subpackage. */
@@ -170,206 +190,9 @@ public final class SabrMediaSegment {
             return new SabrMediaSegment(header, data);
         }
 
-        @Nonnull
-        public static SabrMediaSegment fromFile(@Nonnull final SabrMediaHeader header,
-                                                @Nonnull final File file,
-                                                final int length) {
-            return new SabrMediaSegment(header, file, length);
-        }
-
-        @Nonnull
-        public static SabrMediaSegment progressive(@Nonnull final SabrMediaHeader header,
-                                                   @Nonnull final File file,
-                                                   final int length) {
-            return SabrMediaSegment.progressive(header, file, length);
-        }
-
-        public static void onBytesWritten(@Nonnull final SabrMediaSegment segment,
-                                          final int count) {
-            segment.onBytesWritten(count);
-        }
-
-        public static void completeProgressive(@Nonnull final SabrMediaSegment segment) {
-            segment.completeProgressive();
-        }
-
         public static void failProgressive(@Nonnull final SabrMediaSegment segment,
                                            @Nonnull final IOException failure) {
             segment.failProgressive(failure);
         }
     }
-
-    private static final class ProgressiveFileState {
-        private final int expectedLength;
-        private int bytesWritten;
-        private boolean complete;
-        @Nullable
-        private IOException failure;
-
-        private ProgressiveFileState(final int expectedLength) {
-            this.expectedLength = expectedLength;
-        }
-
-        private synchronized void onBytesWritten(final int count) {
-            if (count <= 0 || complete || failure != null) {
-                return;
-            }
-            bytesWritten += count;
-            notifyAll();
-        }
-
-        private synchronized void complete() {
-            if (failure == null) {
-                complete = true;
-            }
-            notifyAll();
-        }
-
-        private synchronized void fail(@Nonnull final IOException exception) {
-            if (!complete && failure == null) {
-                failure = exception;
-            }
-            notifyAll();
-        }
-
-        private synchronized boolean isComplete() {
-            return complete;
-        }
-
-        private synchronized boolean hasFailed() {
-            return failure != null;
-        }
-
-        private synchronized int awaitAvailable(
-                final long position,
-                @Nonnull final ProgressiveFileInputStream reader) throws IOException {
-            int readable = readableBytes(position);
-            while (readable <= 0 && !complete && failure == null && !reader.closed) {
-                try {
-                    wait();
-                } catch (final InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    final InterruptedIOException interrupted = new InterruptedIOException(
-                            "Interrupted waiting for SABR media bytes");
-                    interrupted.initCause(e);
-                    throw interrupted;
-                }
-                readable = readableBytes(position);
-            }
-            if (reader.closed) {
-                throw new InterruptedIOException("SABR media stream was closed");
-            }
-            if (failure != null) {
-                throw failure;
-            }
-            return complete ? (int) Math.max(0, bytesWritten - position) : readable;
-        }
-
-        private synchronized int available(final long position) throws IOException {
-            if (failure != null) {
-                throw failure;
-            }
-            return complete ? (int) Math.max(0, bytesWritten - position)
-                    : readableBytes(position);
-        }
-
-        private int readableBytes(final long position) {
-            final int available = (int) Math.max(0, bytesWritten - position);
-            if (!complete && bytesWritten >= expectedLength
-                    && position + available >= expectedLength) {
-                // Keep one byte unavailable until MEDIA_END validates the segment. Media3 knows
-                // the declared DataSource length and may never issue a separate EOF read.
-                return Math.max(0, available - 1);
-            }
-            return available;
-        }
-
-        private synchronized void signalReaders() {
-            notifyAll();
-        }
-
-        private synchronized void throwIfFailed() throws IOException {
-            if (failure != null) {
-                throw failure;
-            }
-        }
-    }
-
-    private static final class ProgressiveFileInputStream extends InputStream {
-        @Nonnull
-        private final RandomAccessFile input;
-        @Nonnull
-        private final ProgressiveFileState state;
-        private long position;
-        private volatile boolean closed;
-
-        private ProgressiveFileInputStream(@Nonnull final File file,
-                                           @Nonnull final ProgressiveFileState state)
-                throws IOException {
-            this.input = new RandomAccessFile(file, "r");
-            this.state = state;
-        }
-
-        @Override
-        public int read() throws IOException {
-            final byte[] one = new byte[1];
-            final int read = read(one, 0, 1);
-            return read < 0 ? -1 : one[0] & 0xff;
-        }
-
-        @Override
-        public int read(@Nonnull final byte[] bytes, final int offset, final int count)
-                throws IOException {
-            if (closed) {
-                throw new IOException("SABR media stream is closed");
-            }
-            if (count == 0) {
-                return 0;
-            }
-            while (true) {
-                final int available = state.awaitAvailable(position, this);
-                if (available <= 0) {
-                    return -1;
-                }
-                input.seek(position);
-                final int read = input.read(bytes, offset, Math.min(count, available));
-                if (read > 0) {
-                    position += read;
-                    return read;
-                }
-            }
-        }
-
-        @Override
-        public long skip(final long count) throws IOException {
-            if (count <= 0) {
-                return 0;
-            }
-            final int available = state.awaitAvailable(position, this);
-            if (available <= 0) {
-                return 0;
-            }
-            final long skipped = Math.min(count, available);
-            position += skipped;
-            input.seek(position);
-            return skipped;
-        }
-
-        @Override
-        public int available() throws IOException {
-            if (closed) {
-                return 0;
-            }
-            return state.available(position);
-        }
-
-        @Override
-        public void close() throws IOException {
-            if (!closed) {
-                closed = true;
-                state.signalReaders();
-                input.close();
-            }
-        }
-    }
 }
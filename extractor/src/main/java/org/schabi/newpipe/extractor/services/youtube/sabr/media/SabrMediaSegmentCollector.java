@@ -7,22 +7,16 @@ import org.schabi.newpipe.extractor.services.youtube.sabr.generated.SabrMediaHea
 import org.schabi.newpipe.extractor.services.youtube.sabr.protocol.SabrResponseDecoder;
 import org.schabi.newpipe.extractor.services.youtube.sabr.protocol.UmpReader;
 
-import org.brotli.dec.BrotliInputStream;
-
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
 
 public final class SabrMediaSegmentCollector {
     private static final int MIN_PROGRESSIVE_SEGMENT_BYTES = 64 * 1024;
@@ -73,20 +67,50 @@ public final class SabrMediaSegmentCollector {
     public static final class Incremental {
         private final Map<Integer, OpenSegment> openSegments = new HashMap<>();
         @Nullable
-        private final File spoolDirectory;
+        private final SabrSpoolManager spoolManager;
+        @Nullable
+        private final SabrSegmentCache segmentCache;
+        @Nullable
+        private final String videoId;
+
         public Incremental() {
-            this(null);
+            this((SabrSpoolManager) null);
         }
 
+        /**
+         * @param spoolDirectory the directory to spool media segments to, through its
+         *                       {@link SabrSpoolManager#forDirectory(File) shared manager}, or
+         *                       {@code null} to keep them in memory
+         */
         public Incremental(@Nullable final File spoolDirectory) {
-            this.spoolDirectory = spoolDirectory;
+            this(spoolDirectory == null ? null : SabrSpoolManager.forDirectory(spoolDirectory));
+        }
+
+        public Incremental(@Nullable final SabrSpoolManager spoolManager) {
+            this(spoolManager, null, null);
+        }
+
+        /**
+         * @param spoolManager the spool of media segments, or {@code null} to keep them in memory
+         * @param segmentCache the cache to store completed media segments in, or {@code null}
+         * @param videoId      the id of the video, used to cache segments whose header doesn't
+         *                     name it
+         */
+        public Incremental(@Nullable final SabrSpoolManager spoolManager,
+                           @Nullable final SabrSegmentCache segmentCache,
+                           @Nullable final String videoId) {
+            this.spoolManager = spoolManager;
+            this.segmentCache = videoId == null ? null : segmentCache;
+            this.videoId = videoId;
         }
 
         @Nullable
         public SabrMediaSegment onMediaHeader(@Nonnull final byte[] partData)
                 throws SabrProtocolException {
             final SabrMediaHeader header = SabrMediaHeader.decode(partData);
-            final OpenSegment current = new OpenSegment(header, spoolDirectory);
+            final OpenSegment current = new OpenSegment(header, spoolManager,
+                    segmentCache != null && SabrSegmentCache.isCacheable(header)
+                            ? partData : null);
             final OpenSegment previous = openSegments.put(header.getHeaderId(), current);
             if (previous != null) {
                 previous.abort();
@@ -120,12 +144,17 @@ public final class SabrMediaSegmentCollector {
             if (partData.length > 0) {
                 final OpenSegment openSegment = openSegments.remove(partData[0] & 0xff);
                 if (openSegment != null) {
+                    final SabrMediaSegment segment;
                     try {
-                        return openSegment.toSegment();
+                        segment = openSegment.toSegment();
                     } catch (final SabrProtocolException e) {
                         openSegment.abort();
                         throw e;
                     }
+                    if (openSegment.headerData != null) {
+                        segmentCache.put(videoId, openSegment.headerData, segment);
+                    }
+                    return segment;
                 }
             }
             return null;
@@ -142,67 +171,72 @@ public final class SabrMediaSegmentCollector {
     private static final class OpenSegment {
         @Nonnull
         private final SabrMediaHeader header;
+        // The encoded header, kept if the segment is to be cached
+        @Nullable
+        private final byte[] headerData;
         @Nullable
         private final byte[] fixedData;
         @Nullable
         private final ByteArrayOutputStream dynamicData;
         @Nullable
-        private final File file;
-        @Nullable
-        private final OutputStream fileOutput;
+        private final SabrSpoolFile spoolFile;
         @Nullable
         private final SabrMediaSegment progressiveSegment;
+        // Decompresses the segment as it arrives, into the spool file or the dynamic data
+        @Nullable
+        private final SabrMediaDecoder decoder;
+        // The number of bytes received, compressed or not
         private int length;
-        private boolean fileOutputClosed;
 
         private OpenSegment(@Nonnull final SabrMediaHeader header) throws SabrProtocolException {
-            this(header, null);
+            this(header, null, null);
         }
 
         private OpenSegment(@Nonnull final SabrMediaHeader header,
-                            @Nullable final File spoolDirectory) throws SabrProtocolException {
+                            @Nullable final SabrSpoolManager spoolManager,
+                            @Nullable final byte[] headerData)
+                throws SabrProtocolException {
             this.header = header;
+            this.headerData = headerData;
             final long contentLength = header.getContentLength();
-            if (spoolDirectory != null
-                    && header.getCompressionAlgorithm() <= 0
-                    && !header.isInitSegment()) {
-                if (contentLength > Integer.MAX_VALUE) {
-                    throw new SabrProtocolException("SABR media segment too large: headerId="
-                            + header.getHeaderId() + ", length=" + contentLength);
-                }
-                if (!spoolDirectory.exists() && !spoolDirectory.mkdirs()) {
-                    throw new SabrRecoverableException("Could not create SABR spool directory: "
-                            + spoolDirectory);
-                }
-                try {
-                    file = File.createTempFile("sabr-" + header.getItag() + '-'
-                            + header.getSequenceNumber() + '-', ".seg", spoolDirectory);
-                    fileOutput = new FileOutputStream(file);
-                    progressiveSegment = contentLength < MIN_PROGRESSIVE_SEGMENT_BYTES ? null
-                            : SabrMediaSegment.InternalAccess.progressive(
-                                    header, file, (int) contentLength);
-                } catch (final IOException e) {
-                    throw new SabrRecoverableException("Could not open SABR spool file", e);
-                }
+            if (contentLength > Integer.MAX_VALUE) {
+                throw new SabrProtocolException("SABR media segment too large: headerId="
+                        + header.getHeaderId() + ", length=" + contentLength);
+            }
+            final boolean compressed = header.getCompressionAlgorithm() > 0;
+            if (spoolManager != null && !header.isInitSegment()) {
+                // The decompressed length of a compressed segment is only known at its end
+                final int decodedLength = compressed ? -1 : (int) contentLength;
+                spoolFile = spoolManager.allocate(header, decodedLength);
+                progressiveSegment = contentLength < MIN_PROGRESSIVE_SEGMENT_BYTES ? null
+                        : new SabrMediaSegment(header, spoolFile, decodedLength);
                 fixedData = null;
                 dynamicData = null;
-            } else if (contentLength >= 0) {
-                if (contentLength > Integer.MAX_VALUE) {
-                    throw new SabrProtocolException("SABR media segment too large: headerId="
-                            + header.getHeaderId() + ", length=" + contentLength);
-                }
+            } else if (contentLength >= 0 && !compressed) {
                 fixedData = new byte[(int) contentLength];
                 dynamicData = null;
-                file = null;
-                fileOutput = null;
+                spoolFile = null;
                 progressiveSegment = null;
             } else {
                 fixedData = null;
                 dynamicData = new ByteArrayOutputStream();
-                file = null;
-                fileOutput = null;
+                spoolFile = null;
                 progressiveSegment = null;
             }
+
+            if (!compressed) {
+                decoder = null;
+                return;
+            }
+            try {
+                decoder = SabrMediaDecoder.create(header.getCompressionAlgorithm(),
+                        spoolFile != null ? spoolFile::write : dynamicData::write);
+            } catch (final SabrProtocolException e) {
+                if (spoolFile != null) {
+                    spoolFile.delete();
+                }
+                throw e;
+            }
         }
 
         @Nullable
@@ -225,23 +259,14 @@ public final class SabrMediaSegmentCollector {
                             + ", actual>=" + (length + count));
                 }
                 System.arraycopy(bytes, offset, fixedData, length, count);
-            } else if (fileOutput != null) {
-                try {
-                    fileOutput.write(bytes, offset, count);
-                    length += count;
-                    if (progressiveSegment != null) {
-                        SabrMediaSegment.InternalAccess.onBytesWritten(
-                                progressiveSegment, count);
-                    }
-                } catch (final IOException e) {
-                    throw new SabrRecoverableException("Could not write SABR spool file", e);
-                }
+            } else if (decoder != null) {
+                decode(bytes, offset, count);
+            } else if (spoolFile != null) {
+                writeToSpool(bytes, offset, count);
             } else {
                 dynamicData.write(bytes, offset, count);
             }
-            if (fileOutput == null) {
-                length += count;
-            }
+            length += count;
         }
 
         private void write(@Nonnull final InputStream input, final int count)
@@ -276,59 +301,70 @@ public final class SabrMediaSegmentCollector {
                     if (read < 0) {
                         throw new SabrRecoverableException("Unexpected EOF in SABR media payload");
                     }
-                    if (fileOutput != null) {
-                        try {
-                            fileOutput.write(buffer, 0, read);
-                            length += read;
-                            if (progressiveSegment != null) {
-                                SabrMediaSegment.InternalAccess.onBytesWritten(
-                                        progressiveSegment, read);
-                            }
-                        } catch (final IOException e) {
-                            throw new SabrRecoverableException(
-                                    "Could not write SABR spool file", e);
-                        }
+                    if (decoder != null) {
+                        decode(buffer, 0, read);
+                    } else if (spoolFile != null) {
+                        writeToSpool(buffer, 0, read);
                     } else {
                         dynamicData.write(buffer, 0, read);
                     }
                     remaining -= read;
                 }
             }
-            if (fileOutput == null) {
-                length += count;
+            length += count;
+        }
+
+        private void writeToSpool(@Nonnull final byte[] bytes, final int offset, final int count)
+                throws SabrProtocolException {
+            try {
+                spoolFile.write(bytes, offset, count);
+            } catch (final IOException e) {
+                throw new SabrRecoverableException("Could not write SABR spool file", e);
+            }
+        }
+
+        private void decode(@Nonnull final byte[] bytes, final int offset, final int count)
+                throws SabrProtocolException {
+            try {
+                decoder.write(bytes, offset, count);
+            } catch (final IOException e) {
+                throw decompressionException(e);
             }
         }
 
         @Nonnull
         private SabrMediaSegment toSegment() throws SabrProtocolException {
-            if (fileOutput != null) {
-                closeFileOutput();
-                if (header.getContentLength() >= 0 && length != header.getContentLength()) {
-                    throw new SabrRecoverableException("SABR media length mismatch: headerId="
-                            + header.getHeaderId()
-                            + ", expected=" + header.getContentLength()
-                            + ", actual=" + length);
-                }
-                if (progressiveSegment != null) {
-                    SabrMediaSegment.InternalAccess.completeProgressive(progressiveSegment);
-                    return progressiveSegment;
-                }
-                return SabrMediaSegment.InternalAccess.fromFile(header, file, length);
-            }
-            final byte[] rawBytes;
-            if (fixedData != null) {
-                rawBytes = fixedData;
-            } else {
-                rawBytes = dynamicData.toByteArray();
-            }
             if (header.getContentLength() >= 0 && length != header.getContentLength()) {
                 throw new SabrRecoverableException("SABR media length mismatch: headerId="
                         + header.getHeaderId()
                         + ", expected=" + header.getContentLength()
                         + ", actual=" + length);
             }
-            return SabrMediaSegment.InternalAccess.fromBytes(
-                    header, maybeDecompress(header, rawBytes));
+            if (decoder != null) {
+                try {
+                    decoder.finish();
+                } catch (final IOException e) {
+                    throw decompressionException(e);
+                }
+            }
+            if (spoolFile != null) {
+                try {
+                    spoolFile.complete();
+                } catch (final IOException e) {
+                    throw new SabrRecoverableException("Could not close SABR spool file", e);
+                }
+                return progressiveSegment != null ? progressiveSegment
+                        : new SabrMediaSegment(header, spoolFile, spoolFile.getWrittenBytes());
+            }
+            return SabrMediaSegment.InternalAccess.fromBytes(header,
+                    fixedData != null ? fixedData : dynamicData.toByteArray());
+        }
+
+        @Nonnull
+        private SabrRecoverableException decompressionException(@Nonnull final IOException e) {
+            return new SabrRecoverableException("Could not decompress SABR media segment: "
+                    + "headerId=" + header.getHeaderId()
+                    + ", compression=" + header.getCompressionAlgorithm(), e);
         }
 
         private void ensureLengthFits(final int count) throws SabrProtocolException {
@@ -359,79 +395,12 @@ public final class SabrMediaSegmentCollector {
         }
 
         private void abort() {
-            if (progressiveSegment != null) {
-                SabrMediaSegment.InternalAccess.failProgressive(progressiveSegment,
-                        new IOException("SABR media segment ended before MEDIA_END"));
-            }
-            try {
-                closeFileOutput();
-            } catch (final SabrProtocolException ignored) {
-                // Best-effort cleanup after an already-failing segment.
-            }
-            if (file != null && file.exists() && !file.delete()) {
-                file.deleteOnExit();
+            if (decoder != null) {
+                decoder.abort();
             }
-        }
-
-        private void closeFileOutput() throws SabrProtocolException {
-            if (fileOutput == null || fileOutputClosed) {
-                return;
-            }
-            try {
-                fileOutput.close();
-                fileOutputClosed = true;
-            } catch (final IOException e) {
-                throw new SabrRecoverableException("Could not close SABR spool file", e);
-            }
-        }
-
-        @Nonnull
-        private static byte[] maybeDecompress(@Nonnull final SabrMediaHeader header,
-                                              @Nonnull final byte[] bytes)
-                throws SabrProtocolException {
-            final int compressionAlgorithm = header.getCompressionAlgorithm();
-            if (compressionAlgorithm <= 0) {
-                return bytes;
-            }
-            if (compressionAlgorithm == 1) {
-                return gunzip(bytes);
-            }
-            if (compressionAlgorithm == 2) {
-                return brotli(bytes);
-            }
-            throw new SabrProtocolException("Unsupported SABR media compression: "
-                    + compressionAlgorithm);
-        }
-
-        @Nonnull
-        private static byte[] gunzip(@Nonnull final byte[] bytes) throws SabrProtocolException {
-            try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(bytes));
-                 ByteArrayOutputStream output = new ByteArrayOutputStream()) {
-                final byte[] buffer = new byte[8192];
-                int read;
-                while ((read = input.read(buffer)) != -1) {
-                    output.write(buffer, 0, read);
-                }
-                return output.toByteArray();
-            } catch (final IOException e) {
-                throw new SabrRecoverableException(
-                        "Could not decompress gzip SABR media segment", e);
-            }
-        }
-
-        @Nonnull
-        private static byte[] brotli(@Nonnull final byte[] bytes) throws SabrProtocolException {
-            try (BrotliInputStream input = new BrotliInputStream(new ByteArrayInputStream(bytes));
-                 ByteArrayOutputStream output = new ByteArrayOutputStream()) {
-                final byte[] buffer = new byte[8192];
-                int read;
-                while ((read = input.read(buffer)) != -1) {
-                    output.write(buffer, 0, read);
-                }
-                return output.toByteArray();
-            } catch (final IOException e) {
-                throw new SabrRecoverableException(
-                        "Could not decompress brotli SABR media segment", e);
+            if (spoolFile != null) {
+                spoolFile.fail(new IOException("SABR media segment ended before MEDIA_END"));
+                spoolFile.delete();
             }
         }
     }
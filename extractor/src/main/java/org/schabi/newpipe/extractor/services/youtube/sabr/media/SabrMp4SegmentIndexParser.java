@@ -6,8 +6,6 @@ import org.schabi.newpipe.extractor.services.youtube.sabr.generated.SabrFormatIn
 
 import javax.annotation.Nonnull;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
 
 public final class SabrMp4SegmentIndexParser {
     private static final String SIDX_BOX = "sidx";
@@ -82,7 +80,8 @@ public final class SabrMp4SegmentIndexParser {
         cursor += 2; // reserved
         final int referenceCount = readUint16(initData, cursor);
         cursor += 2;
-        final List<SabrSegmentIndex.Entry> entries = new ArrayList<>(referenceCount);
+        final long[] startsMs = new long[referenceCount];
+        final long[] durationsMs = new long[referenceCount];
         long unscaledStart = earliestPresentationTime;
         for (int i = 0; i < referenceCount; i++) {
             if (cursor + 12 > boxEnd) {
@@ -96,12 +95,11 @@ public final class SabrMp4SegmentIndexParser {
             }
             final long duration = readUint32(initData, cursor);
             cursor += 8; // subsegment_duration + SAP flags
-            entries.add(new SabrSegmentIndex.Entry(i + 1,
-                    scaleToMs(unscaledStart, timescale),
-                    scaleToMs(duration, timescale)));
+            startsMs[i] = scaleToMs(unscaledStart, timescale);
+            durationsMs[i] = scaleToMs(duration, timescale);
             unscaledStart += duration;
         }
-        return new SabrSegmentIndex(entries);
+        return new SabrSegmentIndex(startsMs, durationsMs);
     }
 
     private static int findSidxBox(@Nonnull final byte[] data,
@@ -0,0 +1,615 @@
+package org.schabi.newpipe.extractor.services.youtube.sabr.media;
+
+import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrProtocolException;
+import org.schabi.newpipe.extractor.services.youtube.sabr.generated.SabrMediaHeader;
+import org.schabi.newpipe.extractor.utils.Utils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Completed SABR media segments kept on disk across sessions, so that seeking back, watching a
+ * video again or playing it in several players reads segments from disk instead of the network.
+ *
+ * <p>
+ * A segment is addressed by what identifies its content: the video id, the itag, the last
+ * modification time and xtags of its format, and its sequence number. Each one is stored in a
+ * file named after the SHA-256 hash of that key: its spool file, moved into the cache once the
+ * segment is complete, followed by the key and the media header it was received with. Caching a
+ * segment thus neither copies it nor delays reading the response for longer than writing that
+ * trailer.
+ * Files whose length doesn't match their trailer, or whose name doesn't match their key, are
+ * deleted instead of being read. Segments older than the maximum age are deleted when they are
+ * looked up, and the least recently used segments are deleted when the cache exceeds its size.
+ * </p>
+ *
+ * <p>
+ * The cache is off by default. A session stores segments in it, and serves the segments it
+ * finds in it before asking the server for the rest, once it is given one with
+ * {@code YoutubeSabrSession.setSegmentCache(SabrSegmentCache.forSpoolDirectory(spoolDirectory))}.
+ * Only spooled segments are cached, so the session needs a spool directory.
+ * </p>
+ */
+public final class SabrSegmentCache {
+    /** The default maximum total size of the cached segments, in bytes. */
+    public static final long DEFAULT_MAX_BYTES = 1024L * 1024L * 1024L;
+    /** The default maximum age of a cached segment. */
+    public static final long DEFAULT_MAX_AGE_MS = 24L * 60L * 60L * 1000L;
+
+    private static final String DIRECTORY_NAME = "segments";
+    private static final String FILE_SUFFIX = ".seg";
+    private static final int MAGIC = 0x53414252;
+    private static final int VERSION = 2;
+    // Magic, version, video id length, video id, header length, header, data length
+    private static final int FIXED_TRAILER_BYTES = 4 + 4 + 4 + 4 + 8;
+    // Trailer length, magic
+    private static final int FOOTER_BYTES = 4 + 4;
+    private static final int MAX_HEADER_BYTES = 64 * 1024;
+    private static final int MAX_VIDEO_ID_BYTES = 1024;
+
+    private static final Map<String, SabrSegmentCache> CACHES = new ConcurrentHashMap<>();
+
+    @Nonnull
+    private final File directory;
+    private volatile long maxBytes;
+    private volatile long maxAgeMs;
+
+    // Cached segments by key, least recently used first; guarded by itself
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Held while the directory is indexed, which is done once without locking the entries
+    private final Object loadLock = new Object();
+    private volatile boolean loaded;
+    private long usedBytes;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Create a cache which is not shared with the sessions using
+     * {@link #forSpoolDirectory(File)}.
+     *
+     * @param directory the directory of the cached segments, which is created if needed
+     * @param maxBytes  the maximum total size of the cached segments
+     * @param maxAgeMs  how long a segment stays usable after it has been cached
+     */
+    public SabrSegmentCache(@Nonnull final File directory,
+                            final long maxBytes,
+                            final long maxAgeMs) {
+        this.directory = directory;
+        setMaxBytes(maxBytes);
+        setMaxAgeMs(maxAgeMs);
+    }
+
+    /**
+     * @param spoolDirectory the spool directory of a session
+     * @return the cache shared by all sessions spooling to the directory, stored in a
+     * subdirectory of it and created with {@link #DEFAULT_MAX_BYTES} and
+     * {@link #DEFAULT_MAX_AGE_MS} the first time
+     */
+    @Nonnull
+    public static SabrSegmentCache forSpoolDirectory(@Nonnull final File spoolDirectory) {
+        final File directory = new File(spoolDirectory.getAbsoluteFile(), DIRECTORY_NAME);
+        return CACHES.computeIfAbsent(directory.getPath(), path -> new SabrSegmentCache(
+                directory, DEFAULT_MAX_BYTES, DEFAULT_MAX_AGE_MS));
+    }
+
+    @Nonnull
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Change the maximum size. The least recently used segments are deleted right away if the
+     * cache exceeds the new one.
+     *
+     * @param maxBytes the maximum total size of the cached segments
+     */
+    public void setMaxBytes(final long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Invalid SABR segment cache size: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        final List<Entry> evicted = new ArrayList<>();
+        synchronized (entries) {
+            if (loaded) {
+                evictUntilFits(0, evicted);
+            }
+        }
+        deleteFiles(evicted);
+    }
+
+    public long getMaxAgeMs() {
+        return maxAgeMs;
+    }
+
+    /**
+     * @param maxAgeMs how long a segment stays usable after it has been cached
+     */
+    public void setMaxAgeMs(final long maxAgeMs) {
+        if (maxAgeMs <= 0) {
+            throw new IllegalArgumentException("Invalid SABR segment cache age: " + maxAgeMs);
+        }
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * @return the total size of the cached segment files
+     */
+    public long getUsedBytes() {
+        synchronized (entries) {
+            return usedBytes;
+        }
+    }
+
+    public int getSegmentCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /** @return the number of lookups which found a segment */
+    public long getHitCount() {
+        synchronized (entries) {
+            return hitCount;
+        }
+    }
+
+    /** @return the number of lookups which found no usable segment */
+    public long getMissCount() {
+        synchronized (entries) {
+            return missCount;
+        }
+    }
+
+    /**
+     * Look up a media segment.
+     *
+     * @param videoId        the id of the video
+     * @param itag           the itag of the format
+     * @param lastModified   the last modification time of the format
+     * @param xtags          the xtags of the format, if any
+     * @param sequenceNumber the sequence number of the segment
+     * @return the cached segment, read from disk when it is opened, or {@code null} if it is not
+     * cached
+     */
+    @Nullable
+    public SabrMediaSegment get(@Nonnull final String videoId,
+                                final int itag,
+                                final long lastModified,
+                                @Nullable final String xtags,
+                                final int sequenceNumber) {
+        final Entry entry = getEntry(key(videoId, itag, lastModified, xtags, sequenceNumber));
+        return entry == null ? null : new SabrMediaSegment(entry.header, entry);
+    }
+
+    /**
+     * Cache a completed media segment, by moving its spool file into the cache. Segments which
+     * can't be identified reliably, such as initialization segments or segments whose header has
+     * no last modification time, and segments which are not spooled, are not cached. Failures
+     * are not reported: the segment is simply not cached.
+     *
+     * @param videoId    the id of the video, used if the header doesn't name it
+     * @param headerData the media header the segment was received with
+     * @param segment    the completed segment
+     * @return whether the segment is cached
+     */
+    boolean put(@Nonnull final String videoId,
+                @Nonnull final byte[] headerData,
+                @Nonnull final SabrMediaSegment segment) {
+        final SabrMediaHeader header = segment.getHeader();
+        final SabrSpoolFile spoolFile = segment.getSpoolFile();
+        final int length = segment.getLength();
+        if (!isCacheable(header) || spoolFile == null || !segment.isComplete()
+                || segment.hasFailed() || length < 0
+                || header.getCompressionAlgorithm() <= 0 && header.getContentLength() >= 0
+                && header.getContentLength() != length
+                || headerData.length > MAX_HEADER_BYTES) {
+            return false;
+        }
+        final byte[] videoIdData = (header.getVideoId() != null ? header.getVideoId() : videoId)
+                .getBytes(StandardCharsets.UTF_8);
+        if (videoIdData.length > MAX_VIDEO_ID_BYTES) {
+            return false;
+        }
+        final String key = key(new String(videoIdData, StandardCharsets.UTF_8),
+                header.getItag(), header.getLastModified(), header.getXtags(),
+                header.getSequenceNumber());
+        final long fileBytes = (long) length + FIXED_TRAILER_BYTES + videoIdData.length
+                + headerData.length + FOOTER_BYTES;
+        if (fileBytes > maxBytes) {
+            return false;
+        }
+        ensureLoaded();
+        synchronized (entries) {
+            if (entries.containsKey(key)) {
+                return true;
+            }
+        }
+
+        final File file;
+        try {
+            file = new File(directory, fileName(key));
+        } catch (final IOException e) {
+            return false;
+        }
+        if (!directory.exists() && !directory.mkdirs() || !spoolFile.moveTo(file)) {
+            return false;
+        }
+        try {
+            writeTrailer(file, videoIdData, headerData, length);
+        } catch (final IOException e) {
+            // The segment may still be reading the file; the next index of the directory
+            // deletes it
+            file.deleteOnExit();
+            return false;
+        }
+
+        final Entry entry = new Entry(key, file, header, length, fileBytes,
+                System.currentTimeMillis());
+        final List<Entry> evicted = new ArrayList<>();
+        final boolean cached;
+        synchronized (entries) {
+            final Entry previous = entries.remove(key);
+            if (previous != null) {
+                usedBytes -= previous.fileBytes;
+            }
+            cached = evictUntilFits(fileBytes, evicted);
+            if (cached) {
+                entries.put(key, entry);
+                usedBytes += fileBytes;
+            }
+        }
+        deleteFiles(evicted);
+        return cached;
+    }
+
+    /** Delete all cached segments. */
+    public void clear() {
+        ensureLoaded();
+        final List<Entry> removed;
+        synchronized (entries) {
+            removed = new ArrayList<>(entries.values());
+            entries.clear();
+            usedBytes = 0;
+        }
+        deleteFiles(removed);
+    }
+
+    static boolean isCacheable(@Nonnull final SabrMediaHeader header) {
+        return !header.isInitSegment() && header.getItag() > 0
+                && header.getLastModified() > 0 && header.getSequenceNumber() >= 0;
+    }
+
+    @Nullable
+    private Entry getEntry(@Nonnull final String key) {
+        ensureLoaded();
+        final long nowMs = System.currentTimeMillis();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        boolean removed = false;
+        // Expired, or changed or deleted behind the back of the cache; the file is checked
+        // without holding the lock of the entries
+        if (entry != null && (isExpired(entry, nowMs)
+                || entry.file.length() != entry.fileBytes)) {
+            synchronized (entries) {
+                removed = entries.remove(key, entry);
+                if (removed) {
+                    usedBytes -= entry.fileBytes;
+                }
+            }
+            if (removed) {
+                deleteFile(entry.file);
+            }
+            entry = null;
+        }
+        synchronized (entries) {
+            if (entry == null) {
+                missCount++;
+            } else {
+                hitCount++;
+            }
+        }
+        return entry;
+    }
+
+    private boolean isExpired(@Nonnull final Entry entry, final long nowMs) {
+        return nowMs - entry.createdMs > maxAgeMs;
+    }
+
+    /**
+     * Index the files left by earlier processes, deleting those which are not valid. The
+     * directory is read without locking the entries; lookups and puts wait until it has been.
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (loadLock) {
+            if (loaded) {
+                return;
+            }
+            final List<Entry> found = readDirectory();
+            final List<Entry> evicted = new ArrayList<>();
+            synchronized (entries) {
+                for (final Entry entry : found) {
+                    entries.put(entry.key, entry);
+                    usedBytes += entry.fileBytes;
+                }
+                loaded = true;
+                evictUntilFits(0, evicted);
+            }
+            deleteFiles(evicted);
+        }
+    }
+
+    /**
+     * @return the valid cached segments in the directory, least recently written first
+     */
+    @Nonnull
+    private List<Entry> readDirectory() {
+        final List<Entry> found = new ArrayList<>();
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return found;
+        }
+        final List<File> sorted = new ArrayList<>();
+        for (final File file : files) {
+            if (file.getName().endsWith(FILE_SUFFIX)) {
+                sorted.add(file);
+            } else {
+                // Left over by an earlier version
+                deleteFile(file);
+            }
+        }
+        // Least recently written first, as a guess of the least recently used
+        sorted.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (final File file : sorted) {
+            final Entry entry = readEntry(file);
+            if (entry == null) {
+                deleteFile(file);
+            } else {
+                found.add(entry);
+            }
+        }
+        return found;
+    }
+
+    @Nullable
+    private static Entry readEntry(@Nonnull final File file) {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            final long fileBytes = input.length();
+            if (fileBytes < FIXED_TRAILER_BYTES + FOOTER_BYTES) {
+                return null;
+            }
+            input.seek(fileBytes - FOOTER_BYTES);
+            final int trailerLength = input.readInt();
+            if (input.readInt() != MAGIC || trailerLength < FIXED_TRAILER_BYTES
+                    || trailerLength > FIXED_TRAILER_BYTES + MAX_VIDEO_ID_BYTES + MAX_HEADER_BYTES
+                    || trailerLength > fileBytes - FOOTER_BYTES) {
+                return null;
+            }
+            final long dataLength = fileBytes - FOOTER_BYTES - trailerLength;
+            input.seek(dataLength);
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return null;
+            }
+            final int videoIdLength = input.readInt();
+            if (videoIdLength <= 0 || videoIdLength > MAX_VIDEO_ID_BYTES) {
+                return null;
+            }
+            final byte[] videoIdData = new byte[videoIdLength];
+            input.readFully(videoIdData);
+            final int headerLength = input.readInt();
+            if (headerLength <= 0 || headerLength > MAX_HEADER_BYTES
+                    || FIXED_TRAILER_BYTES + videoIdLength + headerLength != trailerLength) {
+                return null;
+            }
+            final byte[] headerData = new byte[headerLength];
+            input.readFully(headerData);
+            final SabrMediaHeader header = SabrMediaHeader.decode(headerData);
+            if (input.readLong() != dataLength || !isCacheable(header)
+                    || dataLength > Integer.MAX_VALUE
+                    || header.getCompressionAlgorithm() <= 0 && header.getContentLength() >= 0
+                    && header.getContentLength() != dataLength) {
+                return null;
+            }
+            final String key = key(new String(videoIdData, StandardCharsets.UTF_8),
+                    header.getItag(), header.getLastModified(), header.getXtags(),
+                    header.getSequenceNumber());
+            if (!file.getName().equals(fileName(key))) {
+                return null;
+            }
+            return new Entry(key, file, header, (int) dataLength, fileBytes,
+                    file.lastModified());
+        } catch (final IOException | SabrProtocolException e) {
+            return null;
+        }
+    }
+
+    /** Append the key and the media header of a segment to its file. */
+    private static void writeTrailer(@Nonnull final File file,
+                                     @Nonnull final byte[] videoIdData,
+                                     @Nonnull final byte[] headerData,
+                                     final int length) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(videoIdData.length);
+            output.write(videoIdData);
+            output.writeInt(headerData.length);
+            output.write(headerData);
+            output.writeLong(length);
+            output.writeInt(FIXED_TRAILER_BYTES + videoIdData.length + headerData.length);
+            output.writeInt(MAGIC);
+        }
+    }
+
+    private boolean evictUntilFits(final long bytes, @Nonnull final List<Entry> evicted) {
+        final Iterator<Entry> iterator = entries.values().iterator();
+        while (usedBytes + bytes > maxBytes && iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            iterator.remove();
+            usedBytes -= entry.fileBytes;
+            evicted.add(entry);
+        }
+        return usedBytes + bytes <= maxBytes;
+    }
+
+    private static void deleteFiles(@Nonnull final List<Entry> removed) {
+        for (final Entry entry : removed) {
+            deleteFile(entry.file);
+        }
+    }
+
+    private static void deleteFile(@Nullable final File file) {
+        if (file != null && !file.delete() && file.exists()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Nonnull
+    private static String key(@Nonnull final String videoId,
+                              final int itag,
+                              final long lastModified,
+                              @Nullable final String xtags,
+                              final int sequenceNumber) {
+        return videoId + '/' + itag + '/' + lastModified + '/' + (xtags == null ? "" : xtags)
+                + '/' + sequenceNumber;
+    }
+
+    @Nonnull
+    private static String fileName(@Nonnull final String key) throws IOException {
+        try {
+            return Utils.toSha256(key) + FILE_SUFFIX;
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not available", e);
+        }
+    }
+
+    /** A cached segment, whose data is followed by its key and media header in its file. */
+    static final class Entry {
+        @Nonnull
+        private final String key;
+        @Nonnull
+        private final File file;
+        @Nonnull
+        private final SabrMediaHeader header;
+        private final int length;
+        private final long fileBytes;
+        private final long createdMs;
+
+        private Entry(@Nonnull final String key,
+                      @Nonnull final File file,
+                      @Nonnull final SabrMediaHeader header,
+                      final int length,
+                      final long fileBytes,
+                      final long createdMs) {
+            this.key = key;
+            this.file = file;
+            this.header = header;
+            this.length = length;
+            this.fileBytes = fileBytes;
+            this.createdMs = createdMs;
+        }
+
+        int getLength() {
+            return length;
+        }
+
+        /**
+         * Streams opened before the segment is evicted keep working, as long as the file system
+         * keeps deleted files open.
+         */
+        @Nonnull
+        InputStream openStream() throws IOException {
+            final FileInputStream input;
+            try {
+                input = new FileInputStream(file);
+            } catch (final FileNotFoundException e) {
+                throw new IOException("SABR media segment was evicted from the cache", e);
+            }
+            return new BoundedInputStream(input, length);
+        }
+    }
+
+    private static final class BoundedInputStream extends InputStream {
+        @Nonnull
+        private final InputStream input;
+        private long remaining;
+
+        private BoundedInputStream(@Nonnull final InputStream input, final long length) {
+            this.input = input;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int value = input.read();
+            if (value < 0) {
+                throw new IOException("Cached SABR media segment is truncated");
+            }
+            remaining--;
+            return value;
+        }
+
+        @Override
+        public int read(@Nonnull final byte[] bytes, final int offset, final int count)
+                throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int read = input.read(bytes, offset, (int) Math.min(count, remaining));
+            if (read < 0) {
+                throw new IOException("Cached SABR media segment is truncated");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(final long count) throws IOException {
+            final long skipped = input.skip(Math.min(Math.max(0, count), remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(input.available(), remaining);
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
@@ -1,29 +1,222 @@
 package org.schabi.newpipe.extractor.services.youtube.sabr.media;
 
+import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrProtocolException;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 
+/**
+ * The segments of one format, by sequence number starting at 1.
+ *
+ * <p>
+ * Start times and durations are stored in primitive arrays, and {@link #getSequenceAt(long)} is
+ * a binary search, so that long videos with thousands of segments stay cheap to keep and to seek
+ * in. An index can be {@link #toByteArray() serialized} in a compact form, e.g. to cache it
+ * across sessions for the same format.
+ * </p>
+ */
 public final class SabrSegmentIndex {
+    private static final int SERIALIZATION_VERSION = 1;
+
+    @Nonnull
+    private final long[] startsMs;
     @Nonnull
-    private final List<Entry> entries;
+    private final long[] durationsMs;
+    // The greatest end time of the segments up to each one, which is sorted even if the end
+    // times themselves aren't, so that it can be binary-searched
+    @Nonnull
+    private final long[] maxEndsMs;
 
-    SabrSegmentIndex(@Nonnull final List<Entry> entries) {
-        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+    /**
+     * @param startsMs    the start time of each segment; the array is not copied
+     * @param durationsMs the duration of each segment; the array is not copied
+     */
+    SabrSegmentIndex(@Nonnull final long[] startsMs, @Nonnull final long[] durationsMs) {
+        if (startsMs.length != durationsMs.length) {
+            throw new IllegalArgumentException("Segment start and duration counts differ");
+        }
+        this.startsMs = startsMs;
+        this.durationsMs = durationsMs;
+        this.maxEndsMs = new long[startsMs.length];
+        long maxEndMs = Long.MIN_VALUE;
+        for (int i = 0; i < startsMs.length; i++) {
+            maxEndMs = Math.max(maxEndMs, startsMs[i] + durationsMs[i]);
+            maxEndsMs[i] = maxEndMs;
+        }
     }
 
     @Nullable
     public Entry getEntry(final int sequenceNumber) {
-        if (sequenceNumber <= 0 || sequenceNumber > entries.size()) {
+        if (!contains(sequenceNumber)) {
             return null;
         }
-        return entries.get(sequenceNumber - 1);
+        return new Entry(sequenceNumber, startsMs[sequenceNumber - 1],
+                durationsMs[sequenceNumber - 1]);
+    }
+
+    /**
+     * @return the start time of the segment, or -1 if there is no such segment
+     */
+    public long getStartMs(final int sequenceNumber) {
+        return contains(sequenceNumber) ? startsMs[sequenceNumber - 1] : -1;
+    }
+
+    /**
+     * @return the duration of the segment, or -1 if there is no such segment
+     */
+    public long getDurationMs(final int sequenceNumber) {
+        return contains(sequenceNumber) ? durationsMs[sequenceNumber - 1] : -1;
+    }
+
+    /**
+     * @return the end time of the segment, or -1 if there is no such segment
+     */
+    public long getEndMs(final int sequenceNumber) {
+        return contains(sequenceNumber)
+                ? startsMs[sequenceNumber - 1] + durationsMs[sequenceNumber - 1] : -1;
+    }
+
+    /**
+     * Find the first segment which ends after a time.
+     *
+     * @param timeMs the time
+     * @return the sequence number of the segment, or {@code size() + 1} if all segments end
+     * before or at {@code timeMs}
+     */
+    public int getSequenceAt(final long timeMs) {
+        int low = 0;
+        int high = maxEndsMs.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (maxEndsMs[middle] > timeMs) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low + 1;
     }
 
     public int size() {
-        return entries.size();
+        return startsMs.length;
+    }
+
+    private boolean contains(final int sequenceNumber) {
+        return sequenceNumber > 0 && sequenceNumber <= startsMs.length;
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Serialization
+    //////////////////////////////////////////////////////////////////////////*/
+
+    /**
+     * Serialize this index. Each segment usually takes two to four bytes, as its start is stored
+     * relative to the end of the previous one.
+     *
+     * @return the serialized index, which can be read with {@link #fromByteArray(byte[])}
+     */
+    @Nonnull
+    public byte[] toByteArray() {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(4 + startsMs.length * 4);
+        writeVarint(output, SERIALIZATION_VERSION);
+        writeVarint(output, startsMs.length);
+        long previousEndMs = 0;
+        for (int i = 0; i < startsMs.length; i++) {
+            writeVarint(output, zigZag(startsMs[i] - previousEndMs));
+            writeVarint(output, zigZag(durationsMs[i]));
+            previousEndMs = startsMs[i] + durationsMs[i];
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Read an index serialized with {@link #toByteArray()}.
+     *
+     * @param data the serialized index
+     * @return the index
+     * @throws SabrProtocolException if the data is not a serialized index, or has been
+     *                               serialized by an incompatible version
+     */
+    @Nonnull
+    public static SabrSegmentIndex fromByteArray(@Nonnull final byte[] data)
+            throws SabrProtocolException {
+        final int[] offset = {0};
+        final long version = readVarint(data, offset);
+        if (version != SERIALIZATION_VERSION) {
+            throw new SabrProtocolException("Unsupported SABR segment index version: " + version);
+        }
+        final long count = readVarint(data, offset);
+        // Each segment takes at least two bytes
+        if (count < 0 || count > (data.length - offset[0]) / 2) {
+            throw new SabrProtocolException("Invalid SABR segment index size: " + count);
+        }
+
+        final long[] startsMs = new long[(int) count];
+        final long[] durationsMs = new long[(int) count];
+        long previousEndMs = 0;
+        for (int i = 0; i < count; i++) {
+            startsMs[i] = previousEndMs + unZigZag(readVarint(data, offset));
+            durationsMs[i] = unZigZag(readVarint(data, offset));
+            previousEndMs = startsMs[i] + durationsMs[i];
+        }
+        if (offset[0] != data.length) {
+            throw new SabrProtocolException("Trailing bytes after SABR segment index");
+        }
+        return new SabrSegmentIndex(startsMs, durationsMs);
+    }
+
+    private static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(@Nonnull final ByteArrayOutputStream output,
+                                    final long value) {
+        long remaining = value;
+        while ((remaining & ~0x7fL) != 0) {
+            output.write((int) ((remaining & 0x7f) | 0x80));
+            remaining >>>= 7;
+        }
+        output.write((int) remaining);
+    }
+
+    private static long readVarint(@Nonnull final byte[] data, @Nonnull final int[] offset)
+            throws SabrProtocolException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (offset[0] >= data.length) {
+                throw new SabrProtocolException("Truncated SABR segment index");
+            }
+            final int current = data[offset[0]++] & 0xff;
+            result |= (long) (current & 0x7f) << shift;
+            if ((current & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new SabrProtocolException("Invalid varint in SABR segment index");
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SabrSegmentIndex)) {
+            return false;
+        }
+        final SabrSegmentIndex other = (SabrSegmentIndex) o;
+        return Arrays.equals(startsMs, other.startsMs)
+                && Arrays.equals(durationsMs, other.durationsMs);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(startsMs) + Arrays.hashCode(durationsMs);
     }
 
     public static final class Entry {
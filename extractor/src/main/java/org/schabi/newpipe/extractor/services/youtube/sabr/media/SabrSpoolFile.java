@@ -0,0 +1,410 @@
+package org.schabi.newpipe.extractor.services.youtube.sabr.media;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The spool file of one media segment, written by the collector while readers may already
+ * stream it.
+ *
+ * <p>
+ * A segment of known length is preallocated and mapped once; the writer copies into the
+ * mapping and publishes how many bytes it wrote with a volatile write, which readers check
+ * without locking. Readers which caught up with the writer wait on a monitor, which the writer
+ * only notifies while some reader is waiting. A segment of unknown length, e.g. one being
+ * decompressed, is appended to the file as a stream, and read from the file in the same way.
+ * </p>
+ */
+final class SabrSpoolFile {
+    @Nonnull
+    private final SabrSpoolManager manager;
+    // Changes once if the file is moved out of the spool
+    @Nonnull
+    private volatile File file;
+    private final int expectedLength;
+    // The mapping readers duplicate; never repositioned. Cleared once the file is deleted, so
+    // that the mapping can be released once its streams are closed.
+    @Nullable
+    private volatile MappedByteBuffer mapping;
+    // The view the writer copies through
+    @Nullable
+    private final ByteBuffer writeBuffer;
+    @Nullable
+    private final OutputStream output;
+
+    private volatile int written;
+    private volatile boolean complete;
+    // When the segment was completed, in milliseconds since epoch
+    private volatile long completedAtMillis;
+    @Nullable
+    private volatile IOException failure;
+    private volatile boolean deleted;
+    // Set once a stream has been opened; the spool only evicts segments which have been read
+    private volatile boolean opened;
+    // Guarded by lock
+    private boolean moved;
+    private final AtomicInteger waitingReaders = new AtomicInteger();
+    private final Object lock = new Object();
+
+    // Guarded by the files of the manager
+    long reservedBytes;
+
+    /**
+     * @param expectedLength the length of the segment, or -1 if it is not known
+     */
+    SabrSpoolFile(@Nonnull final SabrSpoolManager manager,
+                  @Nonnull final File file,
+                  final int expectedLength,
+                  final long reservedBytes) throws IOException {
+        this.manager = manager;
+        this.file = file;
+        this.expectedLength = expectedLength;
+        this.reservedBytes = reservedBytes;
+        try {
+            if (expectedLength >= 0) {
+                try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                    randomAccessFile.setLength(expectedLength);
+                    // The mapping stays valid after the file is closed
+                    mapping = randomAccessFile.getChannel()
+                            .map(FileChannel.MapMode.READ_WRITE, 0, expectedLength);
+                }
+                writeBuffer = mapping.duplicate();
+                output = null;
+            } else {
+                writeBuffer = null;
+                output = new FileOutputStream(file);
+            }
+        } catch (final IOException e) {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+            throw e;
+        }
+    }
+
+    int getExpectedLength() {
+        return expectedLength;
+    }
+
+    int getWrittenBytes() {
+        return written;
+    }
+
+    /**
+     * Append bytes; only called by the writer.
+     */
+    void write(@Nonnull final byte[] bytes, final int offset, final int count)
+            throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        if (writeBuffer != null) {
+            if (count > writeBuffer.remaining()) {
+                throw new IOException("SABR spool file overflow: expected=" + expectedLength
+                        + ", actual>=" + ((long) written + count));
+            }
+            writeBuffer.put(bytes, offset, count);
+        } else {
+            manager.grow(this, count);
+            output.write(bytes, offset, count);
+        }
+        written += count;
+        signalReaders();
+    }
+
+    /**
+     * Mark the segment as complete, after which all its bytes are readable.
+     */
+    void complete() throws IOException {
+        if (output != null) {
+            output.close();
+        }
+        if (failure == null) {
+            completedAtMillis = System.currentTimeMillis();
+            complete = true;
+        }
+        signalReaders();
+    }
+
+    void fail(@Nonnull final IOException exception) {
+        if (!complete && failure == null) {
+            failure = exception;
+        }
+        signalReaders();
+    }
+
+    /**
+     * Delete the file and free its space in the spool.
+     */
+    void delete() {
+        fail(new IOException("SABR media segment was discarded"));
+        manager.release(this);
+        deleteFile();
+    }
+
+    /**
+     * Delete the file of a completed segment to stay within the quota of the spool.
+     */
+    void evict() {
+        deleteFile();
+    }
+
+    /**
+     * Move the file of a completed segment out of the spool, e.g. into a cache, and free its
+     * space in the spool. The segment keeps reading the moved file, which deleting or evicting
+     * the segment no longer deletes.
+     *
+     * @param target the new location of the file, on the same file system
+     * @return whether the file was moved
+     */
+    boolean moveTo(@Nonnull final File target) {
+        synchronized (lock) {
+            if (!complete || deleted || moved || !file.renameTo(target)) {
+                return false;
+            }
+            file = target;
+            moved = true;
+        }
+        manager.release(this);
+        return true;
+    }
+
+    private void deleteFile() {
+        final boolean keepFile;
+        synchronized (lock) {
+            deleted = true;
+            keepFile = moved;
+        }
+        mapping = null;
+        if (output != null) {
+            try {
+                output.close();
+            } catch (final IOException ignored) {
+                // Best-effort cleanup of a discarded segment.
+            }
+        }
+        if (!keepFile && !file.delete() && file.exists()) {
+            file.deleteOnExit();
+        }
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+    boolean isOpened() {
+        return opened;
+    }
+
+    long getCompletedAtMillis() {
+        return completedAtMillis;
+    }
+
+    boolean hasFailed() {
+        return failure != null;
+    }
+
+    void throwIfFailed() throws IOException {
+        final IOException exception = failure;
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Wait until the segment is complete.
+     *
+     * @throws IOException if the segment failed, or the thread was interrupted
+     */
+    void awaitComplete() throws IOException {
+        if (!complete && failure == null) {
+            waitingReaders.incrementAndGet();
+            try {
+                synchronized (lock) {
+                    while (!complete && failure == null) {
+                        lock.wait();
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                final InterruptedIOException interrupted = new InterruptedIOException(
+                        "Interrupted waiting for SABR media segment");
+                interrupted.initCause(e);
+                throw interrupted;
+            } finally {
+                waitingReaders.decrementAndGet();
+            }
+        }
+        throwIfFailed();
+    }
+
+    @Nonnull
+    InputStream openStream() throws IOException {
+        throwIfFailed();
+        final MappedByteBuffer currentMapping = mapping;
+        if (deleted) {
+            throw new IOException("SABR media segment was deleted from the spool");
+        }
+        opened = true;
+        manager.touch(this);
+        if (currentMapping != null) {
+            return new SpoolInputStream(currentMapping.duplicate(), null);
+        }
+        return new SpoolInputStream(null, new FileInputStream(file).getChannel());
+    }
+
+    private void signalReaders() {
+        if (waitingReaders.get() > 0) {
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private int readableBytes(final long position) {
+        final int available = (int) Math.max(0, written - position);
+        if (!complete && expectedLength >= 0 && written >= expectedLength
+                && position + available >= expectedLength) {
+            // Keep one byte unavailable until MEDIA_END validates the segment. Media3 knows
+            // the declared DataSource length and may never issue a separate EOF read.
+            return Math.max(0, available - 1);
+        }
+        return available;
+    }
+
+    /**
+     * @return the number of bytes which can be read at the position, or 0 at the end of the
+     * segment
+     */
+    private int awaitAvailable(final long position,
+                               @Nonnull final SpoolInputStream reader) throws IOException {
+        int readable = readableBytes(position);
+        if (readable <= 0 && !complete && failure == null && !reader.closed) {
+            waitingReaders.incrementAndGet();
+            try {
+                synchronized (lock) {
+                    // Checked again after registering, so that no notification is missed
+                    readable = readableBytes(position);
+                    while (readable <= 0 && !complete && failure == null && !reader.closed) {
+                        lock.wait();
+                        readable = readableBytes(position);
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                final InterruptedIOException interrupted = new InterruptedIOException(
+                        "Interrupted waiting for SABR media bytes");
+                interrupted.initCause(e);
+                throw interrupted;
+            } finally {
+                waitingReaders.decrementAndGet();
+            }
+        }
+        if (reader.closed) {
+            throw new InterruptedIOException("SABR media stream was closed");
+        }
+        throwIfFailed();
+        return complete ? (int) Math.max(0, written - position) : readable;
+    }
+
+    /** Reads the mapping of the file if its length is known, or the file otherwise. */
+    private final class SpoolInputStream extends InputStream {
+        @Nullable
+        private final ByteBuffer buffer;
+        @Nullable
+        private final FileChannel channel;
+        private long position;
+        private volatile boolean closed;
+
+        private SpoolInputStream(@Nullable final ByteBuffer buffer,
+                                 @Nullable final FileChannel channel) {
+            this.buffer = buffer;
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] one = new byte[1];
+            final int read = read(one, 0, 1);
+            return read < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(@Nonnull final byte[] bytes, final int offset, final int count)
+                throws IOException {
+            if (closed) {
+                throw new IOException("SABR media stream is closed");
+            }
+            if (count == 0) {
+                return 0;
+            }
+            while (true) {
+                final int available = awaitAvailable(position, this);
+                if (available <= 0) {
+                    return -1;
+                }
+                final int wanted = Math.min(count, available);
+                final int read;
+                if (buffer != null) {
+                    buffer.position((int) position);
+                    buffer.get(bytes, offset, wanted);
+                    read = wanted;
+                } else {
+                    read = channel.read(ByteBuffer.wrap(bytes, offset, wanted), position);
+                }
+                if (read > 0) {
+                    position += read;
+                    return read;
+                }
+            }
+        }
+
+        @Override
+        public long skip(final long count) throws IOException {
+            if (count <= 0) {
+                return 0;
+            }
+            final int available = awaitAvailable(position, this);
+            if (available <= 0) {
+                return 0;
+            }
+            final long skipped = Math.min(count, available);
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (closed) {
+                return 0;
+            }
+            throwIfFailed();
+            return complete ? (int) Math.max(0, written - position) : readableBytes(position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+    }
+}
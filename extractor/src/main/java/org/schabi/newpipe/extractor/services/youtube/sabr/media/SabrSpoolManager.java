@@ -0,0 +1,284 @@
+package org.schabi.newpipe.extractor.services.youtube.sabr.media;
+
+import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrProtocolException;
+import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrRecoverableException;
+import org.schabi.newpipe.extractor.services.youtube.sabr.generated.SabrMediaHeader;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The files in which SABR media segments of all sessions using one directory are spooled, with
+ * a bound on their total size.
+ *
+ * <p>
+ * Segments of known length are preallocated and memory-mapped, so that writing and reading them
+ * are memory copies instead of system calls. When spooling a segment would exceed the quota,
+ * the least recently opened completed segments are deleted first. Segments still being written
+ * are kept, and so are completed segments nobody has read yet, until they have been unread for
+ * the {@link #setUnreadSegmentTimeoutMillis(long) unread segment timeout}, e.g. because their
+ * session was abandoned. The new segment fails with a {@link SabrRecoverableException} if
+ * deleting all others isn't enough. Streams opened on a deleted segment keep working, but the
+ * segment can't be opened again.
+ * </p>
+ *
+ * <p>
+ * Segments which won't be read, e.g. after a seek, should still be freed with
+ * {@link SabrMediaSegment#delete()}, so that they don't hold the quota until the timeout. Spool
+ * files left in the directory by earlier processes are deleted when its manager is created, if
+ * they haven't been modified for the default timeout.
+ * </p>
+ *
+ * <p>
+ * Usage: {@code SabrSpoolManager.forDirectory(spoolDirectory).setQuotaBytes(128 * 1024 * 1024)}
+ * bounds the spool of every session created with {@code spoolDirectory}.
+ * </p>
+ */
+public final class SabrSpoolManager {
+    /** The default quota of a spool directory, in bytes. */
+    public static final long DEFAULT_QUOTA_BYTES = 512L * 1024L * 1024L;
+    /** The default time after which a completed segment nobody opened can be evicted. */
+    public static final long DEFAULT_UNREAD_SEGMENT_TIMEOUT_MILLIS = 2L * 60L * 1000L;
+
+    private static final String FILE_PREFIX = "sabr-";
+    private static final String FILE_SUFFIX = ".seg";
+
+    private static final Map<String, SabrSpoolManager> MANAGERS = new ConcurrentHashMap<>();
+
+    @Nonnull
+    private final File directory;
+    private volatile long quotaBytes;
+    private volatile long unreadSegmentTimeoutMillis = DEFAULT_UNREAD_SEGMENT_TIMEOUT_MILLIS;
+
+    // Spooled segments, least recently opened first; guarded by itself
+    private final LinkedHashMap<SabrSpoolFile, Boolean> files =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+    private long evictionCount;
+
+    /**
+     * Create a manager which is not shared with the sessions using
+     * {@link #forDirectory(File)}.
+     *
+     * @param directory  the directory of the spool files, which is created if needed
+     * @param quotaBytes the maximum total size of the spool files
+     */
+    public SabrSpoolManager(@Nonnull final File directory, final long quotaBytes) {
+        this.directory = directory;
+        setQuotaBytes(quotaBytes);
+        deleteStaleFiles();
+    }
+
+    /**
+     * @param directory the directory of the spool files
+     * @return the manager shared by all users of the directory, created with
+     * {@link #DEFAULT_QUOTA_BYTES} the first time
+     */
+    @Nonnull
+    public static SabrSpoolManager forDirectory(@Nonnull final File directory) {
+        final File absoluteDirectory = directory.getAbsoluteFile();
+        return MANAGERS.computeIfAbsent(absoluteDirectory.getPath(),
+                path -> new SabrSpoolManager(absoluteDirectory, DEFAULT_QUOTA_BYTES));
+    }
+
+    @Nonnull
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getQuotaBytes() {
+        return quotaBytes;
+    }
+
+    /**
+     * Change the quota. Completed segments are deleted right away if the spool exceeds the new
+     * one.
+     *
+     * @param quotaBytes the maximum total size of the spool files
+     */
+    public void setQuotaBytes(final long quotaBytes) {
+        if (quotaBytes <= 0) {
+            throw new IllegalArgumentException("Invalid SABR spool quota: " + quotaBytes);
+        }
+        this.quotaBytes = quotaBytes;
+        final List<SabrSpoolFile> evicted = new ArrayList<>();
+        synchronized (files) {
+            evictUntilFits(0, evicted);
+        }
+        deleteFiles(evicted);
+    }
+
+    public long getUnreadSegmentTimeoutMillis() {
+        return unreadSegmentTimeoutMillis;
+    }
+
+    /**
+     * Change how long completed segments nobody opened are protected from eviction.
+     *
+     * @param timeoutMillis the time after which a completed segment which has not been opened
+     *                      can be evicted
+     */
+    public void setUnreadSegmentTimeoutMillis(final long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException(
+                    "Invalid SABR unread segment timeout: " + timeoutMillis);
+        }
+        this.unreadSegmentTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return the total size of the spool files, including the space reserved for segments
+     * still being written
+     */
+    public long getUsedBytes() {
+        synchronized (files) {
+            return usedBytes;
+        }
+    }
+
+    /**
+     * @return the number of completed segments deleted to stay within the quota
+     */
+    public long getEvictionCount() {
+        synchronized (files) {
+            return evictionCount;
+        }
+    }
+
+    /**
+     * Create the spool file of a segment, reserving its length if it is known.
+     *
+     * @param header         the header of the segment
+     * @param expectedLength the length of the segment, or -1 if it is not known
+     */
+    @Nonnull
+    SabrSpoolFile allocate(@Nonnull final SabrMediaHeader header, final long expectedLength)
+            throws SabrProtocolException {
+        final long reservedBytes = Math.max(0, expectedLength);
+        final List<SabrSpoolFile> evicted = new ArrayList<>();
+        final boolean reserved;
+        synchronized (files) {
+            reserved = evictUntilFits(reservedBytes, evicted);
+            if (reserved) {
+                usedBytes += reservedBytes;
+            }
+        }
+        deleteFiles(evicted);
+        if (!reserved) {
+            throw quotaExceededException(reservedBytes);
+        }
+
+        final SabrSpoolFile spoolFile;
+        try {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Could not create SABR spool directory: " + directory);
+            }
+            final File file = File.createTempFile(FILE_PREFIX + header.getItag() + '-'
+                    + header.getSequenceNumber() + '-', FILE_SUFFIX, directory);
+            spoolFile = new SabrSpoolFile(this, file, (int) expectedLength, reservedBytes);
+        } catch (final IOException e) {
+            synchronized (files) {
+                usedBytes -= reservedBytes;
+            }
+            throw new SabrRecoverableException("Could not open SABR spool file", e);
+        }
+        synchronized (files) {
+            files.put(spoolFile, Boolean.TRUE);
+        }
+        return spoolFile;
+    }
+
+    /**
+     * Reserve space for bytes appended to a segment whose length was not known.
+     */
+    void grow(@Nonnull final SabrSpoolFile file, final int count) throws IOException {
+        final List<SabrSpoolFile> evicted = new ArrayList<>();
+        final boolean released;
+        final boolean reserved;
+        synchronized (files) {
+            released = !files.containsKey(file);
+            reserved = !released && evictUntilFits(count, evicted);
+            if (reserved) {
+                usedBytes += count;
+                file.reservedBytes += count;
+            }
+        }
+        deleteFiles(evicted);
+        if (released) {
+            throw new IOException("SABR media segment was released from the spool");
+        } else if (!reserved) {
+            throw new IOException(quotaExceededException(count).getMessage());
+        }
+    }
+
+    /** Mark a segment as recently used. */
+    void touch(@Nonnull final SabrSpoolFile file) {
+        synchronized (files) {
+            files.get(file);
+        }
+    }
+
+    /** Forget a segment whose file is being deleted, and free its space. */
+    void release(@Nonnull final SabrSpoolFile file) {
+        synchronized (files) {
+            if (files.remove(file) != null) {
+                usedBytes -= file.reservedBytes;
+            }
+        }
+    }
+
+    private boolean evictUntilFits(final long bytes, @Nonnull final List<SabrSpoolFile> evicted) {
+        final long unreadBefore = System.currentTimeMillis() - unreadSegmentTimeoutMillis;
+        final Iterator<SabrSpoolFile> iterator = files.keySet().iterator();
+        while (usedBytes + bytes > quotaBytes && iterator.hasNext()) {
+            final SabrSpoolFile file = iterator.next();
+            if (file.isComplete()
+                    && (file.isOpened() || file.getCompletedAtMillis() <= unreadBefore)) {
+                iterator.remove();
+                usedBytes -= file.reservedBytes;
+                evictionCount++;
+                evicted.add(file);
+            }
+        }
+        return usedBytes + bytes <= quotaBytes;
+    }
+
+    /**
+     * Delete the spool files of earlier processes. Files of another process using the directory
+     * are only deleted once it could have evicted them itself.
+     */
+    private void deleteStaleFiles() {
+        final File[] staleFiles = directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX)
+                && name.endsWith(FILE_SUFFIX));
+        if (staleFiles == null) {
+            return;
+        }
+        final long staleBefore = System.currentTimeMillis()
+                - DEFAULT_UNREAD_SEGMENT_TIMEOUT_MILLIS;
+        for (final File file : staleFiles) {
+            if (file.isFile() && file.lastModified() < staleBefore) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    private static void deleteFiles(@Nonnull final List<SabrSpoolFile> evicted) {
+        for (final SabrSpoolFile file : evicted) {
+            file.evict();
+        }
+    }
+
+    @Nonnull
+    private SabrRecoverableException quotaExceededException(final long bytes) {
+        return new SabrRecoverableException("SABR spool quota exceeded: quota=" + quotaBytes
+                + ", used=" + getUsedBytes() + ", requested=" + bytes);
+    }
+}
@@ -5,8 +5,7 @@ import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrProtocol
 import org.schabi.newpipe.extractor.services.youtube.sabr.generated.SabrFormatInitializationMetadata;
 
 import javax.annotation.Nonnull;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 public final class SabrWebmSegmentIndexParser {
     private static final long SEGMENT_ID = 0x18538067L;
@@ -49,27 +48,29 @@ public final class SabrWebmSegmentIndexParser {
                 : findElement(initData,
                         checkedRangeOffset(metadata.getIndexRangeStart(), initData.length),
                         checkedRangeEnd(metadata.getIndexRangeEnd(), initData.length), CUES_ID);
-        final List<Long> cueTimes = readCueTimes(initData, cues, timecodeScaleNanos);
-        if (cueTimes.isEmpty()) {
+        final long[] cueTimes = readCueTimes(initData, cues, timecodeScaleNanos);
+        if (cueTimes.length == 0) {
             throw new SabrProtocolException("WebM cues contain no cue times");
         }
 
-        final List<SabrSegmentIndex.Entry> entries = new ArrayList<>(cueTimes.size());
-        for (int i = 0; i < cueTimes.size(); i++) {
-            final long startMs = cueTimes.get(i);
+        final int count = cueTimes.length;
+        final long[] durationsMs = new long[count];
+        for (int i = 0; i < count; i++) {
+            final long startMs = cueTimes[i];
             final long endMs;
-            if (i + 1 < cueTimes.size()) {
-                endMs = cueTimes.get(i + 1);
+            if (i + 1 < count) {
+                endMs = cueTimes[i + 1];
             } else if (totalDurationMs > startMs) {
                 endMs = totalDurationMs;
             } else if (i > 0) {
-                endMs = startMs + Math.max(1, startMs - cueTimes.get(i - 1));
+                endMs = startMs + Math.max(1, startMs - cueTimes[i - 1]);
             } else {
                 endMs = startMs + 1;
             }
-            entries.add(new SabrSegmentIndex.Entry(i + 1, startMs, Math.max(1, endMs - startMs)));
+            durationsMs[i] = Math.max(1, endMs - startMs);
         }
-        return new SabrSegmentIndex(entries);
+        // The cue times are the start times of the segments
+        return new SabrSegmentIndex(cueTimes, durationsMs);
     }
 
     private static long readTimecodeScale(@Nonnull final byte[] data,
@@ -89,23 +90,27 @@ public final class SabrWebmSegmentIndexParser {
     }
 
     @Nonnull
-    private static List<Long> readCueTimes(@Nonnull final byte[] data,
-                                           @Nonnull final Element cues,
-                                           final long timecodeScaleNanos)
+    private static long[] readCueTimes(@Nonnull final byte[] data,
+                                       @Nonnull final Element cues,
+                                       final long timecodeScaleNanos)
             throws SabrProtocolException {
-        final List<Long> cueTimes = new ArrayList<>();
+        long[] cueTimes = new long[64];
+        int count = 0;
         int offset = cues.contentStart;
         while (offset < cues.contentEnd) {
             final Element cuePoint = readElement(data, offset, cues.contentEnd);
             if (cuePoint.id == CUE_POINT_ID) {
                 final long cueTime = readCueTime(data, cuePoint);
                 if (cueTime >= 0) {
-                    cueTimes.add(scaleWebmTimeToMs(cueTime, timecodeScaleNanos));
+                    if (count == cueTimes.length) {
+                        cueTimes = Arrays.copyOf(cueTimes, count * 2);
+                    }
+                    cueTimes[count++] = scaleWebmTimeToMs(cueTime, timecodeScaleNanos);
                 }
             }
             offset = cuePoint.contentEnd;
         }
-        return cueTimes;
+        return Arrays.copyOf(cueTimes, count);
     }
 
     private static long readCueTime(@Nonnull final byte[] data,
@@ -9,6 +9,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,35 +26,18 @@ public final class SabrProto {
     private SabrProto() {
     }
 
+    /**
+     * Read all fields of a message at once. Length-delimited values are not copied until
+     * {@link Field#getBytes()} is called; prefer {@link FieldReader} on hot paths, which doesn't
+     * allocate per field.
+     */
     @Nonnull
     public static List<Field> readFields(@Nonnull final byte[] data) throws SabrProtocolException {
-        final Cursor cursor = new Cursor(data);
+        final FieldReader reader = new FieldReader(data);
         final List<Field> fields = new ArrayList<>();
-        while (!cursor.isDone()) {
-            final long tag = cursor.readVarint();
-            final int number = (int) (tag >> 3);
-            final int wireType = (int) (tag & 0x07);
-            if (number <= 0) {
-                throw new SabrProtocolException("Invalid protobuf field number: " + number);
-            }
-
-            switch (wireType) {
-                case WIRE_VARINT:
-                    fields.add(Field.varint(number, cursor.readVarint()));
-                    break;
-                case WIRE_FIXED64:
-                    fields.add(Field.bytes(number, wireType, cursor.readBytes(8)));
-                    break;
-                case WIRE_LENGTH_DELIMITED:
-                    fields.add(Field.bytes(number, wireType,
-                            cursor.readBytes((int) cursor.readVarint())));
-                    break;
-                case WIRE_FIXED32:
-                    fields.add(Field.bytes(number, wireType, cursor.readBytes(4)));
-                    break;
-                default:
-                    throw new SabrProtocolException("Unsupported protobuf wire type: " + wireType);
-            }
+        while (reader.next()) {
+            fields.add(new Field(data, reader.number, reader.wireType, reader.varint,
+                    reader.valueOffset, reader.valueLength));
         }
         return fields;
     }
@@ -77,10 +61,18 @@ public final class SabrProto {
     @Nonnull
     public static List<Long> readPackedVarints(@Nonnull final byte[] data)
             throws SabrProtocolException {
-        final Cursor cursor = new Cursor(data);
+        return readPackedVarints(data, 0, data.length);
+    }
+
+    @Nonnull
+    public static List<Long> readPackedVarints(@Nonnull final byte[] data,
+                                               final int offset,
+                                               final int length)
+            throws SabrProtocolException {
+        final FieldReader reader = new FieldReader(data, offset, length);
         final List<Long> values = new ArrayList<>();
-        while (!cursor.isDone()) {
-            values.add(cursor.readVarint());
+        while (reader.offset < reader.end) {
+            values.add(reader.readVarint());
         }
         return values;
     }
@@ -113,7 +105,8 @@ public final class SabrProto {
                                           @Nonnull final int[] skippedFieldNumbers)
             throws SabrProtocolException {
         final Map<String, Integer> fields = new LinkedHashMap<>();
-        for (final Field field : readFields(data)) {
+        final FieldReader field = new FieldReader(data);
+        while (field.next()) {
             if (contains(skippedFieldNumbers, field.getNumber())) {
                 continue;
             }
@@ -139,13 +132,13 @@ public final class SabrProto {
     }
 
     @Nonnull
-    private static String summarizeField(@Nonnull final Field field) throws SabrProtocolException {
+    private static String summarizeField(@Nonnull final FieldReader field) {
         final StringBuilder builder = new StringBuilder();
         builder.append(field.getNumber()).append('=');
         if (field.getWireType() == WIRE_VARINT) {
             builder.append(field.getVarint());
         } else {
-            builder.append("bytes(").append(field.getBytes().length).append(')');
+            builder.append("bytes(").append(field.getLength()).append(')');
         }
         return builder.toString();
     }
@@ -159,31 +152,162 @@ public final class SabrProto {
         return false;
     }
 
+    /**
+     * A field read by {@link #readFields(byte[])}. A length-delimited value is a view of the
+     * message it has been read from, which must therefore not be modified, and is only copied by
+     * {@link #getBytes()}.
+     */
     public static final class Field {
+        @Nonnull
+        private final byte[] data;
         private final int number;
         private final int wireType;
         private final long varint;
+        private final int valueOffset;
+        private final int valueLength;
         @Nullable
-        private final byte[] bytes;
+        private byte[] bytes;
 
-        private Field(final int number,
+        private Field(@Nonnull final byte[] data,
+                      final int number,
                       final int wireType,
                       final long varint,
-                      @Nullable final byte[] bytes) {
+                      final int valueOffset,
+                      final int valueLength) {
+            this.data = data;
             this.number = number;
             this.wireType = wireType;
             this.varint = varint;
-            this.bytes = bytes;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+        }
+
+        public int getNumber() {
+            return number;
         }
 
+        public int getWireType() {
+            return wireType;
+        }
+
+        public long getVarint() {
+            return varint;
+        }
+
+        /**
+         * @return the length of the value of a non-varint field, without copying it
+         */
+        public int getLength() {
+            return valueLength;
+        }
+
+        /**
+         * Get a copy of the value of a non-varint field. The copy is made on the first call
+         * only, so callers which merely inspect the value should use {@link #getString()},
+         * {@link #getMessage()} or {@link #getLength()} instead.
+         */
         @Nonnull
-        static Field varint(final int number, final long value) {
-            return new Field(number, WIRE_VARINT, value, null);
+        public byte[] getBytes() throws SabrProtocolException {
+            checkNotVarint(number, wireType);
+            if (bytes == null) {
+                bytes = Arrays.copyOfRange(data, valueOffset, valueOffset + valueLength);
+            }
+            return bytes;
+        }
+
+        @Nonnull
+        public String getString() throws SabrProtocolException {
+            checkNotVarint(number, wireType);
+            return new String(data, valueOffset, valueLength, StandardCharsets.UTF_8);
         }
 
+        /**
+         * @return a reader over the fields of this embedded message, without copying it
+         */
         @Nonnull
-        static Field bytes(final int number, final int wireType, @Nonnull final byte[] value) {
-            return new Field(number, wireType, 0, value);
+        public FieldReader getMessage() throws SabrProtocolException {
+            checkNotVarint(number, wireType);
+            return new FieldReader(data, valueOffset, valueLength);
+        }
+    }
+
+    /**
+     * A cursor over the fields of a message, which reads them in place: {@link #next()} moves to
+     * the next field without allocating anything, and length-delimited values are only copied if
+     * {@link #getBytes()} is called. Embedded messages are read with {@link #getMessage()}, which
+     * is a view of the same array.
+     *
+     * <p>
+     * The array must not be modified while it is read. A reader is not thread-safe.
+     * </p>
+     */
+    public static final class FieldReader {
+        @Nonnull
+        private final byte[] data;
+        private final int end;
+        private int offset;
+        private int number;
+        private int wireType;
+        private long varint;
+        private int valueOffset;
+        private int valueLength;
+
+        public FieldReader(@Nonnull final byte[] data) {
+            this(data, 0, data.length);
+        }
+
+        /**
+         * @param data   the array containing the message
+         * @param offset the offset of the message in the array
+         * @param length the length of the message
+         */
+        public FieldReader(@Nonnull final byte[] data, final int offset, final int length) {
+            if (offset < 0 || length < 0 || length > data.length - offset) {
+                throw new IndexOutOfBoundsException("Invalid message range: " + offset + "+"
+                        + length + " in " + data.length + " bytes");
+            }
+            this.data = data;
+            this.offset = offset;
+            this.end = offset + length;
+        }
+
+        /**
+         * Move to the next field of the message.
+         *
+         * @return false if there are no more fields
+         * @throws SabrProtocolException if the field is invalid or truncated
+         */
+        public boolean next() throws SabrProtocolException {
+            if (offset >= end) {
+                return false;
+            }
+            final long tag = readVarint();
+            number = (int) (tag >> 3);
+            wireType = (int) (tag & 0x07);
+            if (number <= 0) {
+                throw new SabrProtocolException("Invalid protobuf field number: " + number);
+            }
+
+            varint = 0;
+            switch (wireType) {
+                case WIRE_VARINT:
+                    varint = readVarint();
+                    valueOffset = offset;
+                    valueLength = 0;
+                    break;
+                case WIRE_FIXED64:
+                    skipValue(8);
+                    break;
+                case WIRE_LENGTH_DELIMITED:
+                    skipValue((int) readVarint());
+                    break;
+                case WIRE_FIXED32:
+                    skipValue(4);
+                    break;
+                default:
+                    throw new SabrProtocolException("Unsupported protobuf wire type: " + wireType);
+            }
+            return true;
         }
 
         public int getNumber() {
@@ -194,21 +318,119 @@ public final class SabrProto {
             return wireType;
         }
 
+        /**
+         * @return the value of a varint field, or 0 for other wire types
+         */
         public long getVarint() {
             return varint;
         }
 
+        public boolean getBool() {
+            return varint != 0;
+        }
+
+        public int getFixed32() throws SabrProtocolException {
+            checkWireType(WIRE_FIXED32);
+            return (int) readLittleEndian(4);
+        }
+
+        public long getFixed64() throws SabrProtocolException {
+            checkWireType(WIRE_FIXED64);
+            return readLittleEndian(8);
+        }
+
+        /**
+         * @return the offset of the value of the current field in the array
+         */
+        public int getOffset() {
+            return valueOffset;
+        }
+
+        /**
+         * @return the length of the value of the current non-varint field
+         */
+        public int getLength() {
+            return valueLength;
+        }
+
+        /**
+         * @return a copy of the value of the current non-varint field, for callers which keep
+         * it
+         */
         @Nonnull
         public byte[] getBytes() throws SabrProtocolException {
-            if (bytes == null) {
-                throw new SabrProtocolException("Field " + number + " is not length-delimited");
-            }
-            return bytes;
+            checkNotVarint(number, wireType);
+            return Arrays.copyOfRange(data, valueOffset, valueOffset + valueLength);
         }
 
         @Nonnull
         public String getString() throws SabrProtocolException {
-            return asString(getBytes());
+            checkNotVarint(number, wireType);
+            return new String(data, valueOffset, valueLength, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return a reader over the fields of the current embedded message, without copying it
+         */
+        @Nonnull
+        public FieldReader getMessage() throws SabrProtocolException {
+            checkNotVarint(number, wireType);
+            return new FieldReader(data, valueOffset, valueLength);
+        }
+
+        @Nonnull
+        public List<Long> getPackedVarints() throws SabrProtocolException {
+            checkWireType(WIRE_LENGTH_DELIMITED);
+            return readPackedVarints(data, valueOffset, valueLength);
+        }
+
+        private void checkWireType(final int expected) throws SabrProtocolException {
+            if (wireType != expected) {
+                throw new SabrProtocolException("Field " + number + " has wire type " + wireType
+                        + ", expected " + expected);
+            }
+        }
+
+        private long readLittleEndian(final int length) {
+            long result = 0;
+            for (int i = length - 1; i >= 0; i--) {
+                result = (result << 8) | (data[valueOffset + i] & 0xff);
+            }
+            return result;
+        }
+
+        private void skipValue(final int length) throws SabrProtocolException {
+            if (length < 0 || length > end - offset) {
+                throw new SabrProtocolException(
+                        "Unexpected EOF while reading " + length + " bytes");
+            }
+            valueOffset = offset;
+            valueLength = length;
+            offset += length;
+        }
+
+        private long readVarint() throws SabrProtocolException {
+            long result = 0;
+            int shift = 0;
+            while (shift < 64) {
+                if (offset >= end) {
+                    throw new SabrProtocolException("Unexpected EOF in protobuf varint");
+                }
+                final int current = data[offset++] & 0xff;
+                result |= (long) (current & 0x7f) << shift;
+                if ((current & 0x80) == 0) {
+                    return result;
+                }
+                shift += 7;
+            }
+            throw new SabrProtocolException("Protobuf varint is too long");
+        }
+    }
+
+    private static void checkNotVarint(final int number, final int wireType)
+            throws SabrProtocolException {
+        if (wireType == WIRE_VARINT) {
+            throw new SabrProtocolException("Field " + number + " is not length-delimited");
         }
     }
 
@@ -295,45 +517,4 @@ public final class SabrProto {
             }
         }
     }
-
-    private static final class Cursor {
-        private final byte[] data;
-        private int offset;
-
-        private Cursor(@Nonnull final byte[] data) {
-            this.data = data;
-        }
-
-        boolean isDone() {
-            return offset >= data.length;
-        }
-
-        long readVarint() throws SabrProtocolException {
-            long result = 0;
-            int shift = 0;
-            while (shift < 64) {
-                if (offset >= data.length) {
-                    throw new SabrProtocolException("Unexpected EOF in protobuf varint");
-                }
-                final int current = data[offset++] & 0xff;
-                result |= (long) (current & 0x7f) << shift;
-                if ((current & 0x80) == 0) {
-                    return result;
-                }
-                shift += 7;
-            }
-            throw new SabrProtocolException("Protobuf varint is too long");
-        }
-
-        @Nonnull
-        byte[] readBytes(final int length) throws SabrProtocolException {
-            if (length < 0 || offset + length > data.length) {
-                throw new SabrProtocolException("Unexpected EOF while reading " + length + " bytes");
-            }
-            final byte[] result = new byte[length];
-            System.arraycopy(data, offset, result, 0, length);
-            offset += length;
-            return result;
-        }
-    }
 }
@@ -195,7 +195,6 @@ public final class SabrResponseDecoder {
                 case PAUSE_BW_SAMPLING_HINT:
                 case ONESIE_PREFETCH_REJECTION:
                 case TIMELINE_CONTEXT:
-                case REQUEST_PIPELINING:
                 case LAWNMOWER_POLICY:
                 case SABR_ACK:
                 case END_OF_TRACK:
@@ -209,7 +208,13 @@ public final class SabrResponseDecoder {
                     decoded.addGenericPartDescription(part.getType(),
                             describeGenericMessage(partData));
                     break;
+                case REQUEST_PIPELINING:
+                    decodeRequestPipelining(partData, decoded);
+                    decoded.addGenericPartDescription(part.getType(),
+                            describeGenericMessage(partData));
+                    break;
                 case REQUEST_CANCELLATION_POLICY:
+                    decodeRequestCancellationPolicy(partData, decoded);
                     decoded.addGenericPartDescription(part.getType(),
                             describeGenericMessage(partData));
                     break;
@@ -239,17 +244,54 @@ public final class SabrResponseDecoder {
                                                 @Nonnull final YoutubeSabrResponse decoded)
             throws SabrProtocolException {
         decoded.setNextRequestPolicy(data);
-        for (final SabrProto.Field field : SabrProto.readFields(data)) {
+        final SabrProto.FieldReader field = new SabrProto.FieldReader(data);
+        while (field.next()) {
             if (field.getNumber() == 4 && field.getWireType() == SabrProto.WIRE_VARINT) {
                 decoded.setBackoffTimeMs((int) field.getVarint());
             }
         }
     }
 
+    private static void decodeRequestPipelining(@Nonnull final byte[] data,
+                                                @Nonnull final YoutubeSabrResponse decoded)
+            throws SabrProtocolException {
+        int limit = -1;
+        final SabrProto.FieldReader field = new SabrProto.FieldReader(data);
+        while (field.next()) {
+            if (field.getNumber() == 1 && field.getWireType() == SabrProto.WIRE_VARINT) {
+                limit = (int) Math.min(Integer.MAX_VALUE, field.getVarint());
+            }
+        }
+        decoded.setRequestPipeliningAllowed(true);
+        decoded.setPipelinedRequestLimit(limit);
+    }
+
+    private static void decodeRequestCancellationPolicy(
+            @Nonnull final byte[] data,
+            @Nonnull final YoutubeSabrResponse decoded) throws SabrProtocolException {
+        long minReadaheadMs = -1;
+        final SabrProto.FieldReader field = new SabrProto.FieldReader(data);
+        while (field.next()) {
+            if (field.getNumber() != 2
+                    || field.getWireType() != SabrProto.WIRE_LENGTH_DELIMITED) {
+                continue;
+            }
+            final SabrProto.FieldReader item = field.getMessage();
+            while (item.next()) {
+                if (item.getNumber() == 3 && item.getWireType() == SabrProto.WIRE_VARINT
+                        && (minReadaheadMs < 0 || item.getVarint() < minReadaheadMs)) {
+                    minReadaheadMs = item.getVarint();
+                }
+            }
+        }
+        decoded.setCancellationMinReadaheadMs(minReadaheadMs);
+    }
+
     private static void decodeStreamProtectionStatus(@Nonnull final byte[] data,
                                                        @Nonnull final YoutubeSabrResponse decoded)
             throws SabrProtocolException {
-        for (final SabrProto.Field field : SabrProto.readFields(data)) {
+        final SabrProto.FieldReader field = new SabrProto.FieldReader(data);
+        while (field.next()) {
             if (field.getNumber() == 1 && field.getWireType() == SabrProto.WIRE_VARINT) {
                 decoded.setStreamProtectionStatus((int) field.getVarint());
             } else if (field.getNumber() == 2
@@ -263,7 +305,8 @@ public final class SabrResponseDecoder {
     private static String readString(@Nonnull final byte[] data, final int number)
             throws SabrProtocolException {
         String value = null;
-        for (final SabrProto.Field field : SabrProto.readFields(data)) {
+        final SabrProto.FieldReader field = new SabrProto.FieldReader(data);
+        while (field.next()) {
             if (field.getNumber() == number
                     && field.getWireType() == SabrProto.WIRE_LENGTH_DELIMITED) {
                 value = field.getString();
@@ -276,7 +319,8 @@ public final class SabrResponseDecoder {
     private static String decodeError(@Nonnull final byte[] data) throws SabrProtocolException {
         String type = null;
         int code = 0;
-        for (final SabrProto.Field field : SabrProto.readFields(data)) {
+        final SabrProto.FieldReader field = new SabrProto.FieldReader(data);
+        while (field.next()) {
             if (field.getNumber() == 1
                     && field.getWireType() == SabrProto.WIRE_LENGTH_DELIMITED) {
                 type = field.getString();
@@ -5,12 +5,13 @@ import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrProtocol
 import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrRecoverableException;
 import org.schabi.newpipe.extractor.services.youtube.sabr.YoutubeSabrResponse;
 import org.schabi.newpipe.extractor.services.youtube.sabr.media.SabrMediaSegmentCollector;
+import org.schabi.newpipe.extractor.services.youtube.sabr.media.SabrSegmentCache;
+import org.schabi.newpipe.extractor.services.youtube.sabr.media.SabrSpoolManager;
 import org.schabi.newpipe.extractor.services.youtube.sabr.generated.SabrMediaHeader;
 import org.schabi.newpipe.extractor.services.youtube.sabr.protocol.UmpReader.UmpPart;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -21,9 +22,9 @@ import java.util.Map;
 
 /**
  * Streaming counterpart of {@link SabrResponseDecoder#decode(byte[])}: parse the UMP envelope from a
- * stream one part at a time, assembling MEDIA segments on the fly (via
- * {@link SabrMediaSegmentCollector.Incremental}) so the big MEDIA payloads are never all held at
- * once. Only the small control parts (everything except the MEDIA payloads) are kept and decoded
+ * stream one part at a time with a {@link UmpBufferedReader}, assembling MEDIA segments on the
+ * fly (via {@link SabrMediaSegmentCollector.Incremental}) so the big MEDIA payloads are never all
+ * held at once. Only the small control parts (everything except the MEDIA payloads) are kept and decoded
  * into a {@link YoutubeSabrResponse}. This is what fixes the 4K OOM: peak transient drops from the
  * whole response body (50-150MB) to a single in-flight segment.
  */
@@ -63,6 +64,21 @@ public final class SabrStreamingResponseReader {
                               @Nullable final SegmentConsumer segmentStartConsumer,
                               @Nullable final File spoolDirectory)
             throws SabrProtocolException, IOException {
+        return read(in, segmentConsumer, segmentStartConsumer, spoolDirectory, null, null);
+    }
+
+    /**
+     * Like {@link #read(InputStream, SegmentConsumer, SegmentConsumer, File)}, also storing the
+     * completed media segments of {@code videoId} in {@code segmentCache}.
+     */
+    @Nonnull
+    public static Result read(@Nonnull final InputStream in,
+                              final SegmentConsumer segmentConsumer,
+                              @Nullable final SegmentConsumer segmentStartConsumer,
+                              @Nullable final File spoolDirectory,
+                              @Nullable final SabrSegmentCache segmentCache,
+                              @Nullable final String videoId)
+            throws SabrProtocolException, IOException {
         final List<UmpPart> controlParts = new ArrayList<>();
         final List<String> partSummaries = new ArrayList<>();
         final List<SabrMediaSegment> segments = new ArrayList<>();
@@ -78,10 +94,11 @@ public final class SabrStreamingResponseReader {
         // (getIntegrityIssues -> "missing-media") as the buffered path WITHOUT retaining the bytes.
         final Map<Integer, Long> mediaBytesByHeaderId = new HashMap<>();
         final SabrMediaSegmentCollector.Incremental collector =
-                new SabrMediaSegmentCollector.Incremental(spoolDirectory);
+                new SabrMediaSegmentCollector.Incremental(spoolDirectory == null ? null
+                        : SabrSpoolManager.forDirectory(spoolDirectory), segmentCache, videoId);
         try {
-            UmpReader.readPayloadsUntil(in, (type, size, payloadStream) -> {
-        YoutubeSabrResponse.addPartSummary(partSummaries, type, size);
+            new UmpBufferedReader().readPartsUntil(in, (type, size, partPayload) -> {
+                YoutubeSabrResponse.addPartSummary(partSummaries, type, size);
                 maxPartBytes[0] = Math.max(maxPartBytes[0], size);
                 totalPayloadBytes[0] += size;
                 if (type != SabrResponseDecoder.MEDIA
@@ -90,7 +107,7 @@ public final class SabrStreamingResponseReader {
                     throw new SabrProtocolException("SABR control response exceeded Host limit");
                 }
                 if (type == SabrResponseDecoder.MEDIA_HEADER) {
-                    final byte[] payload = readPayloadBytes(payloadStream, size);
+                    final byte[] payload = partPayload.toByteArray();
                     controlPayloadBytes[0] += payload.length;
                     // small (just the header) -> keep so the decoder records it (observeHeader).
                     controlParts.add(new UmpPart(type, payload.length, payload));
@@ -109,6 +126,7 @@ public final class SabrStreamingResponseReader {
                 } else if (type == SabrResponseDecoder.MEDIA) {
                     mediaPartPayloadBytes[0] += size;
                     if (size > 0) {
+                        final InputStream payloadStream = partPayload.asInputStream();
                         final int headerId = payloadStream.read();
                         if (headerId < 0) {
                             throw new SabrRecoverableException(
@@ -125,7 +143,7 @@ public final class SabrStreamingResponseReader {
                                         + mediaBytes);
                     }
                 } else if (type == SabrResponseDecoder.MEDIA_END) {
-                    final byte[] payload = readPayloadBytes(payloadStream, size);
+                    final byte[] payload = partPayload.toByteArray();
                     controlPayloadBytes[0] += payload.length;
                     final SabrMediaSegment segment = collector.onMediaEnd(payload);
                     controlParts.add(new UmpPart(type, payload.length, payload));
@@ -139,7 +157,7 @@ public final class SabrStreamingResponseReader {
                         }
                     }
                 } else {
-                    final byte[] payload = readPayloadBytes(payloadStream, size);
+                    final byte[] payload = partPayload.toByteArray();
                     controlPayloadBytes[0] += payload.length;
                     controlParts.add(new UmpPart(type, payload.length, payload));
                 }
@@ -160,23 +178,6 @@ public final class SabrStreamingResponseReader {
                 maxPartBytes[0], maxMediaPartPayloadBytes[0], maxSegmentBytes[0]);
     }
 
-    @Nonnull
-    private static byte[] readPayloadBytes(@Nonnull final InputStream input, final int size)
-            throws IOException {
-        final ByteArrayOutputStream output = new ByteArrayOutputStream(size);
-        final byte[] buffer = new byte[8192];
-        int remaining = size;
-        while (remaining > 0) {
-            final int read = input.read(buffer, 0, Math.min(buffer.length, remaining));
-            if (read < 0) {
-                throw new IOException("Unexpected EOF while reading UMP part data");
-            }
-            output.write(buffer, 0, read);
-            remaining -= read;
-        }
-        return output.toByteArray();
-    }
-
     private static boolean isMalformedMediaHeader(@Nonnull final byte[] payload) {
         try {
             SabrMediaHeader.decode(payload);
@@ -0,0 +1,366 @@
+package org.schabi.newpipe.extractor.services.youtube.sabr.protocol;
+
+import org.schabi.newpipe.extractor.services.youtube.sabr.exception.SabrProtocolException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Buffered reader for YouTube's UMP envelope, for large streamed SABR responses.
+ *
+ * <p>
+ * Unlike {@link UmpReader#readPayloadsUntil(InputStream, UmpReader.StoppablePayloadConsumer)},
+ * which reads part headers byte by byte from the stream, this reader reads ahead into one fixed
+ * buffer and decodes part headers directly from it. Payloads which fit into the buffer, i.e. all
+ * control parts, are handed to the consumer as {@link Payload#slice() slices} of the buffer
+ * instead of copies; larger payloads are streamed, and read directly from the source when the
+ * destination is larger than the buffer.
+ * </p>
+ *
+ * <p>
+ * Because it reads ahead, the reader may consume bytes of the source past the part at which the
+ * consumer stopped. A reader is not thread-safe, but can be reused for several responses, so that
+ * its buffer is only allocated once.
+ * </p>
+ */
+public final class UmpBufferedReader {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    // A part header is made of two UMP integers of at most 5 bytes each
+    private static final int MAX_HEADER_SIZE = 10;
+
+    /**
+     * Receives one UMP part; the payload is only valid until this method returns. Return false
+     * to stop at this part boundary.
+     */
+    @FunctionalInterface
+    public interface PartConsumer {
+        boolean accept(int type, int size, @Nonnull Payload payload)
+                throws SabrProtocolException, IOException;
+    }
+
+    @Nonnull
+    private final byte[] buffer;
+    @Nonnull
+    private final ByteBuffer byteBuffer;
+    @Nonnull
+    private final Payload payload = new Payload();
+    private int position;
+    private int limit;
+    @Nullable
+    private InputStream input;
+    @Nullable
+    private ReadableByteChannel channel;
+
+    public UmpBufferedReader() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize the size of the read-ahead buffer; payloads up to this size are handed to
+     *                   consumers without being copied
+     */
+    public UmpBufferedReader(final int bufferSize) {
+        if (bufferSize < MAX_HEADER_SIZE) {
+            throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+        }
+        buffer = new byte[bufferSize];
+        byteBuffer = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Read the parts of a UMP envelope from a stream until its end or until {@code consumer}
+     * returns false. The stream is not closed.
+     */
+    public void readPartsUntil(@Nonnull final InputStream in,
+                               @Nonnull final PartConsumer consumer)
+            throws SabrProtocolException, IOException {
+        start(in, null);
+        try {
+            readParts(consumer);
+        } finally {
+            input = null;
+        }
+    }
+
+    /**
+     * Read the parts of a UMP envelope from a blocking channel until its end or until
+     * {@code consumer} returns false. The channel is not closed.
+     */
+    public void readPartsUntil(@Nonnull final ReadableByteChannel in,
+                               @Nonnull final PartConsumer consumer)
+            throws SabrProtocolException, IOException {
+        start(null, in);
+        try {
+            readParts(consumer);
+        } finally {
+            channel = null;
+        }
+    }
+
+    private void start(@Nullable final InputStream in,
+                       @Nullable final ReadableByteChannel byteChannel) {
+        if (input != null || channel != null) {
+            throw new IllegalStateException("UMP reader is already reading");
+        }
+        input = in;
+        channel = byteChannel;
+        position = 0;
+        limit = 0;
+    }
+
+    private void readParts(@Nonnull final PartConsumer consumer)
+            throws SabrProtocolException, IOException {
+        while (true) {
+            throwIfInterrupted();
+            if (!fill(MAX_HEADER_SIZE) && position == limit) {
+                return; // clean EOF at a part boundary -> done
+            }
+            final int type = readUmpInt();
+            final int size = readUmpInt();
+            if (type < 0 || size < 0) {
+                throw new SabrProtocolException("Invalid UMP part header");
+            }
+            if (size <= buffer.length && !fill(size)) {
+                throw new EOFException("Unexpected EOF while reading UMP part data");
+            }
+
+            payload.remaining = size;
+            final boolean keepGoing = consumer.accept(type, size, payload);
+            payload.skipRemaining();
+            if (!keepGoing) {
+                return;
+            }
+        }
+    }
+
+    // UMP compact int, decoded from the buffer. Mirrors UmpReader.Cursor.readUmpInt.
+    private int readUmpInt() throws EOFException {
+        if (position >= limit) {
+            throw new EOFException("Unexpected EOF in UMP integer");
+        }
+        final byte[] data = buffer;
+        final int first = data[position] & 0xff;
+        final int length = first < 128 ? 1 : first < 192 ? 2 : first < 224 ? 3
+                : first < 240 ? 4 : 5;
+        if (position + length > limit) {
+            throw new EOFException("Unexpected EOF in UMP integer");
+        }
+        final int p = position;
+        position += length;
+        switch (length) {
+            case 1:
+                return first;
+            case 2:
+                return (first & 0x3f) + 64 * (data[p + 1] & 0xff);
+            case 3:
+                return (first & 0x1f) + 32 * ((data[p + 1] & 0xff)
+                        + 256 * (data[p + 2] & 0xff));
+            case 4:
+                return (first & 0x0f) + 16 * ((data[p + 1] & 0xff)
+                        + 256 * ((data[p + 2] & 0xff) + 256 * (data[p + 3] & 0xff)));
+            default:
+                return (data[p + 1] & 0xff) + 256 * ((data[p + 2] & 0xff)
+                        + 256 * ((data[p + 3] & 0xff) + 256 * (data[p + 4] & 0xff)));
+        }
+    }
+
+    /**
+     * Read from the source until at least {@code count} bytes are buffered.
+     *
+     * @return false if the source ended before
+     */
+    private boolean fill(final int count) throws IOException {
+        if (limit - position >= count) {
+            return true;
+        }
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        while (limit < count) {
+            throwIfInterrupted();
+            final int read = readFromSource(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                return false;
+            }
+            limit += read;
+        }
+        return true;
+    }
+
+    private int readFromSource(@Nonnull final byte[] destination,
+                               final int offset,
+                               final int length) throws IOException {
+        if (input != null) {
+            return input.read(destination, offset, length);
+        }
+        final ByteBuffer target = destination == buffer
+                ? byteBuffer : ByteBuffer.wrap(destination);
+        target.limit(offset + length);
+        target.position(offset);
+        return channel.read(target);
+    }
+
+    private static void throwIfInterrupted() throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Interrupted while reading UMP stream");
+        }
+    }
+
+    /**
+     * The payload of the current part, read from the buffer of the reader. It must not be used
+     * after {@link PartConsumer#accept(int, int, Payload)} returned.
+     */
+    public final class Payload {
+        private int remaining;
+        @Nullable
+        private InputStream stream;
+
+        private Payload() {
+        }
+
+        /**
+         * @return the number of payload bytes which have not been read yet
+         */
+        public int remaining() {
+            return remaining;
+        }
+
+        /**
+         * @return whether the unread bytes of the payload are all in the buffer of the reader,
+         * which is always the case for payloads not larger than it
+         */
+        public boolean isBuffered() {
+            return remaining <= limit - position;
+        }
+
+        /**
+         * Get the unread bytes of the payload without copying them. The slice doesn't consume
+         * them and is only valid until the consumer returns.
+         *
+         * @return a read-only view of the unread bytes
+         * @throws IllegalStateException if the payload is not {@link #isBuffered() buffered}
+         */
+        @Nonnull
+        public ByteBuffer slice() {
+            if (!isBuffered()) {
+                throw new IllegalStateException("UMP payload is larger than the read buffer");
+            }
+            return ByteBuffer.wrap(buffer, position, remaining).slice().asReadOnlyBuffer();
+        }
+
+        /**
+         * Read one byte of the payload.
+         *
+         * @return the byte, as an unsigned value
+         */
+        public int readUnsignedByte() throws IOException {
+            if (remaining <= 0) {
+                throw new EOFException("Unexpected end of UMP part data");
+            }
+            if (position == limit && !fill(1)) {
+                throw new EOFException("Unexpected EOF while reading UMP part data");
+            }
+            remaining--;
+            return buffer[position++] & 0xff;
+        }
+
+        /**
+         * Read payload bytes, like {@link InputStream#read(byte[], int, int)}.
+         *
+         * @return the number of bytes read, or -1 at the end of the payload
+         */
+        public int read(@Nonnull final byte[] destination, final int offset, final int length)
+                throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            if (length <= 0) {
+                return 0;
+            }
+            final int wanted = Math.min(length, remaining);
+            if (position == limit) {
+                if (wanted >= buffer.length) {
+                    // Nothing to gain from copying through the buffer
+                    throwIfInterrupted();
+                    final int read = readFromSource(destination, offset, wanted);
+                    if (read < 0) {
+                        throw new EOFException("Unexpected EOF while reading UMP part data");
+                    }
+                    remaining -= read;
+                    return read;
+                }
+                if (!fill(1)) {
+                    throw new EOFException("Unexpected EOF while reading UMP part data");
+                }
+            }
+            final int count = Math.min(wanted, limit - position);
+            System.arraycopy(buffer, position, destination, offset, count);
+            position += count;
+            remaining -= count;
+            return count;
+        }
+
+        /**
+         * Read all unread bytes of the payload into a new array, e.g. to keep them after the
+         * consumer returned.
+         */
+        @Nonnull
+        public byte[] toByteArray() throws IOException {
+            final byte[] result = new byte[remaining];
+            int offset = 0;
+            while (offset < result.length) {
+                offset += read(result, offset, result.length - offset);
+            }
+            return result;
+        }
+
+        /**
+         * @return a view of the unread bytes of the payload as a stream, only valid until the
+         * consumer returns; closing it has no effect
+         */
+        @Nonnull
+        public InputStream asInputStream() {
+            if (stream == null) {
+                stream = new PayloadInputStream();
+            }
+            return stream;
+        }
+
+        private void skipRemaining() throws IOException {
+            while (remaining > 0) {
+                if (position == limit && !fill(1)) {
+                    throw new EOFException("Unexpected EOF while reading UMP part data");
+                }
+                final int count = Math.min(remaining, limit - position);
+                position += count;
+                remaining -= count;
+            }
+        }
+
+        private final class PayloadInputStream extends InputStream {
+            @Override
+            public int read() throws IOException {
+                return remaining <= 0 ? -1 : readUnsignedByte();
+            }
+
+            @Override
+            public int read(@Nonnull final byte[] destination, final int offset, final int length)
+                    throws IOException {
+                return Payload.this.read(destination, offset, length);
+            }
+
+            @Override
+            public int available() {
+                return Math.min(remaining, limit - position);
+            }
+        }
+    }
+}
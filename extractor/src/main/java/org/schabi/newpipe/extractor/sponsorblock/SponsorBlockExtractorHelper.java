@@ -20,9 +20,29 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
 
 public final class SponsorBlockExtractorHelper {
 
+    /**
+     * The maximum number of lookups run at the same time by the default executor.
+     */
+    public static final int DEFAULT_MAXIMUM_CONCURRENT_LOOKUPS = 4;
+
+    /**
+     * The maximum number of lookups waiting to be run by the default executor.
+     */
+    public static final int DEFAULT_MAXIMUM_QUEUED_LOOKUPS = 64;
+
     private SponsorBlockExtractorHelper() {
     }
 
@@ -90,59 +110,119 @@ public final class SponsorBlockExtractorHelper {
                 + "&actionTypes=" + actionParams
                 + "&userAgent=Mozilla/5.0";
 
-        JsonArray responseArray = null;
-
-        try {
-            final String responseBody = NewPipe.getDownloader().get(url, url.contains("bsbsb.top")? BilibiliService.getSponsorBlockHeaders(): null).responseBody();
+        JsonArray segmentArray = SponsorBlockSegmentsCache.get(url, videoId);
+        if (segmentArray == null) {
+            try {
+                final long generation = SponsorBlockSegmentsCache.getGeneration();
+                final String responseBody = NewPipe.getDownloader().get(url, url.contains("bsbsb.top")? BilibiliService.getSponsorBlockHeaders(): null).responseBody();
 
-            responseArray = JsonParser.array().from(responseBody);
-        } catch (ReCaptchaException | IOException | JsonParserException e) {
-            // ignored
+                segmentArray = SponsorBlockSegmentsCache.put(url,
+                        JsonParser.array().from(responseBody), generation).get(videoId);
+            } catch (ReCaptchaException | IOException | JsonParserException e) {
+                // ignored
+            }
         }
 
-        if (responseArray == null) {
+        if (segmentArray == null) {
             return new SponsorBlockSegment[0];
         }
 
         final ArrayList<SponsorBlockSegment> result = new ArrayList<>();
 
-        for (final Object obj1 : responseArray) {
-            final JsonObject jObj1 = (JsonObject) obj1;
+        for (final Object obj2 : segmentArray) {
+            final JsonObject jObj2 = (JsonObject) obj2;
 
-            final String responseVideoId = jObj1.getString("videoID");
-            if (!responseVideoId.equals(videoId)) {
+            final JsonArray segmentInfo = (JsonArray) jObj2.get("segment");
+            if (segmentInfo == null) {
                 continue;
             }
 
-            final JsonArray segmentArray = (JsonArray) jObj1.get("segments");
-            if (segmentArray == null) {
-                continue;
-            }
+            final String uuid = jObj2.getString("UUID");
+            final double startTime = segmentInfo.getDouble(0) * 1000;
+            final double endTime = segmentInfo.getDouble(1) * 1000;
+            final String category = jObj2.getString("category");
+            final String action = jObj2.getString("actionType");
+
+            final SponsorBlockSegment sponsorBlockSegment =
+                    new SponsorBlockSegment(uuid, startTime, endTime,
+                            SponsorBlockCategory.fromApiName(category),
+                            SponsorBlockAction.fromApiName(action),
+                            extractor.getServiceId());
+            result.add(sponsorBlockSegment);
+        }
 
-            for (final Object obj2 : segmentArray) {
-                final JsonObject jObj2 = (JsonObject) obj2;
+        return result.toArray(new SponsorBlockSegment[0]);
+    }
 
-                final JsonArray segmentInfo = (JsonArray) jObj2.get("segment");
-                if (segmentInfo == null) {
-                    continue;
+    /**
+     * Get the segments of a stream on the executor returned by
+     * {@link NewPipe#getSponsorBlockExecutor()}.
+     *
+     * @param extractor   the extractor of the stream
+     * @param apiSettings the SponsorBlock API settings of the service
+     * @return a future completed with the segments of the stream, or exceptionally if they could
+     * not be fetched or if the executor rejected the lookup
+     */
+    @Nonnull
+    public static CompletableFuture<SponsorBlockSegment[]> getSegmentsAsync(
+            @Nonnull final StreamExtractor extractor,
+            @Nonnull final SponsorBlockApiSettings apiSettings) {
+        final CompletableFuture<SponsorBlockSegment[]> future = new CompletableFuture<>();
+        try {
+            NewPipe.getSponsorBlockExecutor().execute(() -> {
+                try {
+                    future.complete(getSegments(extractor, apiSettings));
+                } catch (final Throwable e) {
+                    future.completeExceptionally(e);
                 }
-
-                final String uuid = jObj2.getString("UUID");
-                final double startTime = segmentInfo.getDouble(0) * 1000;
-                final double endTime = segmentInfo.getDouble(1) * 1000;
-                final String category = jObj2.getString("category");
-                final String action = jObj2.getString("actionType");
-
-                final SponsorBlockSegment sponsorBlockSegment =
-                        new SponsorBlockSegment(uuid, startTime, endTime,
-                                SponsorBlockCategory.fromApiName(category),
-                                SponsorBlockAction.fromApiName(action),
-                                extractor.getServiceId());
-                result.add(sponsorBlockSegment);
-            }
+            });
+        } catch (final RejectedExecutionException e) {
+            future.completeExceptionally(e);
         }
+        return future;
+    }
 
-        return result.toArray(new SponsorBlockSegment[0]);
+    /**
+     * Get the executor used for SponsorBlock lookups when none has been set with
+     * {@link NewPipe#setSponsorBlockExecutor(Executor)}.
+     *
+     * <p>
+     * It runs at most {@link #DEFAULT_MAXIMUM_CONCURRENT_LOOKUPS} lookups at the same time, on
+     * virtual threads if the runtime supports them and on daemon threads otherwise, and queues
+     * up to {@link #DEFAULT_MAXIMUM_QUEUED_LOOKUPS} other lookups. Further lookups are rejected.
+     * </p>
+     *
+     * @return the shared default executor
+     */
+    @Nonnull
+    public static Executor getDefaultExecutor() {
+        return DefaultExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * Remove all cached SponsorBlock responses.
+     */
+    public static void clearSegmentsCache() {
+        SponsorBlockSegmentsCache.clear();
+    }
+
+    /**
+     * Set the maximum number of cached SponsorBlock responses. Each response contains the
+     * segments of all videos whose ID hash starts with the same prefix.
+     *
+     * @param maximumSize the maximum number of cached responses, {@code 0} to disable the cache
+     */
+    public static void setSegmentsCacheMaximumSize(final int maximumSize) {
+        SponsorBlockSegmentsCache.setMaximumSize(maximumSize);
+    }
+
+    /**
+     * Set the time to live of cached SponsorBlock responses.
+     *
+     * @param ttlMillis the time to live, in milliseconds
+     */
+    public static void setSegmentsCacheTtl(final long ttlMillis) {
+        SponsorBlockSegmentsCache.setTtl(ttlMillis);
     }
 
     public static Response submitSponsorBlockSegment(
@@ -176,7 +256,18 @@ public final class SponsorBlockExtractorHelper {
                 + "&userID=" + userId
                 + "&userAgent=PipePipe/1.1.0"
                 + "&actionType=" + actionType;
-        return NewPipe.getDownloader().post(url, apiUrl.contains("bsbsb.top")? BilibiliService.getSponsorBlockHeaders(): null, new byte[0]);
+        try {
+            return NewPipe.getDownloader().post(url, apiUrl.contains("bsbsb.top")? BilibiliService.getSponsorBlockHeaders(): null, new byte[0]);
+        } finally {
+            // Only once the server has the segment, so that no lookup caches the old ones again.
+            // Also when the POST failed, since the server may have received it anyway.
+            try {
+                SponsorBlockSegmentsCache.invalidate(
+                        apiUrl + "skipSegments/" + Utils.toSha256(videoId).substring(0, 4));
+            } catch (final NoSuchAlgorithmException e) {
+                SponsorBlockSegmentsCache.invalidate(apiUrl);
+            }
+        }
     }
 
     public static Response submitSponsorBlockSegmentVote(final String uuid,
@@ -189,7 +280,12 @@ public final class SponsorBlockExtractorHelper {
                 + "&userID=" + userId
                 + "&type=" + vote;
 
-        return NewPipe.getDownloader().post(url, apiUrl.contains("bsbsb.top")? BilibiliService.getSponsorBlockHeaders(): null, new byte[0]);
+        try {
+            return NewPipe.getDownloader().post(url, apiUrl.contains("bsbsb.top")? BilibiliService.getSponsorBlockHeaders(): null, new byte[0]);
+        } finally {
+            // After the vote, like for submissions; the video of the segment is unknown here
+            SponsorBlockSegmentsCache.invalidate(apiUrl);
+        }
     }
 
     public static String getApiUrl(StreamInfo streamInfo) {
@@ -205,4 +301,39 @@ public final class SponsorBlockExtractorHelper {
         }
         return apiUrl;
     }
+
+    private static final class DefaultExecutorHolder {
+        private static final Executor EXECUTOR = createDefaultExecutor();
+
+        @Nonnull
+        private static Executor createDefaultExecutor() {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    DEFAULT_MAXIMUM_CONCURRENT_LOOKUPS, DEFAULT_MAXIMUM_CONCURRENT_LOOKUPS,
+                    30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(DEFAULT_MAXIMUM_QUEUED_LOOKUPS),
+                    createThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+
+        @Nonnull
+        private static ThreadFactory createThreadFactory() {
+            // Thread.ofVirtual() is not available on Android nor on Java versions before 21
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class)
+                        .invoke(builder, "SponsorBlock-", 0L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (final ReflectiveOperationException | RuntimeException e) {
+                final AtomicInteger threadCount = new AtomicInteger();
+                return runnable -> {
+                    final Thread thread = new Thread(runnable,
+                            "SponsorBlock-" + threadCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                };
+            }
+        }
+    }
 }
@@ -0,0 +1,188 @@
+package org.schabi.newpipe.extractor.sponsorblock;
+
+import com.grack.nanojson.JsonArray;
+import com.grack.nanojson.JsonObject;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of SponsorBlock {@code skipSegments} responses, used by
+ * {@link SponsorBlockExtractorHelper}.
+ *
+ * <p>
+ * The SponsorBlock API is queried with the first characters of the SHA-256 hash of a video ID,
+ * so a single response contains the segments of every video whose hash starts with the same
+ * prefix. Responses are cached per request URL, which contains the API, the hash prefix and the
+ * requested categories, and indexed by video ID, so that repeated lookups and lookups of other
+ * videos sharing the prefix don't need any request.
+ * </p>
+ *
+ * <p>
+ * Only the JSON segments are cached, as {@link SponsorBlockSegment}s are mutable: new ones are
+ * created for each lookup.
+ * </p>
+ *
+ * <p>
+ * Each invalidation starts a new generation. Responses of requests sent during an older one are
+ * not cached, so that a lookup running while a segment is submitted can't store the segments
+ * from before the submission again.
+ * </p>
+ */
+final class SponsorBlockSegmentsCache {
+
+    /**
+     * The default maximum number of cached responses.
+     */
+    static final int DEFAULT_MAXIMUM_SIZE = 256;
+
+    /**
+     * The default time to live of a cached response.
+     */
+    static final long DEFAULT_TTL_MILLIS = 5L * 60L * 1000L;
+
+    // Access-ordered, so that the least recently used response is evicted first
+    private static final LinkedHashMap<String, Entry> ENTRIES =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    private static int maximumSize = DEFAULT_MAXIMUM_SIZE;
+    private static long ttlMillis = DEFAULT_TTL_MILLIS;
+    private static long generation;
+
+    private SponsorBlockSegmentsCache() {
+    }
+
+    /**
+     * Get the cached segments of a video.
+     *
+     * @param url     the URL of the {@code skipSegments} request
+     * @param videoId the ID of the video
+     * @return the JSON segments of the video, an empty array if the cached response doesn't
+     * contain the video, or {@code null} if there is no valid cached response for the URL
+     */
+    @Nullable
+    static synchronized JsonArray get(@Nonnull final String url, @Nonnull final String videoId) {
+        final Entry entry = ENTRIES.get(url);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired()) {
+            ENTRIES.remove(url);
+            return null;
+        }
+
+        final JsonArray segments = entry.segmentsByVideoId.get(videoId);
+        return segments == null ? new JsonArray() : segments;
+    }
+
+    /**
+     * @return the current generation, to be passed to {@link #put(String, JsonArray, long)} for
+     * the response of a request sent now
+     */
+    static synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Cache a {@code skipSegments} response, unless the cache has been invalidated since the
+     * request was sent.
+     *
+     * @param url               the URL of the request
+     * @param response          the response, as returned by the API
+     * @param requestGeneration the {@link #getGeneration() generation} when the request was sent
+     * @return the JSON segments of the response, per video ID
+     */
+    @Nonnull
+    static Map<String, JsonArray> put(@Nonnull final String url,
+                                      @Nonnull final JsonArray response,
+                                      final long requestGeneration) {
+        final Map<String, JsonArray> segmentsByVideoId = new HashMap<>();
+        for (final Object item : response) {
+            if (!(item instanceof JsonObject)) {
+                continue;
+            }
+            final JsonObject video = (JsonObject) item;
+            final String videoId = video.getString("videoID");
+            final Object segments = video.get("segments");
+            if (videoId != null && segments instanceof JsonArray) {
+                segmentsByVideoId.put(videoId, (JsonArray) segments);
+            }
+        }
+
+        final Map<String, JsonArray> unmodifiableSegmentsByVideoId =
+                Collections.unmodifiableMap(segmentsByVideoId);
+        synchronized (SponsorBlockSegmentsCache.class) {
+            if (requestGeneration != generation) {
+                return unmodifiableSegmentsByVideoId;
+            }
+            ENTRIES.put(url, new Entry(unmodifiableSegmentsByVideoId,
+                    System.currentTimeMillis() + ttlMillis));
+            final Iterator<Map.Entry<String, Entry>> iterator = ENTRIES.entrySet().iterator();
+            while (ENTRIES.size() > maximumSize && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        return unmodifiableSegmentsByVideoId;
+    }
+
+    /**
+     * Remove the cached responses of requests starting with the given prefix, e.g. after a
+     * segment has been submitted or voted on.
+     *
+     * @param urlPrefix the start of the URLs of the requests to forget
+     */
+    static synchronized void invalidate(@Nonnull final String urlPrefix) {
+        generation++;
+        ENTRIES.keySet().removeIf(url -> url.startsWith(urlPrefix));
+    }
+
+    static synchronized void clear() {
+        generation++;
+        ENTRIES.clear();
+    }
+
+    static synchronized void setMaximumSize(final int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("Invalid maximum size");
+        }
+        SponsorBlockSegmentsCache.maximumSize = maximumSize;
+        final Iterator<Map.Entry<String, Entry>> iterator = ENTRIES.entrySet().iterator();
+        while (ENTRIES.size() > maximumSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    static synchronized void setTtl(final long ttlMillis) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("Invalid time to live");
+        }
+        SponsorBlockSegmentsCache.ttlMillis = ttlMillis;
+    }
+
+    static synchronized int size() {
+        return ENTRIES.size();
+    }
+
+    private static final class Entry {
+        @Nonnull
+        private final Map<String, JsonArray> segmentsByVideoId;
+        private final long expiresAt;
+
+        private Entry(@Nonnull final Map<String, JsonArray> segmentsByVideoId,
+                      final long expiresAt) {
+            this.segmentsByVideoId = segmentsByVideoId;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+}
@@ -5,24 +5,24 @@ import org.schabi.newpipe.extractor.channel.StaffInfoItem;
 import org.schabi.newpipe.extractor.exceptions.ContentNotAvailableException;
 import org.schabi.newpipe.extractor.exceptions.ContentNotSupportedException;
 import org.schabi.newpipe.extractor.exceptions.ExtractionException;
-import org.schabi.newpipe.extractor.exceptions.ParsingException;
 import org.schabi.newpipe.extractor.localization.DateWrapper;
+import org.schabi.newpipe.extractor.metrics.ExtractionMetrics;
 import org.schabi.newpipe.extractor.sponsorblock.SponsorBlockApiSettings;
 import org.schabi.newpipe.extractor.sponsorblock.SponsorBlockExtractorHelper;
 import org.schabi.newpipe.extractor.sponsorblock.SponsorBlockSegment;
 import org.schabi.newpipe.extractor.utils.ExtractorHelper;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.TimeoutException;
 
 import javax.annotation.Nonnull;
 
@@ -90,56 +90,52 @@ public class StreamInfo extends Info {
 
     public static StreamInfo getInfo(@Nonnull final StreamExtractor extractor)
             throws ExtractionException, IOException {
-        final String performanceId = extractor.getLinkHandler().getId();
-        final long totalStartedAt = System.nanoTime();
+        final ExtractionMetrics metrics = NewPipe.getExtractionMetrics();
+        final int serviceId = extractor.getServiceId();
+        final long totalStartedAt = metrics.startTimer();
         final SponsorBlockApiSettings sponsorBlockApiSettings = extractor.getService()
                 .getSponsorBlockApiSettings();
-        final AtomicReference<SponsorBlockSegment[]> sponsorBlockSegments =
-                new AtomicReference<>();
-        final CountDownLatch sponsorBlockFinished = new CountDownLatch(1);
+        final CompletableFuture<SponsorBlockSegment[]> sponsorBlockSegments;
         if (sponsorBlockApiSettings != null) {
-            new Thread(() -> {
-                final long sponsorBlockStartedAt = System.nanoTime();
-                try {
-                    sponsorBlockSegments.set(SponsorBlockExtractorHelper.getSegments(
-                            extractor, sponsorBlockApiSettings));
-                } catch (UnsupportedEncodingException | ParsingException e) {
-                    e.printStackTrace();
-                } finally {
-                    logPerformance(performanceId, "sponsorBlock.request", sponsorBlockStartedAt);
-                    sponsorBlockFinished.countDown();
-                }
-            }, "SponsorBlock-" + performanceId).start();
+            final long sponsorBlockStartedAt = metrics.startTimer();
+            sponsorBlockSegments = SponsorBlockExtractorHelper.getSegmentsAsync(
+                    extractor, sponsorBlockApiSettings);
+            sponsorBlockSegments.whenComplete((segments, error) -> metrics.stopTimer(
+                    serviceId, "sponsorBlock.request", sponsorBlockStartedAt));
+        } else {
+            sponsorBlockSegments = null;
         }
 
-        long stageStartedAt = System.nanoTime();
+        long stageStartedAt = metrics.startTimer();
         extractor.fetchPage();
-        logPerformance(performanceId, "streamInfo.fetchPage", stageStartedAt);
+        metrics.stopTimer(serviceId, "streamInfo.fetchPage", stageStartedAt);
         final StreamInfo streamInfo;
         try {
-            stageStartedAt = System.nanoTime();
+            stageStartedAt = metrics.startTimer();
             streamInfo = extractImportantData(extractor);
-            logPerformance(performanceId, "streamInfo.important", stageStartedAt);
-            stageStartedAt = System.nanoTime();
+            metrics.stopTimer(serviceId, "streamInfo.important", stageStartedAt);
+            stageStartedAt = metrics.startTimer();
             extractStreams(streamInfo, extractor);
-            logPerformance(performanceId, "streamInfo.streams", stageStartedAt);
-            stageStartedAt = System.nanoTime();
+            metrics.stopTimer(serviceId, "streamInfo.streams", stageStartedAt);
+            stageStartedAt = metrics.startTimer();
             extractOptionalData(streamInfo, extractor);
-            logPerformance(performanceId, "streamInfo.optional", stageStartedAt);
-            if (sponsorBlockApiSettings != null) {
-                final long startTime = System.nanoTime();
+            metrics.stopTimer(serviceId, "streamInfo.optional", stageStartedAt);
+            if (sponsorBlockSegments != null) {
+                final long startTime = metrics.startTimer();
                 try {
-                    sponsorBlockFinished.await(3, TimeUnit.SECONDS);
+                    streamInfo.setSponsorBlockSegments(
+                            sponsorBlockSegments.get(3, TimeUnit.SECONDS));
                 } catch (final InterruptedException e) {
                     Thread.currentThread().interrupt();
+                } catch (final ExecutionException e) {
+                    // Rejected lookups and network errors; the stream is still usable
+                    metrics.incrementCounter(serviceId, "sponsorBlock.error");
+                } catch (final TimeoutException e) {
+                    metrics.incrementCounter(serviceId, "sponsorBlock.timeout");
                 }
-                final SponsorBlockSegment[] segments = sponsorBlockSegments.get();
-                if (segments != null) {
-                    streamInfo.setSponsorBlockSegments(segments);
-                }
-                logPerformance(performanceId, "sponsorBlock.wait", startTime);
+                metrics.stopTimer(serviceId, "sponsorBlock.wait", startTime);
             }
-            logPerformance(performanceId, "streamInfo.total", totalStartedAt);
+            metrics.stopTimer(serviceId, "streamInfo.total", totalStartedAt);
             return streamInfo;
 
         } catch (final ExtractionException e) {
@@ -197,24 +193,25 @@ public class StreamInfo extends Info {
         // At least one type of stream has to be available, otherwise an exception will be thrown
         // directly into the frontend.
 
-        long stageStartedAt = System.nanoTime();
+        final ExtractionMetrics metrics = NewPipe.getExtractionMetrics();
+        long stageStartedAt = metrics.startTimer();
         try {
             streamInfo.setDashMpdUrl(extractor.getDashMpdUrl());
         } catch (final Exception e) {
             streamInfo.addError(new ExtractionException("Couldn't get DASH manifest", e));
         }
-        logPerformance(streamInfo.getId(), "streams.dash", stageStartedAt);
+        metrics.stopTimer(streamInfo.getServiceId(), "streams.dash", stageStartedAt);
 
-        stageStartedAt = System.nanoTime();
+        stageStartedAt = metrics.startTimer();
         try {
             streamInfo.setHlsUrl(extractor.getHlsUrl());
         } catch (final Exception e) {
             streamInfo.addError(new ExtractionException("Couldn't get HLS manifest", e));
         }
-        logPerformance(streamInfo.getId(), "streams.hls", stageStartedAt);
+        metrics.stopTimer(streamInfo.getServiceId(), "streams.hls", stageStartedAt);
 
         /* Load and extract audio */
-        stageStartedAt = System.nanoTime();
+        stageStartedAt = metrics.startTimer();
         try {
             streamInfo.setAudioStreams(extractor.getAudioStreams());
         } catch (final ContentNotSupportedException e) {
@@ -222,25 +219,25 @@ public class StreamInfo extends Info {
         } catch (final Exception e) {
             streamInfo.addError(new ExtractionException("Couldn't get audio streams", e));
         }
-        logPerformance(streamInfo.getId(), "streams.audio", stageStartedAt);
+        metrics.stopTimer(streamInfo.getServiceId(), "streams.audio", stageStartedAt);
 
         /* Extract video stream url */
-        stageStartedAt = System.nanoTime();
+        stageStartedAt = metrics.startTimer();
         try {
             streamInfo.setVideoStreams(extractor.getVideoStreams());
         } catch (final Exception e) {
             streamInfo.addError(new ExtractionException("Couldn't get video streams", e));
         }
-        logPerformance(streamInfo.getId(), "streams.video", stageStartedAt);
+        metrics.stopTimer(streamInfo.getServiceId(), "streams.video", stageStartedAt);
 
         /* Extract video only stream url */
-        stageStartedAt = System.nanoTime();
+        stageStartedAt = metrics.startTimer();
         try {
             streamInfo.setVideoOnlyStreams(extractor.getVideoOnlyStreams());
         } catch (final Exception e) {
             streamInfo.addError(new ExtractionException("Couldn't get video only streams", e));
         }
-        logPerformance(streamInfo.getId(), "streams.videoOnly", stageStartedAt);
+        metrics.stopTimer(streamInfo.getServiceId(), "streams.videoOnly", stageStartedAt);
 
         // Lists can be null if an exception was thrown during extraction
         if (streamInfo.getVideoStreams() == null) {
@@ -266,14 +263,6 @@ public class StreamInfo extends Info {
         }
     }
 
-    private static void logPerformance(@Nonnull final String id,
-                                       @Nonnull final String stage,
-                                       final long startedAtNanos) {
-        System.out.println("YT_PERF videoId=" + id + " stage=" + stage
-                + " durationMs="
-                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtNanos));
-    }
-
     @SuppressWarnings("MethodLength")
     private static void extractOptionalData(final StreamInfo streamInfo,
                                             final StreamExtractor extractor) {
@@ -282,7 +271,8 @@ public class StreamInfo extends Info {
         // Exceptions are therefore not thrown into the frontend, but stored into the error list,
         // so the frontend can afterwards check where errors happened.
 
-        long stageStartedAt = System.nanoTime();
+        final ExtractionMetrics metrics = NewPipe.getExtractionMetrics();
+        long stageStartedAt = metrics.startTimer();
         try {
             streamInfo.setThumbnailUrl(extractor.getThumbnailUrl());
         } catch (final Exception e) {
@@ -338,9 +328,9 @@ public class StreamInfo extends Info {
         } catch (final Exception e) {
             streamInfo.addError(e);
         }
-        logPerformance(streamInfo.getId(), "optional.author", stageStartedAt);
+        metrics.stopTimer(streamInfo.getServiceId(), "optional.author", stageStartedAt);
 
-        stageStartedAt = System.nanoTime();
+        stageStartedAt = metrics.startTimer();
         try {
             streamInfo.setSubChannelName(extractor.getSubChannelName());
         } catch (final Exception e) {
@@ -361,9 +351,9 @@ public class StreamInfo extends Info {
         } catch (final Exception e) {
             streamInfo.addError(e);
         }
-        logPerformance(streamInfo.getId(), "optional.subChannel", stageStartedAt);
+        metrics.stopTimer(streamInfo.getServiceId(), "optional.subChannel", stageStartedAt);
 
-        stageStartedAt = System.nanoTime();
+        stageStartedAt = metrics.startTimer();
         try {
             streamInfo.setDescription(extractor.getDescription());
         } catch (final Exception e) {
@@ -394,26 +384,26 @@ public class StreamInfo extends Info {
         } catch (final Exception e) {
             streamInfo.addError(e);
         }
-        logPerformance(streamInfo.getId(), "optional.contentCore", stageStartedAt);
+        metrics.stopTimer(streamInfo.getServiceId(), "optional.contentCore", stageStartedAt);
 
-        stageStartedAt = System.nanoTime();
+        stageStartedAt = metrics.startTimer();
         try {
             streamInfo.setDislikeCount(extractor.getDislikeCount());
         } catch (final Exception e) {
             streamInfo.addError(e);
         }
-        logPerformance(streamInfo.getId(), "optional.dislike", stageStartedAt);
+        metrics.stopTimer(streamInfo.getServiceId(), "optional.dislike", stageStartedAt);
 
-        stageStartedAt = System.nanoTime();
+        stageStartedAt = metrics.startTimer();
         try {
             streamInfo.setSubtitles(extractor.getSubtitlesDefault());
         } catch (final Exception e) {
             streamInfo.addError(e);
         }
-        logPerformance(streamInfo.getId(), "optional.subtitles", stageStartedAt);
+        metrics.stopTimer(streamInfo.getServiceId(), "optional.subtitles", stageStartedAt);
 
         // Additional info
-        stageStartedAt = System.nanoTime();
+        stageStartedAt = metrics.startTimer();
         try {
             streamInfo.setHost(extractor.getHost());
         } catch (final Exception e) {
@@ -489,9 +479,9 @@ public class StreamInfo extends Info {
         } catch (final Exception e) {
             streamInfo.addError(e);
         }
-        logPerformance(streamInfo.getId(), "optional.metadata", stageStartedAt);
+        metrics.stopTimer(streamInfo.getServiceId(), "optional.metadata", stageStartedAt);
 
-        stageStartedAt = System.nanoTime();
+        stageStartedAt = metrics.startTimer();
         try {
             streamInfo.setPartitions(ExtractorHelper.getPartitionsOrLogError(streamInfo,
                     extractor));
@@ -503,16 +493,16 @@ public class StreamInfo extends Info {
         } catch (final Exception e) {
             streamInfo.addError(e);
         }
-        logPerformance(streamInfo.getId(), "optional.partitions", stageStartedAt);
+        metrics.stopTimer(streamInfo.getServiceId(), "optional.partitions", stageStartedAt);
 
-        stageStartedAt = System.nanoTime();
+        stageStartedAt = metrics.startTimer();
         if(streamInfo.isSupportRelatedItems() || streamInfo.isRoundPlayStream()){
             streamInfo.setRelatedItems(ExtractorHelper.getRelatedItemsOrLogError(streamInfo,
                     extractor));
         } else {
             streamInfo.setRelatedItems(Collections.emptyList());
         }
-        logPerformance(streamInfo.getId(), "optional.related", stageStartedAt);
+        metrics.stopTimer(streamInfo.getServiceId(), "optional.related", stageStartedAt);
     }
 
     private StreamType streamType;
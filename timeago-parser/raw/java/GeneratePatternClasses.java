@@ -77,6 +77,45 @@ public class GeneratePatternClasses {
                 e.printStackTrace();
             }
         }
+
+        generatePatternsIndex(map.keySet());
+    }
+
+    /**
+     * Generate the index used by {@code PatternsManager} to get pattern classes without
+     * reflection.
+     */
+    private static void generatePatternsIndex(Set<String> localizationCodes) {
+        System.out.println("Generating patterns index...");
+
+        final StringBuilder cases = new StringBuilder();
+        for (String localizationCode : localizationCodes) {
+            final String languageCode = localizationCode.replace('-', '_');
+            cases.append("            case \"").append(languageCode).append("\": return ")
+                    .append(languageCode).append(".getInstance();\n");
+        }
+
+        try (final FileWriter fileOut = new FileWriter(
+                "timeago-parser/src/main/java/org/schabi/newpipe/extractor/timeago/PatternsIndex.java")) {
+            fileOut.write(INFO_CLASS_GENERATED + "\n" +
+                    "\n" +
+                    "package org.schabi.newpipe.extractor.timeago;\n\n" +
+                    "import org.schabi.newpipe.extractor.timeago.patterns.*;\n" +
+                    "\n" +
+                    "final class PatternsIndex {\n" +
+                    "    private PatternsIndex() {\n" +
+                    "    }\n" +
+                    "\n" +
+                    "    static PatternsHolder getPatterns(String localizationCode) {\n" +
+                    "        switch (localizationCode) {\n" +
+                    cases +
+                    "            default: return null;\n" +
+                    "        }\n" +
+                    "    }\n" +
+                    "}");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     private static void specialCasesConstruct(TimeAgoUnit unit, JsonArray array, StringBuilder stringBuilder) {
@@ -0,0 +1,98 @@
+/**/// DO NOT MODIFY THIS FILE MANUALLY
+/**/// This class was automatically generated by "GeneratePatternClasses.java",
+/**/// modify the "unique_patterns.json" and re-generate instead.
+
+package org.schabi.newpipe.extractor.timeago;
+
+import org.schabi.newpipe.extractor.timeago.patterns.*;
+
+final class PatternsIndex {
+    private PatternsIndex() {
+    }
+
+    static PatternsHolder getPatterns(String localizationCode) {
+        switch (localizationCode) {
+            case "af": return af.getInstance();
+            case "am": return am.getInstance();
+            case "ar": return ar.getInstance();
+            case "az": return az.getInstance();
+            case "be": return be.getInstance();
+            case "bg": return bg.getInstance();
+            case "bn": return bn.getInstance();
+            case "bs": return bs.getInstance();
+            case "ca": return ca.getInstance();
+            case "cs": return cs.getInstance();
+            case "da": return da.getInstance();
+            case "de": return de.getInstance();
+            case "el": return el.getInstance();
+            case "en": return en.getInstance();
+            case "en_GB": return en_GB.getInstance();
+            case "es": return es.getInstance();
+            case "es_419": return es_419.getInstance();
+            case "es_US": return es_US.getInstance();
+            case "et": return et.getInstance();
+            case "eu": return eu.getInstance();
+            case "fa": return fa.getInstance();
+            case "fi": return fi.getInstance();
+            case "fil": return fil.getInstance();
+            case "fr": return fr.getInstance();
+            case "fr_CA": return fr_CA.getInstance();
+            case "gl": return gl.getInstance();
+            case "gu": return gu.getInstance();
+            case "hi": return hi.getInstance();
+            case "hr": return hr.getInstance();
+            case "hu": return hu.getInstance();
+            case "hy": return hy.getInstance();
+            case "id": return id.getInstance();
+            case "is": return is.getInstance();
+            case "it": return it.getInstance();
+            case "iw": return iw.getInstance();
+            case "ja": return ja.getInstance();
+            case "ka": return ka.getInstance();
+            case "kk": return kk.getInstance();
+            case "km": return km.getInstance();
+            case "kn": return kn.getInstance();
+            case "ko": return ko.getInstance();
+            case "ky": return ky.getInstance();
+            case "lo": return lo.getInstance();
+            case "lt": return lt.getInstance();
+            case "lv": return lv.getInstance();
+            case "mk": return mk.getInstance();
+            case "ml": return ml.getInstance();
+            case "mn": return mn.getInstance();
+            case "mr": return mr.getInstance();
+            case "ms": return ms.getInstance();
+            case "my": return my.getInstance();
+            case "ne": return ne.getInstance();
+            case "nl": return nl.getInstance();
+            case "no": return no.getInstance();
+            case "pa": return pa.getInstance();
+            case "pl": return pl.getInstance();
+            case "pt": return pt.getInstance();
+            case "pt_PT": return pt_PT.getInstance();
+            case "ro": return ro.getInstance();
+            case "ru": return ru.getInstance();
+            case "si": return si.getInstance();
+            case "sk": return sk.getInstance();
+            case "sl": return sl.getInstance();
+            case "sq": return sq.getInstance();
+            case "sr": return sr.getInstance();
+            case "sr_Latn": return sr_Latn.getInstance();
+            case "sv": return sv.getInstance();
+            case "sw": return sw.getInstance();
+            case "ta": return ta.getInstance();
+            case "te": return te.getInstance();
+            case "th": return th.getInstance();
+            case "tr": return tr.getInstance();
+            case "uk": return uk.getInstance();
+            case "ur": return ur.getInstance();
+            case "uz": return uz.getInstance();
+            case "vi": return vi.getInstance();
+            case "zh_CN": return zh_CN.getInstance();
+            case "zh_HK": return zh_HK.getInstance();
+            case "zh_TW": return zh_TW.getInstance();
+            case "zu": return zu.getInstance();
+            default: return null;
+        }
+    }
+}
\ No newline at end of file
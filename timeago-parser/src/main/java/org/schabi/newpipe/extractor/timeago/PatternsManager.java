@@ -2,9 +2,17 @@ package org.schabi.newpipe.extractor.timeago;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.lang.reflect.InvocationTargetException;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PatternsManager {
+    /**
+     * Holders already looked up, per localization code. Unsupported localizations are cached as
+     * {@link Optional#empty()} so that they are only looked up once.
+     */
+    private static final ConcurrentHashMap<String, Optional<PatternsHolder>> PATTERNS =
+            new ConcurrentHashMap<>();
+
     /**
      * Return an holder object containing all the patterns array.
      *
@@ -15,17 +23,12 @@ public class PatternsManager {
         final String targetLocalizationClassName = languageCode +
                 (countryCode == null || countryCode.isEmpty() ? "" : "_" + countryCode);
 
-        try {
-            final Class<?> targetClass = Class.forName(
-                    "org.schabi.newpipe.extractor.timeago.patterns." + targetLocalizationClassName);
-
-            return (PatternsHolder) targetClass.getDeclaredMethod("getInstance").invoke(null);
-        } catch (ClassNotFoundException ignored) {
-            // Target localization is not supported
-        } catch (IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
-            e.printStackTrace();
+        Optional<PatternsHolder> patterns = PATTERNS.get(targetLocalizationClassName);
+        if (patterns == null) {
+            patterns = Optional.ofNullable(PatternsIndex.getPatterns(targetLocalizationClassName));
+            PATTERNS.putIfAbsent(targetLocalizationClassName, patterns);
         }
 
-        return null;
+        return patterns.orElse(null);
     }
 }